@@ -0,0 +1,37 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@code PageSink} that counts the bytes written to it and otherwise throws
+ * them away, so page generation is measured without any file system cost.
+ * It sits in the default package, next to {@code PageSink}, so it can
+ * implement it directly; the benchmarks create it through
+ * {@code GlossaryApi}.
+ */
+public final class DiscardingPageSink implements PageSink {
+
+    /**
+     * Receives the number of bytes written.
+     */
+    private final LongAdder bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param bytes
+     *            receives the number of bytes written
+     */
+    public DiscardingPageSink(LongAdder bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public void write(String name, byte[] bytes, int offset, int length) {
+        this.bytes.add(length);
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+}
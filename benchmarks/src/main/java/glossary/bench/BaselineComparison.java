@@ -0,0 +1,272 @@
+package glossary.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares two JMH result files written with {@code -rf csv}: a stored
+ * baseline and the current run. Every score of the current run that is also
+ * in the baseline (same benchmark, same metric, same parameters) is printed
+ * with its change, and the program fails if any primary score or per-operation
+ * metric got worse by more than the threshold.
+ * <p>
+ * Usage: {@code BaselineComparison baseline.csv current.csv [threshold%]},
+ * where the threshold defaults to 10. Exits with 0 when nothing regressed, 1
+ * when something did, and 2 when the arguments or files are wrong.
+ */
+public final class BaselineComparison {
+
+    /**
+     * Exit code when nothing regressed.
+     */
+    static final int EXIT_OK = 0;
+
+    /**
+     * Exit code when a score regressed.
+     */
+    static final int EXIT_REGRESSED = 1;
+
+    /**
+     * Exit code for bad arguments or unreadable files.
+     */
+    static final int EXIT_USAGE = 2;
+
+    /**
+     * Default threshold, in percent.
+     */
+    private static final double DEFAULT_THRESHOLD = 10;
+
+    /**
+     * Percent.
+     */
+    private static final double PERCENT = 100;
+
+    /**
+     * No instances.
+     */
+    private BaselineComparison() {
+    }
+
+    /**
+     * One score of a result file.
+     */
+    static final class Score {
+
+        /**
+         * The benchmark and metric, with its parameters.
+         */
+        private final String key;
+
+        /**
+         * The score.
+         */
+        private final double value;
+
+        /**
+         * The unit of the score.
+         */
+        private final String unit;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the benchmark and metric, with its parameters
+         * @param value
+         *            the score
+         * @param unit
+         *            the unit of the score
+         */
+        Score(String key, double value, String unit) {
+            this.key = key;
+            this.value = value;
+            this.unit = unit;
+        }
+
+        /**
+         * Reports whether a smaller score is better: times and amounts per
+         * operation, and the counts and times of the garbage collector.
+         *
+         * @return whether smaller is better
+         */
+        boolean lowerIsBetter() {
+            return this.unit.endsWith("/op") || this.key.contains("gc.count")
+                    || this.key.contains("gc.time");
+        }
+
+        /**
+         * Reports whether a regression of this score fails the comparison:
+         * primary scores and per-operation metrics do, rates that only follow
+         * the throughput (such as the allocation rate per second) do not.
+         *
+         * @return whether the score is checked
+         */
+        boolean checked() {
+            return !this.key.contains(":") || this.unit.endsWith("/op");
+        }
+    }
+
+    /**
+     * Splits one line of a JMH CSV file into its fields, removing quotes.
+     *
+     * @param line
+     *            the line
+     * @return the fields
+     */
+    static List<String> fields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length()
+                        && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Reads the scores of a JMH CSV file.
+     *
+     * @param file
+     *            the file
+     * @return the scores by key, in the order of the file
+     * @throws IOException
+     *             if the file cannot be read or is not a JMH CSV file
+     */
+    static java.util.Map<String, Score> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException(file + ": empty");
+        }
+        List<String> header = fields(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+        if (benchmark < 0 || mode < 0 || score < 0 || unit < 0) {
+            throw new IOException(file + ": not a JMH CSV result file");
+        }
+        java.util.Map<String, Score> scores = new LinkedHashMap<>();
+        for (int n = 1; n < lines.size(); n++) {
+            if (lines.get(n).isEmpty()) {
+                continue;
+            }
+            List<String> row = fields(lines.get(n));
+            if (row.size() != header.size()) {
+                throw new IOException(file + ":" + (n + 1) + ": expected "
+                        + header.size() + " fields");
+            }
+            StringBuilder key = new StringBuilder(row.get(benchmark));
+            key.append(" [").append(row.get(mode)).append(']');
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ")) {
+                    key.append(' ').append(header.get(i).substring(7))
+                            .append('=').append(row.get(i));
+                }
+            }
+            try {
+                scores.put(key.toString(), new Score(key.toString(),
+                        Double.parseDouble(row.get(score)), row.get(unit)));
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ":" + (n + 1) + ": bad score", e);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Compares the current scores with the baseline, printing one line per
+     * score found in both.
+     *
+     * @param baseline
+     *            the baseline scores
+     * @param current
+     *            the current scores
+     * @param threshold
+     *            the largest change for the worse that is accepted, in
+     *            percent
+     * @param out
+     *            where the comparison is printed
+     * @return the number of checked scores that regressed
+     */
+    static int compare(java.util.Map<String, Score> baseline,
+            java.util.Map<String, Score> current, double threshold,
+            PrintStream out) {
+        int regressions = 0;
+        for (Score now : current.values()) {
+            Score then = baseline.get(now.key);
+            if (then == null) {
+                out.println("NEW        " + now.key);
+            } else if (then.value == 0) {
+                out.println("           " + now.key);
+            } else {
+                double change = PERCENT * (now.value - then.value)
+                        / then.value;
+                double worse = now.lowerIsBetter() ? change : -change;
+                String verdict = "           ";
+                if (now.checked() && worse > threshold) {
+                    verdict = "REGRESSED  ";
+                    regressions++;
+                } else if (now.checked() && -worse > threshold) {
+                    verdict = "IMPROVED   ";
+                }
+                out.println(String.format(Locale.ROOT,
+                        "%s%s: %.3f -> %.3f %s (%+.1f%%)", verdict, now.key,
+                        then.value, now.value, now.unit, change));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the baseline file, the current file, and optionally the
+     *            threshold in percent
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: BaselineComparison baseline.csv "
+                    + "current.csv [threshold%]");
+            System.exit(EXIT_USAGE);
+        }
+        try {
+            double threshold = DEFAULT_THRESHOLD;
+            if (args.length == 3) {
+                threshold = Double.parseDouble(args[2]);
+            }
+            int regressions = compare(read(Paths.get(args[0])),
+                    read(Paths.get(args[1])), threshold, System.out);
+            System.out.println(regressions + " regression(s) beyond "
+                    + threshold + "%");
+            System.exit(regressions == 0 ? EXIT_OK : EXIT_REGRESSED);
+        } catch (IOException | NumberFormatException e) {
+            System.err.println(e.getMessage());
+            System.exit(EXIT_USAGE);
+        }
+    }
+
+}
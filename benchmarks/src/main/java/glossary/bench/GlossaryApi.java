@@ -0,0 +1,370 @@
+package glossary.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+
+import components.map.Map;
+import components.queue.Queue;
+import components.set.Set;
+import components.simplewriter.SimpleWriter;
+
+/**
+ * Calls into {@code Glossary}, which lives in the default package. JMH only
+ * generates benchmarks for classes in a named package, and a class in a named
+ * package cannot name a class in the default package, so the methods being
+ * measured are reached through {@code MethodHandle}s looked up once. The
+ * handles are {@code static final}, so the JIT compiles each call as a direct
+ * call and the bridge costs nothing once warmed up. Default-package types in
+ * the signatures ({@code SeparatorSet}, {@code PageSink}) are seen here as
+ * {@code Object}.
+ */
+final class GlossaryApi {
+
+    /**
+     * No instances.
+     */
+    private GlossaryApi() {
+    }
+
+    /**
+     * Loads a class of the glossary by name.
+     *
+     * @param name
+     *            the binary name of the class
+     * @return the class
+     */
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(
+                    "glossary classes are not on the class path", e);
+        }
+    }
+
+    /**
+     * The {@code Glossary} class.
+     */
+    private static final Class<?> GLOSSARY = load("Glossary");
+
+    /**
+     * The {@code SeparatorSet} class.
+     */
+    private static final Class<?> SEPARATOR_SET = load("SeparatorSet");
+
+    /**
+     * The {@code PageSink} interface.
+     */
+    private static final Class<?> PAGE_SINK = load("PageSink");
+
+    /**
+     * The {@code GlossaryOptions} class.
+     */
+    private static final Class<?> GLOSSARY_OPTIONS = load("GlossaryOptions");
+
+    /**
+     * Looks up a public static method of the glossary and adapts it to the
+     * given type, where {@code Object} stands for default-package types.
+     *
+     * @param owner
+     *            the class declaring the method
+     * @param name
+     *            the name of the method
+     * @param declared
+     *            the type of the method as declared
+     * @param seen
+     *            the type it is called with here
+     * @return the handle
+     */
+    private static MethodHandle find(Class<?> owner, String name,
+            MethodType declared, MethodType seen) {
+        try {
+            return MethodHandles.publicLookup()
+                    .findStatic(owner, name, declared).asType(seen);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(
+                    "no method " + owner.getName() + "." + name, e);
+        }
+    }
+
+    /**
+     * {@code Glossary.nextWordOrSeparator(String, int, Set)}.
+     */
+    private static final MethodHandle NEXT_WORD_OR_SEPARATOR = find(GLOSSARY,
+            "nextWordOrSeparator",
+            MethodType.methodType(String.class, String.class, int.class,
+                    Set.class),
+            MethodType.methodType(String.class, String.class, int.class,
+                    Set.class));
+
+    /**
+     * {@code Glossary.generateElements(String, Set)}.
+     */
+    private static final MethodHandle GENERATE_ELEMENTS = find(GLOSSARY,
+            "generateElements",
+            MethodType.methodType(void.class, String.class, Set.class),
+            MethodType.methodType(void.class, String.class, Set.class));
+
+    /**
+     * {@code Glossary.getTermsAndDefinitions(Path, Map)}.
+     */
+    private static final MethodHandle GET_TERMS_AND_DEFINITIONS = find(
+            GLOSSARY, "getTermsAndDefinitions",
+            MethodType.methodType(void.class, Path.class, Map.class),
+            MethodType.methodType(void.class, Path.class, Map.class));
+
+    /**
+     * {@code Glossary.sortTerms(Queue, Map, Comparator)}.
+     */
+    private static final MethodHandle SORT_TERMS = find(GLOSSARY, "sortTerms",
+            MethodType.methodType(void.class, Queue.class, Map.class,
+                    Comparator.class),
+            MethodType.methodType(void.class, Queue.class, Map.class,
+                    Comparator.class));
+
+    /**
+     * {@code Glossary.printIndexTermsListAndClosingTags(Queue, SimpleWriter)}.
+     */
+    private static final MethodHandle PRINT_INDEX_TERMS = find(GLOSSARY,
+            "printIndexTermsListAndClosingTags",
+            MethodType.methodType(void.class, Queue.class, SimpleWriter.class),
+            MethodType.methodType(void.class, Queue.class,
+                    SimpleWriter.class));
+
+    /**
+     * {@code Glossary.createTermHTMLPages(Iterable, Map, PageSink,
+     * GlossaryOptions)}.
+     */
+    private static final MethodHandle CREATE_TERM_HTML_PAGES = find(GLOSSARY,
+            "createTermHTMLPages",
+            MethodType.methodType(void.class, Iterable.class, Map.class,
+                    PAGE_SINK, GLOSSARY_OPTIONS),
+            MethodType.methodType(void.class, Iterable.class, Map.class,
+                    Object.class, Object.class));
+
+    /**
+     * {@code new DiscardingPageSink(LongAdder)}.
+     */
+    private static final MethodHandle DISCARDING_SINK;
+
+    static {
+        try {
+            DISCARDING_SINK = MethodHandles.publicLookup()
+                    .findConstructor(load("DiscardingPageSink"),
+                            MethodType.methodType(void.class,
+                                    LongAdder.class))
+                    .asType(MethodType.methodType(Object.class,
+                            LongAdder.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(
+                    "no constructor DiscardingPageSink(LongAdder)", e);
+        }
+    }
+
+    /**
+     * {@code SeparatorSet.of(CharSequence)}.
+     */
+    private static final MethodHandle SEPARATOR_SET_OF = find(SEPARATOR_SET,
+            "of", MethodType.methodType(SEPARATOR_SET, CharSequence.class),
+            MethodType.methodType(Object.class, CharSequence.class));
+
+    /**
+     * Rethrows a failure of a glossary method.
+     *
+     * @param t
+     *            the failure
+     * @return never returns; declared so callers can {@code throw} it
+     */
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException(t);
+    }
+
+    /**
+     * Calls {@code Glossary.nextWordOrSeparator}.
+     *
+     * @param text
+     *            the text
+     * @param position
+     *            where the word or separator starts
+     * @param separators
+     *            the separator characters
+     * @return the word or separator
+     */
+    static String nextWordOrSeparator(String text, int position,
+            Set<Character> separators) {
+        try {
+            return (String) NEXT_WORD_OR_SEPARATOR.invokeExact(text, position,
+                    (Set<?>) separators);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.generateElements}.
+     *
+     * @param str
+     *            the characters
+     * @param charSet
+     *            receives the characters
+     */
+    static void generateElements(String str, Set<Character> charSet) {
+        try {
+            GENERATE_ELEMENTS.invokeExact(str, (Set<?>) charSet);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.getTermsAndDefinitions}.
+     *
+     * @param file
+     *            the input file
+     * @param map
+     *            receives the terms and definitions
+     */
+    static void getTermsAndDefinitions(Path file, Map<String, String> map) {
+        try {
+            GET_TERMS_AND_DEFINITIONS.invokeExact(file, (Map<?, ?>) map);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.sortTerms}.
+     *
+     * @param q
+     *            receives the sorted terms
+     * @param map
+     *            the terms and definitions
+     * @param c
+     *            the order of the terms
+     */
+    static void sortTerms(Queue<String> q, Map<String, String> map,
+            Comparator<String> c) {
+        try {
+            SORT_TERMS.invokeExact((Queue<?>) q, (Map<?, ?>) map,
+                    (Comparator<?>) c);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.printIndexTermsListAndClosingTags}.
+     *
+     * @param q
+     *            the terms
+     * @param out
+     *            where the list is printed
+     */
+    static void printIndexTermsListAndClosingTags(Queue<String> q,
+            SimpleWriter out) {
+        try {
+            PRINT_INDEX_TERMS.invokeExact((Queue<?>) q, out);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.createTermHTMLPages}.
+     *
+     * @param terms
+     *            the terms
+     * @param map
+     *            the terms and definitions
+     * @param sink
+     *            a {@code PageSink}
+     * @param options
+     *            a {@code GlossaryOptions}
+     */
+    static void createTermHTMLPages(Iterable<String> terms,
+            Map<String, String> map, Object sink, Object options) {
+        try {
+            CREATE_TERM_HTML_PAGES.invokeExact((Iterable<?>) terms,
+                    (Map<?, ?>) map, sink, options);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Returns {@code SeparatorSet.of(chars)}.
+     *
+     * @param chars
+     *            the separator characters
+     * @return a {@code SeparatorSet}
+     */
+    private static Object separatorSet(CharSequence chars) {
+        try {
+            return (Object) SEPARATOR_SET_OF.invokeExact(chars);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Returns {@code new GlossaryOptions().separators(SeparatorSet.of(chars))}:
+     * one thread and the default templates.
+     *
+     * @param chars
+     *            the separator characters
+     * @return a {@code GlossaryOptions}
+     */
+    static Object options(CharSequence chars) {
+        try {
+            Object options = GLOSSARY_OPTIONS.getConstructor().newInstance();
+            GLOSSARY_OPTIONS.getMethod("separators", SEPARATOR_SET)
+                    .invoke(options, separatorSet(chars));
+            return options;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a new {@code Glossary.CompareStrings}.
+     *
+     * @return the comparator
+     */
+    @SuppressWarnings("unchecked")
+    static Comparator<String> compareStrings() {
+        try {
+            return (Comparator<String>) load("Glossary$CompareStrings")
+                    .getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a new {@code DiscardingPageSink}, which counts the bytes written
+     * to it and otherwise throws them away. It is an ordinary class, so
+     * writing to it costs an interface call and nothing more.
+     *
+     * @param bytes
+     *            receives the number of bytes written
+     * @return the sink
+     */
+    static Object discardingSink(LongAdder bytes) {
+        try {
+            return (Object) DISCARDING_SINK.invokeExact(bytes);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+package glossary.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.set.Set;
+import components.set.Set1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Throughput of the steps of a glossary build, each over a whole synthetic
+ * glossary of {@code size} terms: one operation reads, sorts, indexes or
+ * renders every term once. Run with {@code -prof gc} to also get the
+ * allocation rate, per second and per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GlossaryBenchmark {
+
+    /**
+     * Seed of every synthetic glossary.
+     */
+    private static final long SEED = 0x5EED_61055L;
+
+    /**
+     * Number of terms in the glossary.
+     */
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int size;
+
+    /**
+     * The glossary.
+     */
+    private SyntheticGlossary glossary;
+
+    /**
+     * Folder holding the files of one trial.
+     */
+    private Path folder;
+
+    /**
+     * The glossary as an input file.
+     */
+    private Path input;
+
+    /**
+     * Where the index list is printed.
+     */
+    private Path index;
+
+    /**
+     * The glossary as a {@code Map}.
+     */
+    private Map<String, String> map;
+
+    /**
+     * The terms, sorted.
+     */
+    private Queue<String> sorted;
+
+    /**
+     * The separators as a {@code Set}.
+     */
+    private Set<Character> separatorSet;
+
+    /**
+     * How the pages are rendered, as a {@code GlossaryOptions}.
+     */
+    private Object options;
+
+    /**
+     * The order of the terms.
+     */
+    private Comparator<String> order;
+
+    /**
+     * Makes up the glossary and writes its input file.
+     *
+     * @throws IOException
+     *             if the input file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.glossary = new SyntheticGlossary(this.size, SEED);
+        this.folder = Files.createTempDirectory("glossary-bench");
+        this.input = this.folder.resolve("terms.txt");
+        this.index = this.folder.resolve("index.html");
+        this.glossary.writeTo(this.input);
+        this.map = this.glossary.toMap();
+        this.order = GlossaryApi.compareStrings();
+        this.sorted = new Queue1L<>();
+        GlossaryApi.sortTerms(this.sorted, this.map, this.order);
+        this.separatorSet = new Set1L<>();
+        GlossaryApi.generateElements(SyntheticGlossary.SEPARATORS,
+                this.separatorSet);
+        this.options = GlossaryApi.options(SyntheticGlossary.SEPARATORS);
+    }
+
+    /**
+     * Deletes the files of the trial.
+     *
+     * @throws IOException
+     *             if a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.input);
+        Files.deleteIfExists(this.index);
+        Files.deleteIfExists(this.folder);
+    }
+
+    /**
+     * Splits every definition into words and separators.
+     *
+     * @param bh
+     *            consumes the pieces
+     */
+    @Benchmark
+    public void nextWordOrSeparator(Blackhole bh) {
+        for (int i = 0; i < this.glossary.size(); i++) {
+            String def = this.glossary.definition(i);
+            int position = 0;
+            while (position < def.length()) {
+                String piece = GlossaryApi.nextWordOrSeparator(def, position,
+                        this.separatorSet);
+                bh.consume(piece);
+                position += piece.length();
+            }
+        }
+    }
+
+    /**
+     * Collects the characters of every definition into one {@code Set}.
+     *
+     * @return the characters
+     */
+    @Benchmark
+    public Set<Character> generateElements() {
+        Set<Character> chars = new Set1L<>();
+        for (int i = 0; i < this.glossary.size(); i++) {
+            GlossaryApi.generateElements(this.glossary.definition(i), chars);
+        }
+        return chars;
+    }
+
+    /**
+     * Reads the input file.
+     *
+     * @return the terms and definitions read
+     */
+    @Benchmark
+    public Map<String, String> getTermsAndDefinitions() {
+        Map<String, String> read = new Map1L<>();
+        GlossaryApi.getTermsAndDefinitions(this.input, read);
+        return read;
+    }
+
+    /**
+     * Sorts the terms.
+     *
+     * @return the sorted terms
+     */
+    @Benchmark
+    public Queue<String> sortTerms() {
+        Queue<String> q = new Queue1L<>();
+        GlossaryApi.sortTerms(q, this.map, this.order);
+        return q;
+    }
+
+    /**
+     * Prints the list of terms of the index page to a file.
+     */
+    @Benchmark
+    public void printIndexTermsListAndClosingTags() {
+        SimpleWriter out = new SimpleWriter1L(this.index.toString());
+        GlossaryApi.printIndexTermsListAndClosingTags(this.sorted, out);
+        out.close();
+    }
+
+    /**
+     * Renders the page of every term, on one thread, into a sink that throws
+     * the pages away.
+     *
+     * @return number of bytes rendered
+     */
+    @Benchmark
+    public long createTermHTMLPages() {
+        LongAdder bytes = new LongAdder();
+        GlossaryApi.createTermHTMLPages(this.sorted, this.map,
+                GlossaryApi.discardingSink(bytes), this.options);
+        return bytes.sum();
+    }
+
+}
@@ -0,0 +1,178 @@
+package glossary.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * A glossary made up from a seed, so every run of a benchmark sees exactly
+ * the same terms and definitions. Terms are distinct lowercase words in no
+ * particular order; each definition is a sentence of ordinary words, about
+ * one in eight of which is another term of the glossary, with commas and
+ * periods between some of them.
+ */
+final class SyntheticGlossary {
+
+    /**
+     * The separators used in the definitions.
+     */
+    static final String SEPARATORS = " \t,.";
+
+    /**
+     * Ordinary words the definitions are made of.
+     */
+    private static final String[] WORDS = { "a", "an", "the", "of", "to",
+        "in", "is", "that", "which", "used", "for", "any", "one", "or", "and",
+        "with", "kind", "part", "form", "set", "value", "name", "thing",
+        "group", "small", "large", "written", "given", "other", "each" };
+
+    /**
+     * Syllables the terms are made of.
+     */
+    private static final String[] SYLLABLES = { "ba", "ce", "di", "fo", "gu",
+        "ha", "ke", "li", "mo", "nu", "pa", "re", "si", "to", "vu", "za" };
+
+    /**
+     * Fewest words in a definition.
+     */
+    private static final int MIN_WORDS = 6;
+
+    /**
+     * Most words in a definition, minus {@code MIN_WORDS}.
+     */
+    private static final int EXTRA_WORDS = 18;
+
+    /**
+     * One in this many words of a definition is a term.
+     */
+    private static final int TERM_EVERY = 8;
+
+    /**
+     * The terms.
+     */
+    private final String[] terms;
+
+    /**
+     * The definition of each term.
+     */
+    private final String[] definitions;
+
+    /**
+     * Makes up a glossary of the given size.
+     *
+     * @param size
+     *            the number of terms
+     * @param seed
+     *            the seed; the same seed always gives the same glossary
+     */
+    SyntheticGlossary(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        this.terms = new String[size];
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            /*
+             * two random syllables keep the terms out of order, and the index
+             * written in letters after them keeps them distinct
+             */
+            b.setLength(0);
+            b.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            b.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            int n = i;
+            do {
+                b.append((char) ('a' + n % ('z' - 'a' + 1)));
+                n /= 'z' - 'a' + 1;
+            } while (n > 0);
+            this.terms[i] = b.toString();
+        }
+        this.definitions = new String[size];
+        for (int i = 0; i < size; i++) {
+            b.setLength(0);
+            int words = MIN_WORDS + random.nextInt(EXTRA_WORDS + 1);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    b.append(random.nextInt(TERM_EVERY) == 0 ? ", " : " ");
+                }
+                if (random.nextInt(TERM_EVERY) == 0) {
+                    b.append(this.terms[random.nextInt(size)]);
+                } else {
+                    b.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+            }
+            b.append('.');
+            this.definitions[i] = b.toString();
+        }
+    }
+
+    /**
+     * Reports the number of terms.
+     *
+     * @return the number of terms
+     */
+    int size() {
+        return this.terms.length;
+    }
+
+    /**
+     * Returns one of the terms.
+     *
+     * @param i
+     *            the index of the term
+     * @return the term
+     */
+    String term(int i) {
+        return this.terms[i];
+    }
+
+    /**
+     * Returns the definition of one of the terms.
+     *
+     * @param i
+     *            the index of the term
+     * @return its definition
+     */
+    String definition(int i) {
+        return this.definitions[i];
+    }
+
+    /**
+     * Returns the glossary as a {@code Map} from terms to definitions.
+     *
+     * @return the map
+     */
+    Map<String, String> toMap() {
+        Map<String, String> map = new Map1L<>();
+        for (int i = 0; i < this.terms.length; i++) {
+            map.add(this.terms[i], this.definitions[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Writes the glossary as an input file: each term on a line, its
+     * definition on the next, then a blank line.
+     *
+     * @param file
+     *            the file written
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    void writeTo(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            for (int i = 0; i < this.terms.length; i++) {
+                out.write(this.terms[i]);
+                out.newLine();
+                out.write(this.definitions[i]);
+                out.newLine();
+                out.newLine();
+            }
+        }
+    }
+
+}
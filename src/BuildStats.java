@@ -0,0 +1,505 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Collects timings and counters for one glossary build: the wall time of
+ * each phase (parsing, sorting, the index, the term pages...), the number of
+ * terms parsed, tokens scanned, links emitted, files and bytes written, and
+ * the slowest term pages. Each phase and each term page is also a JDK Flight
+ * Recorder event ({@code glossary.Phase} and {@code glossary.Page}), so a
+ * recording lines them up with GC and I/O. At the end the whole lot can be
+ * written out as JSON.
+ * <p>
+ * Counters may be updated by any number of threads at once.
+ */
+public final class BuildStats {
+
+    /**
+     * Number of slowest pages kept.
+     */
+    private static final int SLOWEST = 10;
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final double MILLIS = 1e6;
+
+    /**
+     * Flight Recorder event for one phase of a build.
+     */
+    @Name("glossary.Phase")
+    @Label("Glossary Phase")
+    @Category("Glossary")
+    @Description("One phase of a glossary build")
+    static final class PhaseEvent extends Event {
+
+        /**
+         * Name of the phase.
+         */
+        @Label("Phase")
+        String phase;
+    }
+
+    /**
+     * Flight Recorder event for rendering and writing one term page.
+     */
+    @Name("glossary.Page")
+    @Label("Glossary Page")
+    @Category("Glossary")
+    @Description("Rendering and writing one term page")
+    static final class PageEvent extends Event {
+
+        /**
+         * The term the page is for.
+         */
+        @Label("Term")
+        String term;
+
+        /**
+         * Tokens scanned in the definition.
+         */
+        @Label("Tokens")
+        int tokens;
+
+        /**
+         * Links emitted on the page.
+         */
+        @Label("Links")
+        int links;
+    }
+
+    /**
+     * The type of {@code PageEvent}, to ask whether one is being recorded
+     * before making one for every page.
+     */
+    private static final EventType PAGE_EVENT = EventType
+            .getEventType(PageEvent.class);
+
+    /**
+     * A phase being timed; closing it ends the phase.
+     */
+    public final class Phase implements AutoCloseable {
+
+        /**
+         * Name of the phase.
+         */
+        private final String name;
+
+        /**
+         * When the phase started, from {@code System.nanoTime}.
+         */
+        private final long start;
+
+        /**
+         * The Flight Recorder event of the phase.
+         */
+        private final PhaseEvent event;
+
+        /**
+         * Starts timing the given phase.
+         *
+         * @param name
+         *            name of the phase
+         */
+        private Phase(String name) {
+            this.name = name;
+            this.event = new PhaseEvent();
+            this.event.phase = name;
+            this.event.begin();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Ends the phase, adding its wall time to the phase's total.
+         */
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - this.start;
+            this.event.commit();
+            synchronized (BuildStats.this.phases) {
+                BuildStats.this.phases.merge(this.name, nanos, Long::sum);
+            }
+        }
+    }
+
+    /**
+     * One of the slowest pages.
+     */
+    private static final class SlowPage {
+
+        /**
+         * The term the page is for.
+         */
+        private final String term;
+
+        /**
+         * Time taken to render and write it.
+         */
+        private final long nanos;
+
+        /**
+         * Constructor.
+         *
+         * @param term
+         *            the term the page is for
+         * @param nanos
+         *            time taken to render and write it
+         */
+        private SlowPage(String term, long nanos) {
+            this.term = term;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * When the build started, from {@code System.nanoTime}.
+     */
+    private final long start = System.nanoTime();
+
+    /**
+     * Total wall time of each phase, in the order the phases first ran.
+     */
+    private final LinkedHashMap<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * Number of terms parsed.
+     */
+    private final LongAdder termsParsed = new LongAdder();
+
+    /**
+     * Number of tokens scanned in definitions.
+     */
+    private final LongAdder tokensScanned = new LongAdder();
+
+    /**
+     * Number of links emitted.
+     */
+    private final LongAdder linksEmitted = new LongAdder();
+
+    /**
+     * Number of files written.
+     */
+    private final LongAdder filesWritten = new LongAdder();
+
+    /**
+     * Number of bytes written.
+     */
+    private final LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * The slowest pages so far, fastest first.
+     */
+    private final PriorityQueue<SlowPage> slowest = new PriorityQueue<>(
+            SLOWEST + 1, (a, b) -> Long.compare(a.nanos, b.nanos));
+
+    /**
+     * Time a page must beat to be among the slowest, once there are
+     * {@code SLOWEST} of them; lets most pages skip the lock.
+     */
+    private volatile long slowThreshold = -1;
+
+    /**
+     * Starts timing the given phase; the phase ends when the result is
+     * closed. A phase that runs more than once is timed in total.
+     *
+     * @param name
+     *            name of the phase
+     * @return the phase, to be closed when it ends
+     */
+    public Phase phase(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        return new Phase(name);
+    }
+
+    /**
+     * Runs the given code as the given phase, timing it.
+     *
+     * @param name
+     *            name of the phase
+     * @param body
+     *            the code of the phase
+     */
+    public void time(String name, Runnable body) {
+        assert body != null : "Violation of: body is not null";
+
+        Phase phase = this.phase(name);
+        try {
+            body.run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    /**
+     * Adds to the number of terms parsed.
+     *
+     * @param n
+     *            the number of terms
+     */
+    public void addTermsParsed(long n) {
+        this.termsParsed.add(n);
+    }
+
+    /**
+     * Starts the Flight Recorder event of the page of the given term, if
+     * page events are being recorded. Nothing is made otherwise, so a build
+     * that is not being recorded allocates nothing per page for it.
+     *
+     * @param term
+     *            the term
+     * @return the page's event, to be passed to {@link #endPage}, or
+     *         {@code null} if page events are not being recorded
+     */
+    static PageEvent beginPage(String term) {
+        PageEvent event = null;
+        if (PAGE_EVENT.isEnabled()) {
+            event = new PageEvent();
+            event.term = term;
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * Ends timing a page, counting its tokens and links.
+     *
+     * @param term
+     *            the term the page is for
+     * @param start
+     *            when the page was started, from {@code System.nanoTime}
+     * @param event
+     *            the page's event, from {@link #beginPage}; may be
+     *            {@code null}
+     * @param tokens
+     *            tokens scanned in the definition
+     * @param links
+     *            links emitted on the page
+     */
+    void endPage(String term, long start, PageEvent event, int tokens,
+            int links) {
+        long nanos = System.nanoTime() - start;
+        if (event != null) {
+            event.tokens = tokens;
+            event.links = links;
+            event.commit();
+        }
+        this.tokensScanned.add(tokens);
+        this.linksEmitted.add(links);
+        if (nanos > this.slowThreshold) {
+            synchronized (this.slowest) {
+                this.slowest.add(new SlowPage(term, nanos));
+                if (this.slowest.size() > SLOWEST) {
+                    this.slowest.poll();
+                }
+                if (this.slowest.size() == SLOWEST) {
+                    this.slowThreshold = this.slowest.peek().nanos;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a {@code PageSink} that counts the files and bytes written
+     * through it before passing them on to the given one.
+     *
+     * @param sink
+     *            where the pages go
+     * @return the counting sink; closing it closes {@code sink}
+     */
+    public PageSink count(PageSink sink) {
+        assert sink != null : "Violation of: sink is not null";
+
+        return new PageSink() {
+            @Override
+            public void write(String name, byte[] bytes, int offset,
+                    int length) {
+                sink.write(name, bytes, offset, length);
+                BuildStats.this.filesWritten.increment();
+                BuildStats.this.bytesWritten.add(length);
+            }
+
+            @Override
+            public void flush() {
+                sink.flush();
+            }
+
+            @Override
+            public void close() {
+                sink.close();
+            }
+        };
+    }
+
+    /**
+     * Reports the total wall time of the given phase.
+     *
+     * @param name
+     *            name of the phase
+     * @return its wall time in nanoseconds, or 0 if it never ran
+     */
+    public long phaseNanos(String name) {
+        synchronized (this.phases) {
+            return this.phases.getOrDefault(name, 0L);
+        }
+    }
+
+    /**
+     * Reports the number of terms parsed.
+     *
+     * @return the number of terms parsed
+     */
+    public long termsParsed() {
+        return this.termsParsed.sum();
+    }
+
+    /**
+     * Reports the number of tokens scanned in definitions.
+     *
+     * @return the number of tokens scanned
+     */
+    public long tokensScanned() {
+        return this.tokensScanned.sum();
+    }
+
+    /**
+     * Reports the number of links emitted.
+     *
+     * @return the number of links
+     */
+    public long linksEmitted() {
+        return this.linksEmitted.sum();
+    }
+
+    /**
+     * Reports the number of files written through {@link #count} sinks.
+     *
+     * @return the number of files
+     */
+    public long filesWritten() {
+        return this.filesWritten.sum();
+    }
+
+    /**
+     * Reports the number of bytes written through {@link #count} sinks.
+     *
+     * @return the number of bytes
+     */
+    public long bytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    /**
+     * Returns the terms of the slowest pages, slowest first.
+     *
+     * @return the terms
+     */
+    public List<String> slowestPages() {
+        List<String> result = new ArrayList<>();
+        for (SlowPage page : this.slowestFirst()) {
+            result.add(page.term);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the slowest pages, slowest first.
+     *
+     * @return the pages
+     */
+    private List<SlowPage> slowestFirst() {
+        List<SlowPage> result;
+        synchronized (this.slowest) {
+            result = new ArrayList<>(this.slowest);
+        }
+        result.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+        return result;
+    }
+
+    /**
+     * Appends the given time to the given buffer as a number of milliseconds.
+     *
+     * @param nanos
+     *            the time, in nanoseconds
+     * @param json
+     *            the buffer
+     * @updates json
+     */
+    private static void appendMillis(long nanos, StringBuilder json) {
+        json.append(String.format(Locale.ROOT, "%.3f", nanos / MILLIS));
+    }
+
+    /**
+     * Returns everything collected so far as one JSON object. Times are in
+     * milliseconds; {@code wallMs} is the time since this object was created.
+     *
+     * @return the JSON summary
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"wallMs\":");
+        appendMillis(System.nanoTime() - this.start, json);
+        json.append(",\"phasesMs\":{");
+        synchronized (this.phases) {
+            String comma = "";
+            for (java.util.Map.Entry<String, Long> e : this.phases
+                    .entrySet()) {
+                json.append(comma);
+                Json.appendString(e.getKey(), json);
+                json.append(':');
+                appendMillis(e.getValue(), json);
+                comma = ",";
+            }
+        }
+        json.append("},\"termsParsed\":").append(this.termsParsed());
+        json.append(",\"tokensScanned\":").append(this.tokensScanned());
+        json.append(",\"linksEmitted\":").append(this.linksEmitted());
+        json.append(",\"filesWritten\":").append(this.filesWritten());
+        json.append(",\"bytesWritten\":").append(this.bytesWritten());
+        json.append(",\"slowestPages\":[");
+        String comma = "";
+        for (SlowPage page : this.slowestFirst()) {
+            json.append(comma).append("{\"term\":");
+            Json.appendString(page.term, json);
+            json.append(",\"ms\":");
+            appendMillis(page.nanos, json);
+            json.append('}');
+            comma = ",";
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Writes {@link #toJson} to the given file, followed by a line separator.
+     *
+     * @param file
+     *            the file
+     */
+    public void writeJson(Path file) {
+        assert file != null : "Violation of: file is not null";
+
+        String json = this.toJson() + System.lineSeparator();
+        try {
+            Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
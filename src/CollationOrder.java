@@ -0,0 +1,204 @@
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.RuleBasedCollator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Orders terms the way a reader of a given language expects, with a
+ * {@link Collator}: case and accents only break ties, so "apple" comes before
+ * "Zebra" and "&eacute;t&eacute;" sits next to "ete" instead of after "z".
+ * Terms the collator cannot tell apart are ordered by
+ * {@code String.compareTo}, so distinct terms never compare equal.
+ * <p>
+ * Comparing two terms with a collator is much slower than
+ * {@code String.compareTo}, and a sort compares each term many times. So
+ * {@link #sort} computes the {@link CollationKey} of each term once and sorts
+ * on the bytes of the keys, which compare as plain unsigned arrays;
+ * {@code Glossary.sortTerms} and {@code SortedTerms} sort that way whenever
+ * they are given a {@code CollationOrder}. {@link #compare} still works for
+ * everything else (such as merging sorted runs), one collator comparison at a
+ * time.
+ */
+public final class CollationOrder implements Comparator<String> {
+
+    /**
+     * The collator.
+     */
+    private final Collator collator;
+
+    /**
+     * What the order is called: the language tag of its locale, or a hash of
+     * the collator's rules.
+     */
+    private final String name;
+
+    /**
+     * Constructor.
+     *
+     * @param collator
+     *            the collator, which this takes over; it must not be changed
+     *            afterwards
+     */
+    public CollationOrder(Collator collator) {
+        this(collator, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param collator
+     *            the collator, which this takes over
+     * @param tag
+     *            language tag of the collator's locale, or {@code null} if
+     *            it has none
+     */
+    private CollationOrder(Collator collator, String tag) {
+        assert collator != null : "Violation of: collator is not null";
+
+        this.collator = collator;
+        if (tag != null) {
+            this.name = tag;
+        } else if (collator instanceof RuleBasedCollator) {
+            this.name = "rules-" + Integer.toHexString(
+                    ((RuleBasedCollator) collator).getRules().hashCode());
+        } else {
+            this.name = collator.getClass().getName();
+        }
+    }
+
+    /**
+     * Returns the order of the given locale, telling case and accents apart
+     * only between otherwise equal terms.
+     *
+     * @param locale
+     *            the locale
+     * @return the order
+     */
+    public static CollationOrder forLocale(Locale locale) {
+        assert locale != null : "Violation of: locale is not null";
+
+        Collator collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.TERTIARY);
+        collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        return new CollationOrder(collator, locale.toLanguageTag());
+    }
+
+    /**
+     * Returns the name of this order, such as {@code "collation fr"}, which
+     * a build records so it can tell when the order changed.
+     *
+     * @return the name of this order
+     */
+    @Override
+    public String toString() {
+        return "collation " + this.name;
+    }
+
+    @Override
+    public int compare(String first, String second) {
+        int result = this.collator.compare(first, second);
+        if (result == 0) {
+            result = first.compareTo(second);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts part of the given array in this order, comparing the bytes of
+     * each term's collation key rather than the terms themselves.
+     *
+     * @param terms
+     *            the array
+     * @param from
+     *            the first index sorted
+     * @param to
+     *            one past the last index sorted
+     * @updates terms
+     * @requires 0 <= from <= to <= |terms| and [terms[from, to) are not
+     *           null]
+     * @ensures [terms[from, to) is a permutation of #terms[from, to) in this
+     *          order] and [the rest of terms is unchanged]
+     */
+    public void sort(String[] terms, int from, int to) {
+        assert terms != null : "Violation of: terms is not null";
+        assert 0 <= from && from <= to
+                && to <= terms.length : "Violation of: 0 <= from <= to"
+                        + " <= |terms|";
+
+        Keyed[] keys = new Keyed[to - from];
+        for (int i = 0; i < keys.length; i++) {
+            String term = terms[from + i];
+            keys[i] = new Keyed(
+                    this.collator.getCollationKey(term).toByteArray(), term);
+        }
+        Arrays.sort(keys, (a, b) -> {
+            int result = Arrays.compareUnsigned(a.key, b.key);
+            if (result == 0) {
+                result = a.term.compareTo(b.term);
+            }
+            return result;
+        });
+        for (int i = 0; i < keys.length; i++) {
+            terms[from + i] = keys[i].term;
+        }
+    }
+
+    /**
+     * A term with the bytes of its collation key, which compared unsigned
+     * give the order of the keys.
+     */
+    private static final class Keyed {
+
+        /**
+         * The bytes of the collation key.
+         */
+        private final byte[] key;
+
+        /**
+         * The term.
+         */
+        private final String term;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the bytes of the collation key of term
+         * @param term
+         *            the term
+         */
+        Keyed(byte[] key, String term) {
+            this.key = key;
+            this.term = term;
+        }
+    }
+
+    /**
+     * Sorts part of the given array in the given order, by collation key if
+     * it is a {@code CollationOrder}.
+     *
+     * @param terms
+     *            the array
+     * @param from
+     *            the first index sorted
+     * @param to
+     *            one past the last index sorted
+     * @param order
+     *            the order
+     * @updates terms
+     * @requires 0 <= from <= to <= |terms|
+     * @ensures [terms[from, to) is a permutation of #terms[from, to) in
+     *          order] and [the rest of terms is unchanged]
+     */
+    static void sort(String[] terms, int from, int to,
+            Comparator<String> order) {
+        if (order instanceof CollationOrder) {
+            ((CollationOrder) order).sort(terms, from, to);
+        } else {
+            Arrays.sort(terms, from, to, order);
+        }
+    }
+
+}
@@ -0,0 +1,598 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import components.map.Map;
+import components.queue.Queue;
+
+/**
+ * A glossary compiled into one binary file: the terms in index order, their
+ * definitions, and the link spans found in every definition. Opening a
+ * compiled glossary only memory-maps the file, so it takes milliseconds no
+ * matter how large the glossary is, and pages can be rendered from it without
+ * parsing the input, sorting, or scanning definitions again.
+ * <p>
+ * Layout (all numbers big-endian, every array aligned to 8 bytes):
+ *
+ * <pre>
+ * "GLSDICT1"
+ * int termCount, int separatorCount, long linkCount,
+ * long termBytesLength, long defBytesLength
+ * int[separatorCount]  separator code points (padded to 8 bytes)
+ * long[termCount + 1]  offset of each term in termBytes
+ * long[termCount + 1]  offset of each definition in defBytes
+ * long[termCount + 1]  index of the first link of each definition
+ * int[termCount]       term ids in String.compareTo order (padded)
+ * int[3 * linkCount]   links: start, end (in chars) and term id (padded)
+ * byte[]               termBytes, the terms in UTF-8
+ * byte[]               defBytes, the definitions in UTF-8
+ * </pre>
+ */
+public final class CompiledGlossary implements AutoCloseable {
+
+    /**
+     * Magic bytes at the start of a compiled glossary.
+     */
+    private static final byte[] MAGIC = "GLSDICT1"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Size of the fixed header.
+     */
+    private static final int HEADER = 40;
+
+    /**
+     * Size of each memory-mapped window; files larger than one window are
+     * mapped as several.
+     */
+    private static final long WINDOW = 1L << 30;
+
+    /**
+     * Number of ints per link.
+     */
+    private static final int LINK_INTS = 3;
+
+    /**
+     * The open file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The file, mapped as consecutive windows of {@code WINDOW} bytes.
+     */
+    private final MappedByteBuffer[] windows;
+
+    /**
+     * Number of terms.
+     */
+    private final int termCount;
+
+    /**
+     * The separators the links were found with.
+     */
+    private final SeparatorSet separators;
+
+    /**
+     * File offsets of the sections.
+     */
+    private final long termOffsets, defOffsets, linkOffsets, sortedIds,
+            links, termBytes, defBytes;
+
+    /**
+     * Opens the given compiled glossary.
+     *
+     * @param file
+     *            the compiled glossary
+     * @requires isCompiled(file)
+     */
+    private CompiledGlossary(Path file) {
+        try {
+            this.channel = FileChannel.open(file);
+            long size = this.channel.size();
+            int count = (int) ((size + WINDOW - 1) / WINDOW);
+            this.windows = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * WINDOW;
+                this.windows[i] = this.channel.map(
+                        FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(WINDOW, size - start));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final int termCountAt = 8;
+        final int separatorCountAt = 12;
+        final int linkCountAt = 16;
+        final int termBytesLengthAt = 24;
+        this.termCount = this.intAt(termCountAt);
+        int separatorCount = this.intAt(separatorCountAt);
+        long linkCount = this.longAt(linkCountAt);
+        long termBytesLength = this.longAt(termBytesLengthAt);
+
+        this.separators = new SeparatorSet();
+        for (int i = 0; i < separatorCount; i++) {
+            this.separators.add(this.intAt(HEADER + (long) i * Integer.BYTES));
+        }
+        long n = this.termCount;
+        this.termOffsets = HEADER + pad((long) separatorCount * Integer.BYTES);
+        this.defOffsets = this.termOffsets + (n + 1) * Long.BYTES;
+        this.linkOffsets = this.defOffsets + (n + 1) * Long.BYTES;
+        this.sortedIds = this.linkOffsets + (n + 1) * Long.BYTES;
+        this.links = this.sortedIds + pad(n * Integer.BYTES);
+        this.termBytes = this.links
+                + pad(linkCount * LINK_INTS * Integer.BYTES);
+        this.defBytes = this.termBytes + termBytesLength;
+    }
+
+    /**
+     * Rounds the given length up to a multiple of 8.
+     *
+     * @param length
+     *            the length
+     * @return the padded length
+     */
+    private static long pad(long length) {
+        return (length + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    /**
+     * Reports whether the given file is a compiled glossary.
+     *
+     * @param file
+     *            the file to check
+     * @return true iff file starts like a compiled glossary
+     */
+    public static boolean isCompiled(Path file) {
+        assert file != null : "Violation of: file is not null";
+
+        byte[] magic = new byte[MAGIC.length];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = in.readNBytes(magic, 0, magic.length);
+        } catch (IOException e) {
+            read = 0;
+        }
+        return read == magic.length && Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Opens the given compiled glossary by memory-mapping it.
+     *
+     * @param file
+     *            the compiled glossary
+     * @return the opened glossary
+     * @requires isCompiled(file)
+     */
+    public static CompiledGlossary open(Path file) {
+        assert isCompiled(file) : "Violation of: isCompiled(file)";
+
+        return new CompiledGlossary(file);
+    }
+
+    /**
+     * Compiles the given glossary into {@code file}: the terms in the order of
+     * {@code q}, their definitions, and the links the given separators give.
+     *
+     * @param q
+     *            {@code Queue} containing all the terms in alphabetical order
+     * @param map
+     *            {@code Map} containing all terms and their definitions as its
+     *            Keys and Values
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @param file
+     *            the compiled glossary, replaced if it exists
+     * @ensures [file holds the compiled glossary]
+     */
+    public static void compile(Queue<String> q, Map<String, String> map,
+            SeparatorSet separators, Path file) {
+        assert q != null : "Violation of: q is not null";
+        assert map != null : "Violation of: map is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert file != null : "Violation of: file is not null";
+
+        final String[] terms = new String[q.length()];
+        int n = 0;
+        for (String term : q) {
+            terms[n] = term;
+            n++;
+        }
+        TermMatcher matcher = new TermMatcher(terms);
+
+        // encode terms and definitions, and find the links once and for all
+        byte[][] termUtf8 = new byte[n][];
+        byte[][] defUtf8 = new byte[n][];
+        long[] linkStart = new long[n + 1];
+        int[][] linkBuffer = { new int[LINK_INTS * 16] };
+        long[] linkCount = { 0 };
+        long termBytesLength = 0;
+        long defBytesLength = 0;
+        for (int i = 0; i < n; i++) {
+            String def = map.value(terms[i]);
+            termUtf8[i] = terms[i].getBytes(StandardCharsets.UTF_8);
+            defUtf8[i] = def.getBytes(StandardCharsets.UTF_8);
+            termBytesLength += termUtf8[i].length;
+            defBytesLength += defUtf8[i].length;
+            linkStart[i] = linkCount[0];
+            matcher.scan(def, separators, (start, end, termId) -> {
+                int at = (int) (LINK_INTS * linkCount[0]);
+                if (at == linkBuffer[0].length) {
+                    linkBuffer[0] = Arrays.copyOf(linkBuffer[0], 2 * at);
+                }
+                linkBuffer[0][at] = start;
+                linkBuffer[0][at + 1] = end;
+                linkBuffer[0][at + 2] = termId;
+                linkCount[0]++;
+            });
+        }
+        linkStart[n] = linkCount[0];
+
+        // ids in String.compareTo order, for binary search by name
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> terms[i]));
+
+        int[] separatorCodePoints = separators.codePoints();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(MAGIC);
+            out.writeInt(n);
+            out.writeInt(separatorCodePoints.length);
+            out.writeLong(linkCount[0]);
+            out.writeLong(termBytesLength);
+            out.writeLong(defBytesLength);
+            for (int cp : separatorCodePoints) {
+                out.writeInt(cp);
+            }
+            padAfter(out, (long) separatorCodePoints.length * Integer.BYTES);
+            long offset = 0;
+            for (int i = 0; i <= n; i++) {
+                out.writeLong(offset);
+                if (i < n) {
+                    offset += termUtf8[i].length;
+                }
+            }
+            offset = 0;
+            for (int i = 0; i <= n; i++) {
+                out.writeLong(offset);
+                if (i < n) {
+                    offset += defUtf8[i].length;
+                }
+            }
+            for (int i = 0; i <= n; i++) {
+                out.writeLong(linkStart[i]);
+            }
+            for (int i = 0; i < n; i++) {
+                out.writeInt(order[i]);
+            }
+            padAfter(out, (long) n * Integer.BYTES);
+            long linkInts = LINK_INTS * linkCount[0];
+            for (int i = 0; i < linkInts; i++) {
+                out.writeInt(linkBuffer[0][i]);
+            }
+            padAfter(out, linkInts * Integer.BYTES);
+            for (byte[] bytes : termUtf8) {
+                out.write(bytes);
+            }
+            for (byte[] bytes : defUtf8) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the zeros that pad an array of {@code length} bytes, which was
+     * just written to {@code out}, to a multiple of 8 bytes.
+     *
+     * @param out
+     *            the stream
+     * @param length
+     *            length of the array just written
+     * @throws IOException
+     *             if the stream cannot be written
+     */
+    private static void padAfter(DataOutputStream out, long length)
+            throws IOException {
+        for (long i = length; i < pad(length); i++) {
+            out.writeByte(0);
+        }
+    }
+
+    /**
+     * Returns the int at the given file offset.
+     *
+     * @param offset
+     *            the offset, a multiple of 4
+     * @return the int
+     */
+    private int intAt(long offset) {
+        return this.windows[(int) (offset / WINDOW)]
+                .getInt((int) (offset % WINDOW));
+    }
+
+    /**
+     * Returns the long at the given file offset.
+     *
+     * @param offset
+     *            the offset, a multiple of 8
+     * @return the long
+     */
+    private long longAt(long offset) {
+        return this.windows[(int) (offset / WINDOW)]
+                .getLong((int) (offset % WINDOW));
+    }
+
+    /**
+     * Decodes the UTF-8 bytes from {@code start} to {@code end} of the file.
+     *
+     * @param start
+     *            offset of the first byte
+     * @param end
+     *            offset just past the last byte
+     * @return the decoded string
+     */
+    private String stringAt(long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        int done = 0;
+        while (done < bytes.length) {
+            long at = start + done;
+            MappedByteBuffer window = this.windows[(int) (at / WINDOW)];
+            int inWindow = (int) (at % WINDOW);
+            int chunk = Math.min(bytes.length - done,
+                    window.limit() - inWindow);
+            window.get(inWindow, bytes, done, chunk);
+            done += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reports the number of terms.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return this.termCount;
+    }
+
+    /**
+     * Returns the separators the links were found with.
+     *
+     * @return the separators
+     */
+    public SeparatorSet separators() {
+        return this.separators;
+    }
+
+    /**
+     * Returns the term with the given id; ids follow the index order.
+     *
+     * @param id
+     *            the id of the term
+     * @return the term
+     * @requires 0 <= id < size()
+     */
+    public String term(int id) {
+        assert 0 <= id && id < this.termCount : "Violation of: "
+                + "0 <= id < size()";
+
+        long at = this.termOffsets + (long) id * Long.BYTES;
+        return this.stringAt(this.termBytes + this.longAt(at),
+                this.termBytes + this.longAt(at + Long.BYTES));
+    }
+
+    /**
+     * Returns the definition of the term with the given id.
+     *
+     * @param id
+     *            the id of the term
+     * @return the definition
+     * @requires 0 <= id < size()
+     */
+    public String definition(int id) {
+        assert 0 <= id && id < this.termCount : "Violation of: "
+                + "0 <= id < size()";
+
+        long at = this.defOffsets + (long) id * Long.BYTES;
+        return this.stringAt(this.defBytes + this.longAt(at),
+                this.defBytes + this.longAt(at + Long.BYTES));
+    }
+
+    /**
+     * Returns the id of the given term, found by binary search.
+     *
+     * @param term
+     *            the term to look for
+     * @return the id of term, or -1 if it is not in the glossary
+     */
+    public int find(String term) {
+        assert term != null : "Violation of: term is not null";
+
+        int result = -1;
+        int low = 0;
+        int high = this.termCount - 1;
+        while (low <= high && result < 0) {
+            int mid = (low + high) >>> 1;
+            int id = this.intAt(this.sortedIds + (long) mid * Integer.BYTES);
+            int c = this.term(id).compareTo(term);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                result = id;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the precomputed links of the definition with the given id to
+     * the given handler, in order.
+     *
+     * @param id
+     *            the id of the term
+     * @param handler
+     *            receives each link
+     * @requires 0 <= id < size()
+     */
+    public void links(int id, TermMatcher.MatchHandler handler) {
+        assert 0 <= id && id < this.termCount : "Violation of: "
+                + "0 <= id < size()";
+
+        long at = this.linkOffsets + (long) id * Long.BYTES;
+        long first = this.longAt(at);
+        long last = this.longAt(at + Long.BYTES);
+        for (long k = first; k < last; k++) {
+            long link = this.links + k * LINK_INTS * Integer.BYTES;
+            handler.match(this.intAt(link), this.intAt(link + Integer.BYTES),
+                    this.intAt(link + 2 * Integer.BYTES));
+        }
+    }
+
+    /**
+     * Returns the terms, in index order.
+     *
+     * @return the terms
+     */
+    public Iterable<String> terms() {
+        return () -> new Iterator<String>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < CompiledGlossary.this.termCount;
+            }
+
+            @Override
+            public String next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String term = CompiledGlossary.this.term(this.next);
+                this.next++;
+                return term;
+            }
+        };
+    }
+
+    /**
+     * Renders the HTML page of the term with the given id into the given
+     * {@code StringBuilder}, using the stored links instead of scanning the
+     * definition. The page is the same as {@code Glossary.renderTermPage}
+     * would render.
+     *
+     * @param id
+     *            the id of the term
+     * @param page
+     *            the buffer the page is rendered into
+     * @replaces page
+     * @requires 0 <= id < size()
+     */
+    public void renderTermPage(int id, StringBuilder page) {
+        Glossary.renderTermPage(this.term(id), this.definition(id),
+                handler -> this.links(id, handler), page, null);
+    }
+
+    /**
+     * Writes the whole glossary into the given {@code PageSink} as
+     * {@code Glossary.writeGlossary} does with the same options: the index
+     * pages, one page per term rendered with the options' templates on
+     * {@code options.workers()} threads at once, and
+     * {@code SearchIndex.FILE_NAME} if there is a search index. The links are
+     * the stored ones, found with the separators the glossary was compiled
+     * with, so the definitions are not scanned and the stats count no
+     * tokens.
+     *
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the glossary is built
+     * @throws IllegalArgumentException
+     *             if options asks for backlinks, which are not stored
+     * @ensures [sink holds the index pages and a page for every term, and
+     *          SearchIndex.FILE_NAME if there is a search index]
+     */
+    public void writeGlossary(PageSink sink, GlossaryOptions options) {
+        assert sink != null : "Violation of: sink is not null";
+        assert options != null : "Violation of: options is not null";
+        if (options.backlinks()) {
+            throw new IllegalArgumentException(
+                    "a compiled glossary has no backlinks");
+        }
+
+        Glossary.writeGlossary(this.terms(), sink, options,
+                () -> this.writeTermPages(sink, options));
+    }
+
+    /**
+     * Writes the page of every term into the given {@code PageSink}, adding
+     * the words of each definition to the search index if there is one.
+     *
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the glossary is built
+     */
+    private void writeTermPages(PageSink sink, GlossaryOptions options) {
+        int workers = options.workers();
+        SearchIndex search = options.search();
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = WorkerPools.newIoExecutor(workers,
+                "glossary-page");
+        try {
+            WorkerPools.runAll(executor, workers, () -> {
+                PageBuffer page = new PageBuffer();
+                SearchIndex.Part words = Glossary.searchPart(options, null);
+                int id = next.getAndIncrement();
+                while (id < this.termCount) {
+                    int termId = id;
+                    String term = this.term(id);
+                    String def = this.definition(id);
+                    Glossary.writeTermPage(term, def, handler -> {
+                        this.links(termId, handler);
+                        return 0;
+                    }, Collections.emptyList(), sink, page, options);
+                    if (words != null) {
+                        search.collect(term, def, words);
+                    }
+                    id = next.getAndIncrement();
+                }
+                if (words != null) {
+                    search.addAll(words);
+                }
+                return null;
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,455 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The definitions of a glossary, kept off the Java heap. Each definition is
+ * encoded as UTF-8 and appended to a temporary file that is memory-mapped in
+ * fixed-size segments, so the operating system pages definitions in and out
+ * as they are used; only the terms and, for each, where its definition is
+ * (a segment, a position and a length) stay on the heap. Heap
+ * use is therefore flat in the length of the definitions, and a definition
+ * only becomes a {@code String} for as long as its page is being rendered.
+ * A definition never spans two segments: one that does not fit in what is
+ * left of the last segment starts a new one, and one longer than a segment
+ * gets a segment of its own, just big enough for it.
+ * <p>
+ * Definitions are added from one thread. Once adding is done, any number of
+ * threads may look them up at once. Closing the arena deletes the file.
+ */
+public final class DefinitionArena implements AutoCloseable {
+
+    /**
+     * Default size of each mapped segment of the file.
+     */
+    private static final int SEGMENT = 1 << 26;
+
+    /**
+     * Marks an empty slot of the hash table.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Initial number of terms there is room for.
+     */
+    private static final int INITIAL = 1 << 10;
+
+    /**
+     * The temporary file.
+     */
+    private final Path file;
+
+    /**
+     * Channel to the temporary file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Size of each mapped segment, unless one definition needs more.
+     */
+    private final int segmentSize;
+
+    /**
+     * The mapped segments, in order.
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * Length of the file: where the next segment starts.
+     */
+    private long end;
+
+    /**
+     * Encodes the definitions as they are added.
+     */
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8
+            .newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * The terms, by id; the id of a term is the order it was added in.
+     */
+    private String[] terms = new String[INITIAL];
+
+    /**
+     * The segment holding the definition of each term, by id.
+     */
+    private int[] segmentIds = new int[INITIAL];
+
+    /**
+     * Where the definition of each term starts in its segment, by id.
+     */
+    private int[] starts = new int[INITIAL];
+
+    /**
+     * Length in bytes of the definition of each term, by id.
+     */
+    private int[] lengths = new int[INITIAL];
+
+    /**
+     * Open-addressing hash table of term ids, {@code NONE} where empty.
+     */
+    private int[] slots = newSlots(2 * INITIAL);
+
+    /**
+     * Number of terms.
+     */
+    private int size;
+
+    /**
+     * Total bytes of the definitions.
+     */
+    private long bytes;
+
+    /**
+     * Constructor, with segments of the given size.
+     *
+     * @param folder
+     *            the folder the temporary file is made in
+     * @param segmentSize
+     *            size of each mapped segment; a longer definition gets a
+     *            segment of its own
+     * @requires segmentSize > 0
+     */
+    DefinitionArena(Path folder, int segmentSize) {
+        assert folder != null : "Violation of: folder is not null";
+        assert segmentSize > 0 : "Violation of: segmentSize > 0";
+
+        this.segmentSize = segmentSize;
+        try {
+            this.file = Files.createTempFile(folder, "glossary-", ".defs");
+            this.channel = FileChannel.open(this.file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param folder
+     *            the folder the temporary file is made in
+     */
+    public DefinitionArena(Path folder) {
+        this(folder, SEGMENT);
+    }
+
+    /**
+     * Constructor, with the temporary file in the default temporary folder.
+     */
+    public DefinitionArena() {
+        this(Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Returns a hash table of the given size with every slot empty.
+     *
+     * @param n
+     *            the number of slots, a power of 2
+     * @return the table
+     */
+    private static int[] newSlots(int n) {
+        int[] slots = new int[n];
+        Arrays.fill(slots, NONE);
+        return slots;
+    }
+
+    /**
+     * Returns the slot where the given term is, or the empty slot where it
+     * would go.
+     *
+     * @param term
+     *            the term
+     * @return the index of the slot
+     */
+    private int slot(String term) {
+        int mask = this.slots.length - 1;
+        int h = term.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        while (this.slots[i] != NONE && !this.terms[this.slots[i]]
+                .equals(term)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Makes room for one more term.
+     */
+    private void grow() {
+        if (this.size == this.terms.length) {
+            int n = 2 * this.terms.length;
+            this.terms = Arrays.copyOf(this.terms, n);
+            this.segmentIds = Arrays.copyOf(this.segmentIds, n);
+            this.starts = Arrays.copyOf(this.starts, n);
+            this.lengths = Arrays.copyOf(this.lengths, n);
+        }
+        // at most half full, so probes stay short
+        if (2 * (this.size + 1) > this.slots.length) {
+            this.slots = newSlots(2 * this.slots.length);
+            for (int id = 0; id < this.size; id++) {
+                this.slots[this.slot(this.terms[id])] = id;
+            }
+        }
+    }
+
+    /**
+     * Maps a new segment of the given size at the end of the file.
+     *
+     * @param length
+     *            size of the segment
+     * @return the segment
+     */
+    private MappedByteBuffer newSegment(int length) {
+        try {
+            MappedByteBuffer segment = this.channel.map(
+                    FileChannel.MapMode.READ_WRITE, this.end, length);
+            this.segments.add(segment);
+            this.end += length;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds a term and its definition.
+     *
+     * @param term
+     *            the term
+     * @param definition
+     *            its definition
+     * @throws IllegalArgumentException
+     *             if definition takes more than {@code Integer.MAX_VALUE}
+     *             bytes in UTF-8
+     * @updates this
+     * @requires [term is not already in this]
+     * @ensures [value(term) = definition]
+     */
+    public void add(String term, CharSequence definition) {
+        assert term != null : "Violation of: term is not null";
+        assert definition != null : "Violation of: definition is not null";
+        assert !this.hasKey(term) : "Violation of: term is not in this";
+
+        ByteBuffer segment;
+        if (this.segments.isEmpty()) {
+            segment = this.newSegment(this.segmentSize);
+        } else {
+            segment = this.segments.get(this.segments.size() - 1);
+        }
+        int start = segment.position();
+        CoderResult result = this.encode(definition, segment);
+        if (result.isOverflow()) {
+            /*
+             * definitions never straddle segments, so start a new one, big
+             * enough for this definition even if that is more than usual
+             */
+            segment.position(start);
+            long length = utf8Length(definition);
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("the definition of "
+                        + term + " takes " + length + " bytes");
+            }
+            segment = this.newSegment(
+                    Math.max(this.segmentSize, (int) length));
+            start = 0;
+            result = this.encode(definition, segment);
+            assert !result.isOverflow() : "Violation of: [segment fits the"
+                    + " definition]";
+        }
+
+        this.grow();
+        int id = this.size;
+        this.terms[id] = term;
+        this.segmentIds[id] = this.segments.size() - 1;
+        this.starts[id] = start;
+        this.lengths[id] = segment.position() - start;
+        this.slots[this.slot(term)] = id;
+        this.size++;
+        this.bytes += this.lengths[id];
+    }
+
+    /**
+     * Encodes the given characters at the position of the given buffer.
+     *
+     * @param chars
+     *            the characters
+     * @param out
+     *            where they are encoded
+     * @return the result of encoding
+     */
+    private CoderResult encode(CharSequence chars, ByteBuffer out) {
+        this.encoder.reset();
+        CoderResult result = this.encoder.encode(CharBuffer.wrap(chars), out,
+                true);
+        if (!result.isOverflow()) {
+            result = this.encoder.flush(out);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes the given characters take in UTF-8, as
+     * {@code encoder} writes them: a surrogate pair takes 4 bytes, and an
+     * unpaired surrogate is replaced by one byte.
+     *
+     * @param chars
+     *            the characters
+     * @return the number of bytes
+     */
+    static long utf8Length(CharSequence chars) {
+        final int oneByte = 0x80;
+        final int twoBytes = 0x800;
+        long result = 0;
+        int i = 0;
+        while (i < chars.length()) {
+            char c = chars.charAt(i);
+            if (c < oneByte) {
+                result += 1;
+            } else if (c < twoBytes) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars.length()
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                result += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                result += 1;
+            } else {
+                result += 3;
+            }
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of terms.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Reports the total length of the definitions.
+     *
+     * @return the number of bytes the definitions take off the heap
+     */
+    public long bytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the id of the given term.
+     *
+     * @param term
+     *            the term
+     * @return its id, the order it was added in, or -1 if it is not in this
+     */
+    public int id(String term) {
+        assert term != null : "Violation of: term is not null";
+
+        return this.slots[this.slot(term)];
+    }
+
+    /**
+     * Reports whether the given term is in this.
+     *
+     * @param term
+     *            the term
+     * @return whether it was added
+     */
+    public boolean hasKey(String term) {
+        return this.id(term) != NONE;
+    }
+
+    /**
+     * Returns the term with the given id.
+     *
+     * @param id
+     *            the id
+     * @return the term
+     * @requires 0 <= id < size()
+     */
+    public String term(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < size()";
+
+        return this.terms[id];
+    }
+
+    /**
+     * Returns all the terms, in the order they were added.
+     *
+     * @return a new array of the terms
+     */
+    public String[] terms() {
+        return Arrays.copyOf(this.terms, this.size);
+    }
+
+    /**
+     * Returns the definition of the term with the given id, read from the
+     * file into a new {@code String}.
+     *
+     * @param id
+     *            the id
+     * @return the definition
+     * @requires 0 <= id < size()
+     */
+    public String value(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < size()";
+
+        ByteBuffer segment = this.segments.get(this.segmentIds[id]);
+        byte[] b = new byte[this.lengths[id]];
+        // an absolute read leaves the buffer alone, so threads can share it
+        segment.get(this.starts[id], b, 0, b.length);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the definition of the given term, read from the file into a new
+     * {@code String}.
+     *
+     * @param term
+     *            the term
+     * @return its definition
+     * @requires [term is in this]
+     */
+    public String value(String term) {
+        int id = this.id(term);
+        assert id != NONE : "Violation of: term is in this";
+
+        return this.value(id);
+    }
+
+    /**
+     * Deletes the file. The arena cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        this.segments.clear();
+        try {
+            this.channel.close();
+            Files.deleteIfExists(this.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * {@code PageSink} that writes each page to its own file in a folder, which is
+ * the default layout of a glossary: {@code index.html} plus one
+ * {@code <term>.html} per term.
+ */
+public final class DirectoryPageSink implements PageSink {
+
+    /**
+     * The folder the pages are written to.
+     */
+    private final Path folder;
+
+    /**
+     * Constructor.
+     *
+     * @param folder
+     *            name of the folder the pages are written to; it must exist
+     */
+    public DirectoryPageSink(String folder) {
+        assert folder != null : "Violation of: folder is not null";
+
+        this.folder = Paths.get(folder);
+    }
+
+    /**
+     * Returns the folder the pages are written to.
+     *
+     * @return the folder
+     */
+    public Path folder() {
+        return this.folder;
+    }
+
+    @Override
+    public void write(String name, byte[] bytes, int offset, int length) {
+        assert name != null : "Violation of: name is not null";
+        assert bytes != null : "Violation of: bytes is not null";
+
+        try (OutputStream out = Files.newOutputStream(
+                this.folder.resolve(name))) {
+            out.write(bytes, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // every page is already closed
+    }
+
+}
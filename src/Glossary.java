@@ -1,11 +1,23 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 import components.map.Map;
 import components.map.Map1L;
 import components.queue.Queue;
 import components.queue.Queue1L;
 import components.set.Set;
-import components.set.Set1L;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
 import components.simplewriter.SimpleWriter;
@@ -63,6 +75,120 @@ public final class Glossary {
 
     }
 
+    /**
+     * Takes all the characters in the given {@code String} and stores them in
+     * the given {@code SeparatorSet}.
+     *
+     * @param str
+     *            the {@code String} from which the characters are taken
+     * @param charSet
+     *            the {@code SeparatorSet} which is replaced
+     * @replaces charSet
+     * @ensures charSet = entries(str)
+     */
+    public static void generateElements(String str, SeparatorSet charSet) {
+        assert str != null : "Violation of: str is not null";
+        assert charSet != null : "Violation of: charSet is not null";
+
+        charSet.clear();
+        charSet.addAll(str);
+    }
+
+    /**
+     * Returns the index just past the first word or string of separators in
+     * the given {@code CharSequence} starting from the given {@code position}.
+     * Nothing is copied or allocated, so a whole text can be tokenized in time
+     * linear in its length by feeding each returned index back in as the next
+     * {@code position}.
+     *
+     * @param text
+     *            the {@code CharSequence} which is examined for the word or
+     *            separators
+     * @param position
+     *            the starting index for the word or separator
+     * @param separators
+     *            the {@code SeparatorSet} of separator characters
+     * @return the end index (exclusive) of the word or separator starting at
+     *         given index {@code position}
+     * @requires 0 <= position < |text|
+     * @ensures position < nextWordOrSeparatorEnd <= |text| and
+     *          [text[position, nextWordOrSeparatorEnd) is the word or
+     *          separator string starting at position]
+     */
+    public static int nextWordOrSeparatorEnd(CharSequence text, int position,
+            SeparatorSet separators) {
+        assert text != null : "Violation of: text is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert 0 <= position && position < text.length() : "Violation of: "
+                + "0 <= position < |text|";
+
+        /*
+         * the first character decides whether this is a word or a separator
+         * string; the token goes on while the characters stay the same kind
+         * (surrogate pairs are looked up as one code point)
+         */
+        int codePoint = Character.codePointAt(text, position);
+        boolean isSeparator = separators.contains(codePoint);
+        int end = position + Character.charCount(codePoint);
+        boolean cont = true;
+        while (end < text.length() && cont) {
+            codePoint = Character.codePointAt(text, end);
+            if (separators.contains(codePoint) == isSeparator) {
+                end += Character.charCount(codePoint);
+            } else {
+                cont = false;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Returns the index just past the first word or string of separators in
+     * the given {@code CharSequence} starting from the given {@code position},
+     * like {@link #nextWordOrSeparatorEnd(CharSequence, int, SeparatorSet)}.
+     * The {@code Set} is probed as it is, one character at a time, so nothing
+     * is built per call; a caller tokenizing a lot of text should still turn
+     * it into a {@code SeparatorSet} once and use that.
+     *
+     * @param text
+     *            the {@code CharSequence} which is examined for the word or
+     *            separators
+     * @param position
+     *            the starting index for the word or separator
+     * @param separators
+     *            the {@code Set} of separator characters
+     * @return the end index (exclusive) of the word or separator starting at
+     *         given index {@code position}
+     * @requires 0 <= position < |text|
+     * @ensures position < nextWordOrSeparatorEnd <= |text| and
+     *          [text[position, nextWordOrSeparatorEnd) is the word or
+     *          separator string starting at position]
+     */
+    public static int nextWordOrSeparatorEnd(CharSequence text, int position,
+            Set<Character> separators) {
+        assert text != null : "Violation of: text is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert 0 <= position && position < text.length() : "Violation of: "
+                + "0 <= position < |text|";
+
+        // same loop as above; a Set<Character> holds no supplementary chars
+        int codePoint = Character.codePointAt(text, position);
+        boolean isSeparator = Character.isBmpCodePoint(codePoint)
+                && separators.contains((char) codePoint);
+        int end = position + Character.charCount(codePoint);
+        boolean cont = true;
+        while (end < text.length() && cont) {
+            codePoint = Character.codePointAt(text, end);
+            if ((Character.isBmpCodePoint(codePoint) && separators
+                    .contains((char) codePoint)) == isSeparator) {
+                end += Character.charCount(codePoint);
+            } else {
+                cont = false;
+            }
+        }
+        return end;
+    }
+
     /**
      * Returns the first word or string of separators in the given
      * {@code String} starting from the given {@code position}.
@@ -83,37 +209,8 @@ public final class Glossary {
     public static String nextWordOrSeparator(String text, int position,
             Set<Character> separators) {
 
-        // substring of the text, beginning at the given position
-        String tempString = text.substring(position);
-        String result = "";
-        char first = tempString.charAt(0);
-        // the first character has to be a part of the output
-        result = result + first;
-
-        /*
-         * check from the second character in the substring, because the first
-         * one is already in the output String
-         */
-        int i = 1;
-        boolean cont = true; // boolean to act like a flag
-        while (i < tempString.length() & cont) {
-            if (separators.contains(first)) { // return the separator string
-                if (separators.contains(tempString.charAt(i))) {
-                    result = result + tempString.charAt(i);
-                    i = i + 1;
-                } else {
-                    cont = false;
-                }
-            } else { // return the word
-                if (separators.contains(tempString.charAt(i))) {
-                    cont = false;
-                } else {
-                    result = result + tempString.charAt(i);
-                    i = i + 1;
-                }
-            }
-        }
-        return result;
+        return text.substring(position,
+                nextWordOrSeparatorEnd(text, position, separators));
 
     }
 
@@ -133,30 +230,77 @@ public final class Glossary {
     public static void getTermsAndDefinitions(SimpleReader in,
             Map<String, String> map) {
 
+        // one builder is reused for every definition
+        StringBuilder def = new StringBuilder();
         while (!in.atEOS()) {
             String temp = in.nextLine();
             if (!temp.isEmpty()) {
                 // the term will only take 1 line, because it is just one word
                 String term = temp;
-                temp = in.nextLine();
                 /*
                  * the definition can take more than 1 line, so this statement
                  * only stores the first line of the definition (if there are
-                 * more lines)
+                 * more lines); the last definition may end the input without a
+                 * blank line after it
                  */
-                String def = temp;
+                def.setLength(0);
+                if (!in.atEOS()) {
+                    def.append(in.nextLine());
+                }
                 // while loop to see if definition is still going on
-                temp = in.nextLine();
-                while (!temp.isEmpty()) {
-                    def = def + " " + temp;
-                    // space is to separate words
+                boolean cont = !in.atEOS();
+                while (cont) {
                     temp = in.nextLine();
+                    if (temp.isEmpty()) {
+                        cont = false;
+                    } else {
+                        // space is to separate words
+                        def.append(' ').append(temp);
+                        cont = !in.atEOS();
+                    }
                 }
-                map.add(term, def);
+                map.add(term, def.toString());
             }
         }
     }
 
+    /**
+     * Reads an input file which contains terms and their definitions, storing
+     * the values in the given {@code Map}, replacing its contents. The file is
+     * read through memory-mapped NIO buffers, which is much faster than a
+     * {@code SimpleReader} for large inputs.
+     *
+     * @param file
+     *            the input file
+     * @param map
+     *            the {@code Map} that gets replaced
+     * @replaces map
+     * @ensures [the {@code Map}'s Keys are the terms and its Values are the
+     *          corresponding definitions]
+     */
+    public static void getTermsAndDefinitions(Path file,
+            Map<String, String> map) {
+        TermFileParser.read(file, map);
+    }
+
+    /**
+     * Reads an input file which contains terms and their definitions like
+     * {@link #getTermsAndDefinitions(Path, Map)}, appending them to the given
+     * {@code DefinitionArena}, so the definitions are kept off the heap.
+     *
+     * @param file
+     *            the input file
+     * @param arena
+     *            the {@code DefinitionArena} the terms are added to
+     * @updates arena
+     * @requires [no term of file is in arena]
+     * @ensures [arena holds every term of file with its definition]
+     */
+    public static void getTermsAndDefinitions(Path file,
+            DefinitionArena arena) {
+        TermFileParser.read(file, arena);
+    }
+
     /**
      * Sorts all the terms in the given {@code Map} and stores them in
      * alphabetical order in a given {@code Queue}, replacing its contents.
@@ -174,16 +318,98 @@ public final class Glossary {
      */
     public static void sortTerms(Queue<String> q, Map<String, String> map,
             Comparator<String> c) {
-        // this queue is to store all the terms from map, in no order
-        Queue<String> temp = q.newInstance();
+        // this array is to store all the terms from map, in no order
+        String[] terms = new String[map.size()];
+        int i = 0;
         for (Map.Pair<String, String> pair : map) {
-            temp.enqueue(pair.key());
+            terms[i] = pair.key();
+            i++;
         }
 
-        // now sort the queue's elements in order
-        temp.sort(c);
+        // now sort them in order, into the queue
+        sortInto(q, terms, c);
+
+    }
+
+    /**
+     * Sorts all the terms in the given {@code DefinitionArena} and stores
+     * them in alphabetical order in a given {@code Queue}, replacing its
+     * contents.
+     *
+     * @param q
+     *            The {@code Queue} to be replaced
+     * @param arena
+     *            The {@code DefinitionArena} containing the terms
+     * @param c
+     *            The {@code Comparator} used to sort the terms
+     * @replaces q
+     * @ensures [q contains all of arena's terms in alphabetical order]
+     */
+    public static void sortTerms(Queue<String> q, DefinitionArena arena,
+            Comparator<String> c) {
+        sortInto(q, arena.terms(), c);
+    }
+
+    /**
+     * Sorts the given terms and stores them in a given {@code Queue},
+     * replacing its contents. A {@code CollationOrder} sorts by collation
+     * key, so each term goes through the collator once.
+     *
+     * @param q
+     *            The {@code Queue} to be replaced
+     * @param terms
+     *            the terms, in any order
+     * @param c
+     *            The {@code Comparator} used to sort the terms
+     * @replaces q
+     * @ensures [q contains the terms in the order of c]
+     */
+    private static void sortInto(Queue<String> q, String[] terms,
+            Comparator<String> c) {
+        CollationOrder.sort(terms, 0, terms.length, c);
+        Queue<String> temp = q.newInstance();
+        for (String term : terms) {
+            temp.enqueue(term);
+        }
         q.transferFrom(temp);
+    }
+
+    /**
+     * Sorts all the terms in the given {@code Map} with an external merge
+     * sort, holding at most {@code runSize} of them in memory at once and
+     * spilling sorted runs to temporary files. The result streams the terms
+     * in alphabetical order straight into index and page generation; closing
+     * it deletes the temporary files. This bounds the memory of the sort
+     * only: {@code map} still holds every term and definition.
+     *
+     * @param map
+     *            The {@code Map} containing the terms as its Keys
+     * @param c
+     *            The {@code Comparator} used to sort the terms
+     * @param runSize
+     *            most terms sorted in memory at once
+     * @return all of {@code map}'s Keys in alphabetical order
+     * @requires runSize > 0
+     */
+    public static SortedTerms sortTerms(Map<String, String> map,
+            Comparator<String> c, int runSize) {
+        assert map != null : "Violation of: map is not null";
+
+        Iterable<String> keys = () -> new Iterator<String>() {
+            private final Iterator<Map.Pair<String, String>> pairs = map
+                    .iterator();
 
+            @Override
+            public boolean hasNext() {
+                return this.pairs.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return this.pairs.next().key();
+            }
+        };
+        return SortedTerms.sort(keys, c, runSize);
     }
 
     /**
@@ -198,22 +424,10 @@ public final class Glossary {
      */
     public static void printIndexHeaderHTMLTags(SimpleWriter out) {
 
-        /*
-         * The index page will need a title, a header saying glossary and
-         * another saying index, followed by a list of terms
-         */
-        out.println("<html>");
-        out.println("  <head>"); //indentation is needed (I used 2 spaces here)
-        out.println("    <title>Glossary</title>");
-        out.println("  </head>"); //Closing tags
-        out.println("  <body>");
-        out.println("    <h2>Glossary</h2>");
-        out.println("    <hr />");
-        out.println("    <h3>Index</h3>");
-        /*
-         * the list of terms comes after this; these are all the header tags
-         * before the list of terms
-         */
+        StringBuilder page = new StringBuilder();
+        GlossaryTemplates.defaults()
+                .renderIndexHead(new PageTemplate.CharOutput(page));
+        out.print(page.toString());
     }
 
     /**
@@ -233,20 +447,735 @@ public final class Glossary {
     public static void printIndexTermsListAndClosingTags(Queue<String> q,
             SimpleWriter out) {
 
-        out.println("    <ul>"); //start of list, this is required
-        // keep track of all the terms in q
-        Queue<String> temp = q.newInstance();
-        while (q.length() > 0) { //iterate through all terms
-            String currentTerm = q.dequeue();
-            String link = "<li><a href=\"" + currentTerm + ".html\">";
-            link = link + currentTerm + "</a></li>";
-            out.println("      " + link); // 6 spaces
-            temp.enqueue(currentTerm);
-        }
-        out.println("    </ul>");
-        out.println("  </body>");
-        out.println("</html>");
-        q.transferFrom(temp);
+        StringBuilder page = new StringBuilder();
+        GlossaryTemplates.defaults().renderIndexList(q,
+                new PageTemplate.CharOutput(page));
+        out.print(page.toString());
+    }
+
+    /**
+     * Renders the whole index page, listing the given terms in order, into the
+     * given {@code StringBuilder}.
+     *
+     * @param terms
+     *            the terms, in the order they are listed
+     * @param page
+     *            the buffer the page is rendered into
+     * @replaces page
+     * @ensures [page is the index page, with a hyperlink for every term]
+     */
+    public static void renderIndexPage(Iterable<String> terms,
+            StringBuilder page) {
+        assert terms != null : "Violation of: terms is not null";
+        assert page != null : "Violation of: page is not null";
+
+        page.setLength(0);
+        GlossaryTemplates.defaults().renderIndexPage(terms,
+                new PageTemplate.CharOutput(page));
+    }
+
+    /**
+     * Moves terms from the given iterator into the given list until it holds
+     * {@code limit} terms or the iterator runs out.
+     *
+     * @param terms
+     *            the terms still to be listed
+     * @param shard
+     *            the list the terms are moved into
+     * @param limit
+     *            most terms the list may hold
+     * @updates terms, shard
+     */
+    private static void fillShard(Iterator<String> terms, List<String> shard,
+            int limit) {
+        while (shard.size() < limit && terms.hasNext()) {
+            shard.add(terms.next());
+        }
+    }
+
+    /**
+     * Writes the index of the given terms into the given {@code PageSink}.
+     * With at most {@code shardSize} terms (or a {@code shardSize} of 0) that
+     * is one {@code index.html} listing them all, as
+     * {@link #renderIndexPage} renders it. With more, the terms are split in
+     * order into shards of {@code shardSize} terms, {@code index-1.html},
+     * {@code index-2.html} and so on, each written as soon as it is full, and
+     * {@code index.html} becomes a table of contents linking to them. Only
+     * one shard of terms is held at a time, so huge indexes stream straight
+     * from the sorted terms. A term named like one of the shards, such as
+     * {@code index-1}, is rejected before any page is written, as its page
+     * and the shard would be the same file.
+     *
+     * @param terms
+     *            the terms in alphabetical order
+     * @param sink
+     *            where the pages are stored
+     * @param shardSize
+     *            most terms on one index page, or 0 for no limit
+     * @requires shardSize >= 0
+     * @ensures [sink holds index.html and any shards, which together list
+     *          every term with a hyperlink]
+     */
+    public static void writeIndex(Iterable<String> terms, PageSink sink,
+            int shardSize) {
+        writeIndex(terms, sink, shardSize, GlossaryTemplates.defaults());
+    }
+
+    /**
+     * Writes the index of the given terms into the given {@code PageSink} like
+     * {@link #writeIndex(Iterable, PageSink, int)}, with the markup of the
+     * given templates.
+     *
+     * @param terms
+     *            the terms in alphabetical order
+     * @param sink
+     *            where the pages are stored
+     * @param shardSize
+     *            most terms on one index page, or 0 for no limit
+     * @param templates
+     *            the markup of the pages
+     * @throws IllegalArgumentException
+     *             if a term has the name of a shard
+     * @requires shardSize >= 0
+     * @ensures [sink holds index.html and any shards, which together list
+     *          every term with a hyperlink]
+     */
+    public static void writeIndex(Iterable<String> terms, PageSink sink,
+            int shardSize, GlossaryTemplates templates) {
+        assert terms != null : "Violation of: terms is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert shardSize >= 0 : "Violation of: shardSize >= 0";
+        assert templates != null : "Violation of: templates is not null";
+
+        GlossaryTemplates.checkShardNames(terms, shardSize);
+        int limit = shardSize == 0 ? Integer.MAX_VALUE : shardSize;
+        Iterator<String> it = terms.iterator();
+        PageBuffer page = new PageBuffer();
+        List<String> shard = new ArrayList<>();
+        fillShard(it, shard, limit);
+        if (!it.hasNext()) {
+            templates.renderIndexPage(shard, page);
+            writePage(sink, "index.html", page);
+        } else {
+            List<String> firsts = new ArrayList<>();
+            List<String> lasts = new ArrayList<>();
+            while (!shard.isEmpty()) {
+                firsts.add(shard.get(0));
+                lasts.add(shard.get(shard.size() - 1));
+                page.clear();
+                templates.renderIndexShard(shard, firsts.size(), it.hasNext(),
+                        page);
+                writePage(sink, GlossaryTemplates.shardName(firsts.size())
+                        + ".html", page);
+                shard.clear();
+                fillShard(it, shard, limit);
+            }
+            page.clear();
+            templates.renderIndexContents(firsts, lasts, page);
+            writePage(sink, "index.html", page);
+        }
+    }
+
+    /**
+     * Appends the given definition to the given {@code StringBuilder}, turning
+     * every term found by the given {@code TermMatcher} into a hyperlink to
+     * that term's page. The definition is scanned only once, so the cost is
+     * linear in its length no matter how many terms there are or how many
+     * links it contains.
+     *
+     * @param def
+     *            the definition to be linked
+     * @param matcher
+     *            {@code TermMatcher} compiled from all the terms
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @param out
+     *            the buffer the linked definition is appended to
+     * @updates out
+     * @ensures out = #out * [def, with every leftmost-longest whole-token
+     *          occurrence of a term replaced by a hyperlink to that term's
+     *          page]
+     */
+    public static void appendLinkedDefinition(CharSequence def,
+            TermMatcher matcher, SeparatorSet separators, StringBuilder out) {
+        appendLinkedDefinition(def, matcher, separators, out, null);
+    }
+
+    /**
+     * Appends the given definition to the given {@code StringBuilder} like
+     * {@link #appendLinkedDefinition(CharSequence, TermMatcher, SeparatorSet,
+     * StringBuilder)}, also passing the id of every linked term, in order, to
+     * the given {@code IntConsumer}.
+     *
+     * @param def
+     *            the definition to be linked
+     * @param matcher
+     *            {@code TermMatcher} compiled from all the terms
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @param out
+     *            the buffer the linked definition is appended to
+     * @param links
+     *            receives the id of each linked term; may be {@code null}
+     * @updates out
+     * @ensures out = #out * [def, with every leftmost-longest whole-token
+     *          occurrence of a term replaced by a hyperlink to that term's
+     *          page]
+     */
+    public static void appendLinkedDefinition(CharSequence def,
+            TermMatcher matcher, SeparatorSet separators, StringBuilder out,
+            IntConsumer links) {
+        assert def != null : "Violation of: def is not null";
+        assert matcher != null : "Violation of: matcher is not null";
+        assert out != null : "Violation of: out is not null";
+
+        appendLinkedDefinition(def,
+                handler -> matcher.scan(def, separators, handler), out, links);
+    }
+
+    /**
+     * Appends the given definition to the given {@code StringBuilder}, turning
+     * every match that {@code matches} reports into a hyperlink. This lets
+     * links that were found earlier (for example ones stored in a
+     * {@code CompiledGlossary}) be replayed without scanning again.
+     *
+     * @param def
+     *            the definition to be linked
+     * @param matches
+     *            reports the matches in def, in order and without overlaps,
+     *            to the handler it is given
+     * @param out
+     *            the buffer the linked definition is appended to
+     * @param links
+     *            receives the id of each linked term; may be {@code null}
+     * @updates out
+     * @ensures out = #out * [def, with every match replaced by a hyperlink to
+     *          that term's page]
+     */
+    static void appendLinkedDefinition(CharSequence def,
+            Consumer<TermMatcher.MatchHandler> matches, StringBuilder out,
+            IntConsumer links) {
+        GlossaryTemplates.defaults().appendLinkedDefinition(def, matches,
+                new PageTemplate.CharOutput(out), links);
+    }
+
+    /**
+     * Renders the HTML page of the given term into the given
+     * {@code StringBuilder}, with every term found in its definition turned
+     * into a hyperlink. Lines end with the platform line separator, exactly as
+     * if they had been printed one by one with {@code SimpleWriter.println}.
+     *
+     * @param term
+     *            the term the page is for
+     * @param def
+     *            the definition of the term
+     * @param matcher
+     *            {@code TermMatcher} compiled from all the terms
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @param page
+     *            the buffer the page is rendered into
+     * @replaces page
+     * @ensures [page is the HTML page for term, with appropriate tags]
+     */
+    public static void renderTermPage(String term, CharSequence def,
+            TermMatcher matcher, SeparatorSet separators, StringBuilder page) {
+        renderTermPage(term, def, matcher, separators, page, null);
+    }
+
+    /**
+     * Renders the HTML page of the given term into the given
+     * {@code StringBuilder} like {@link #renderTermPage(String, CharSequence,
+     * TermMatcher, SeparatorSet, StringBuilder)}, also passing the id of every
+     * linked term, in order, to the given {@code IntConsumer}.
+     *
+     * @param term
+     *            the term the page is for
+     * @param def
+     *            the definition of the term
+     * @param matcher
+     *            {@code TermMatcher} compiled from all the terms
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @param page
+     *            the buffer the page is rendered into
+     * @param links
+     *            receives the id of each linked term; may be {@code null}
+     * @replaces page
+     * @ensures [page is the HTML page for term, with appropriate tags]
+     */
+    public static void renderTermPage(String term, CharSequence def,
+            TermMatcher matcher, SeparatorSet separators, StringBuilder page,
+            IntConsumer links) {
+        assert matcher != null : "Violation of: matcher is not null";
+
+        renderTermPage(term, def,
+                handler -> matcher.scan(def, separators, handler), page, links);
+    }
+
+    /**
+     * Renders the HTML page of the given term into the given
+     * {@code StringBuilder}, turning every match that {@code matches} reports
+     * into a hyperlink.
+     *
+     * @param term
+     *            the term the page is for
+     * @param def
+     *            the definition of the term
+     * @param matches
+     *            reports the matches in def, in order and without overlaps,
+     *            to the handler it is given
+     * @param page
+     *            the buffer the page is rendered into
+     * @param links
+     *            receives the id of each linked term; may be {@code null}
+     * @replaces page
+     * @ensures [page is the HTML page for term, with appropriate tags]
+     */
+    static void renderTermPage(String term, CharSequence def,
+            Consumer<TermMatcher.MatchHandler> matches, StringBuilder page,
+            IntConsumer links) {
+        assert term != null : "Violation of: term is not null";
+        assert def != null : "Violation of: def is not null";
+        assert page != null : "Violation of: page is not null";
+
+        page.setLength(0);
+        /*
+         * the definition is copied into the page with every other term it
+         * contains hyperlinked
+         */
+        GlossaryTemplates.defaults().renderTermPage(term, def, matches,
+                new PageTemplate.CharOutput(page), links);
+    }
+
+    /**
+     * Encodes the given rendered page as UTF-8 and stores it in the given
+     * {@code PageSink} under the given name.
+     *
+     * @param sink
+     *            where the page is stored
+     * @param name
+     *            the file name of the page
+     * @param page
+     *            the rendered page
+     * @ensures [sink holds page under name]
+     */
+    static void writePage(PageSink sink, String name, CharSequence page) {
+        byte[] bytes = page.toString().getBytes(StandardCharsets.UTF_8);
+        sink.write(name, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Stores the page rendered into the given {@code PageBuffer} in the given
+     * {@code PageSink} under the given name, straight from the buffer.
+     *
+     * @param sink
+     *            where the page is stored
+     * @param name
+     *            the file name of the page
+     * @param page
+     *            the rendered page
+     * @ensures [sink holds page under name]
+     */
+    static void writePage(PageSink sink, String name, PageBuffer page) {
+        sink.write(name, page.array(), 0, page.length());
+    }
+
+    /**
+     * Returns a new part of the search index of the given options, for one
+     * worker to collect the words of its pages into as
+     * {@link #writeTermPage} scans them; the worker adds it to the index
+     * when it is done. There is none if the options have no search index, or
+     * if there is a graph, whose build collected the words already.
+     *
+     * @param options
+     *            the options
+     * @param graph
+     *            the links of all the terms, or {@code null}
+     * @return the part, or {@code null}
+     */
+    static SearchIndex.Part searchPart(GlossaryOptions options,
+            LinkGraph graph) {
+        SearchIndex.Part result = null;
+        if (options.search() != null && graph == null) {
+            result = new SearchIndex.Part();
+        }
+        return result;
+    }
+
+    /**
+     * Renders the page of the given term and stores it in the given
+     * {@code PageSink} as {@code <term>.html}, timing it and counting its
+     * tokens and links if the options have a {@code BuildStats}, and
+     * collecting the words of the definition into {@code words} as it is
+     * scanned.
+     *
+     * @param term
+     *            the term the page is for
+     * @param def
+     *            the definition of the term
+     * @param matcher
+     *            {@code TermMatcher} compiled from all the terms, or
+     *            {@code null} if there is a graph
+     * @param graph
+     *            the links of all the terms, found beforehand, or {@code null}
+     *            to scan the definition with matcher and list no backlinks
+     * @param id
+     *            the id of the term in graph, if there is one
+     * @param sink
+     *            where the page is stored
+     * @param page
+     *            buffer the page is rendered into
+     * @param words
+     *            the worker's part of the search index, from
+     *            {@link #searchPart}; may be {@code null}
+     * @param options
+     *            the separators, markup and stats
+     */
+    static void writeTermPage(String term, String def, TermMatcher matcher,
+            LinkGraph graph, int id, PageSink sink, PageBuffer page,
+            SearchIndex.Part words, GlossaryOptions options) {
+        if (graph == null) {
+            SeparatorSet separators = options.separators();
+            if (words != null) {
+                words.begin(term, def);
+            }
+            writeTermPage(term, def,
+                    handler -> matcher.scan(def, separators, handler, words),
+                    Collections.emptyList(), sink, page, options);
+        } else {
+            writeTermPage(term, def, handler -> {
+                graph.links(id, handler);
+                return graph.tokens(id);
+            }, graph.backlinks(id), sink, page, options);
+        }
+    }
+
+    /**
+     * Renders the page of the given term with the links {@code matches}
+     * reports and stores it in the given {@code PageSink} as
+     * {@code <term>.html}, timing it and counting its tokens and links if the
+     * options have a {@code BuildStats}. Every way of building term pages
+     * ends here, so they all get the same markup and stats.
+     *
+     * @param term
+     *            the term the page is for
+     * @param def
+     *            the definition of the term
+     * @param matches
+     *            reports the links in def to the given handler and returns
+     *            the number of tokens def has
+     * @param backlinks
+     *            the terms linking to term, in alphabetical order
+     * @param sink
+     *            where the page is stored
+     * @param page
+     *            buffer the page is rendered into
+     * @param options
+     *            the markup and stats
+     */
+    static void writeTermPage(String term, String def,
+            ToIntFunction<TermMatcher.MatchHandler> matches,
+            List<String> backlinks, PageSink sink, PageBuffer page,
+            GlossaryOptions options) {
+        BuildStats stats = options.stats();
+        page.clear();
+        long start = 0;
+        BuildStats.PageEvent event = null;
+        if (stats != null) {
+            start = System.nanoTime();
+            event = BuildStats.beginPage(term);
+        }
+        // counts[0] is the number of tokens, counts[1] of links
+        int[] counts = new int[2];
+        options.templates().renderTermPage(term, def,
+                handler -> counts[0] += matches.applyAsInt(handler),
+                backlinks, page, termId -> counts[1]++);
+        writePage(sink, term + ".html", page);
+        if (stats != null) {
+            stats.endPage(term, start, event, counts[0], counts[1]);
+        }
+    }
+
+    /**
+     * Creates HTML pages for each of the given terms, along with their
+     * definitions from the given {@code Map}, and stores them in the given
+     * {@code PageSink} as {@code <term>.html}, with every term found in a
+     * definition turned into a hyperlink.
+     * <p>
+     * With more than one worker the pages are rendered and stored on that
+     * many threads at once; the terms and definitions are copied into arrays
+     * first, so the workers only read that snapshot and the matcher, and
+     * {@code terms} and {@code map} are not touched off the calling thread.
+     * With backlinks, every definition is first scanned once into a
+     * {@code LinkGraph}, whose forward links then render the pages without
+     * scanning again and whose reverse links are the backlinks, so the cost
+     * stays linear in the total length of the definitions. The pages are the
+     * same on any number of workers.
+     *
+     * @param terms
+     *            all the terms, such as a {@code Queue} of them in
+     *            alphabetical order
+     * @param map
+     *            {@code Map} containing all terms and their definitions as its
+     *            Keys and Values
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the pages are built
+     * @ensures [all terms have their own HTML page with appropriate tags, and
+     *          the search index of options holds every term]
+     */
+    public static void createTermHTMLPages(Iterable<String> terms,
+            Map<String, String> map, PageSink sink, GlossaryOptions options) {
+        assert terms != null : "Violation of: terms is not null";
+        assert map != null : "Violation of: map is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert options != null : "Violation of: options is not null";
+
+        if (options.workers() == 1 && !options.backlinks()) {
+            // the terms are compiled once, then each definition scanned once
+            final TermMatcher matcher = TermMatcher.compile(map);
+            /*
+             * one buffer is reused for every page, so linking a term only
+             * appends to it instead of rebuilding the whole definition
+             */
+            PageBuffer page = new PageBuffer();
+            SearchIndex.Part words = searchPart(options, null);
+            for (String currentTerm : terms) { //iterate through all terms
+                writeTermPage(currentTerm, map.value(currentTerm), matcher,
+                        null, -1, sink, page, words, options);
+            }
+            if (words != null) {
+                options.search().addAll(words);
+            }
+        } else {
+            // snapshot of the terms and definitions, read only by the workers
+            List<String> list = new ArrayList<>();
+            for (String term : terms) {
+                list.add(term);
+            }
+            final String[] names = list.toArray(new String[0]);
+            final String[] defs = new String[names.length];
+            for (int i = 0; i < names.length; i++) {
+                defs[i] = map.value(names[i]);
+            }
+            TermMatcher matcher = null;
+            if (!options.backlinks()) {
+                matcher = TermMatcher.compile(map);
+            }
+            writeTermPages(names, k -> defs[k], matcher, sink, options);
+        }
+    }
+
+    /**
+     * Creates HTML pages for each of the given terms like
+     * {@link #createTermHTMLPages(Iterable, Map, PageSink, GlossaryOptions)},
+     * with the definitions read from a {@code DefinitionArena}. Each
+     * definition is read from the arena when its page is rendered and dropped
+     * right after, so only the definitions of the pages being rendered are on
+     * the heap at once.
+     *
+     * @param terms
+     *            all the terms, such as a {@code Queue} of them in
+     *            alphabetical order
+     * @param defs
+     *            {@code DefinitionArena} holding all terms and their
+     *            definitions
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the pages are built
+     * @requires [every term is in defs]
+     * @ensures [all terms have their own HTML page with appropriate tags, and
+     *          the search index of options holds every term]
+     */
+    public static void createTermHTMLPages(Iterable<String> terms,
+            DefinitionArena defs, PageSink sink, GlossaryOptions options) {
+        assert terms != null : "Violation of: terms is not null";
+        assert defs != null : "Violation of: defs is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert options != null : "Violation of: options is not null";
+
+        if (options.workers() == 1 && !options.backlinks()) {
+            final TermMatcher matcher = new TermMatcher(defs.terms());
+            PageBuffer page = new PageBuffer();
+            SearchIndex.Part words = searchPart(options, null);
+            for (String currentTerm : terms) {
+                writeTermPage(currentTerm, defs.value(currentTerm), matcher,
+                        null, -1, sink, page, words, options);
+            }
+            if (words != null) {
+                options.search().addAll(words);
+            }
+        } else {
+            List<String> list = new ArrayList<>();
+            for (String term : terms) {
+                list.add(term);
+            }
+            final String[] names = list.toArray(new String[0]);
+            TermMatcher matcher = null;
+            if (!options.backlinks()) {
+                matcher = new TermMatcher(defs.terms());
+            }
+            writeTermPages(names, k -> defs.value(names[k]), matcher, sink,
+                    options);
+        }
+    }
+
+    /**
+     * Writes the page of each of the given terms on the workers of the
+     * options at once. Without a matcher, the links of every page are found
+     * first, in a {@code LinkGraph}, and each page also lists the terms
+     * linking to it.
+     *
+     * @param names
+     *            the terms
+     * @param defs
+     *            gives the definition of the term with the given index in
+     *            names; called from several threads at once
+     * @param matcher
+     *            matcher compiled from all the terms, or {@code null} for
+     *            pages with backlinks
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the pages are built
+     */
+    private static void writeTermPages(String[] names, IntFunction<String> defs,
+            TermMatcher matcher, PageSink sink, GlossaryOptions options) {
+        int workers = options.workers();
+        /*
+         * with backlinks, the links are found for all the pages before any is
+         * rendered; otherwise each page finds its own
+         */
+        final LinkGraph graph;
+        if (matcher == null) {
+            graph = LinkGraph.build(names, defs, options.separators(),
+                    workers, options.search());
+        } else {
+            graph = null;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        Runnable task = () -> {
+            PageBuffer page = new PageBuffer();
+            SearchIndex.Part words = searchPart(options, graph);
+            int k = next.getAndIncrement();
+            while (k < names.length) {
+                writeTermPage(names[k], defs.apply(k), matcher, graph, k,
+                        sink, page, words, options);
+                k = next.getAndIncrement();
+            }
+            if (words != null) {
+                options.search().addAll(words);
+            }
+        };
+        if (workers == 1) {
+            task.run();
+        } else {
+            ExecutorService executor = WorkerPools.newIoExecutor(workers,
+                    "glossary-page");
+            try {
+                WorkerPools.runAll(executor, workers, () -> {
+                    task.run();
+                    return null;
+                });
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Writes the whole glossary into the given {@code PageSink}: the index,
+     * split into shards if the options say so as {@link #writeIndex} does, a
+     * page for every term as
+     * {@link #createTermHTMLPages(Iterable, Map, PageSink, GlossaryOptions)}
+     * writes them, and {@value SearchIndex#FILE_NAME} if the options have a
+     * search index. The terms are iterated twice, once for the index and once
+     * for the pages. With a {@code BuildStats}, the index, page and search
+     * phases and each page are timed.
+     *
+     * @param terms
+     *            all the terms in alphabetical order, such as a {@code Queue}
+     *            or {@code SortedTerms}
+     * @param map
+     *            {@code Map} containing all terms and their definitions as its
+     *            Keys and Values
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the glossary is built
+     * @ensures [sink holds the index pages and a page for every term, and
+     *          SearchIndex.FILE_NAME if there is a search index]
+     */
+    public static void writeGlossary(Iterable<String> terms,
+            Map<String, String> map, PageSink sink, GlossaryOptions options) {
+        assert options != null : "Violation of: options is not null";
+
+        if (options.pipeline()) {
+            PagePipeline.writeGlossary(terms, map, sink, options);
+        } else {
+            writeGlossary(terms, sink, options,
+                    () -> createTermHTMLPages(terms, map, sink, options));
+        }
+    }
+
+    /**
+     * Writes the whole glossary into the given {@code PageSink} like
+     * {@link #writeGlossary(Iterable, Map, PageSink, GlossaryOptions)}, with
+     * the definitions read from a {@code DefinitionArena} one page at a time.
+     *
+     * @param terms
+     *            all the terms in alphabetical order, such as a {@code Queue}
+     * @param defs
+     *            {@code DefinitionArena} holding all terms and their
+     *            definitions
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the glossary is built
+     * @requires [every term is in defs]
+     * @ensures [sink holds the index pages and a page for every term, and
+     *          SearchIndex.FILE_NAME if there is a search index]
+     */
+    public static void writeGlossary(Iterable<String> terms,
+            DefinitionArena defs, PageSink sink, GlossaryOptions options) {
+        assert options != null : "Violation of: options is not null";
+
+        if (options.pipeline()) {
+            PagePipeline.writeGlossary(terms, defs, sink, options);
+        } else {
+            writeGlossary(terms, sink, options,
+                    () -> createTermHTMLPages(terms, defs, sink, options));
+        }
+    }
+
+    /**
+     * Writes the index, then the term pages with {@code pages}, then the
+     * search index if there is one, each as a phase of the stats.
+     *
+     * @param terms
+     *            all the terms in alphabetical order
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the glossary is built
+     * @param pages
+     *            writes the term pages
+     */
+    static void writeGlossary(Iterable<String> terms, PageSink sink,
+            GlossaryOptions options, Runnable pages) {
+        assert terms != null : "Violation of: terms is not null";
+        assert sink != null : "Violation of: sink is not null";
+
+        options.time("index", () -> writeIndex(terms, sink,
+                options.shardSize(), options.templates()));
+        options.time("pages", pages);
+        SearchIndex search = options.search();
+        if (search != null) {
+            options.time("search", () -> search.write(sink));
+        }
     }
 
     /**
@@ -267,56 +1196,107 @@ public final class Glossary {
      */
     public static void createTermHTMLPages(Queue<String> q,
             Map<String, String> map, String folder, Set<Character> separators) {
+        assert separators != null : "Violation of: separators is not null";
 
-        // keep track of all the terms in q
-        Queue<String> temp = q.newInstance();
-        while (q.length() > 0) { //iterate through all terms
-            String currentTerm = q.dequeue();
-            String fileName = folder + "/" + currentTerm + ".html";
-            // need to create an output stream for each of these terms
-            SimpleWriter out = new SimpleWriter1L(fileName);
-            out.println("<html>");
-            out.println("  <head>");
-            out.println("    <title>" + currentTerm + "</title>");
-            out.println("  </head>"); //Closing tags
-            out.println("  <body>");
-            // heading has to be bold, in italics, and red
-            out.print("    <h2><b><i><font color=\"red\">");
-            out.println(currentTerm + "</font></i></b></h2>");
-            out.print("    <blockquote>");
-            String def = map.value(currentTerm);
-            /*
-             * have to check if this definition contains another term. If it
-             * does, then that term has to be hyperlinked within the outputted
-             * definition
-             */
-            int position = 0;
-            while (position < def.length()) {
-                String wordOrSep = nextWordOrSeparator(def, position,
-                        separators);
-                if (map.hasKey(wordOrSep)) {
-                    /*
-                     * definition contains another term
-                     */
-                    String beforeTerm = def.substring(0, position);
-                    String linkToTerm = "<a href=\"" + wordOrSep + ".html\">";
-                    linkToTerm = linkToTerm + wordOrSep + "</a>"; //closing tag
-                    String afterLink = def
-                            .substring(position + wordOrSep.length());
-                    def = beforeTerm + linkToTerm + afterLink;
-                }
-                position = position + wordOrSep.length();
-            }
-            out.println(def + "</blockquote>");
-            out.println("    <hr />");
-            out.println("    <p>Return to <a href=\"index.html\">index</a><p>");
-            out.println("  </body>");
-            out.println("</html>");
-            temp.enqueue(currentTerm);
-            // close output stream
-            out.close();
+        GlossaryOptions options = new GlossaryOptions()
+                .separators(SeparatorSet.from(separators));
+        try (PageSink sink = new DirectoryPageSink(folder)) {
+            createTermHTMLPages(q, map, sink, options);
         }
-        q.transferFrom(temp);
+    }
+
+    /**
+     * Throws if the system properties ask for ways of building that main
+     * cannot combine, rather than quietly using only one of them. At most one
+     * of a compiled input, {@code glossary.watch}, {@code glossary.offHeap},
+     * {@code glossary.sortRunSize}, {@code glossary.serve} and
+     * {@code glossary.incremental} may be set; {@code glossary.compile} needs
+     * the text input held in memory, so it goes with none of the first four;
+     * and {@code glossary.pack}, written whole, goes with none of watch, serve
+     * and incremental.
+     *
+     * @param compiledInput
+     *            whether the input file is a compiled glossary
+     * @throws IllegalArgumentException
+     *             naming two settings that cannot be combined
+     */
+    static void checkModes(boolean compiledInput) {
+        List<String> sources = new ArrayList<>();
+        if (compiledInput) {
+            sources.add("a compiled input");
+        }
+        if (Boolean.getBoolean("glossary.watch")) {
+            sources.add("glossary.watch");
+        }
+        if (Boolean.getBoolean("glossary.offHeap")) {
+            sources.add("glossary.offHeap");
+        }
+        if (Integer.getInteger("glossary.sortRunSize", 0) > 0) {
+            sources.add("glossary.sortRunSize");
+        }
+        List<String> modes = new ArrayList<>(sources);
+        if (System.getProperty("glossary.serve") != null) {
+            modes.add("glossary.serve");
+        }
+        if (Boolean.getBoolean("glossary.incremental")) {
+            modes.add("glossary.incremental");
+        }
+        if (modes.size() > 1) {
+            throw new IllegalArgumentException(modes.get(0)
+                    + " cannot be combined with " + modes.get(1));
+        }
+        if (System.getProperty("glossary.compile") != null
+                && !sources.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "glossary.compile cannot be combined with "
+                            + sources.get(0));
+        }
+        if (System.getProperty("glossary.pack") != null
+                && (Boolean.getBoolean("glossary.watch")
+                        || System.getProperty("glossary.serve") != null
+                        || Boolean.getBoolean("glossary.incremental"))) {
+            throw new IllegalArgumentException(
+                    "a pack file cannot be updated incrementally or served");
+        }
+    }
+
+    /**
+     * Opens the sink main writes the pages into: the output folder, or with
+     * {@code glossary.pack} a pack file, counted by the given stats and, with
+     * {@code glossary.gzip}, with gzip copies of the pages.
+     *
+     * @param folderName
+     *            name of the output folder
+     * @param stats
+     *            counts the files and bytes written
+     * @return the sink
+     */
+    private static PageSink openSink(String folderName, BuildStats stats) {
+        /*
+         * output folder already created, and is called output in Glossary
+         * folder; with -Dglossary.pack=<file> every page goes into that one
+         * pack file instead, which is always written whole
+         */
+        String pack = System.getProperty("glossary.pack");
+        PageSink result;
+        if (pack == null) {
+            result = new DirectoryPageSink(folderName);
+        } else {
+            result = new PackPageSink(Paths.get(pack));
+        }
+        result = stats.count(result);
+        /*
+         * with -Dglossary.gzip=true, every page also gets a gzip-compressed
+         * copy, compressed on -Dglossary.gzipWorkers threads while the pages
+         * are still being rendered
+         */
+        if (Boolean.getBoolean("glossary.gzip")) {
+            int gzipWorkers = Math.max(1, Integer.getInteger(
+                    "glossary.gzipWorkers",
+                    Runtime.getRuntime().availableProcessors()));
+            result = new GzipPageSink(result, gzipWorkers);
+        }
+        return result;
     }
 
     /**
@@ -337,54 +1317,188 @@ public final class Glossary {
         out.print("Enter output folder name: ");
         String folderName = in.nextLine();
 
-        SimpleReader input = new SimpleReader1L(fileName);
-        /*
-         * output folder already created, and is called output in Glossary
-         * folder
-         */
-        SimpleWriter output = new SimpleWriter1L(folderName + "/index.html");
-
         /*
          * Create the set of separator characters, used by the
          * nextWordOrSeparator method
          */
         final String separators = " \t, ";
-        Set<Character> separatorSet = new Set1L<>();
+        SeparatorSet separatorSet = new SeparatorSet();
         generateElements(separators, separatorSet); //set generated
 
         /*
-         * Create a Map object for the terms and their own separate definition
-         * which corresponds to the term, using the method, getting each with
-         * the method getTermAndDefinition
+         * the settings that pick a way of building are checked up front, so
+         * none of them is quietly ignored
          */
-        Map<String, String> wordsAndDefs = new Map1L<>();
-        getTermsAndDefinitions(input, wordsAndDefs); // all in map
-
-        // sort the terms
-        Queue<String> allTerms = new Queue1L<>();
-        Comparator<String> order = new CompareStrings();
-        sortTerms(allTerms, wordsAndDefs, order); // sorted
+        Path inputFile = Paths.get(fileName);
+        checkModes(CompiledGlossary.isCompiled(inputFile));
 
-        // Output the HTMLs
+        /*
+         * every run is timed and counted; with -Dglossary.stats=<file> the
+         * numbers are written there as JSON (or printed, for "-")
+         */
+        BuildStats stats = new BuildStats();
+        /*
+         * the rest is set by system properties, as GlossaryOptions
+         * describes: term pages are generated on -Dglossary.workers threads
+         * at once, the index lists at most -Dglossary.indexShardSize terms
+         * per page, -Dglossary.templates=<folder> holds the markup,
+         * -Dglossary.locale=<tag> sorts the terms for readers of that
+         * language, -Dglossary.search=true also writes a search index,
+         * -Dglossary.backlinks=true lists the terms linking to each term,
+         * and -Dglossary.pipeline=true reads definitions, renders pages and
+         * writes files at the same time
+         */
+        GlossaryOptions options = GlossaryOptions.fromProperties()
+                .separators(separatorSet).stats(stats);
 
-        // Main glossary index page
         /*
-         * create links for the index page, each term on the index page will be
-         * a hyperlink leading to their own individual page
+         * the sink is closed however the build ends, so the pack file, the
+         * gzip pool and any failure they hold back are not left behind
          */
-        printIndexHeaderHTMLTags(output);
-        printIndexTermsListAndClosingTags(allTerms, output);
+        try (PageSink sink = openSink(folderName, stats)) {
+            if (CompiledGlossary.isCompiled(inputFile)) {
+                /*
+                 * the input was compiled by an earlier run, so the pages come
+                 * straight from it without parsing, sorting or linking again
+                 */
+                try (CompiledGlossary compiled = CompiledGlossary
+                        .open(inputFile)) {
+                    stats.time("render",
+                            () -> compiled.writeGlossary(sink, options));
+                }
+            } else if (Boolean.getBoolean("glossary.watch")) {
+                /*
+                 * with -Dglossary.watch=true, keep the folder up to date with
+                 * the input file until the program is stopped, rebuilding
+                 * once the file has been quiet for -Dglossary.debounceMillis
+                 */
+                long debounce = Long.getLong("glossary.debounceMillis", 200);
+                try (GlossaryWatcher watcher = new GlossaryWatcher(inputFile,
+                        folderName, sink, options, debounce)) {
+                    out.println(watcher.rebuild().toString());
+                    watcher.run(new GlossaryWatcher.Listener() {
+                        @Override
+                        public void rebuilt(IncrementalBuild.Result result,
+                                long nanos) {
+                            final long micros = 1000;
+                            out.println(result + " in " + nanos / micros
+                                    + " us");
+                        }
+
+                        @Override
+                        public void failed(RuntimeException e) {
+                            out.println("Rebuild failed: " + e);
+                        }
+                    });
+                }
+            } else if (Boolean.getBoolean("glossary.offHeap")) {
+                /*
+                 * with -Dglossary.offHeap=true, the definitions are kept in
+                 * a memory-mapped temporary file instead of on the heap, and
+                 * read back one page at a time
+                 */
+                try (DefinitionArena arena = new DefinitionArena()) {
+                    stats.time("parse",
+                            () -> getTermsAndDefinitions(inputFile, arena));
+                    stats.addTermsParsed(arena.size());
+                    Queue<String> allTerms = new Queue1L<>();
+                    stats.time("sort", () -> sortTerms(allTerms, arena,
+                            options.order()));
+                    writeGlossary(allTerms, arena, sink, options);
+                }
+            } else {
+                /*
+                 * Create a Map object for the terms and their own separate
+                 * definition which corresponds to the term, using the method,
+                 * getting each with the method getTermAndDefinition
+                 */
+                Map<String, String> wordsAndDefs = new Map1L<>();
+                stats.time("parse",
+                        () -> getTermsAndDefinitions(inputFile, wordsAndDefs));
+                stats.addTermsParsed(wordsAndDefs.size()); // all in map
+
+                int runSize = Integer.getInteger("glossary.sortRunSize", 0);
+                if (runSize > 0) {
+                    /*
+                     * with -Dglossary.sortRunSize=<n>, sort at most n terms
+                     * in memory at a time, spilling the rest to temporary
+                     * files, and stream the sorted terms straight into the
+                     * pages; this saves the sorted copy of the terms, but the
+                     * map, the term matcher (and, with several workers, the
+                     * workers' snapshot of the terms) still hold every term
+                     */
+                    BuildStats.Phase sorting = stats.phase("sort");
+                    try (SortedTerms sorted = sortTerms(wordsAndDefs,
+                            options.order(), runSize)) {
+                        sorting.close();
+                        writeGlossary(sorted, wordsAndDefs, sink, options);
+                    }
+                } else {
+                    // sort the terms
+                    Queue<String> allTerms = new Queue1L<>();
+                    stats.time("sort", () -> sortTerms(allTerms, wordsAndDefs,
+                            options.order()));
+
+                    /*
+                     * with -Dglossary.compile=<file>, save all this for next
+                     * time
+                     */
+                    String compileTo = System.getProperty("glossary.compile");
+                    if (compileTo != null) {
+                        stats.time("compile",
+                                () -> CompiledGlossary.compile(allTerms,
+                                        wordsAndDefs, separatorSet,
+                                        Paths.get(compileTo)));
+                    }
 
-        // Individual term pages
-        createTermHTMLPages(allTerms, wordsAndDefs, folderName, separatorSet);
+                    // Output the HTMLs
+
+                    String serve = System.getProperty("glossary.serve");
+                    if (serve != null) {
+                        /*
+                         * with -Dglossary.serve=<port>, render pages on
+                         * demand over HTTP instead, caching up to
+                         * -Dglossary.cacheMB of them
+                         */
+                        final long megabyte = 1 << 20;
+                        long cacheBytes = Long.getLong("glossary.cacheMB", 64)
+                                * megabyte;
+                        GlossaryServer server = new GlossaryServer(allTerms,
+                                wordsAndDefs, options, cacheBytes);
+                        server.start(Integer.parseInt(serve),
+                                options.workers());
+                        out.println("Serving on http://localhost:"
+                                + server.port() + "/index.html");
+                    } else if (Boolean.getBoolean("glossary.incremental")) {
+                        /*
+                         * only rewrite the pages that changed since the last
+                         * run into this folder
+                         */
+                        BuildStats.Phase building = stats.phase("incremental");
+                        IncrementalBuild.Result result = IncrementalBuild.build(
+                                allTerms, wordsAndDefs, folderName, sink,
+                                options);
+                        building.close();
+                        out.println(result.toString());
+                    } else {
+                        // Main glossary index page and individual term pages
+                        writeGlossary(allTerms, wordsAndDefs, sink, options);
+                    }
+                }
+            }
+        }
+        String statsTo = System.getProperty("glossary.stats");
+        if ("-".equals(statsTo)) {
+            out.println(stats.toJson());
+        } else if (statsTo != null) {
+            stats.writeJson(Paths.get(statsTo));
+        }
 
         /*
          * Close input and output streams
          */
         in.close();
         out.close();
-        input.close();
-        output.close();
     }
 
 }
@@ -0,0 +1,465 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Builds many glossaries in one run, without prompting: each input file is
+ * paired with an output folder, given on the command line or listed in a
+ * manifest file, and the glossaries are built at the same time on one shared
+ * pool of threads, so hundreds of small glossaries pay for starting and
+ * warming up the JVM once. Every glossary gets a line in a status report,
+ * and the exit code tells whether they all built.
+ * <p>
+ * Usage: {@code java GlossaryBatch <input> <folder> [<input> <folder>...]}
+ * or {@code java GlossaryBatch --manifest <file>}, where each line of the
+ * manifest is an input file and an output folder separated by white space
+ * (blank lines and lines starting with {@code #} are skipped; relative paths
+ * are relative to the manifest's folder). {@code -Dglossary.batchWorkers}
+ * sets how many glossaries are built at once (by default one per processor),
+ * and the settings {@code GlossaryOptions.fromProperties} reads apply to
+ * every glossary as they do for {@link Glossary#main}, but for
+ * {@code -Dglossary.search}: one search index cannot be shared by the
+ * glossaries, so it is a usage error, as are the settings of {@code main}
+ * that pick where or how the pages go (see {@link #UNSUPPORTED}).
+ */
+public final class GlossaryBatch {
+
+    /**
+     * Exit code when every glossary was built.
+     */
+    public static final int EXIT_OK = 0;
+
+    /**
+     * Exit code when at least one glossary failed.
+     */
+    public static final int EXIT_FAILED = 1;
+
+    /**
+     * Exit code when the arguments or the manifest cannot be used.
+     */
+    public static final int EXIT_USAGE = 2;
+
+    /**
+     * The system properties {@code Glossary.main} reads that a batch cannot
+     * honor: a search index would be shared by every glossary, and the
+     * others pick an output or a way of building other than a full build
+     * into each folder.
+     */
+    static final List<String> UNSUPPORTED = Arrays.asList("glossary.search",
+            "glossary.pack", "glossary.gzip", "glossary.stats",
+            "glossary.compile", "glossary.serve", "glossary.incremental",
+            "glossary.watch", "glossary.offHeap", "glossary.sortRunSize");
+
+    /**
+     * Option naming a manifest file.
+     */
+    private static final String MANIFEST = "--manifest";
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final long MILLIS = 1_000_000;
+
+    /**
+     * One glossary to build: an input file and the folder its pages go to.
+     */
+    public static final class Job {
+
+        /**
+         * The input file, of terms and definitions or compiled.
+         */
+        private final Path input;
+
+        /**
+         * The output folder.
+         */
+        private final Path folder;
+
+        /**
+         * Constructor.
+         *
+         * @param input
+         *            the input file
+         * @param folder
+         *            the output folder
+         */
+        public Job(Path input, Path folder) {
+            assert input != null : "Violation of: input is not null";
+            assert folder != null : "Violation of: folder is not null";
+
+            this.input = input;
+            this.folder = folder;
+        }
+
+        /**
+         * Returns the input file.
+         *
+         * @return the input file
+         */
+        public Path input() {
+            return this.input;
+        }
+
+        /**
+         * Returns the output folder.
+         *
+         * @return the output folder
+         */
+        public Path folder() {
+            return this.folder;
+        }
+
+        @Override
+        public String toString() {
+            return this.input + " -> " + this.folder;
+        }
+    }
+
+    /**
+     * What became of one {@code Job}.
+     */
+    public static final class Status {
+
+        /**
+         * The job.
+         */
+        private final Job job;
+
+        /**
+         * Number of terms in the glossary, or -1 if it failed.
+         */
+        private final long terms;
+
+        /**
+         * Time taken to build it.
+         */
+        private final long nanos;
+
+        /**
+         * Why it failed, or {@code null} if it did not.
+         */
+        private final Throwable failure;
+
+        /**
+         * Constructor.
+         *
+         * @param job
+         *            the job
+         * @param terms
+         *            number of terms in the glossary, or -1 if it failed
+         * @param nanos
+         *            time taken
+         * @param failure
+         *            why it failed, or {@code null}
+         */
+        private Status(Job job, long terms, long nanos, Throwable failure) {
+            this.job = job;
+            this.terms = terms;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        /**
+         * Returns the job.
+         *
+         * @return the job
+         */
+        public Job job() {
+            return this.job;
+        }
+
+        /**
+         * Reports whether the glossary was built.
+         *
+         * @return true iff it was built
+         */
+        public boolean ok() {
+            return this.failure == null;
+        }
+
+        /**
+         * Reports the number of terms in the glossary.
+         *
+         * @return the number of terms, or -1 if it failed
+         */
+        public long terms() {
+            return this.terms;
+        }
+
+        /**
+         * Returns why the glossary failed.
+         *
+         * @return the failure, or {@code null} if it was built
+         */
+        public Throwable failure() {
+            return this.failure;
+        }
+
+        /**
+         * Returns the line of the status report for this job.
+         *
+         * @return the line
+         */
+        @Override
+        public String toString() {
+            String result;
+            if (this.ok()) {
+                result = "OK      " + this.job + " (" + this.terms
+                        + " terms, " + this.nanos / MILLIS + " ms)";
+            } else {
+                result = "FAILED  " + this.job + ": " + this.failure;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private GlossaryBatch() {
+        // no code needed here
+    }
+
+    /**
+     * Reads the jobs listed in the given manifest file.
+     *
+     * @param manifest
+     *            the manifest
+     * @return the jobs, in the order they are listed
+     * @throws IllegalArgumentException
+     *             if a line does not hold exactly two paths
+     */
+    public static List<Job> readManifest(Path manifest) {
+        assert manifest != null : "Violation of: manifest is not null";
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Path base = manifest.toAbsolutePath().getParent();
+        List<Job> result = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException(manifest + ":"
+                            + (i + 1) + ": expected <input> <folder>");
+                }
+                result.add(new Job(base.resolve(fields[0]),
+                        base.resolve(fields[1])));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the jobs given by the command line arguments.
+     *
+     * @param args
+     *            pairs of input file and output folder, or
+     *            {@code --manifest <file>}
+     * @return the jobs, in order
+     * @throws IllegalArgumentException
+     *             if the arguments are not one of those forms
+     */
+    public static List<Job> parseArgs(String[] args) {
+        assert args != null : "Violation of: args is not null";
+
+        List<Job> result;
+        if (args.length == 2 && args[0].equals(MANIFEST)) {
+            result = readManifest(Paths.get(args[1]));
+        } else if (args.length > 0 && args.length % 2 == 0) {
+            result = new ArrayList<>();
+            for (int i = 0; i < args.length; i += 2) {
+                result.add(new Job(Paths.get(args[i]), Paths.get(args[i + 1])));
+            }
+        } else {
+            throw new IllegalArgumentException("usage: GlossaryBatch <input> "
+                    + "<folder> [<input> <folder>...] | " + MANIFEST
+                    + " <file>");
+        }
+        return result;
+    }
+
+    /**
+     * Builds one glossary, from a text or compiled input, with its term pages
+     * rendered on {@code options.workers()} threads.
+     *
+     * @param job
+     *            the glossary
+     * @param options
+     *            how the glossary is built, which may be shared by other
+     *            builds, so it has no stats and no search index
+     * @return the number of terms in the glossary
+     * @requires options.stats() = null and options.search() = null
+     * @ensures [job's folder exists and holds its index and term pages]
+     */
+    public static long build(Job job, GlossaryOptions options) {
+        assert job != null : "Violation of: job is not null";
+        assert options != null : "Violation of: options is not null";
+        assert options.stats() == null
+                && options.search() == null : "Violation of: options has"
+                        + " no stats and no search index";
+
+        try {
+            Files.createDirectories(job.folder());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long result;
+        try (PageSink sink = new DirectoryPageSink(job.folder().toString())) {
+            if (CompiledGlossary.isCompiled(job.input())) {
+                try (CompiledGlossary compiled = CompiledGlossary
+                        .open(job.input())) {
+                    compiled.writeGlossary(sink, options);
+                    result = compiled.size();
+                }
+            } else {
+                Map<String, String> map = new Map1L<>();
+                Glossary.getTermsAndDefinitions(job.input(), map);
+                Queue<String> terms = new Queue1L<>();
+                Glossary.sortTerms(terms, map, options.order());
+                Glossary.writeGlossary(terms, map, sink, options);
+                result = terms.length();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the given glossaries, {@code workers} at a time on one shared
+     * pool. A glossary that fails does not stop the others.
+     *
+     * @param jobs
+     *            the glossaries
+     * @param workers
+     *            the number of glossaries built at once
+     * @param options
+     *            how every glossary is built, with no stats and no search
+     *            index
+     * @return the status of each job, in the order of jobs
+     * @requires workers > 0 and options.stats() = null and
+     *           options.search() = null
+     */
+    public static List<Status> run(List<Job> jobs, int workers,
+            GlossaryOptions options) {
+        assert jobs != null : "Violation of: jobs is not null";
+        assert workers > 0 : "Violation of: workers > 0";
+
+        ExecutorService executor = WorkerPools.newCpuExecutor(workers,
+                "glossary-batch");
+        Status[] statuses = new Status[jobs.size()];
+        List<Future<?>> futures = new ArrayList<>(jobs.size());
+        try {
+            for (int i = 0; i < statuses.length; i++) {
+                final int k = i;
+                final Job job = jobs.get(i);
+                futures.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    Status status;
+                    try {
+                        long terms = build(job, options);
+                        status = new Status(job, terms,
+                                System.nanoTime() - start, null);
+                    } catch (RuntimeException | AssertionError e) {
+                        // a bad input fails its own glossary only
+                        status = new Status(job, -1,
+                                System.nanoTime() - start, e);
+                    }
+                    statuses[k] = status;
+                }));
+            }
+            WorkerPools.awaitAll(futures);
+        } finally {
+            executor.shutdown();
+        }
+        return Arrays.asList(statuses);
+    }
+
+    /**
+     * Builds the glossaries given by the command line arguments, printing a
+     * status line for each and a summary to {@code out}.
+     *
+     * @param args
+     *            pairs of input file and output folder, or
+     *            {@code --manifest <file>}
+     * @param out
+     *            where the status report goes
+     * @return {@link #EXIT_OK} if every glossary was built,
+     *         {@link #EXIT_FAILED} if any failed, or {@link #EXIT_USAGE} if
+     *         the arguments or manifest cannot be used
+     */
+    public static int run(String[] args, SimpleWriter out) {
+        assert args != null : "Violation of: args is not null";
+        assert out != null : "Violation of: out is not null";
+
+        int result;
+        List<Job> jobs = null;
+        try {
+            for (String name : UNSUPPORTED) {
+                if (System.getProperty(name) != null) {
+                    throw new IllegalArgumentException(
+                            "-D" + name + " is not supported in a batch");
+                }
+            }
+            jobs = parseArgs(args);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            out.println(e.getMessage());
+        }
+        if (jobs == null) {
+            result = EXIT_USAGE;
+        } else {
+            // every setting applies to each glossary on its own
+            GlossaryOptions options = GlossaryOptions.fromProperties();
+            int workers = Math.max(1, Integer.getInteger(
+                    "glossary.batchWorkers",
+                    Runtime.getRuntime().availableProcessors()));
+
+            List<Status> statuses = run(jobs, workers, options);
+            int failed = 0;
+            for (Status status : statuses) {
+                out.println(status.toString());
+                if (!status.ok()) {
+                    failed++;
+                }
+            }
+            out.println((statuses.size() - failed) + " built, " + failed
+                    + " failed");
+            result = failed == 0 ? EXIT_OK : EXIT_FAILED;
+        }
+        return result;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            pairs of input file and output folder, or
+     *            {@code --manifest <file>}
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        int code = run(args, out);
+        out.close();
+        System.exit(code);
+    }
+
+}
@@ -0,0 +1,383 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Makes up glossaries for load and scale tests, in exactly the format
+ * {@link Glossary#getTermsAndDefinitions} reads: each term on a line, then
+ * its definition on one or more lines, then a blank line. The same settings
+ * and seed always give the same file.
+ * <p>
+ * Definitions are drawn from a made-up vocabulary with Zipf-distributed word
+ * frequencies, as in natural text: a few words are very common and most are
+ * rare. Each word of a definition is, with a given probability, instead a
+ * term of the glossary (a link), also drawn with Zipf-distributed
+ * popularity, so some terms are linked from many pages and most from few.
+ * Vocabulary words never collide with terms, so the link rate is exact up to
+ * chance.
+ * <p>
+ * Usage: {@code java GlossaryGenerator <file> <terms>}, with
+ * {@code -Dglossary.definitionWords} (average words per definition, by
+ * default 20), {@code -Dglossary.wordsPerLine} (words on each line of a
+ * definition, by default 12), {@code -Dglossary.linkRate} (fraction of words
+ * that are terms, by default 0.05) and {@code -Dglossary.seed}.
+ */
+public final class GlossaryGenerator {
+
+    /**
+     * Number of distinct vocabulary words.
+     */
+    public static final int VOCABULARY_SIZE = 20_000;
+
+    /**
+     * Exponent of the Zipf distributions: the k-th most common word is
+     * {@code k^ZIPF_EXPONENT} times rarer than the most common one.
+     */
+    public static final double ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Default average number of words in a definition.
+     */
+    public static final int DEFAULT_DEFINITION_WORDS = 20;
+
+    /**
+     * Default number of words on each line of a definition.
+     */
+    public static final int DEFAULT_WORDS_PER_LINE = 12;
+
+    /**
+     * Default fraction of the words of a definition that are terms.
+     */
+    public static final double DEFAULT_LINK_RATE = 0.05;
+
+    /**
+     * Default seed.
+     */
+    public static final long DEFAULT_SEED = 42;
+
+    /**
+     * One in this many words is followed by a comma.
+     */
+    private static final int COMMA_EVERY = 10;
+
+    /**
+     * Consonants of the syllables words are made of; no {@code q}, which
+     * marks terms.
+     */
+    private static final String CONSONANTS = "bcdfghklmnprstvz";
+
+    /**
+     * Vowels of the syllables words are made of.
+     */
+    private static final String VOWELS = "aeiou";
+
+    /**
+     * Number of letters used to write the number of a term.
+     */
+    private static final int LETTERS = 26;
+
+    /**
+     * The terms, in the order they are written.
+     */
+    private final String[] terms;
+
+    /**
+     * Average number of words in a definition.
+     */
+    private final int definitionWords;
+
+    /**
+     * Number of words on each line of a definition.
+     */
+    private final int wordsPerLine;
+
+    /**
+     * Fraction of words that are terms.
+     */
+    private final double linkRate;
+
+    /**
+     * The seed.
+     */
+    private final long seed;
+
+    /**
+     * The vocabulary, most common word first.
+     */
+    private final String[] vocabulary;
+
+    /**
+     * Cumulative Zipf probabilities of the vocabulary words.
+     */
+    private final double[] wordOdds;
+
+    /**
+     * Cumulative Zipf probabilities of the terms, in order of popularity.
+     */
+    private final double[] termOdds;
+
+    /**
+     * The terms, most popular first.
+     */
+    private final int[] popularity;
+
+    /**
+     * Constructor.
+     *
+     * @param termCount
+     *            the number of terms
+     * @param definitionWords
+     *            the average number of words in a definition
+     * @param wordsPerLine
+     *            the number of words on each line of a definition
+     * @param linkRate
+     *            the fraction of the words of a definition that are terms
+     * @param seed
+     *            the seed
+     * @requires termCount > 0 and definitionWords > 0 and wordsPerLine > 0
+     *           and 0 <= linkRate <= 1
+     */
+    public GlossaryGenerator(int termCount, int definitionWords,
+            int wordsPerLine, double linkRate, long seed) {
+        assert termCount > 0 : "Violation of: termCount > 0";
+        assert definitionWords > 0 : "Violation of: definitionWords > 0";
+        assert wordsPerLine > 0 : "Violation of: wordsPerLine > 0";
+        assert 0 <= linkRate
+                && linkRate <= 1 : "Violation of: 0 <= linkRate <= 1";
+
+        this.definitionWords = definitionWords;
+        this.wordsPerLine = wordsPerLine;
+        this.linkRate = linkRate;
+        this.seed = seed;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        this.vocabulary = new String[VOCABULARY_SIZE];
+        StringBuilder b = new StringBuilder();
+        for (int k = 0; k < VOCABULARY_SIZE; k++) {
+            // short words are the common ones, as in natural text
+            b.setLength(0);
+            int n = k;
+            do {
+                b.append(CONSONANTS.charAt(n % CONSONANTS.length()));
+                n /= CONSONANTS.length();
+                b.append(VOWELS.charAt(n % VOWELS.length()));
+                n /= VOWELS.length();
+            } while (n > 0);
+            this.vocabulary[k] = b.toString();
+        }
+        this.wordOdds = zipf(VOCABULARY_SIZE);
+
+        /*
+         * a random syllable puts the terms out of alphabetical order, and
+         * "q" and the number of the term written in letters keep them
+         * distinct from each other and from the vocabulary
+         */
+        this.terms = new String[termCount];
+        for (int i = 0; i < termCount; i++) {
+            b.setLength(0);
+            b.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+            b.append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+            b.append('q');
+            int n = i;
+            do {
+                b.append((char) ('a' + n % LETTERS));
+                n /= LETTERS;
+            } while (n > 0);
+            this.terms[i] = b.toString();
+        }
+        this.termOdds = zipf(termCount);
+        // shuffle which terms are popular
+        this.popularity = new int[termCount];
+        for (int i = 0; i < termCount; i++) {
+            int j = random.nextInt(i + 1);
+            this.popularity[i] = this.popularity[j];
+            this.popularity[j] = i;
+        }
+    }
+
+    /**
+     * Constructor with the default definition shape and seed.
+     *
+     * @param termCount
+     *            the number of terms
+     * @requires termCount > 0
+     */
+    public GlossaryGenerator(int termCount) {
+        this(termCount, DEFAULT_DEFINITION_WORDS, DEFAULT_WORDS_PER_LINE,
+                DEFAULT_LINK_RATE, DEFAULT_SEED);
+    }
+
+    /**
+     * Returns the cumulative probabilities of a Zipf distribution over
+     * {@code n} ranks.
+     *
+     * @param n
+     *            the number of ranks
+     * @return the cumulative probabilities, the last one 1
+     */
+    private static double[] zipf(int n) {
+        double[] odds = new double[n];
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            total += 1 / Math.pow(k + 1, ZIPF_EXPONENT);
+            odds[k] = total;
+        }
+        for (int k = 0; k < n; k++) {
+            odds[k] /= total;
+        }
+        odds[n - 1] = 1;
+        return odds;
+    }
+
+    /**
+     * Draws a rank from a Zipf distribution.
+     *
+     * @param odds
+     *            the cumulative probabilities of the distribution
+     * @param random
+     *            the source of randomness
+     * @return the rank, from 0
+     */
+    private static int draw(double[] odds, SplittableRandom random) {
+        int k = Arrays.binarySearch(odds, random.nextDouble());
+        // not found gives -(insertion point) - 1
+        return k >= 0 ? k : -k - 1;
+    }
+
+    /**
+     * Reports the number of terms.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return this.terms.length;
+    }
+
+    /**
+     * Returns one of the terms.
+     *
+     * @param i
+     *            the number of the term, in the order they are written
+     * @return the term
+     * @requires 0 <= i < size()
+     */
+    public String term(int i) {
+        return this.terms[i];
+    }
+
+    /**
+     * Writes the glossary to the given writer.
+     *
+     * @param out
+     *            where the glossary is written
+     * @throws IOException
+     *             if it cannot be written
+     */
+    public void write(Writer out) throws IOException {
+        assert out != null : "Violation of: out is not null";
+
+        // the definitions have their own stream, so terms never shift them
+        SplittableRandom random = new SplittableRandom(~this.seed);
+        StringBuilder line = new StringBuilder();
+        for (String term : this.terms) {
+            out.write(term);
+            out.write('\n');
+            // between half and one and a half times the average length
+            int words = Math.max(1, this.definitionWords / 2
+                    + random.nextInt(this.definitionWords + 1));
+            line.setLength(0);
+            for (int w = 0; w < words; w++) {
+                if (w > 0 && w % this.wordsPerLine == 0) {
+                    // the reader joins the lines with a space
+                    out.append(line).write('\n');
+                    line.setLength(0);
+                } else if (w > 0) {
+                    line.append(random.nextInt(COMMA_EVERY) == 0 ? ", " : " ");
+                }
+                if (random.nextDouble() < this.linkRate) {
+                    line.append(this.terms[this.popularity[draw(this.termOdds,
+                            random)]]);
+                } else {
+                    line.append(this.vocabulary[draw(this.wordOdds, random)]);
+                }
+            }
+            out.append(line).write('\n');
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Writes the glossary to the given file, replacing it.
+     *
+     * @param file
+     *            the file
+     * @return the size of the file, in bytes
+     */
+    public long write(Path file) {
+        assert file != null : "Violation of: file is not null";
+
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(file,
+                    StandardCharsets.UTF_8)) {
+                this.write(out);
+            }
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a generator of the given number of terms, with the definition
+     * shape and seed given by the {@code glossary.definitionWords},
+     * {@code glossary.wordsPerLine}, {@code glossary.linkRate} and
+     * {@code glossary.seed} system properties.
+     *
+     * @param termCount
+     *            the number of terms
+     * @param definitionWords
+     *            the average number of words in a definition
+     * @return the generator
+     * @requires termCount > 0 and definitionWords > 0
+     */
+    static GlossaryGenerator fromProperties(int termCount,
+            int definitionWords) {
+        double linkRate = DEFAULT_LINK_RATE;
+        String rate = System.getProperty("glossary.linkRate");
+        if (rate != null) {
+            linkRate = Double.parseDouble(rate);
+        }
+        return new GlossaryGenerator(termCount, definitionWords,
+                Math.max(1, Integer.getInteger("glossary.wordsPerLine",
+                        DEFAULT_WORDS_PER_LINE)),
+                Math.min(1, Math.max(0, linkRate)),
+                Long.getLong("glossary.seed", DEFAULT_SEED));
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the file to write and the number of terms
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("usage: GlossaryGenerator <file> <terms>");
+            System.exit(GlossaryBatch.EXIT_USAGE);
+        }
+        GlossaryGenerator generator = fromProperties(
+                Integer.parseInt(args[1]),
+                Math.max(1, Integer.getInteger("glossary.definitionWords",
+                        DEFAULT_DEFINITION_WORDS)));
+        long bytes = generator.write(Paths.get(args[0]));
+        System.out.println(generator.size() + " terms, " + bytes + " bytes");
+    }
+
+}
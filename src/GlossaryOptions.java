@@ -0,0 +1,400 @@
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * How a glossary is built: the separator characters, the order of the terms,
+ * how many threads render pages, the markup, and what goes with the pages
+ * (index shards, a search index, backlinks, build statistics). Every setting
+ * has a default, so a new {@code GlossaryOptions} builds the plain glossary
+ * on one thread. Each setter returns {@code this}, so settings chain:
+ *
+ * <pre>
+ * new GlossaryOptions().workers(4).shardSize(500).backlinks(true)
+ * </pre>
+ *
+ * {@link #fromProperties} reads every setting from the {@code glossary.*}
+ * system properties, so the command line tools agree on what they mean.
+ * <p>
+ * The options are set on one thread before a build and only read while it
+ * runs. The {@code BuildStats} and {@code SearchIndex}, if any, collect from
+ * every build the options are used for, so each build needs its own.
+ */
+public final class GlossaryOptions {
+
+    /**
+     * Default separator characters.
+     */
+    public static final String SEPARATORS = " \t, ";
+
+    /**
+     * The separator characters.
+     */
+    private SeparatorSet separators = SeparatorSet.of(SEPARATORS);
+
+    /**
+     * The order of the terms.
+     */
+    private Comparator<String> order = new Glossary.CompareStrings();
+
+    /**
+     * Number of pages rendered at once.
+     */
+    private int workers = 1;
+
+    /**
+     * Most terms on one index page, or 0 for no limit.
+     */
+    private int shardSize;
+
+    /**
+     * The markup of the pages.
+     */
+    private GlossaryTemplates templates = GlossaryTemplates.defaults();
+
+    /**
+     * Where the build is timed and counted, or {@code null}.
+     */
+    private BuildStats stats;
+
+    /**
+     * Where the terms are indexed for searching, or {@code null}.
+     */
+    private SearchIndex search;
+
+    /**
+     * Whether the search index is a new one made by these options, which
+     * follows the separators when they are set.
+     */
+    private boolean ownSearch;
+
+    /**
+     * Whether each term page lists the terms linking to it.
+     */
+    private boolean backlinks;
+
+    /**
+     * Whether the pages are read, rendered and written in a pipeline.
+     */
+    private boolean pipeline;
+
+    /**
+     * Number of pages written at once by a pipeline.
+     */
+    private int writers = 1;
+
+    /**
+     * Number of items between two stages of a pipeline.
+     */
+    private int capacity = PagePipeline.DEFAULT_CAPACITY;
+
+    /**
+     * Returns the options given by the system properties:
+     * {@code glossary.workers}, {@code glossary.indexShardSize},
+     * {@code glossary.templates} (a folder of template files),
+     * {@code glossary.locale} (a language tag such as "fr" or "de-CH", to
+     * sort the terms the way readers of that language expect),
+     * {@code glossary.search}, {@code glossary.backlinks},
+     * {@code glossary.pipeline}, {@code glossary.writers} and
+     * {@code glossary.pipelineCapacity}. There are no stats; a search index,
+     * if asked for, is a new one, made again with the separators whenever
+     * they are set, until another search index is set.
+     *
+     * @return the options
+     */
+    public static GlossaryOptions fromProperties() {
+        GlossaryOptions result = new GlossaryOptions()
+                .workers(Integer.getInteger("glossary.workers", 1))
+                .shardSize(Integer.getInteger("glossary.indexShardSize", 0))
+                .backlinks(Boolean.getBoolean("glossary.backlinks"))
+                .pipeline(Boolean.getBoolean("glossary.pipeline"))
+                .writers(Integer.getInteger("glossary.writers", 1))
+                .capacity(Integer.getInteger("glossary.pipelineCapacity",
+                        PagePipeline.DEFAULT_CAPACITY));
+        String templateFolder = System.getProperty("glossary.templates");
+        if (templateFolder != null) {
+            result.templates(
+                    GlossaryTemplates.load(Paths.get(templateFolder)));
+        }
+        String locale = System.getProperty("glossary.locale");
+        if (locale != null) {
+            result.order(
+                    CollationOrder.forLocale(Locale.forLanguageTag(locale)));
+        }
+        if (Boolean.getBoolean("glossary.search")) {
+            result.search(new SearchIndex(result.separators()));
+            result.ownSearch = true;
+        }
+        return result;
+    }
+
+    /**
+     * Sets the separator characters; by default {@value #SEPARATORS}. A
+     * search index made by {@link #fromProperties} is replaced by a new one
+     * with these separators.
+     *
+     * @param separators
+     *            the separator characters
+     * @return this
+     */
+    public GlossaryOptions separators(SeparatorSet separators) {
+        assert separators != null : "Violation of: separators is not null";
+
+        this.separators = separators;
+        if (this.ownSearch) {
+            this.search = new SearchIndex(separators);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the order of the terms; by default {@code String.compareTo}.
+     *
+     * @param order
+     *            the order
+     * @return this
+     */
+    public GlossaryOptions order(Comparator<String> order) {
+        assert order != null : "Violation of: order is not null";
+
+        this.order = order;
+        return this;
+    }
+
+    /**
+     * Sets the number of term pages rendered at once; by default 1. Numbers
+     * below 1 count as 1.
+     *
+     * @param workers
+     *            the number of pages rendered at once
+     * @return this
+     */
+    public GlossaryOptions workers(int workers) {
+        this.workers = Math.max(1, workers);
+        return this;
+    }
+
+    /**
+     * Sets the most terms listed on one index page; by default 0, for no
+     * limit. Numbers below 0 count as 0.
+     *
+     * @param shardSize
+     *            most terms on one index page, or 0 for no limit
+     * @return this
+     */
+    public GlossaryOptions shardSize(int shardSize) {
+        this.shardSize = Math.max(0, shardSize);
+        return this;
+    }
+
+    /**
+     * Sets the markup of the pages; by default
+     * {@link GlossaryTemplates#defaults()}.
+     *
+     * @param templates
+     *            the markup of the pages
+     * @return this
+     */
+    public GlossaryOptions templates(GlossaryTemplates templates) {
+        assert templates != null : "Violation of: templates is not null";
+
+        this.templates = templates;
+        return this;
+    }
+
+    /**
+     * Sets where the build is timed and counted; by default nowhere. Files
+     * and bytes are counted only if the sink came from
+     * {@link BuildStats#count}.
+     *
+     * @param stats
+     *            where the build is timed and counted, or {@code null}
+     * @return this
+     */
+    public GlossaryOptions stats(BuildStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    /**
+     * Sets the search index the terms are added to, and written with the
+     * pages as {@value SearchIndex#FILE_NAME}; by default none.
+     *
+     * @param search
+     *            an empty search index, or {@code null}
+     * @return this
+     */
+    public GlossaryOptions search(SearchIndex search) {
+        this.search = search;
+        this.ownSearch = false;
+        return this;
+    }
+
+    /**
+     * Sets whether each term page lists the terms linking to it; by default
+     * not.
+     *
+     * @param backlinks
+     *            whether pages list their backlinks
+     * @return this
+     */
+    public GlossaryOptions backlinks(boolean backlinks) {
+        this.backlinks = backlinks;
+        return this;
+    }
+
+    /**
+     * Sets whether definitions are read, pages rendered and files written at
+     * the same time, by a {@link PagePipeline}; by default not.
+     *
+     * @param pipeline
+     *            whether to use a pipeline
+     * @return this
+     */
+    public GlossaryOptions pipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+        return this;
+    }
+
+    /**
+     * Sets the number of pages a pipeline writes at once; by default 1.
+     * Numbers below 1 count as 1.
+     *
+     * @param writers
+     *            the number of pages written at once
+     * @return this
+     */
+    public GlossaryOptions writers(int writers) {
+        this.writers = Math.max(1, writers);
+        return this;
+    }
+
+    /**
+     * Sets the number of items between two stages of a pipeline; by default
+     * {@value PagePipeline#DEFAULT_CAPACITY}. Numbers below 1 count as 1.
+     *
+     * @param capacity
+     *            the number of items each queue holds
+     * @return this
+     */
+    public GlossaryOptions capacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        return this;
+    }
+
+    /**
+     * Returns the separator characters.
+     *
+     * @return the separator characters
+     */
+    public SeparatorSet separators() {
+        return this.separators;
+    }
+
+    /**
+     * Returns the order of the terms.
+     *
+     * @return the order
+     */
+    public Comparator<String> order() {
+        return this.order;
+    }
+
+    /**
+     * Returns the number of term pages rendered at once.
+     *
+     * @return the number of workers, at least 1
+     */
+    public int workers() {
+        return this.workers;
+    }
+
+    /**
+     * Returns the most terms on one index page.
+     *
+     * @return most terms on one index page, or 0 for no limit
+     */
+    public int shardSize() {
+        return this.shardSize;
+    }
+
+    /**
+     * Returns the markup of the pages.
+     *
+     * @return the templates
+     */
+    public GlossaryTemplates templates() {
+        return this.templates;
+    }
+
+    /**
+     * Returns where the build is timed and counted.
+     *
+     * @return the stats, or {@code null}
+     */
+    public BuildStats stats() {
+        return this.stats;
+    }
+
+    /**
+     * Returns the search index the terms are added to.
+     *
+     * @return the search index, or {@code null}
+     */
+    public SearchIndex search() {
+        return this.search;
+    }
+
+    /**
+     * Reports whether each term page lists the terms linking to it.
+     *
+     * @return whether pages list their backlinks
+     */
+    public boolean backlinks() {
+        return this.backlinks;
+    }
+
+    /**
+     * Reports whether the pages are written by a {@link PagePipeline}.
+     *
+     * @return whether to use a pipeline
+     */
+    public boolean pipeline() {
+        return this.pipeline;
+    }
+
+    /**
+     * Returns the number of pages a pipeline writes at once.
+     *
+     * @return the number of writers, at least 1
+     */
+    public int writers() {
+        return this.writers;
+    }
+
+    /**
+     * Returns the number of items between two stages of a pipeline.
+     *
+     * @return the capacity, at least 1
+     */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Runs {@code body}, as a phase of the stats if there are any.
+     *
+     * @param name
+     *            name of the phase
+     * @param body
+     *            the work of the phase
+     */
+    void time(String name, Runnable body) {
+        if (this.stats == null) {
+            body.run();
+        } else {
+            this.stats.time(name, body);
+        }
+    }
+
+}
@@ -0,0 +1,422 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import components.map.Map;
+import components.queue.Queue;
+
+/**
+ * Serves a glossary over HTTP, rendering {@code /index.html} and
+ * {@code /<term>.html} on demand instead of writing every page to disk first.
+ * The pages are the ones {@code Glossary.writeGlossary} writes with the same
+ * options: their markup, backlinks, index shards and
+ * {@value SearchIndex#FILE_NAME} too. Rendered pages are kept in a
+ * {@link PageCache}, and the time taken to return cache hits and misses is
+ * recorded separately; both are reported at {@code /stats}.
+ * <p>
+ * The terms and definitions are copied when the server is created, so the
+ * {@code Map} and {@code Queue} it was given can be changed afterwards.
+ */
+public final class GlossaryServer implements AutoCloseable {
+
+    /**
+     * Name of the index page.
+     */
+    private static final String INDEX = "index.html";
+
+    /**
+     * Ending of the name of a term page.
+     */
+    private static final String SUFFIX = ".html";
+
+    /**
+     * HTTP status for a page that was found.
+     */
+    private static final int OK = 200;
+
+    /**
+     * HTTP status for a page that does not exist.
+     */
+    private static final int NOT_FOUND = 404;
+
+    /**
+     * HTTP status for a method other than GET or HEAD.
+     */
+    private static final int BAD_METHOD = 405;
+
+    /**
+     * The terms, in index order.
+     */
+    private final String[] terms;
+
+    /**
+     * The definition of each term.
+     */
+    private final String[] definitions;
+
+    /**
+     * Finds the id of the term a page name is for.
+     */
+    private final TermDictionary dictionary;
+
+    /**
+     * Matcher compiled from all the terms, or {@code null} if there is a
+     * graph.
+     */
+    private final TermMatcher matcher;
+
+    /**
+     * The links of all the terms, if pages list their backlinks; otherwise
+     * {@code null}.
+     */
+    private final LinkGraph graph;
+
+    /**
+     * The separators and markup.
+     */
+    private final GlossaryOptions options;
+
+    /**
+     * The number of each index shard, by page name; empty if the index is
+     * one page.
+     */
+    private final java.util.Map<String, Integer> shards = new HashMap<>();
+
+    /**
+     * The first term of each index shard.
+     */
+    private final List<String> firsts = new ArrayList<>();
+
+    /**
+     * The last term of each index shard.
+     */
+    private final List<String> lasts = new ArrayList<>();
+
+    /**
+     * The search index as UTF-8, or {@code null} if there is none.
+     */
+    private final byte[] search;
+
+    /**
+     * The rendered pages.
+     */
+    private final PageCache cache;
+
+    /**
+     * Time taken to return cached pages.
+     */
+    private final LatencyHistogram hitLatency = new LatencyHistogram();
+
+    /**
+     * Time taken to return pages that had to be rendered.
+     */
+    private final LatencyHistogram missLatency = new LatencyHistogram();
+
+    /**
+     * Buffer each thread renders pages into.
+     */
+    private final ThreadLocal<PageBuffer> buffers = ThreadLocal
+            .withInitial(PageBuffer::new);
+
+    /**
+     * The HTTP server, once started.
+     */
+    private HttpServer server;
+
+    /**
+     * The threads answering requests, once started.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Constructor.
+     *
+     * @param q
+     *            {@code Queue} containing all the terms in alphabetical order
+     * @param map
+     *            {@code Map} containing all terms and their definitions as its
+     *            Keys and Values
+     * @param options
+     *            how the pages are built; the workers scan the definitions
+     *            for backlinks, the search index of the options (if any) gets
+     *            every term, and there are no build stats
+     * @param cacheBytes
+     *            most bytes of rendered pages to keep
+     * @throws IllegalArgumentException
+     *             if a term has the name of a shard of the index
+     * @requires cacheBytes >= 0
+     */
+    public GlossaryServer(Queue<String> q, Map<String, String> map,
+            GlossaryOptions options, long cacheBytes) {
+        assert q != null : "Violation of: q is not null";
+        assert map != null : "Violation of: map is not null";
+        assert options != null : "Violation of: options is not null";
+        assert cacheBytes >= 0 : "Violation of: cacheBytes >= 0";
+
+        this.terms = new String[q.length()];
+        this.definitions = new String[this.terms.length];
+        int n = 0;
+        for (String term : q) {
+            this.terms[n] = term;
+            this.definitions[n] = map.value(term);
+            n++;
+        }
+        GlossaryTemplates.checkShardNames(Arrays.asList(this.terms),
+                options.shardSize());
+        this.dictionary = new TermDictionary(this.terms);
+        this.options = options;
+        SearchIndex index = options.search();
+        if (options.backlinks()) {
+            // the whole graph is needed for the backlinks of any one page
+            this.graph = LinkGraph.build(this.terms, k -> this.definitions[k],
+                    options.separators(), options.workers(), index);
+            this.matcher = null;
+        } else {
+            this.graph = null;
+            this.matcher = new TermMatcher(this.terms);
+            if (index != null) {
+                for (int i = 0; i < this.terms.length; i++) {
+                    index.add(this.terms[i], this.definitions[i]);
+                }
+            }
+        }
+        this.search = index == null ? null
+                : index.toJson().getBytes(StandardCharsets.UTF_8);
+        // the shards as Glossary.writeIndex splits the terms
+        int size = options.shardSize();
+        if (size > 0 && this.terms.length > size) {
+            for (int i = 0; i < this.terms.length; i += size) {
+                int k = this.firsts.size() + 1;
+                this.shards.put(GlossaryTemplates.shardName(k) + SUFFIX, k);
+                this.firsts.add(this.terms[i]);
+                this.lasts.add(this.terms[Math.min(i + size,
+                        this.terms.length) - 1]);
+            }
+        }
+        this.cache = new PageCache(cacheBytes);
+    }
+
+    /**
+     * Starts answering requests on the given port of every local address.
+     *
+     * @param port
+     *            the port, or 0 for any free port
+     * @param workers
+     *            the number of requests answered at once
+     * @requires [the server has not been started] and workers > 0
+     */
+    public void start(int port, int workers) {
+        assert this.server == null : "Violation of: not started";
+        assert workers > 0 : "Violation of: workers > 0";
+
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.executor = WorkerPools.newIoExecutor(workers, "glossary-http");
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Reports the port the server is listening on.
+     *
+     * @return the port
+     * @requires [the server has been started]
+     */
+    public int port() {
+        assert this.server != null : "Violation of: started";
+
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the page with the given name, from the cache if it is there and
+     * otherwise rendering (and caching) it, and records how long that took.
+     *
+     * @param name
+     *            the name of the page, such as {@code index.html}
+     * @return the page as UTF-8, or {@code null} if there is no such page
+     */
+    public byte[] page(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        long start = System.nanoTime();
+        byte[] result = this.cache.get(name);
+        if (result != null) {
+            this.hitLatency.record(System.nanoTime() - start);
+        } else {
+            result = this.render(name);
+            if (result != null) {
+                this.cache.put(name, result);
+                this.missLatency.record(System.nanoTime() - start);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Renders the page with the given name.
+     *
+     * @param name
+     *            the name of the page
+     * @return the page as UTF-8, or {@code null} if there is no such page
+     */
+    private byte[] render(String name) {
+        GlossaryTemplates templates = this.options.templates();
+        PageBuffer page = this.buffers.get();
+        page.clear();
+        boolean found = true;
+        int id = -1;
+        if (name.endsWith(SUFFIX)) {
+            id = this.dictionary.id(name, 0, name.length() - SUFFIX.length());
+        }
+        Integer shard = this.shards.get(name);
+        if (id >= 0) {
+            String term = this.terms[id];
+            String def = this.definitions[id];
+            if (this.graph == null) {
+                SeparatorSet separators = this.options.separators();
+                templates.renderTermPage(term, def,
+                        handler -> this.matcher.scan(def, separators, handler),
+                        page, null);
+            } else {
+                final int k = id;
+                templates.renderTermPage(term, def,
+                        handler -> this.graph.links(k, handler),
+                        this.graph.backlinks(id), page, null);
+            }
+        } else if (name.equals(INDEX)) {
+            if (this.shards.isEmpty()) {
+                templates.renderIndexPage(Arrays.asList(this.terms), page);
+            } else {
+                templates.renderIndexContents(this.firsts, this.lasts, page);
+            }
+        } else if (shard != null) {
+            int size = this.options.shardSize();
+            int from = (shard - 1) * size;
+            int to = Math.min(from + size, this.terms.length);
+            templates.renderIndexShard(
+                    Arrays.asList(this.terms).subList(from, to), shard,
+                    to < this.terms.length, page);
+        } else {
+            found = false;
+        }
+        byte[] result = null;
+        if (found) {
+            result = Arrays.copyOf(page.array(), page.length());
+        } else if (this.search != null && name.equals(SearchIndex.FILE_NAME)) {
+            result = this.search;
+        }
+        return result;
+    }
+
+    /**
+     * Answers one request.
+     *
+     * @param exchange
+     *            the request and its response
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        boolean head = method.equals("HEAD");
+        int status = OK;
+        String type = "text/html; charset=utf-8";
+        byte[] body;
+        if (!head && !method.equals("GET")) {
+            status = BAD_METHOD;
+            type = "text/plain; charset=utf-8";
+            body = "method not allowed\n".getBytes(StandardCharsets.UTF_8);
+        } else {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/stats")) {
+                type = "text/plain; charset=utf-8";
+                body = this.stats().getBytes(StandardCharsets.UTF_8);
+            } else {
+                String name = path.equals("/") ? INDEX : path.substring(1);
+                if (name.equals(SearchIndex.FILE_NAME)) {
+                    type = "application/json; charset=utf-8";
+                }
+                body = this.page(name);
+                if (body == null) {
+                    status = NOT_FOUND;
+                    type = "text/plain; charset=utf-8";
+                    body = "no such page\n".getBytes(StandardCharsets.UTF_8);
+                }
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", type);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (head) {
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                exchange.sendResponseHeaders(status, body.length);
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Reports the cache of rendered pages.
+     *
+     * @return the cache
+     */
+    public PageCache cache() {
+        return this.cache;
+    }
+
+    /**
+     * Reports the time taken to return cached pages.
+     *
+     * @return the latencies of cache hits
+     */
+    public LatencyHistogram hitLatency() {
+        return this.hitLatency;
+    }
+
+    /**
+     * Reports the time taken to return pages that had to be rendered.
+     *
+     * @return the latencies of cache misses
+     */
+    public LatencyHistogram missLatency() {
+        return this.missLatency;
+    }
+
+    /**
+     * Returns a report of the cache and the latencies, one per line.
+     *
+     * @return the report
+     */
+    public String stats() {
+        return "terms: " + this.terms.length + "\n" + "cache: " + this.cache
+                + "\n" + "hit latency: " + this.hitLatency + "\n"
+                + "miss latency: " + this.missLatency + "\n";
+    }
+
+    /**
+     * Stops answering requests. Does nothing if the server was never started.
+     */
+    @Override
+    public void close() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.executor.shutdown();
+        }
+    }
+
+}
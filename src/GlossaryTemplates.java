@@ -0,0 +1,911 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * The markup of a glossary, as ten compiled {@link PageTemplate}s:
+ * <ul>
+ * <li>{@value #TERM_PAGE}, a term page, with holes {@code {{term}}},
+ * {@code {{definition}}} and {@code {{backlinks}}};</li>
+ * <li>{@value #LINK}, a link inside a definition or a backlinks section,
+ * with holes {@code {{term}}} (the page linked to, without {@code .html}) and
+ * {@code {{text}}};</li>
+ * <li>{@value #INDEX_PAGE}, an index page, with holes {@code {{heading}}}
+ * (filled on the shards of a sharded index, empty on other index pages),
+ * {@code {{nav}}} and {@code {{entries}}};</li>
+ * <li>{@value #INDEX_ENTRY}, one entry of an index, with holes
+ * {@code {{term}}} and {@code {{text}}};</li>
+ * <li>{@value #INDEX_NAV}, the navigation of a shard of a sharded index,
+ * which fills {@code {{nav}}}, with holes {@code {{previous}}},
+ * {@code {{contents}}} (the table of contents, without {@code .html}) and
+ * {@code {{next}}};</li>
+ * <li>{@value #INDEX_PREVIOUS} and {@value #INDEX_NEXT}, the links to the
+ * previous and next shard, which fill {@code {{previous}}} and
+ * {@code {{next}}} on shards that have one, with hole {@code {{term}}};</li>
+ * <li>{@value #INDEX_HEADING}, which fills {@code {{heading}}} on a shard,
+ * and {@value #INDEX_RANGE}, the text of an entry of the table of contents,
+ * both with holes {@code {{first}}} and {@code {{last}}}, the first and last
+ * term on the shard;</li>
+ * <li>{@value #BACKLINKS_SECTION}, the list of the terms linking to a term,
+ * which fills {@code {{backlinks}}} on pages that have any, with hole
+ * {@code {{links}}}.</li>
+ * </ul>
+ * The defaults reproduce the markup Glossary has always written. Other
+ * markup can be loaded from a folder holding any of the ten files, so it
+ * can change without recompiling.
+ */
+public final class GlossaryTemplates {
+
+    /**
+     * File name of the term page template.
+     */
+    public static final String TERM_PAGE = "term-page.html";
+
+    /**
+     * File name of the link template.
+     */
+    public static final String LINK = "link.html";
+
+    /**
+     * File name of the index page template.
+     */
+    public static final String INDEX_PAGE = "index-page.html";
+
+    /**
+     * File name of the index entry template.
+     */
+    public static final String INDEX_ENTRY = "index-entry.html";
+
+    /**
+     * File name of the index navigation template.
+     */
+    public static final String INDEX_NAV = "index-nav.html";
+
+    /**
+     * File name of the backlinks template.
+     */
+    public static final String BACKLINKS_SECTION = "backlinks.html";
+
+    /**
+     * File name of the template of the link to the previous shard.
+     */
+    public static final String INDEX_PREVIOUS = "index-previous.html";
+
+    /**
+     * File name of the template of the link to the next shard.
+     */
+    public static final String INDEX_NEXT = "index-next.html";
+
+    /**
+     * File name of the shard heading template.
+     */
+    public static final String INDEX_HEADING = "index-heading.html";
+
+    /**
+     * File name of the template of a range of terms in the table of contents.
+     */
+    public static final String INDEX_RANGE = "index-range.html";
+
+    /**
+     * File names of the templates, in the order of their texts.
+     */
+    private static final String[] NAMES = { TERM_PAGE, LINK, INDEX_PAGE,
+            INDEX_ENTRY, INDEX_NAV, BACKLINKS_SECTION, INDEX_PREVIOUS,
+            INDEX_NEXT, INDEX_HEADING, INDEX_RANGE };
+
+    /**
+     * Holes of the term page template.
+     */
+    private static final String[] TERM_PAGE_HOLES = { "term", "definition",
+            "backlinks" };
+
+    /**
+     * Holes of the link and index entry templates.
+     */
+    private static final String[] LINK_HOLES = { "term", "text" };
+
+    /**
+     * Holes of the index page template.
+     */
+    private static final String[] INDEX_PAGE_HOLES = { "heading", "nav",
+            "entries" };
+
+    /**
+     * Holes of the index navigation template.
+     */
+    private static final String[] INDEX_NAV_HOLES = { "previous", "contents",
+            "next" };
+
+    /**
+     * Holes of the previous and next shard templates.
+     */
+    private static final String[] SHARD_LINK_HOLES = { "term" };
+
+    /**
+     * Holes of the shard heading and range templates.
+     */
+    private static final String[] RANGE_HOLES = { "first", "last" };
+
+    /**
+     * Holes of the backlinks template.
+     */
+    private static final String[] BACKLINKS_HOLES = { "links" };
+
+    /**
+     * The {@code {{term}}} hole of the term page, link and entry templates.
+     */
+    private static final int TERM = 0;
+
+    /**
+     * The {@code {{definition}}} hole of the term page template.
+     */
+    private static final int DEFINITION = 1;
+
+    /**
+     * The {@code {{backlinks}}} hole of the term page template.
+     */
+    private static final int BACKLINKS = 2;
+
+    /**
+     * The {@code {{text}}} hole of the link and entry templates.
+     */
+    private static final int TEXT = 1;
+
+    /**
+     * The {@code {{heading}}} hole of the index page template.
+     */
+    private static final int HEADING = 0;
+
+    /**
+     * The {@code {{nav}}} hole of the index page template.
+     */
+    private static final int NAV = 1;
+
+    /**
+     * The {@code {{entries}}} hole of the index page template.
+     */
+    private static final int ENTRIES = 2;
+
+    /**
+     * The {@code {{previous}}} hole of the index navigation template.
+     */
+    private static final int PREVIOUS = 0;
+
+    /**
+     * The {@code {{contents}}} hole of the index navigation template.
+     */
+    private static final int CONTENTS = 1;
+
+    /**
+     * The {@code {{first}}} hole of the shard heading and range templates.
+     */
+    private static final int FIRST = 0;
+
+    /**
+     * Name of the index page, or of the table of contents of a sharded
+     * index, without {@code .html}.
+     */
+    private static final String INDEX = "index";
+
+    /**
+     * Start of the page name of each shard of a sharded index.
+     */
+    private static final String SHARD_PREFIX = "index-";
+
+    /**
+     * Separates the links of the backlinks section.
+     */
+    private static final String BACKLINK_SEPARATOR = ", ";
+
+    /**
+     * The default markup.
+     */
+    private static final GlossaryTemplates DEFAULTS = defaultTemplates();
+
+    /**
+     * The term page template.
+     */
+    private final PageTemplate termPage;
+
+    /**
+     * The link template.
+     */
+    private final PageTemplate link;
+
+    /**
+     * The index page template.
+     */
+    private final PageTemplate indexPage;
+
+    /**
+     * The index entry template.
+     */
+    private final PageTemplate indexEntry;
+
+    /**
+     * The index navigation template.
+     */
+    private final PageTemplate indexNav;
+
+    /**
+     * The backlinks template.
+     */
+    private final PageTemplate backlinks;
+
+    /**
+     * The template of the link to the previous shard.
+     */
+    private final PageTemplate indexPrevious;
+
+    /**
+     * The template of the link to the next shard.
+     */
+    private final PageTemplate indexNext;
+
+    /**
+     * The shard heading template.
+     */
+    private final PageTemplate indexHeading;
+
+    /**
+     * The template of a range of terms in the table of contents.
+     */
+    private final PageTemplate indexRange;
+
+    /**
+     * Fingerprint of the texts of the ten templates.
+     */
+    private final long fingerprint;
+
+    /**
+     * Constructor.
+     *
+     * @param texts
+     *            the texts of the templates, in the order of {@code NAMES}
+     */
+    private GlossaryTemplates(String[] texts) {
+        int i = 0;
+        this.termPage = PageTemplate.compile(texts[i++], TERM_PAGE_HOLES);
+        this.link = PageTemplate.compile(texts[i++], LINK_HOLES);
+        this.indexPage = PageTemplate.compile(texts[i++], INDEX_PAGE_HOLES);
+        this.indexEntry = PageTemplate.compile(texts[i++], LINK_HOLES);
+        this.indexNav = PageTemplate.compile(texts[i++], INDEX_NAV_HOLES);
+        this.backlinks = PageTemplate.compile(texts[i++], BACKLINKS_HOLES);
+        this.indexPrevious = PageTemplate.compile(texts[i++],
+                SHARD_LINK_HOLES);
+        this.indexNext = PageTemplate.compile(texts[i++], SHARD_LINK_HOLES);
+        this.indexHeading = PageTemplate.compile(texts[i++], RANGE_HOLES);
+        this.indexRange = PageTemplate.compile(texts[i++], RANGE_HOLES);
+        this.fingerprint = fingerprint(texts);
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the given texts, each preceded by its
+     * length so that moving text from one to the next changes the hash.
+     *
+     * @param texts
+     *            the texts
+     * @return the hash of texts
+     */
+    private static long fingerprint(String... texts) {
+        final long prime = 0x100000001B3L;
+        long result = 0xCBF29CE484222325L;
+        for (String text : texts) {
+            result = (result ^ text.length()) * prime;
+            for (int i = 0; i < text.length(); i++) {
+                result = (result ^ text.charAt(i)) * prime;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the default texts, in the order of {@code NAMES}.
+     *
+     * @return the texts of the default templates
+     */
+    private static String[] defaultTexts() {
+        final String eol = System.lineSeparator();
+        String termPage = "<html>" + eol //
+                + "  <head>" + eol //
+                + "    <title>{{term}}</title>" + eol //
+                + "  </head>" + eol //
+                + "  <body>" + eol //
+                // heading has to be bold, in italics, and red
+                + "    <h2><b><i><font color=\"red\">{{term}}"
+                + "</font></i></b></h2>" + eol //
+                + "    <blockquote>{{definition}}</blockquote>" + eol //
+                + "{{backlinks}}" //
+                + "    <hr />" + eol //
+                + "    <p>Return to <a href=\"index.html\">index</a><p>" + eol
+                + "  </body>" + eol //
+                + "</html>" + eol;
+        String link = "<a href=\"{{term}}.html\">{{text}}</a>";
+        String indexPage = "<html>" + eol //
+                + "  <head>" + eol //
+                + "    <title>Glossary</title>" + eol //
+                + "  </head>" + eol //
+                + "  <body>" + eol //
+                + "    <h2>Glossary</h2>" + eol //
+                + "    <hr />" + eol //
+                + "    <h3>Index{{heading}}</h3>" + eol //
+                + "{{nav}}" //
+                + "    <ul>" + eol //
+                + "{{entries}}" //
+                + "    </ul>" + eol //
+                + "  </body>" + eol //
+                + "</html>" + eol;
+        String indexEntry = "      <li><a href=\"{{term}}.html\">{{text}}</a>"
+                + "</li>" + eol;
+        String indexNav = "    <p>{{previous}}<a href=\"{{contents}}.html\">"
+                + "Contents</a>{{next}}</p>" + eol;
+        String backlinks = "    <p>What links here: {{links}}</p>" + eol;
+        String indexPrevious = "<a href=\"{{term}}.html\">Previous</a> | ";
+        String indexNext = " | <a href=\"{{term}}.html\">Next</a>";
+        String indexHeading = ": {{first}} &ndash; {{last}}";
+        String indexRange = "{{first}} &ndash; {{last}}";
+        return new String[] { termPage, link, indexPage, indexEntry,
+                indexNav, backlinks, indexPrevious, indexNext, indexHeading,
+                indexRange };
+    }
+
+    /**
+     * Compiles the default templates.
+     *
+     * @return the default markup
+     */
+    private static GlossaryTemplates defaultTemplates() {
+        return new GlossaryTemplates(defaultTexts());
+    }
+
+    /**
+     * Returns the default markup, the one Glossary has always written.
+     *
+     * @return the default templates
+     */
+    public static GlossaryTemplates defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Loads the templates in the given folder; any of the ten files that is
+     * missing keeps its default.
+     *
+     * @param folder
+     *            the folder holding the templates
+     * @return the templates
+     * @throws IllegalArgumentException
+     *             if a template uses a hole it does not have
+     */
+    public static GlossaryTemplates load(Path folder) {
+        assert folder != null : "Violation of: folder is not null";
+
+        String[] t = defaultTexts();
+        try {
+            for (int i = 0; i < NAMES.length; i++) {
+                Path file = folder.resolve(NAMES[i]);
+                if (Files.exists(file)) {
+                    t[i] = new String(Files.readAllBytes(file),
+                            StandardCharsets.UTF_8);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new GlossaryTemplates(t);
+    }
+
+    /**
+     * Returns a fingerprint of the markup, so that a build can tell whether
+     * pages were written with the same markup: equal texts give equal
+     * fingerprints, and different texts almost surely different ones.
+     *
+     * @return the fingerprint
+     */
+    public long fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Copies a definition into an {@code Output}, turning each match reported
+     * to it into a link.
+     */
+    private final class LinkWriter implements TermMatcher.MatchHandler {
+
+        /**
+         * The definition being linked.
+         */
+        private final CharSequence def;
+
+        /**
+         * Where the linked definition goes.
+         */
+        private final PageTemplate.Output out;
+
+        /**
+         * Receives the id of each linked term, or {@code null}.
+         */
+        private final IntConsumer links;
+
+        /**
+         * Index of the first character of def not yet copied to out.
+         */
+        private int copied;
+
+        /**
+         * Constructor.
+         *
+         * @param def
+         *            the definition being linked
+         * @param out
+         *            where the linked definition goes
+         * @param links
+         *            receives the id of each linked term, or {@code null}
+         */
+        private LinkWriter(CharSequence def, PageTemplate.Output out,
+                IntConsumer links) {
+            this.def = def;
+            this.out = out;
+            this.links = links;
+            this.copied = 0;
+        }
+
+        @Override
+        public void match(int start, int end, int termId) {
+            // definition contains another term, so link it in place
+            this.out.append(this.def, this.copied, start);
+            PageTemplate t = GlossaryTemplates.this.link;
+            for (int i = 0; i < t.segments(); i++) {
+                if (t.hole(i) < 0) {
+                    this.out.appendLiteral(t, i);
+                } else {
+                    // both holes are the matched text, which is the term
+                    this.out.append(this.def, start, end);
+                }
+            }
+            this.copied = end;
+            if (this.links != null) {
+                this.links.accept(termId);
+            }
+        }
+
+        /**
+         * Copies the rest of the definition after the last link.
+         */
+        private void finish() {
+            this.out.append(this.def, this.copied, this.def.length());
+            this.copied = this.def.length();
+        }
+    }
+
+    /**
+     * Appends a definition to the given {@code Output}, turning every match
+     * that {@code matches} reports into a link.
+     *
+     * @param def
+     *            the definition
+     * @param matches
+     *            reports the matches in def, in order and without overlaps,
+     *            to the handler it is given
+     * @param out
+     *            where the linked definition goes
+     * @param links
+     *            receives the id of each linked term; may be {@code null}
+     */
+    void appendLinkedDefinition(CharSequence def,
+            Consumer<TermMatcher.MatchHandler> matches,
+            PageTemplate.Output out, IntConsumer links) {
+        LinkWriter writer = new LinkWriter(def, out, links);
+        matches.accept(writer);
+        writer.finish();
+    }
+
+    /**
+     * Appends the page of the given term to the given {@code Output}.
+     *
+     * @param term
+     *            the term the page is for
+     * @param def
+     *            the definition of the term
+     * @param matches
+     *            reports the matches in def, in order and without overlaps,
+     *            to the handler it is given
+     * @param out
+     *            where the page goes
+     * @param links
+     *            receives the id of each linked term; may be {@code null}
+     */
+    void renderTermPage(String term, CharSequence def,
+            Consumer<TermMatcher.MatchHandler> matches,
+            PageTemplate.Output out, IntConsumer links) {
+        this.renderTermPage(term, def, matches, Collections.emptyList(), out,
+                links);
+    }
+
+    /**
+     * Appends the page of the given term to the given {@code Output}, with a
+     * backlinks section listing the given terms if there are any.
+     *
+     * @param term
+     *            the term the page is for
+     * @param def
+     *            the definition of the term
+     * @param matches
+     *            reports the matches in def, in order and without overlaps,
+     *            to the handler it is given
+     * @param backlinks
+     *            the terms whose definitions link to term
+     * @param out
+     *            where the page goes
+     * @param links
+     *            receives the id of each linked term; may be {@code null}
+     */
+    void renderTermPage(String term, CharSequence def,
+            Consumer<TermMatcher.MatchHandler> matches, List<String> backlinks,
+            PageTemplate.Output out, IntConsumer links) {
+        PageTemplate t = this.termPage;
+        for (int i = 0; i < t.segments(); i++) {
+            int hole = t.hole(i);
+            if (hole < 0) {
+                out.appendLiteral(t, i);
+            } else if (hole == TERM) {
+                out.append(term);
+            } else if (hole == DEFINITION) {
+                this.appendLinkedDefinition(def, matches, out, links);
+            } else {
+                assert hole == BACKLINKS;
+                if (!backlinks.isEmpty()) {
+                    this.appendBacklinks(backlinks, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the backlinks section listing the given terms.
+     *
+     * @param backlinks
+     *            the terms linking to the page
+     * @param out
+     *            where it goes
+     */
+    private void appendBacklinks(List<String> backlinks,
+            PageTemplate.Output out) {
+        PageTemplate t = this.backlinks;
+        for (int i = 0; i < t.segments(); i++) {
+            if (t.hole(i) < 0) {
+                out.appendLiteral(t, i);
+            } else {
+                for (int k = 0; k < backlinks.size(); k++) {
+                    if (k > 0) {
+                        out.append(BACKLINK_SEPARATOR);
+                    }
+                    String source = backlinks.get(k);
+                    appendLink(this.link, source, source, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the given template with both its holes filled.
+     *
+     * @param t
+     *            a link or entry template
+     * @param term
+     *            fills {@code {{term}}}
+     * @param text
+     *            fills {@code {{text}}}
+     * @param out
+     *            where it goes
+     */
+    private static void appendLink(PageTemplate t, CharSequence term,
+            CharSequence text, PageTemplate.Output out) {
+        for (int i = 0; i < t.segments(); i++) {
+            int hole = t.hole(i);
+            if (hole < 0) {
+                out.appendLiteral(t, i);
+            } else if (hole == TERM) {
+                out.append(term);
+            } else {
+                assert hole == TEXT;
+                out.append(text);
+            }
+        }
+    }
+
+    /**
+     * Appends a range of terms from the given shard heading or range
+     * template.
+     *
+     * @param t
+     *            the template
+     * @param first
+     *            fills {@code {{first}}}
+     * @param last
+     *            fills {@code {{last}}}
+     * @param out
+     *            where it goes
+     */
+    private static void appendRange(PageTemplate t, CharSequence first,
+            CharSequence last, PageTemplate.Output out) {
+        for (int i = 0; i < t.segments(); i++) {
+            int hole = t.hole(i);
+            if (hole < 0) {
+                out.appendLiteral(t, i);
+            } else if (hole == FIRST) {
+                out.append(first);
+            } else {
+                out.append(last);
+            }
+        }
+    }
+
+    /**
+     * Appends segments {@code from} up to (not including) {@code to} of the
+     * index page, filling its holes with the heading and navigation of the
+     * given shard, if any, and with entries.
+     *
+     * @param from
+     *            the first segment
+     * @param to
+     *            the segment after the last
+     * @param shard
+     *            the terms on the shard, in order, or {@code null} if the
+     *            page is not a shard, which leaves its heading and navigation
+     *            empty
+     * @param number
+     *            the number of the shard, from 1
+     * @param more
+     *            whether another shard follows this one
+     * @param terms
+     *            the page each entry links to (without {@code .html})
+     * @param texts
+     *            the text of each entry, or {@code null} to use the terms
+     * @param out
+     *            where the segments go
+     */
+    private void appendIndex(int from, int to, List<String> shard,
+            int number, boolean more, Iterable<String> terms,
+            List<String> texts, PageTemplate.Output out) {
+        PageTemplate t = this.indexPage;
+        for (int i = from; i < to; i++) {
+            int hole = t.hole(i);
+            if (hole < 0) {
+                out.appendLiteral(t, i);
+            } else if (hole == HEADING) {
+                if (shard != null) {
+                    appendRange(this.indexHeading, shard.get(0),
+                            shard.get(shard.size() - 1), out);
+                }
+            } else if (hole == NAV) {
+                if (shard != null) {
+                    this.appendNav(number, more, out);
+                }
+            } else {
+                assert hole == ENTRIES;
+                int k = 0;
+                for (String term : terms) {
+                    appendLink(this.indexEntry, term,
+                            texts == null ? term : texts.get(k), out);
+                    k++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the navigation of a shard of a sharded index.
+     *
+     * @param number
+     *            the number of the shard, from 1
+     * @param more
+     *            whether another shard follows this one
+     * @param out
+     *            where it goes
+     */
+    private void appendNav(int number, boolean more,
+            PageTemplate.Output out) {
+        PageTemplate t = this.indexNav;
+        for (int i = 0; i < t.segments(); i++) {
+            int hole = t.hole(i);
+            if (hole < 0) {
+                out.appendLiteral(t, i);
+            } else if (hole == PREVIOUS) {
+                if (number > 1) {
+                    appendLink(this.indexPrevious, shardName(number - 1),
+                            null, out);
+                }
+            } else if (hole == CONTENTS) {
+                out.append(INDEX);
+            } else if (more) {
+                appendLink(this.indexNext, shardName(number + 1), null, out);
+            }
+        }
+    }
+
+    /**
+     * Appends the index page listing the given terms.
+     *
+     * @param terms
+     *            the terms, in the order they are listed
+     * @param out
+     *            where the page goes
+     */
+    void renderIndexPage(Iterable<String> terms, PageTemplate.Output out) {
+        this.appendIndex(0, this.indexPage.segments(), null, 0, false, terms,
+                null, out);
+    }
+
+    /**
+     * Appends the part of the index page before its navigation: everything
+     * {@code Glossary.printIndexHeaderHTMLTags} prints.
+     *
+     * @param out
+     *            where it goes
+     */
+    void renderIndexHead(PageTemplate.Output out) {
+        this.appendIndex(0, this.headEnd(), null, 0, false, null, null, out);
+    }
+
+    /**
+     * Returns where the part of the index page before the list of terms ends:
+     * at the navigation, or the entries if there is no navigation.
+     *
+     * @return the index of the first segment after the head
+     */
+    private int headEnd() {
+        int result = this.indexPage.indexOf(NAV);
+        if (result < 0) {
+            result = Math.max(0, this.indexPage.indexOf(ENTRIES));
+        }
+        return result;
+    }
+
+    /**
+     * Appends the part of the index page after its navigation, listing the
+     * given terms: everything
+     * {@code Glossary.printIndexTermsListAndClosingTags} prints.
+     *
+     * @param terms
+     *            the terms, in the order they are listed
+     * @param out
+     *            where it goes
+     */
+    void renderIndexList(Iterable<String> terms, PageTemplate.Output out) {
+        int from = this.headEnd();
+        if (from < this.indexPage.segments()
+                && this.indexPage.hole(from) == NAV) {
+            from++;
+        }
+        this.appendIndex(from, this.indexPage.segments(), null, 0, false,
+                terms, null, out);
+    }
+
+    /**
+     * Returns the page name, without {@code .html}, of the given shard of the
+     * index.
+     *
+     * @param shard
+     *            the number of the shard, from 1
+     * @return the page name
+     */
+    static String shardName(int shard) {
+        return SHARD_PREFIX + shard;
+    }
+
+    /**
+     * Returns the number of the shard whose page has the given name, without
+     * {@code .html}, or 0 if no shard has that name.
+     *
+     * @param name
+     *            the page name
+     * @return the number of the shard, from 1, or 0
+     */
+    private static int shardNumber(String name) {
+        int result = 0;
+        int start = SHARD_PREFIX.length();
+        // a shard number has no leading zero and fits in an int
+        final int maxDigits = 9;
+        if (name.startsWith(SHARD_PREFIX) && name.length() > start
+                && name.length() <= start + maxDigits
+                && name.charAt(start) != '0') {
+            int i = start;
+            while (i < name.length() && name.charAt(i) >= '0'
+                    && name.charAt(i) <= '9') {
+                result = result * 10 + (name.charAt(i) - '0');
+                i++;
+            }
+            if (i < name.length()) {
+                result = 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that no term has the same page name as a shard of the index of
+     * the given terms, as both pages would be written to the same file.
+     *
+     * @param terms
+     *            the terms
+     * @param shardSize
+     *            most terms on one index page, or 0 for no limit
+     * @throws IllegalArgumentException
+     *             if a term has the name of a shard
+     * @requires shardSize >= 0
+     */
+    static void checkShardNames(Iterable<String> terms, int shardSize) {
+        int count = 0;
+        String clash = null;
+        int lowest = Integer.MAX_VALUE;
+        for (String term : terms) {
+            count++;
+            int k = shardNumber(term);
+            if (k > 0 && k < lowest) {
+                lowest = k;
+                clash = term;
+            }
+        }
+        if (clash != null && shardSize > 0 && count > shardSize
+                && lowest <= (count - 1) / shardSize + 1) {
+            throw new IllegalArgumentException("the term " + clash
+                    + " has the same page as a shard of the index");
+        }
+    }
+
+    /**
+     * Appends one shard of a sharded index: the given terms, with links to
+     * the neighbouring shards and to the table of contents.
+     *
+     * @param terms
+     *            the terms on the shard, in order
+     * @param shard
+     *            the number of the shard, from 1
+     * @param more
+     *            whether another shard follows this one
+     * @param out
+     *            where the page goes
+     * @requires |terms| > 0
+     */
+    void renderIndexShard(List<String> terms, int shard, boolean more,
+            PageTemplate.Output out) {
+        this.appendIndex(0, this.indexPage.segments(), terms, shard, more,
+                terms, null, out);
+    }
+
+    /**
+     * Appends the table of contents of a sharded index: a link to each shard,
+     * showing the first and last term on it.
+     *
+     * @param firsts
+     *            the first term on each shard, in order
+     * @param lasts
+     *            the last term on each shard, in order
+     * @param out
+     *            where the page goes
+     * @requires |firsts| = |lasts|
+     */
+    void renderIndexContents(List<String> firsts, List<String> lasts,
+            PageTemplate.Output out) {
+        List<String> shards = new ArrayList<>();
+        List<String> ranges = new ArrayList<>();
+        for (int i = 0; i < firsts.size(); i++) {
+            shards.add(shardName(i + 1));
+            StringBuilder range = new StringBuilder();
+            appendRange(this.indexRange, firsts.get(i), lasts.get(i),
+                    new PageTemplate.CharOutput(range));
+            ranges.add(range.toString());
+        }
+        this.appendIndex(0, this.indexPage.segments(), null, 0, false, shards,
+                ranges, out);
+    }
+
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Keeps a glossary output folder up to date with its input file, rebuilding
+ * it with {@link IncrementalBuild} each time the file changes, with the same
+ * sink and options every time. Editors often
+ * save a file several times in quick succession (or write it in pieces), so
+ * a rebuild starts only once the file has been quiet for the debounce
+ * interval. Only the pages affected by the change are rewritten.
+ */
+public final class GlossaryWatcher implements AutoCloseable {
+
+    /**
+     * Receives the outcome of each rebuild.
+     */
+    public interface Listener {
+
+        /**
+         * Called after a successful rebuild.
+         *
+         * @param result
+         *            what the build did
+         * @param nanos
+         *            how long parsing and building took
+         */
+        void rebuilt(IncrementalBuild.Result result, long nanos);
+
+        /**
+         * Called when a rebuild fails; watching goes on.
+         *
+         * @param e
+         *            why it failed
+         */
+        void failed(RuntimeException e);
+    }
+
+    /**
+     * The input file.
+     */
+    private final Path input;
+
+    /**
+     * Name of the output folder.
+     */
+    private final String folder;
+
+    /**
+     * Where the pages are stored.
+     */
+    private final PageSink sink;
+
+    /**
+     * How the glossary is built.
+     */
+    private final GlossaryOptions options;
+
+    /**
+     * How long the file has to be quiet before a rebuild, in milliseconds.
+     */
+    private final long debounceMillis;
+
+    /**
+     * Watches the folder holding the input file.
+     */
+    private final WatchService watcher;
+
+    /**
+     * Constructor.
+     *
+     * @param input
+     *            the input file
+     * @param folder
+     *            name of the output folder
+     * @param sink
+     *            where the pages are stored, which must write them into
+     *            folder; the caller closes it
+     * @param options
+     *            how the glossary is built
+     * @param debounceMillis
+     *            how long the file has to be quiet before a rebuild
+     * @requires debounceMillis >= 0
+     */
+    public GlossaryWatcher(Path input, String folder, PageSink sink,
+            GlossaryOptions options, long debounceMillis) {
+        assert input != null : "Violation of: input is not null";
+        assert folder != null : "Violation of: folder is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert options != null : "Violation of: options is not null";
+        assert debounceMillis >= 0 : "Violation of: debounceMillis >= 0";
+
+        this.input = input.toAbsolutePath();
+        this.folder = folder;
+        this.sink = sink;
+        this.options = options;
+        this.debounceMillis = debounceMillis;
+        try {
+            this.watcher = FileSystems.getDefault().newWatchService();
+            /*
+             * the folder is watched rather than the file, so that editors that
+             * save by writing a new file and renaming it over the old one are
+             * noticed too
+             */
+            this.input.getParent().register(this.watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses the input file and brings the output folder up to date with it.
+     *
+     * @return what the build did
+     */
+    public IncrementalBuild.Result rebuild() {
+        Map<String, String> map = new Map1L<>();
+        Glossary.getTermsAndDefinitions(this.input, map);
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, map, this.options.order());
+        return IncrementalBuild.build(q, map, this.folder, this.sink,
+                this.options);
+    }
+
+    /**
+     * Waits for the input file to change, rebuilding after each burst of
+     * changes, until this watcher is closed or the thread is interrupted.
+     *
+     * @param listener
+     *            receives the outcome of each rebuild
+     */
+    public void run(Listener listener) {
+        assert listener != null : "Violation of: listener is not null";
+
+        boolean running = true;
+        while (running) {
+            try {
+                WatchKey key = this.watcher.take();
+                boolean changed = this.changed(key);
+                // wait until no more changes come for the debounce interval
+                key = this.watcher.poll(this.debounceMillis,
+                        TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    changed |= this.changed(key);
+                    key = this.watcher.poll(this.debounceMillis,
+                            TimeUnit.MILLISECONDS);
+                }
+                if (changed) {
+                    long start = System.nanoTime();
+                    try {
+                        IncrementalBuild.Result result = this.rebuild();
+                        listener.rebuilt(result, System.nanoTime() - start);
+                    } catch (RuntimeException e) {
+                        listener.failed(e);
+                    }
+                }
+            } catch (ClosedWatchServiceException e) {
+                running = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Reports whether the given key's events include the input file, and
+     * readies the key for further events.
+     *
+     * @param key
+     *            the signalled key
+     * @return true iff the input file was created or modified
+     */
+    private boolean changed(WatchKey key) {
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, so the file may well have changed
+                result = true;
+            } else if (this.input.getFileName().equals(event.context())) {
+                result = true;
+            }
+        }
+        key.reset();
+        return result;
+    }
+
+    /**
+     * Stops watching; a call to {@code run} in progress returns.
+     */
+    @Override
+    public void close() {
+        try {
+            this.watcher.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,287 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * {@code PageSink} that passes every page on to another sink as it is and
+ * also stores a gzip-compressed copy next to it, under the same name with
+ * {@code .gz} added, so a static web server can send the compressed bytes
+ * without compressing each page per request.
+ * <p>
+ * The copies are compressed on a pool of their own while the caller goes on
+ * rendering. At most a bounded number of pages wait to be compressed; past
+ * that, {@code write} blocks until the pool catches up. Each pool thread keeps
+ * one {@code Deflater}, reset for every page. The first failure to compress
+ * or store a copy is thrown from {@link #flush} or {@link #close}.
+ */
+public final class GzipPageSink implements PageSink {
+
+    /**
+     * Suffix added to the name of a compressed copy.
+     */
+    public static final String SUFFIX = ".gz";
+
+    /**
+     * Gzip header: magic number, deflate, no flags, no time, no extra flags,
+     * unknown operating system.
+     */
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED,
+            0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    /**
+     * Length of the gzip trailer: CRC-32 and size, both little-endian.
+     */
+    private static final int TRAILER = 8;
+
+    /**
+     * Pages that may wait to be compressed for each compressing thread.
+     */
+    private static final int QUEUED_PER_WORKER = 2;
+
+    /**
+     * The state of one compressing thread.
+     */
+    private static final class Compressor {
+
+        /**
+         * Compresses pages as raw deflate data.
+         */
+        private final Deflater deflater;
+
+        /**
+         * Checksum of the page being compressed.
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Buffer the compressed copy is built in.
+         */
+        private byte[] out = new byte[1 << 13];
+
+        /**
+         * Constructor.
+         *
+         * @param level
+         *            the compression level
+         */
+        private Compressor(int level) {
+            this.deflater = new Deflater(level, true);
+        }
+
+        /**
+         * Compresses the given page into {@code out} in gzip format.
+         *
+         * @param page
+         *            the page
+         * @return the number of bytes of {@code out} in use
+         */
+        private int compress(byte[] page) {
+            this.deflater.reset();
+            this.deflater.setInput(page);
+            this.deflater.finish();
+            System.arraycopy(HEADER, 0, this.out, 0, HEADER.length);
+            int n = HEADER.length;
+            while (!this.deflater.finished()) {
+                if (n == this.out.length) {
+                    this.out = Arrays.copyOf(this.out, 2 * n);
+                }
+                n += this.deflater.deflate(this.out, n, this.out.length - n);
+            }
+            if (n + TRAILER > this.out.length) {
+                this.out = Arrays.copyOf(this.out, n + TRAILER);
+            }
+            this.crc.reset();
+            this.crc.update(page);
+            n = putInt(this.out, n, (int) this.crc.getValue());
+            return putInt(this.out, n, page.length);
+        }
+    }
+
+    /**
+     * Where the pages and their compressed copies go.
+     */
+    private final PageSink sink;
+
+    /**
+     * The compressing threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * One permit for each page that may wait to be compressed.
+     */
+    private final Semaphore queued;
+
+    /**
+     * The number of permits of {@code queued}.
+     */
+    private final int permits;
+
+    /**
+     * The state of each compressing thread.
+     */
+    private final ThreadLocal<Compressor> compressors;
+
+    /**
+     * Every {@code Compressor} made, so their {@code Deflater}s can be ended.
+     */
+    private final List<Compressor> made = new ArrayList<>();
+
+    /**
+     * The first failure to compress or store a copy.
+     */
+    private final AtomicReference<RuntimeException> failure =
+            new AtomicReference<>();
+
+    /**
+     * Constructor, compressing with {@code Deflater.BEST_COMPRESSION}, since
+     * each page is compressed once and served many times.
+     *
+     * @param sink
+     *            where the pages and their compressed copies go
+     * @param workers
+     *            the number of pages compressed at once
+     * @requires workers > 0
+     */
+    public GzipPageSink(PageSink sink, int workers) {
+        this(sink, workers, Deflater.BEST_COMPRESSION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sink
+     *            where the pages and their compressed copies go
+     * @param workers
+     *            the number of pages compressed at once
+     * @param level
+     *            the compression level, 0 to 9
+     * @requires workers > 0 and 0 <= level <= 9
+     */
+    public GzipPageSink(PageSink sink, int workers, int level) {
+        assert sink != null : "Violation of: sink is not null";
+        assert workers > 0 : "Violation of: workers > 0";
+        assert Deflater.NO_COMPRESSION <= level
+                && level <= Deflater.BEST_COMPRESSION : "Violation of: "
+                        + "0 <= level <= 9";
+
+        this.sink = sink;
+        this.executor = WorkerPools.newCpuExecutor(workers, "glossary-gzip");
+        this.permits = workers * QUEUED_PER_WORKER;
+        this.queued = new Semaphore(this.permits);
+        this.compressors = ThreadLocal.withInitial(() -> {
+            Compressor c = new Compressor(level);
+            synchronized (this.made) {
+                this.made.add(c);
+            }
+            return c;
+        });
+    }
+
+    /**
+     * Writes {@code value} into {@code b} at {@code at}, little-endian.
+     *
+     * @param b
+     *            the buffer
+     * @param at
+     *            where the value goes
+     * @param value
+     *            the value
+     * @return the index just past the value
+     */
+    private static int putInt(byte[] b, int at, int value) {
+        for (int i = 0; i < Integer.BYTES; i++) {
+            b[at + i] = (byte) (value >>> (i * Byte.SIZE));
+        }
+        return at + Integer.BYTES;
+    }
+
+    @Override
+    public void write(String name, byte[] bytes, int offset, int length) {
+        assert name != null : "Violation of: name is not null";
+        assert bytes != null : "Violation of: bytes is not null";
+
+        this.sink.write(name, bytes, offset, length);
+        // the caller may reuse its buffer as soon as this returns
+        byte[] page = Arrays.copyOfRange(bytes, offset, offset + length);
+        this.queued.acquireUninterruptibly();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    Compressor c = this.compressors.get();
+                    int n = c.compress(page);
+                    this.sink.write(name + SUFFIX, c.out, 0, n);
+                } catch (RuntimeException e) {
+                    this.failure.compareAndSet(null, e);
+                } finally {
+                    this.queued.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            this.queued.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for every compressed copy written so far to be stored, then
+     * flushes the sink the pages go to.
+     *
+     * @throws RuntimeException
+     *             the first failure to compress or store a copy since the
+     *             last flush
+     */
+    @Override
+    public void flush() {
+        // every permit is back once no page waits or is being compressed
+        this.queued.acquireUninterruptibly(this.permits);
+        this.queued.release(this.permits);
+        this.sink.flush();
+        RuntimeException e = this.failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for every compressed copy to be stored, then closes the sink the
+     * pages go to.
+     *
+     * @throws RuntimeException
+     *             the first failure to compress or store a copy
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        boolean interrupted = false;
+        boolean done = false;
+        while (!done) {
+            try {
+                done = this.executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        synchronized (this.made) {
+            for (Compressor c : this.made) {
+                c.deflater.end();
+            }
+            this.made.clear();
+        }
+        this.sink.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        RuntimeException e = this.failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+}
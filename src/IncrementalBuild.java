@@ -0,0 +1,771 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import components.map.Map;
+import components.queue.Queue;
+
+/**
+ * Rebuilds a glossary output folder, regenerating only the pages that changed
+ * since the last build. A manifest kept in the folder records the hash of each
+ * term's definition, the terms its page links to and, with a search index,
+ * the words of its definition. On the next build a page
+ * is regenerated only if its definition changed, one of the terms it linked to
+ * was removed, a newly added term now occurs in its definition, or (with
+ * backlinks) the terms linking to it changed. Pages of removed terms are
+ * deleted, and the index is rewritten only when the terms, their order or the
+ * shard size changed. The manifest also names the order the terms were
+ * sorted in (a collation, say), and a new order rewrites the index too. The
+ * search index is put back together from the recorded words, so only the
+ * definitions of the pages written again are tokenized.
+ * <p>
+ * The manifest header records what every page depends on: the separators,
+ * the markup, whether pages list their backlinks, whether they have gzip
+ * copies and whether there is a search index. If any of those changed, every
+ * page is written again. The pages go through the caller's sink, so gzip
+ * copies and build stats come out as in a full build; the sink has to write
+ * into the folder, though, since pages are deleted from there. The sink is
+ * flushed before the manifest is written, so a page that failed to be stored
+ * is never recorded as up to date.
+ */
+public final class IncrementalBuild {
+
+    /**
+     * Name of the manifest file inside the output folder.
+     */
+    public static final String MANIFEST = ".glossary-manifest";
+
+    /**
+     * First words of the manifest header, with the format version; the
+     * settings the pages were written with follow them.
+     */
+    private static final String HEADER = "glossary-manifest 4";
+
+    /**
+     * What a build did.
+     */
+    public static final class Result {
+
+        /**
+         * Number of term pages written.
+         */
+        private final int pagesWritten;
+
+        /**
+         * Number of term pages deleted.
+         */
+        private final int pagesDeleted;
+
+        /**
+         * Whether index.html was written.
+         */
+        private final boolean indexWritten;
+
+        /**
+         * Constructor.
+         *
+         * @param pagesWritten
+         *            number of term pages written
+         * @param pagesDeleted
+         *            number of term pages deleted
+         * @param indexWritten
+         *            whether index.html was written
+         */
+        private Result(int pagesWritten, int pagesDeleted,
+                boolean indexWritten) {
+            this.pagesWritten = pagesWritten;
+            this.pagesDeleted = pagesDeleted;
+            this.indexWritten = indexWritten;
+        }
+
+        /**
+         * Reports the number of term pages written.
+         *
+         * @return the number of term pages written
+         */
+        public int pagesWritten() {
+            return this.pagesWritten;
+        }
+
+        /**
+         * Reports the number of term pages deleted.
+         *
+         * @return the number of term pages deleted
+         */
+        public int pagesDeleted() {
+            return this.pagesDeleted;
+        }
+
+        /**
+         * Reports whether index.html was written.
+         *
+         * @return true iff index.html was written
+         */
+        public boolean indexWritten() {
+            return this.indexWritten;
+        }
+
+        @Override
+        public String toString() {
+            return this.pagesWritten + " pages written, " + this.pagesDeleted
+                    + " deleted, index " + (this.indexWritten ? "written"
+                            : "unchanged");
+        }
+    }
+
+    /**
+     * One term as recorded in the manifest.
+     */
+    private static final class Entry {
+
+        /**
+         * Hash of the term's definition.
+         */
+        private final long hash;
+
+        /**
+         * Terms the page links to, in order of first link.
+         */
+        private final List<String> links;
+
+        /**
+         * The distinct words of the definition, normalized as the search
+         * index does, in order of first occurrence; empty without a search
+         * index.
+         */
+        private final List<String> words;
+
+        /**
+         * Constructor.
+         *
+         * @param hash
+         *            hash of the term's definition
+         * @param links
+         *            terms the page links to
+         * @param words
+         *            the distinct words of the definition
+         */
+        private Entry(long hash, List<String> links, List<String> words) {
+            this.hash = hash;
+            this.links = links;
+            this.words = words;
+        }
+    }
+
+    /**
+     * A manifest as read back.
+     */
+    private static final class Manifest {
+
+        /**
+         * The header, with the settings the pages were written with.
+         */
+        private final String header;
+
+        /**
+         * Fingerprint of the index, from {@link #indexFingerprint}.
+         */
+        private final long index;
+
+        /**
+         * Name of the order of the terms, from {@link #orderName}.
+         */
+        private final String order;
+
+        /**
+         * The entry of each term, in the order of the terms.
+         */
+        private final java.util.Map<String, Entry> entries;
+
+        /**
+         * Constructor.
+         *
+         * @param header
+         *            the header
+         * @param index
+         *            fingerprint of the index
+         * @param order
+         *            name of the order of the terms
+         * @param entries
+         *            the entry of each term, in the order of the terms
+         */
+        private Manifest(String header, long index, String order,
+                java.util.Map<String, Entry> entries) {
+            this.header = header;
+            this.index = index;
+            this.order = order;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private IncrementalBuild() {
+        // no code needed here
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the given definition.
+     *
+     * @param def
+     *            the definition
+     * @return the hash of def
+     */
+    static long hash(CharSequence def) {
+        final long prime = 0x100000001B3L;
+        long result = 0xCBF29CE484222325L;
+        for (int i = 0; i < def.length(); i++) {
+            result = (result ^ def.charAt(i)) * prime;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the settings every page depends on, as the manifest header
+     * records them.
+     *
+     * @param options
+     *            the options of the build
+     * @param gzip
+     *            whether pages get gzip copies
+     * @return the header
+     */
+    private static String header(GlossaryOptions options, boolean gzip) {
+        return HEADER + " " + Long.toHexString(options.separators()
+                .fingerprint()) + " "
+                + Long.toHexString(options.templates().fingerprint())
+                + (options.backlinks() ? " backlinks" : "")
+                + (gzip ? " gzip" : "")
+                + (options.search() != null ? " search" : "");
+    }
+
+    /**
+     * Returns a fingerprint of the index of the given terms: the terms in
+     * order and the shard size.
+     *
+     * @param terms
+     *            the terms, in order
+     * @param shardSize
+     *            most terms on one index page, or 0 for no limit
+     * @return the fingerprint
+     */
+    private static long indexFingerprint(String[] terms, int shardSize) {
+        final long prime = 0x100000001B3L;
+        long result = (0xCBF29CE484222325L ^ shardSize) * prime;
+        for (String term : terms) {
+            result = (result ^ hash(term)) * prime;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of the given order of terms, the same from one run to
+     * the next.
+     *
+     * @param order
+     *            the order
+     * @return the name of a {@code CollationOrder}, or else the class of
+     *         order
+     */
+    private static String orderName(Comparator<String> order) {
+        String result = order.getClass().getName();
+        if (order instanceof CollationOrder) {
+            result = order.toString();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the terms the given definition links to, in order of first
+     * link.
+     *
+     * @param def
+     *            the definition
+     * @param matcher
+     *            {@code TermMatcher} compiled from all the terms
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @return the linked terms
+     */
+    private static List<String> links(CharSequence def, TermMatcher matcher,
+            SeparatorSet separators) {
+        List<String> result = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        matcher.scan(def, separators, (start, end, termId) -> {
+            if (seen.add(matcher.term(termId))) {
+                result.add(matcher.term(termId));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the backlinks of every term that has any: the other terms
+     * linking to it, in the order of the terms, as a term page lists them.
+     *
+     * @param terms
+     *            the terms, in order
+     * @param entries
+     *            the entry of each term
+     * @return the backlinks of each term
+     */
+    private static java.util.Map<String, List<String>> backlinks(
+            Iterable<String> terms, java.util.Map<String, Entry> entries) {
+        java.util.Map<String, List<String>> result = new HashMap<>();
+        for (String source : terms) {
+            for (String target : entries.get(source).links) {
+                if (!target.equals(source)) {
+                    result.computeIfAbsent(target, t -> new ArrayList<>())
+                            .add(source);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Brings the glossary in {@code folder} up to date with the given terms
+     * and definitions, rewriting only what changed since the build recorded in
+     * the folder's manifest. Without a usable manifest (first build, or the
+     * settings in its header changed) every page is written. The pages are
+     * written with the separators, markup, backlinks and shard size of the
+     * options, and timed if they have a {@code BuildStats}. If the options
+     * have a search index, {@value SearchIndex#FILE_NAME} is written again
+     * whenever anything changed, from a new index of the words the manifest
+     * recorded and those of the pages written again, so the search index of
+     * the options itself stays empty. The sink is flushed before the manifest
+     * is written, and any failure to store a page is thrown from there,
+     * leaving the old manifest in place. The number of workers
+     * and the pipeline settings are not used; one thread writes the few pages
+     * that changed.
+     *
+     * @param q
+     *            {@code Queue} containing all the terms in the order of the
+     *            options
+     * @param map
+     *            {@code Map} containing all terms and their definitions as its
+     *            Keys and Values
+     * @param folder
+     *            name of folder where the pages are stored
+     * @param sink
+     *            where the pages are stored, which must write them into
+     *            folder; the caller closes it
+     * @param options
+     *            how the glossary is built
+     * @return what the build did
+     * @throws IllegalArgumentException
+     *             if a term has the name of a shard of the index
+     * @ensures [folder holds the index and one page per term, as a full build
+     *          would, and an up-to-date manifest]
+     */
+    public static Result build(Queue<String> q, Map<String, String> map,
+            String folder, PageSink sink, GlossaryOptions options) {
+        assert q != null : "Violation of: q is not null";
+        assert map != null : "Violation of: map is not null";
+        assert folder != null : "Violation of: folder is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert options != null : "Violation of: options is not null";
+
+        Path dir = Paths.get(folder);
+        /*
+         * only a GzipPageSink adds compressed copies, and it wraps whatever
+         * else the pages go through
+         */
+        boolean gzip = sink instanceof GzipPageSink;
+        String header = header(options, gzip);
+        Manifest manifest = readManifest(dir.resolve(MANIFEST));
+        if (manifest == null) {
+            manifest = new Manifest("", 0, "", new LinkedHashMap<>());
+        }
+        boolean full = !header.equals(manifest.header);
+        /*
+         * after other settings nothing of the last build is kept but the
+         * list of its pages, so those of removed terms are still deleted
+         */
+        java.util.Map<String, Entry> old = manifest.entries;
+        if (full) {
+            old = new HashMap<>();
+        }
+
+        String[] terms = new String[q.length()];
+        int n = 0;
+        for (String term : q) {
+            terms[n] = term;
+            n++;
+        }
+        // before any page is written, so a clash leaves the folder as it was
+        GlossaryTemplates.checkShardNames(Arrays.asList(terms),
+                options.shardSize());
+        TermDictionary current = new TermDictionary(terms);
+
+        /*
+         * terms that were removed, and (through the reverse of the recorded
+         * links) the pages that linked to them
+         */
+        HashSet<String> stale = new HashSet<>();
+        List<String> removed = new ArrayList<>();
+        for (String term : manifest.entries.keySet()) {
+            if (current.id(term) < 0) {
+                removed.add(term);
+            }
+        }
+        if (!removed.isEmpty()) {
+            HashSet<String> gone = new HashSet<>(removed);
+            for (java.util.Map.Entry<String, Entry> e : old.entrySet()) {
+                for (String target : e.getValue().links) {
+                    if (gone.contains(target)) {
+                        stale.add(e.getKey());
+                    }
+                }
+            }
+        }
+
+        // terms that were added, and pages whose definition changed
+        List<String> added = new ArrayList<>();
+        long[] hashes = new long[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            hashes[i] = hash(map.value(terms[i]));
+            Entry before = old.get(terms[i]);
+            if (before == null) {
+                added.add(terms[i]);
+                stale.add(terms[i]);
+            } else if (before.hash != hashes[i]) {
+                stale.add(terms[i]);
+            }
+        }
+
+        SeparatorSet separators = options.separators();
+        /*
+         * an unchanged definition links differently now only if one of the
+         * added terms occurs in it, so only the added terms are looked for
+         */
+        if (!full && !added.isEmpty()) {
+            TermMatcher addedMatcher = new TermMatcher(
+                    added.toArray(new String[0]));
+            boolean[] found = new boolean[1];
+            for (String term : terms) {
+                if (!stale.contains(term)) {
+                    found[0] = false;
+                    addedMatcher.scan(map.value(term), separators,
+                            (start, end, termId) -> found[0] = true);
+                    if (found[0]) {
+                        stale.add(term);
+                    }
+                }
+            }
+        }
+
+        TermMatcher matcher = new TermMatcher(terms);
+        List<String> none = Collections.emptyList();
+        java.util.Map<String, Entry> now = new HashMap<>(terms.length * 2);
+        java.util.Map<String, List<String>> backlinks = new HashMap<>();
+        if (options.backlinks()) {
+            /*
+             * a page also changes when the terms linking to it do, which
+             * takes the links of every page, including the stale ones
+             */
+            for (int i = 0; i < terms.length; i++) {
+                String term = terms[i];
+                List<String> links;
+                if (stale.contains(term)) {
+                    links = links(map.value(term), matcher, separators);
+                } else {
+                    links = old.get(term).links;
+                }
+                now.put(term, new Entry(hashes[i], links, none));
+            }
+            backlinks = backlinks(Arrays.asList(terms), now);
+            java.util.Map<String, List<String>> before = backlinks(
+                    old.keySet(), old);
+            for (String term : terms) {
+                if (!backlinks.getOrDefault(term, none)
+                        .equals(before.getOrDefault(term, none))) {
+                    stale.add(term);
+                }
+            }
+        }
+
+        /*
+         * regenerate the stale pages, recording what they link to now and,
+         * with a search index, the words the scan passes over
+         */
+        boolean search = options.search() != null;
+        GlossaryTemplates templates = options.templates();
+        BuildStats stats = options.stats();
+        PageBuffer page = new PageBuffer();
+        int written = 0;
+        for (int i = 0; i < terms.length; i++) {
+            String term = terms[i];
+            if (stale.contains(term)) {
+                String def = map.value(term);
+                List<String> links = new ArrayList<>();
+                HashSet<String> seen = new HashSet<>();
+                List<String> words = new ArrayList<>();
+                TermMatcher.WordHandler wordHandler = null;
+                if (search) {
+                    HashSet<String> seenWords = new HashSet<>();
+                    wordHandler = (start, end) -> {
+                        String word = SearchIndex.normalize(def, start, end);
+                        if (word != null && seenWords.add(word)) {
+                            words.add(word);
+                        }
+                    };
+                }
+                TermMatcher.WordHandler wordsOf = wordHandler;
+                long start = 0;
+                BuildStats.PageEvent event = null;
+                if (stats != null) {
+                    start = System.nanoTime();
+                    event = BuildStats.beginPage(term);
+                }
+                // counts[0] is the number of tokens, counts[1] of links
+                int[] counts = new int[2];
+                page.clear();
+                templates.renderTermPage(term, def,
+                        handler -> counts[0] += matcher.scan(def, separators,
+                                handler, wordsOf),
+                        backlinks.getOrDefault(term,
+                                Collections.emptyList()),
+                        page, termId -> {
+                            counts[1]++;
+                            if (seen.add(matcher.term(termId))) {
+                                links.add(matcher.term(termId));
+                            }
+                        });
+                Glossary.writePage(sink, term + ".html", page);
+                if (stats != null) {
+                    stats.endPage(term, start, event, counts[0], counts[1]);
+                }
+                written++;
+                now.put(term, new Entry(hashes[i], links, words));
+            } else {
+                Entry before = old.get(term);
+                now.put(term, new Entry(hashes[i], before.links,
+                        before.words));
+            }
+        }
+
+        long index = indexFingerprint(terms, options.shardSize());
+        String order = orderName(options.order());
+        boolean indexWritten = full || manifest.index != index
+                || !order.equals(manifest.order)
+                || !Files.exists(dir.resolve("index.html"));
+        if (indexWritten) {
+            Glossary.writeIndex(Arrays.asList(terms), sink,
+                    options.shardSize(), templates);
+        }
+        if (search && (written > 0 || !removed.isEmpty()
+                || indexWritten
+                || !Files.exists(dir.resolve(SearchIndex.FILE_NAME)))) {
+            SearchIndex searchIndex = new SearchIndex(separators);
+            SearchIndex.Part part = new SearchIndex.Part();
+            for (String term : terms) {
+                part.begin(term, map.value(term));
+                for (String word : now.get(term).words) {
+                    part.word(word);
+                }
+            }
+            searchIndex.addAll(part);
+            searchIndex.write(sink);
+        }
+
+        int deleted = 0;
+        try {
+            for (String term : removed) {
+                if (Files.deleteIfExists(dir.resolve(term + ".html"))) {
+                    deleted++;
+                }
+                Files.deleteIfExists(
+                        dir.resolve(term + ".html" + GzipPageSink.SUFFIX));
+            }
+            if (indexWritten) {
+                deleteShards(dir, current, terms.length, options.shardSize());
+            }
+            if (full && !gzip) {
+                deleteCopies(dir);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // the manifest only records pages that are stored
+        sink.flush();
+        writeManifest(dir, terms, now, header, index, order);
+        return new Result(written, deleted, indexWritten);
+    }
+
+    /**
+     * Deletes the index shards, and their gzip copies, that an index of the
+     * given size no longer has.
+     *
+     * @param dir
+     *            the output folder
+     * @param current
+     *            the terms, whose pages are kept whatever their names
+     * @param terms
+     *            the number of terms
+     * @param shardSize
+     *            most terms on one index page, or 0 for no limit
+     * @throws IOException
+     *             if a shard cannot be deleted
+     */
+    private static void deleteShards(Path dir, TermDictionary current,
+            int terms, int shardSize) throws IOException {
+        int shards = 0;
+        if (shardSize > 0 && terms > shardSize) {
+            shards = (terms + shardSize - 1) / shardSize;
+        }
+        // the shards of any earlier index are numbered from 1 with no gaps
+        int k = shards + 1;
+        boolean more = true;
+        while (more) {
+            String name = GlossaryTemplates.shardName(k);
+            Path shard = dir.resolve(name + ".html");
+            more = Files.exists(shard);
+            if (more && current.id(name) < 0) {
+                Files.delete(shard);
+                Files.deleteIfExists(
+                        dir.resolve(name + ".html" + GzipPageSink.SUFFIX));
+            }
+            k++;
+        }
+    }
+
+    /**
+     * Deletes the gzip copies of the pages and of the search index in the
+     * given folder, left over from a build that made them.
+     *
+     * @param dir
+     *            the output folder
+     * @throws IOException
+     *             if the folder cannot be listed or a copy deleted
+     */
+    private static void deleteCopies(Path dir) throws IOException {
+        try (DirectoryStream<Path> copies = Files.newDirectoryStream(dir,
+                "{*.html," + SearchIndex.FILE_NAME + "}"
+                        + GzipPageSink.SUFFIX)) {
+            for (Path copy : copies) {
+                Files.delete(copy);
+            }
+        }
+    }
+
+    /**
+     * Reads the manifest at the given path.
+     *
+     * @param manifest
+     *            path of the manifest
+     * @return the manifest, or {@code null} if there is none or it is not
+     *         one this version wrote
+     */
+    private static Manifest readManifest(Path manifest) {
+        Manifest result;
+        try (BufferedReader in = Files.newBufferedReader(manifest,
+                StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (!header.startsWith(HEADER + " ")) {
+                result = null;
+            } else {
+                // I <index fingerprint>, then O <order>
+                String line = in.readLine();
+                long index = Long.parseUnsignedLong(line.substring(2), 16);
+                String order = in.readLine().substring(2);
+                java.util.Map<String, Entry> entries = new LinkedHashMap<>();
+                List<String> links = null;
+                List<String> words = null;
+                line = in.readLine();
+                while (line != null) {
+                    if (line.startsWith("T ")) {
+                        // T <hash> <term>, the term may contain spaces
+                        int space = line.indexOf(' ', 2);
+                        long hash = Long.parseUnsignedLong(
+                                line.substring(2, space), 16);
+                        links = new ArrayList<>();
+                        words = new ArrayList<>();
+                        entries.put(line.substring(space + 1),
+                                new Entry(hash, links, words));
+                    } else if (line.startsWith("L ") && links != null) {
+                        links.add(line.substring(2));
+                    } else if (line.startsWith("W ") && words != null) {
+                        words.add(line.substring(2));
+                    }
+                    line = in.readLine();
+                }
+                result = new Manifest(header, index, order, entries);
+            }
+        } catch (IOException | RuntimeException e) {
+            // a missing or unreadable manifest just means a full build
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the manifest into the given folder, replacing the old one only
+     * once the new one is complete.
+     *
+     * @param dir
+     *            the output folder
+     * @param terms
+     *            the terms, in order
+     * @param entries
+     *            the entry of each term
+     * @param header
+     *            the header of this build, from {@link #header}
+     * @param index
+     *            fingerprint of the index, from {@link #indexFingerprint}
+     * @param order
+     *            name of the order of the terms, from {@link #orderName}
+     */
+    private static void writeManifest(Path dir, String[] terms,
+            java.util.Map<String, Entry> entries, String header, long index,
+            String order) {
+        Path temp = dir.resolve(MANIFEST + ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp,
+                    StandardCharsets.UTF_8)) {
+                out.write(header);
+                out.newLine();
+                out.write("I " + Long.toHexString(index));
+                out.newLine();
+                out.write("O " + order);
+                out.newLine();
+                for (String term : terms) {
+                    Entry e = entries.get(term);
+                    out.write("T " + Long.toHexString(e.hash) + " " + term);
+                    out.newLine();
+                    for (String target : e.links) {
+                        out.write("L " + target);
+                        out.newLine();
+                    }
+                    for (String word : e.words) {
+                        out.write("W " + word);
+                        out.newLine();
+                    }
+                }
+            }
+            Files.move(temp, dir.resolve(MANIFEST),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Helpers for the JSON files a build writes ({@code BuildStats} and
+ * {@code SearchIndex}).
+ */
+final class Json {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Json() {
+        // no code needed here
+    }
+
+    /**
+     * Appends the given string to the given buffer as a JSON string literal.
+     *
+     * @param s
+     *            the string
+     * @param json
+     *            the buffer
+     * @updates json
+     */
+    static void appendString(String s, StringBuilder json) {
+        final int firstPrintable = 0x20;
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < firstPrintable) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+}
@@ -0,0 +1,447 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * The links between the terms of a glossary, found by scanning every
+ * definition once. The forward links of each term (where in its definition
+ * each link is, and to which term) are kept so its page can be rendered
+ * without scanning the definition again, and the reverse links ("what links
+ * here") are derived from them. Both are stored as compressed sparse rows:
+ * one {@code int} array of entries and one of offsets, indexed by term id, so
+ * building and storing the graph takes time and space linear in the total
+ * length of the definitions plus the number of links.
+ * <p>
+ * The id of a term is its index in the array the graph was built from. A
+ * built graph is immutable, so one instance can be shared by threads.
+ */
+public final class LinkGraph {
+
+    /**
+     * Number of definitions scanned as one piece of work.
+     */
+    private static final int CHUNK = 1 << 10;
+
+    /**
+     * Number of {@code int}s that describe one forward link: its start, its
+     * end, and the term it links to.
+     */
+    private static final int SPAN = 3;
+
+    /**
+     * The terms.
+     */
+    private final String[] terms;
+
+    /**
+     * Where the links of each term start in {@code spans}, counted in links.
+     */
+    private final int[] linkStart;
+
+    /**
+     * The forward links of every term, {@code SPAN} {@code int}s each.
+     */
+    private final int[] spans;
+
+    /**
+     * Number of tokens in each definition.
+     */
+    private final int[] tokens;
+
+    /**
+     * Where the backlinks of each term start in {@code sources}.
+     */
+    private final int[] backStart;
+
+    /**
+     * The terms linking to each term, in increasing order of id.
+     */
+    private final int[] sources;
+
+    /**
+     * Constructor.
+     *
+     * @param terms
+     *            the terms
+     * @param linkStart
+     *            where the links of each term start
+     * @param spans
+     *            the forward links
+     * @param tokens
+     *            number of tokens in each definition
+     */
+    private LinkGraph(String[] terms, int[] linkStart, int[] spans,
+            int[] tokens) {
+        this.terms = terms;
+        this.linkStart = linkStart;
+        this.spans = spans;
+        this.tokens = tokens;
+
+        /*
+         * reverse the links: count the distinct other terms linking to each
+         * term, turn the counts into offsets, then fill in the sources in
+         * increasing order of id
+         */
+        int n = terms.length;
+        int[] seen = new int[n];
+        Arrays.fill(seen, -1);
+        int[] start = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            for (int k = linkStart[s]; k < linkStart[s + 1]; k++) {
+                int t = spans[k * SPAN + 2];
+                if (t != s && seen[t] != s) {
+                    seen[t] = s;
+                    start[t + 1]++;
+                }
+            }
+        }
+        for (int t = 0; t < n; t++) {
+            start[t + 1] += start[t];
+        }
+        int[] fill = Arrays.copyOf(start, n);
+        int[] from = new int[start[n]];
+        Arrays.fill(seen, -1);
+        for (int s = 0; s < n; s++) {
+            for (int k = linkStart[s]; k < linkStart[s + 1]; k++) {
+                int t = spans[k * SPAN + 2];
+                if (t != s && seen[t] != s) {
+                    seen[t] = s;
+                    from[fill[t]] = s;
+                    fill[t]++;
+                }
+            }
+        }
+        this.backStart = start;
+        this.sources = from;
+    }
+
+    /**
+     * The links found in one chunk of definitions.
+     */
+    private static final class Chunk {
+
+        /**
+         * The links, {@code SPAN} {@code int}s each.
+         */
+        private int[] spans = new int[SPAN * CHUNK];
+
+        /**
+         * Number of {@code int}s of spans in use.
+         */
+        private int size;
+
+        /**
+         * Adds a link.
+         *
+         * @param start
+         *            index of the first character of the link
+         * @param end
+         *            index just past the last character of the link
+         * @param target
+         *            the term linked to
+         */
+        private void add(int start, int end, int target) {
+            if (this.size + SPAN > this.spans.length) {
+                this.spans = Arrays.copyOf(this.spans, 2 * this.spans.length);
+            }
+            this.spans[this.size] = start;
+            this.spans[this.size + 1] = end;
+            this.spans[this.size + 2] = target;
+            this.size += SPAN;
+        }
+    }
+
+    /**
+     * Scans the definitions of one chunk of terms.
+     *
+     * @param c
+     *            the number of the chunk
+     * @param defs
+     *            the definition of each term, by id
+     * @param matcher
+     *            matcher compiled from all the terms
+     * @param separators
+     *            the separator characters
+     * @param linkCounts
+     *            receives the number of links of each term of the chunk
+     * @param tokens
+     *            receives the number of tokens of each term of the chunk
+     * @param search
+     *            receives the words of the definitions of the chunk; may be
+     *            {@code null}
+     * @return the links of the chunk, in order
+     */
+    private static Chunk scanChunk(int c,
+            IntFunction<? extends CharSequence> defs, TermMatcher matcher,
+            SeparatorSet separators, int[] linkCounts, int[] tokens,
+            SearchIndex search) {
+        Chunk chunk = new Chunk();
+        SearchIndex.Part words = null;
+        if (search != null) {
+            words = new SearchIndex.Part();
+        }
+        int end = Math.min(tokens.length, (c + 1) * CHUNK);
+        for (int id = c * CHUNK; id < end; id++) {
+            int before = chunk.size;
+            CharSequence def = defs.apply(id);
+            if (words != null) {
+                words.begin(matcher.term(id), def);
+            }
+            tokens[id] = matcher.scan(def, separators, chunk::add, words);
+            linkCounts[id] = (chunk.size - before) / SPAN;
+        }
+        if (words != null) {
+            search.addAll(words);
+        }
+        return chunk;
+    }
+
+    /**
+     * Builds the link graph of the given terms by scanning each definition
+     * once, on {@code workers} threads at once.
+     *
+     * @param terms
+     *            the terms; the id of each is its index
+     * @param defs
+     *            the definition of each term
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @param workers
+     *            the number of definitions scanned at once
+     * @return the graph
+     * @requires |terms| = |defs| and [terms has no duplicates] and
+     *           workers > 0
+     */
+    public static LinkGraph build(String[] terms, String[] defs,
+            SeparatorSet separators, int workers) {
+        assert terms != null : "Violation of: terms is not null";
+        assert defs != null : "Violation of: defs is not null";
+        assert terms.length == defs.length : "Violation of: |terms| = |defs|";
+
+        return build(terms, id -> defs[id], separators, workers);
+    }
+
+    /**
+     * Builds the link graph of the given terms like
+     * {@link #build(String[], String[], SeparatorSet, int)}, asking for each
+     * definition once, when it is scanned, so the definitions need not all be
+     * in memory at once. The definitions may be asked for from several
+     * threads at once.
+     *
+     * @param terms
+     *            the terms; the id of each is its index
+     * @param defs
+     *            gives the definition of the term with the given id
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @param workers
+     *            the number of definitions scanned at once
+     * @return the graph
+     * @requires [terms has no duplicates] and workers > 0
+     */
+    public static LinkGraph build(String[] terms,
+            IntFunction<? extends CharSequence> defs, SeparatorSet separators,
+            int workers) {
+        return build(terms, defs, separators, workers, null);
+    }
+
+    /**
+     * Builds the link graph of the given terms like
+     * {@link #build(String[], IntFunction, SeparatorSet, int)}, adding every
+     * term to the given {@code SearchIndex} with the words of its definition
+     * as the definition is scanned, so the search index needs no scan of its
+     * own.
+     *
+     * @param terms
+     *            the terms; the id of each is its index
+     * @param defs
+     *            gives the definition of the term with the given id
+     * @param separators
+     *            {@code SeparatorSet} of separator characters
+     * @param workers
+     *            the number of definitions scanned at once
+     * @param search
+     *            receives every term and the words of its definition; may be
+     *            {@code null}
+     * @return the graph
+     * @requires [terms has no duplicates] and workers > 0 and [no term is
+     *           in search]
+     */
+    public static LinkGraph build(String[] terms,
+            IntFunction<? extends CharSequence> defs, SeparatorSet separators,
+            int workers, SearchIndex search) {
+        assert terms != null : "Violation of: terms is not null";
+        assert defs != null : "Violation of: defs is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert workers > 0 : "Violation of: workers > 0";
+
+        TermMatcher matcher = new TermMatcher(terms);
+        int n = terms.length;
+        int[] linkCounts = new int[n];
+        int[] tokens = new int[n];
+        Chunk[] chunks = new Chunk[(n + CHUNK - 1) / CHUNK];
+        if (workers == 1 || chunks.length <= 1) {
+            for (int c = 0; c < chunks.length; c++) {
+                chunks[c] = scanChunk(c, defs, matcher, separators, linkCounts,
+                        tokens, search);
+            }
+        } else {
+            // each chunk is claimed by one worker, which fills in its slots
+            AtomicInteger next = new AtomicInteger();
+            int threads = Math.min(workers, chunks.length);
+            ExecutorService executor = WorkerPools.newCpuExecutor(threads,
+                    "glossary-links");
+            try {
+                WorkerPools.runAll(executor, threads, () -> {
+                    int c = next.getAndIncrement();
+                    while (c < chunks.length) {
+                        chunks[c] = scanChunk(c, defs, matcher, separators,
+                                linkCounts, tokens, search);
+                        c = next.getAndIncrement();
+                    }
+                    return null;
+                });
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        int[] linkStart = new int[n + 1];
+        for (int id = 0; id < n; id++) {
+            linkStart[id + 1] = linkStart[id] + linkCounts[id];
+        }
+        int[] spans = new int[linkStart[n] * SPAN];
+        int at = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.spans, 0, spans, at, chunk.size);
+            at += chunk.size;
+        }
+        return new LinkGraph(terms.clone(), linkStart, spans, tokens);
+    }
+
+    /**
+     * Reports the number of terms.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return this.terms.length;
+    }
+
+    /**
+     * Returns the term with the given id.
+     *
+     * @param id
+     *            the id of the term
+     * @return the term
+     * @requires 0 <= id < size()
+     */
+    public String term(int id) {
+        return this.terms[id];
+    }
+
+    /**
+     * Reports the number of tokens in the definition of the given term.
+     *
+     * @param id
+     *            the id of the term
+     * @return the number of tokens
+     * @requires 0 <= id < size()
+     */
+    public int tokens(int id) {
+        return this.tokens[id];
+    }
+
+    /**
+     * Reports the number of links in the definition of the given term.
+     *
+     * @param id
+     *            the id of the term
+     * @return the number of links
+     * @requires 0 <= id < size()
+     */
+    public int linkCount(int id) {
+        return this.linkStart[id + 1] - this.linkStart[id];
+    }
+
+    /**
+     * Reports the links in the definition of the given term to the given
+     * handler, in order, exactly as {@link TermMatcher#scan} found them.
+     *
+     * @param id
+     *            the id of the term
+     * @param handler
+     *            receives each link
+     * @requires 0 <= id < size()
+     */
+    public void links(int id, TermMatcher.MatchHandler handler) {
+        assert handler != null : "Violation of: handler is not null";
+
+        for (int k = this.linkStart[id]; k < this.linkStart[id + 1]; k++) {
+            int i = k * SPAN;
+            handler.match(this.spans[i], this.spans[i + 1],
+                    this.spans[i + 2]);
+        }
+    }
+
+    /**
+     * Reports the number of other terms whose definitions link to the given
+     * term.
+     *
+     * @param id
+     *            the id of the term
+     * @return the number of backlinks
+     * @requires 0 <= id < size()
+     */
+    public int backlinkCount(int id) {
+        return this.backStart[id + 1] - this.backStart[id];
+    }
+
+    /**
+     * Returns the id of one of the terms whose definitions link to the given
+     * term.
+     *
+     * @param id
+     *            the id of the term
+     * @param k
+     *            which backlink
+     * @return the id of the k-th term linking to id, in increasing order
+     * @requires 0 <= id < size() and 0 <= k < backlinkCount(id)
+     */
+    public int backlink(int id, int k) {
+        assert 0 <= k && k < this.backlinkCount(id) : "Violation of: "
+                + "0 <= k < backlinkCount(id)";
+
+        return this.sources[this.backStart[id] + k];
+    }
+
+    /**
+     * Returns the terms whose definitions link to the given term, in
+     * increasing order of id, as a view of the graph that copies nothing.
+     *
+     * @param id
+     *            the id of the term
+     * @return the terms linking to it
+     * @requires 0 <= id < size()
+     */
+    public List<String> backlinks(int id) {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int k) {
+                if (k < 0 || k >= this.size()) {
+                    throw new IndexOutOfBoundsException("backlink " + k);
+                }
+                return LinkGraph.this.terms[LinkGraph.this.backlink(id, k)];
+            }
+
+            @Override
+            public int size() {
+                return LinkGraph.this.backlinkCount(id);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Reads pages back out of a pack file written by {@link PackPageSink}. The
+ * index is loaded when the pack is opened; each page is then read with one
+ * positional read, so a {@code PackFile} can be shared by threads.
+ */
+public final class PackFile implements AutoCloseable {
+
+    /**
+     * The pack file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Offset and length of each page, by name.
+     */
+    private final HashMap<String, long[]> index = new HashMap<>();
+
+    /**
+     * Opens the given pack file and loads its index.
+     *
+     * @param file
+     *            the pack file
+     * @requires [file was written by a PackPageSink]
+     */
+    public PackFile(Path file) {
+        assert file != null : "Violation of: file is not null";
+
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            long size = this.channel.size();
+            ByteBuffer trailer = this.read(size - PackPageSink.TRAILER,
+                    PackPageSink.TRAILER);
+            long indexOffset = trailer.getLong();
+            byte[] magic = new byte[PackPageSink.MAGIC.length];
+            trailer.get(magic);
+            if (!Arrays.equals(magic, PackPageSink.MAGIC)) {
+                this.channel.close();
+                throw new IllegalArgumentException(file + " is not a pack");
+            }
+            ByteBuffer entries = this.read(indexOffset,
+                    (int) (size - PackPageSink.TRAILER - indexOffset));
+            int count = entries.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[entries.getInt()];
+                entries.get(name);
+                long offset = entries.getLong();
+                long length = entries.getInt();
+                this.index.put(new String(name, StandardCharsets.UTF_8),
+                        new long[] { offset, length });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads {@code length} bytes starting at {@code position}.
+     *
+     * @param position
+     *            offset in the file
+     * @param length
+     *            number of bytes
+     * @return the bytes, ready to be read
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer result = ByteBuffer.allocate(length);
+        while (result.hasRemaining()) {
+            int n = this.channel.read(result, position + result.position());
+            if (n < 0) {
+                throw new IOException("pack is truncated");
+            }
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Reports the number of pages in the pack.
+     *
+     * @return the number of pages
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Reports whether the pack has a page with the given name.
+     *
+     * @param name
+     *            the file name of the page
+     * @return true iff the page is in the pack
+     */
+    public boolean hasPage(String name) {
+        return this.index.containsKey(name);
+    }
+
+    /**
+     * Returns the bytes of the page with the given name.
+     *
+     * @param name
+     *            the file name of the page
+     * @return the page
+     * @requires hasPage(name)
+     */
+    public byte[] page(String name) {
+        assert this.hasPage(name) : "Violation of: hasPage(name)";
+
+        long[] entry = this.index.get(name);
+        try {
+            return this.read(entry[0], (int) entry[1]).array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code PageSink} that appends every page to one pack file through a single
+ * {@code FileChannel}, instead of creating one file per page. The pack ends
+ * with an index of page names, offsets and lengths; {@link PackFile} reads it.
+ * <p>
+ * Layout (all numbers big-endian):
+ *
+ * <pre>
+ * "GLSPACK1"
+ * page bytes, one page after another
+ * index:   int count, then for each page
+ *          int nameLength, name (UTF-8), long offset, int length
+ * trailer: long indexOffset, "GLSPACK1"
+ * </pre>
+ */
+public final class PackPageSink implements PageSink {
+
+    /**
+     * Magic bytes at the start and the end of a pack.
+     */
+    static final byte[] MAGIC = "GLSPACK1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Size of the trailer: the index offset and the magic bytes.
+     */
+    static final int TRAILER = Long.BYTES + MAGIC.length;
+
+    /**
+     * Size of the write buffer in front of the channel.
+     */
+    private static final int BUFFER = 1 << 20;
+
+    /**
+     * The pack file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Pages are gathered here and written in large blocks.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+
+    /**
+     * Names of the pages, in the order they were written.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Offset of each page in the pack.
+     */
+    private long[] offsets = new long[16];
+
+    /**
+     * Length of each page.
+     */
+    private int[] lengths = new int[16];
+
+    /**
+     * Number of bytes in the pack so far, including the buffer.
+     */
+    private long size;
+
+    /**
+     * Creates (or truncates) the given pack file.
+     *
+     * @param file
+     *            the pack file
+     */
+    public PackPageSink(Path file) {
+        assert file != null : "Violation of: file is not null";
+
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.buffer.put(MAGIC);
+        this.size = MAGIC.length;
+    }
+
+    /**
+     * Reports the number of pages written so far.
+     *
+     * @return the number of pages
+     */
+    public synchronized int pageCount() {
+        return this.names.size();
+    }
+
+    @Override
+    public synchronized void write(String name, byte[] bytes, int offset,
+            int length) {
+        assert name != null : "Violation of: name is not null";
+        assert bytes != null : "Violation of: bytes is not null";
+
+        int n = this.names.size();
+        if (n == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, 2 * n);
+            this.lengths = Arrays.copyOf(this.lengths, 2 * n);
+        }
+        this.names.add(name);
+        this.offsets[n] = this.size;
+        this.lengths[n] = length;
+        this.put(bytes, offset, length);
+    }
+
+    /**
+     * Appends bytes to the pack through the buffer.
+     *
+     * @param bytes
+     *            buffer holding the bytes
+     * @param offset
+     *            index of the first byte
+     * @param length
+     *            number of bytes
+     */
+    private void put(byte[] bytes, int offset, int length) {
+        int done = 0;
+        while (done < length) {
+            if (!this.buffer.hasRemaining()) {
+                this.flush();
+            }
+            int chunk = Math.min(length - done, this.buffer.remaining());
+            this.buffer.put(bytes, offset + done, chunk);
+            done += chunk;
+        }
+        this.size += length;
+    }
+
+    /**
+     * Writes the buffer to the channel.
+     */
+    @Override
+    public synchronized void flush() {
+        this.buffer.flip();
+        try {
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.buffer.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.channel.isOpen()) {
+            long indexOffset = this.size;
+            ByteBuffer number = ByteBuffer.allocate(Long.BYTES);
+            number.putInt(0, this.names.size());
+            this.put(number.array(), 0, Integer.BYTES);
+            for (int i = 0; i < this.names.size(); i++) {
+                byte[] name = this.names.get(i)
+                        .getBytes(StandardCharsets.UTF_8);
+                number.putInt(0, name.length);
+                this.put(number.array(), 0, Integer.BYTES);
+                this.put(name, 0, name.length);
+                number.putLong(0, this.offsets[i]);
+                this.put(number.array(), 0, Long.BYTES);
+                number.putInt(0, this.lengths[i]);
+                this.put(number.array(), 0, Integer.BYTES);
+            }
+            number.putLong(0, indexOffset);
+            this.put(number.array(), 0, Long.BYTES);
+            this.put(MAGIC, 0, MAGIC.length);
+            this.flush();
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that pages are rendered into as UTF-8. Characters
+ * are encoded as they are appended, with no intermediate {@code String}, and
+ * the buffer is cleared and reused for the next page, so once it has grown
+ * to the size of the largest page rendering allocates nothing. A buffer is
+ * meant to be used by one thread at a time.
+ */
+public final class PageBuffer implements PageTemplate.Output {
+
+    /**
+     * Initial capacity.
+     */
+    private static final int INITIAL = 1 << 13;
+
+    /**
+     * Encoding of a character that cannot be encoded (a lone surrogate), as
+     * {@code String.getBytes} would write it.
+     */
+    private static final byte REPLACEMENT = '?';
+
+    /**
+     * The bytes.
+     */
+    private byte[] bytes = new byte[INITIAL];
+
+    /**
+     * Number of bytes in use.
+     */
+    private int length;
+
+    /**
+     * Empties the buffer, keeping its capacity.
+     */
+    public void clear() {
+        this.length = 0;
+    }
+
+    /**
+     * Reports the number of bytes in the buffer.
+     *
+     * @return the length
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Returns the array holding the bytes; only the first {@link #length}
+     * are in use. The array changes when the buffer grows.
+     *
+     * @return the backing array
+     */
+    public byte[] array() {
+        return this.bytes;
+    }
+
+    /**
+     * Makes room for {@code more} bytes.
+     *
+     * @param more
+     *            the number of bytes about to be appended
+     */
+    private void ensure(int more) {
+        if (this.length + more > this.bytes.length) {
+            int capacity = Math.max(this.length + more, 2 * this.bytes.length);
+            this.bytes = Arrays.copyOf(this.bytes, capacity);
+        }
+    }
+
+    /**
+     * Appends the given bytes.
+     *
+     * @param b
+     *            the bytes
+     */
+    public void append(byte[] b) {
+        this.ensure(b.length);
+        System.arraycopy(b, 0, this.bytes, this.length, b.length);
+        this.length += b.length;
+    }
+
+    @Override
+    public void appendLiteral(PageTemplate template, int segment) {
+        this.append(template.encoded(segment));
+    }
+
+    @Override
+    public void append(CharSequence text, int start, int end) {
+        final int maxBytesPerChar = 3;
+        this.ensure((end - start) * maxBytesPerChar);
+        byte[] b = this.bytes;
+        int n = this.length;
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            i++;
+            if (c < 0x80) {
+                b[n++] = (byte) c;
+            } else if (c < 0x800) {
+                b[n++] = (byte) (0xC0 | (c >> 6));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                b[n++] = (byte) (0xE0 | (c >> 12));
+                b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i < end
+                    && Character.isLowSurrogate(text.charAt(i))) {
+                // a pair takes 2 chars and 4 bytes, so the room is there
+                int cp = Character.toCodePoint(c, text.charAt(i));
+                i++;
+                b[n++] = (byte) (0xF0 | (cp >> 18));
+                b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[n++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                b[n++] = REPLACEMENT;
+            }
+        }
+        this.length = n;
+    }
+
+    /**
+     * Decodes the buffer.
+     *
+     * @return the contents of the buffer as a {@code String}
+     */
+    @Override
+    public String toString() {
+        return new String(this.bytes, 0, this.length, StandardCharsets.UTF_8);
+    }
+
+}
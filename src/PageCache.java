@@ -0,0 +1,221 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of rendered pages, by name, holding at most a given number of bytes
+ * and evicting the least recently used pages first. The cache is split into
+ * segments, each an LRU list of its own with an equal share of the capacity
+ * and its own lock, so threads looking up different pages rarely wait for
+ * each other.
+ */
+public final class PageCache {
+
+    /**
+     * Number of segments; a power of two.
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * One independently locked part of the cache.
+     */
+    private static final class Segment {
+
+        /**
+         * The pages, least recently used first.
+         */
+        private final LinkedHashMap<String, byte[]> pages = new LinkedHashMap<>(
+                16, 0.75f, true);
+
+        /**
+         * Total size of the pages.
+         */
+        private long bytes;
+    }
+
+    /**
+     * The segments.
+     */
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Most bytes each segment may hold.
+     */
+    private final long segmentCapacity;
+
+    /**
+     * Number of lookups that found their page.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Number of lookups that did not.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Number of pages evicted.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            most bytes of pages the cache may hold
+     * @requires capacity >= 0
+     */
+    public PageCache(long capacity) {
+        assert capacity >= 0 : "Violation of: capacity >= 0";
+
+        this.segmentCapacity = capacity / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Returns the segment the given page belongs to.
+     *
+     * @param name
+     *            the name of the page
+     * @return its segment
+     */
+    private Segment segment(String name) {
+        int h = name.hashCode();
+        return this.segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Returns the cached page with the given name, marking it most recently
+     * used.
+     *
+     * @param name
+     *            the name of the page
+     * @return the page, or {@code null} if it is not cached
+     */
+    public byte[] get(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        Segment segment = this.segment(name);
+        byte[] result;
+        synchronized (segment) {
+            result = segment.pages.get(name);
+        }
+        if (result == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Caches the given page, evicting the least recently used pages until it
+     * fits. A page larger than a segment's share of the capacity is not
+     * cached. The array must not be changed afterwards.
+     *
+     * @param name
+     *            the name of the page
+     * @param page
+     *            the rendered page
+     */
+    public void put(String name, byte[] page) {
+        assert name != null : "Violation of: name is not null";
+        assert page != null : "Violation of: page is not null";
+
+        if (page.length <= this.segmentCapacity) {
+            Segment segment = this.segment(name);
+            synchronized (segment) {
+                byte[] old = segment.pages.put(name, page);
+                if (old != null) {
+                    segment.bytes -= old.length;
+                }
+                segment.bytes += page.length;
+                Iterator<byte[]> eldest = segment.pages.values().iterator();
+                while (segment.bytes > this.segmentCapacity) {
+                    segment.bytes -= eldest.next().length;
+                    eldest.remove();
+                    this.evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every page from the cache.
+     */
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.pages.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * Reports the number of cached pages.
+     *
+     * @return the number of pages
+     */
+    public int size() {
+        int result = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                result += segment.pages.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the total size of the cached pages.
+     *
+     * @return the number of bytes cached
+     */
+    public long bytes() {
+        long result = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                result += segment.bytes;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of lookups that found their page.
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Reports the number of lookups that did not find their page.
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Reports the number of pages evicted to make room.
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return this.size() + " pages, " + this.bytes() + " bytes, "
+                + this.hits() + " hits, " + this.misses() + " misses, "
+                + this.evictions() + " evictions";
+    }
+
+}
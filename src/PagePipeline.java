@@ -0,0 +1,300 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import components.map.Map;
+
+/**
+ * Writes a glossary as a pipeline of three stages joined by bounded queues,
+ * so reading definitions, rendering pages and writing files all happen at
+ * the same time instead of one after the other:
+ * <ol>
+ * <li>a reader walks the terms in order and looks up each definition (from
+ * a {@code Map}, or from the file behind a {@code DefinitionArena});</li>
+ * <li>render workers link each definition with a {@code TermMatcher}
+ * compiled from all the terms and render its page;</li>
+ * <li>writers store the pages through a {@link QueuedPageSink}, in
+ * batches.</li>
+ * </ol>
+ * When a stage falls behind, the queue in front of it fills up and the stage
+ * before it waits, so no stage runs more than a queue's length ahead and
+ * memory stays bounded. The whole run then goes at about the speed of its
+ * slowest stage rather than the sum of all of them. The terms must all be
+ * known before the first page is rendered, since any page may link to any
+ * term, so parsing and sorting still come first.
+ */
+public final class PagePipeline {
+
+    /**
+     * Default number of items each queue holds.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * No instances.
+     */
+    private PagePipeline() {
+    }
+
+    /**
+     * A term and its definition, on their way to a render worker.
+     */
+    private static final class Item {
+
+        /**
+         * The term.
+         */
+        private final String term;
+
+        /**
+         * Its definition.
+         */
+        private final String def;
+
+        /**
+         * Its id in the link graph, if there is one.
+         */
+        private final int id;
+
+        /**
+         * Constructor.
+         *
+         * @param term
+         *            the term
+         * @param def
+         *            its definition
+         * @param id
+         *            its id in the link graph
+         */
+        private Item(String term, String def, int id) {
+            this.term = term;
+            this.def = def;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Put in the render queue once per worker, after the last term.
+     */
+    private static final Item END = new Item(null, null, -1);
+
+    /**
+     * Writes the whole glossary into the given {@code PageSink} like
+     * {@link Glossary#writeGlossary(Iterable, Map, PageSink, GlossaryOptions)},
+     * with the pages read, rendered and written in a pipeline: the workers of
+     * the options render, and its writers write, with queues of its capacity
+     * between them.
+     *
+     * @param terms
+     *            all the terms in alphabetical order, such as a {@code Queue}
+     *            or {@code SortedTerms}
+     * @param map
+     *            {@code Map} containing all terms and their definitions as its
+     *            Keys and Values
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the glossary is built
+     * @ensures [sink holds the index pages and a page for every term, and
+     *          SearchIndex.FILE_NAME if there is a search index]
+     */
+    public static void writeGlossary(Iterable<String> terms,
+            Map<String, String> map, PageSink sink, GlossaryOptions options) {
+        assert map != null : "Violation of: map is not null";
+        assert options != null : "Violation of: options is not null";
+
+        TermMatcher matcher = null;
+        if (!options.backlinks()) {
+            matcher = TermMatcher.compile(map);
+        }
+        run(terms, map::value, matcher, sink, options);
+    }
+
+    /**
+     * Writes the whole glossary into the given {@code PageSink} like
+     * {@link Glossary#writeGlossary(Iterable, DefinitionArena, PageSink,
+     * GlossaryOptions)}, with the pages read, rendered and written in a
+     * pipeline; the reader stage is the one reading definitions back from
+     * the arena.
+     *
+     * @param terms
+     *            all the terms in alphabetical order, such as a {@code Queue}
+     * @param defs
+     *            {@code DefinitionArena} holding all terms and their
+     *            definitions
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the glossary is built
+     * @requires [every term is in defs]
+     * @ensures [sink holds the index pages and a page for every term, and
+     *          SearchIndex.FILE_NAME if there is a search index]
+     */
+    public static void writeGlossary(Iterable<String> terms,
+            DefinitionArena defs, PageSink sink, GlossaryOptions options) {
+        assert defs != null : "Violation of: defs is not null";
+        assert options != null : "Violation of: options is not null";
+
+        TermMatcher matcher = null;
+        if (!options.backlinks()) {
+            matcher = new TermMatcher(defs.terms());
+        }
+        run(terms, defs::value, matcher, sink, options);
+    }
+
+    /**
+     * Runs the pipeline.
+     *
+     * @param terms
+     *            all the terms in alphabetical order
+     * @param definitions
+     *            gives the definition of a term; called from the reader, and
+     *            from several threads at once while a link graph is built
+     * @param matcher
+     *            matcher compiled from all the terms, or {@code null} for
+     *            pages with backlinks
+     * @param sink
+     *            where the pages are stored
+     * @param options
+     *            how the glossary is built
+     */
+    private static void run(Iterable<String> terms,
+            Function<String, String> definitions, TermMatcher matcher,
+            PageSink sink, GlossaryOptions options) {
+        assert terms != null : "Violation of: terms is not null";
+        assert sink != null : "Violation of: sink is not null";
+
+        /*
+         * with backlinks, the links of every page are found before the
+         * pipeline starts, and the pages go in the order of the graph's ids
+         */
+        Iterable<String> order = terms;
+        LinkGraph graph = null;
+        if (matcher == null) {
+            List<String> list = new ArrayList<>();
+            for (String term : terms) {
+                list.add(term);
+            }
+            final String[] names = list.toArray(new String[0]);
+            graph = LinkGraph.build(names,
+                    k -> definitions.apply(names[k]), options.separators(),
+                    options.workers(), options.search());
+            order = Arrays.asList(names);
+        }
+        final Iterable<String> ordered = order;
+        final LinkGraph links = graph;
+
+        // the caller closes sink; the writers only need it until they finish
+        PageSink open = new PageSink() {
+            @Override
+            public void write(String name, byte[] bytes, int offset,
+                    int length) {
+                sink.write(name, bytes, offset, length);
+            }
+
+            @Override
+            public void flush() {
+                sink.flush();
+            }
+
+            @Override
+            public void close() {
+                // left open for the caller
+            }
+        };
+        try (QueuedPageSink out = new QueuedPageSink(open, options.capacity(),
+                options.writers())) {
+            options.time("index", () -> Glossary.writeIndex(ordered, out,
+                    options.shardSize(), options.templates()));
+            options.time("pages", () -> renderPages(ordered, definitions,
+                    matcher, links, out, options));
+            SearchIndex search = options.search();
+            if (search != null) {
+                options.time("search", () -> search.write(out));
+            }
+        }
+    }
+
+    /**
+     * Runs the reader and the render workers until every page is handed to
+     * the writers. If any of them fails, the others are stopped and the
+     * failure is thrown.
+     *
+     * @param terms
+     *            all the terms, in order
+     * @param definitions
+     *            gives the definition of a term
+     * @param matcher
+     *            matcher compiled from all the terms, or {@code null}
+     * @param graph
+     *            the links of all the terms, or {@code null}
+     * @param out
+     *            the writer stage
+     * @param options
+     *            how the pages are built
+     */
+    private static void renderPages(Iterable<String> terms,
+            Function<String, String> definitions, TermMatcher matcher,
+            LinkGraph graph, PageSink out, GlossaryOptions options) {
+        int workers = options.workers();
+        BlockingQueue<Item> queue = new ArrayBlockingQueue<>(
+                options.capacity());
+        ExecutorService executor = WorkerPools.newCpuExecutor(workers + 1,
+                "glossary-pipeline");
+        List<Future<?>> futures = new ArrayList<>(workers + 1);
+        try {
+            futures.add(executor.submit(() -> {
+                try {
+                    int id = 0;
+                    for (String term : terms) {
+                        queue.put(new Item(term, definitions.apply(term), id));
+                        id++;
+                    }
+                    for (int i = 0; i < workers; i++) {
+                        queue.put(END);
+                    }
+                } catch (InterruptedException e) {
+                    // stopped because another stage failed
+                    return;
+                } catch (RuntimeException | Error e) {
+                    executor.shutdownNow();
+                    throw e;
+                }
+            }));
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> {
+                    PageBuffer page = new PageBuffer();
+                    SearchIndex.Part words = Glossary.searchPart(options,
+                            graph);
+                    try {
+                        Item item = queue.take();
+                        while (item != END) {
+                            Glossary.writeTermPage(item.term, item.def,
+                                    matcher, graph, item.id, out, page,
+                                    words, options);
+                            item = queue.take();
+                        }
+                        if (words != null) {
+                            options.search().addAll(words);
+                        }
+                    } catch (InterruptedException e) {
+                        // stopped because another stage failed
+                        return;
+                    } catch (RuntimeException | Error e) {
+                        executor.shutdownNow();
+                        throw e;
+                    }
+                }));
+            }
+            WorkerPools.awaitAll(futures);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Destination for the rendered pages of a glossary. Implementations must allow
+ * {@code write} to be called from several threads at once.
+ */
+public interface PageSink extends AutoCloseable {
+
+    /**
+     * Stores the page with the given name (for example {@code "word.html"}).
+     *
+     * @param name
+     *            the file name of the page
+     * @param bytes
+     *            buffer holding the encoded page
+     * @param offset
+     *            index of the first byte of the page in bytes
+     * @param length
+     *            number of bytes in the page
+     * @requires 0 <= offset and 0 <= length and offset + length <= |bytes|
+     * @ensures [the page is stored under name]
+     */
+    void write(String name, byte[] bytes, int offset, int length);
+
+    /**
+     * Waits until every page written so far is stored. A sink that stores
+     * pages later than {@code write} returns (on other threads, say) throws
+     * here the first failure to store one since the last flush, which it
+     * would otherwise only throw from {@code close}. By default pages are
+     * stored by {@code write} itself, so there is nothing to wait for.
+     *
+     * @ensures [every page written before the call is stored]
+     */
+    default void flush() {
+        // pages are stored by write itself
+    }
+
+    /**
+     * Finishes storing pages and releases the resources of this sink.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,248 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page skeleton compiled once into literal segments, each kept both as a
+ * {@code String} and pre-encoded as UTF-8, and named holes such as
+ * {@code {{term}}} between them. Rendering walks the segments, copying
+ * literals and filling each hole, so nothing is parsed, concatenated or
+ * encoded again per page. A compiled template is immutable and can be shared
+ * by threads.
+ */
+public final class PageTemplate {
+
+    /**
+     * Opens a hole in the template text.
+     */
+    private static final String OPEN = "{{";
+
+    /**
+     * Closes a hole in the template text.
+     */
+    private static final String CLOSE = "}}";
+
+    /**
+     * Marks a segment that is a literal rather than a hole.
+     */
+    private static final int LITERAL = -1;
+
+    /**
+     * Where a template is rendered to: characters or UTF-8 bytes.
+     */
+    public interface Output {
+
+        /**
+         * Appends the given literal segment of the given template.
+         *
+         * @param template
+         *            the template
+         * @param segment
+         *            the index of a literal segment of template
+         */
+        void appendLiteral(PageTemplate template, int segment);
+
+        /**
+         * Appends the characters of {@code text} from {@code start} up to
+         * (not including) {@code end}.
+         *
+         * @param text
+         *            the text
+         * @param start
+         *            index of the first character
+         * @param end
+         *            index just past the last character
+         */
+        void append(CharSequence text, int start, int end);
+
+        /**
+         * Appends all of {@code text}.
+         *
+         * @param text
+         *            the text
+         */
+        default void append(CharSequence text) {
+            this.append(text, 0, text.length());
+        }
+    }
+
+    /**
+     * An {@code Output} that appends characters to a {@code StringBuilder}.
+     */
+    public static final class CharOutput implements Output {
+
+        /**
+         * The buffer appended to.
+         */
+        private final StringBuilder out;
+
+        /**
+         * Constructor.
+         *
+         * @param out
+         *            the buffer appended to
+         */
+        public CharOutput(StringBuilder out) {
+            this.out = out;
+        }
+
+        @Override
+        public void appendLiteral(PageTemplate template, int segment) {
+            this.out.append(template.literal(segment));
+        }
+
+        @Override
+        public void append(CharSequence text, int start, int end) {
+            this.out.append(text, start, end);
+        }
+    }
+
+    /**
+     * The literal text of each segment, or {@code null} for holes.
+     */
+    private final String[] literals;
+
+    /**
+     * The UTF-8 encoding of each literal segment, or {@code null} for holes.
+     */
+    private final byte[][] encoded;
+
+    /**
+     * The hole of each segment, or {@code LITERAL}.
+     */
+    private final int[] holes;
+
+    /**
+     * Constructor.
+     *
+     * @param literals
+     *            the literal text of each segment
+     * @param holes
+     *            the hole of each segment
+     */
+    private PageTemplate(String[] literals, int[] holes) {
+        this.literals = literals;
+        this.holes = holes;
+        this.encoded = new byte[literals.length][];
+        for (int i = 0; i < literals.length; i++) {
+            if (literals[i] != null) {
+                this.encoded[i] = literals[i].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Compiles the given template text. A hole is written as its name between
+     * double braces, such as {@code {{term}}}, and is numbered by the position
+     * of its name in {@code holeNames}; a hole may appear any number of times.
+     *
+     * @param text
+     *            the template text
+     * @param holeNames
+     *            the names of the holes the template may use
+     * @return the compiled template
+     * @throws IllegalArgumentException
+     *             if the text uses a hole that is not in {@code holeNames} or
+     *             does not close one
+     */
+    public static PageTemplate compile(String text, String... holeNames) {
+        assert text != null : "Violation of: text is not null";
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> holes = new ArrayList<>();
+        int position = 0;
+        int open = text.indexOf(OPEN);
+        while (open >= 0) {
+            int close = text.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException(
+                        "unclosed hole at " + open + " in template");
+            }
+            String name = text.substring(open + OPEN.length(), close).trim();
+            int hole = 0;
+            while (hole < holeNames.length && !holeNames[hole].equals(name)) {
+                hole++;
+            }
+            if (hole == holeNames.length) {
+                throw new IllegalArgumentException(
+                        "unknown hole {{" + name + "}} in template");
+            }
+            if (open > position) {
+                literals.add(text.substring(position, open));
+                holes.add(LITERAL);
+            }
+            literals.add(null);
+            holes.add(hole);
+            position = close + CLOSE.length();
+            open = text.indexOf(OPEN, position);
+        }
+        if (position < text.length()) {
+            literals.add(text.substring(position));
+            holes.add(LITERAL);
+        }
+        int[] holeArray = new int[holes.size()];
+        for (int i = 0; i < holeArray.length; i++) {
+            holeArray[i] = holes.get(i);
+        }
+        return new PageTemplate(literals.toArray(new String[0]), holeArray);
+    }
+
+    /**
+     * Reports the number of segments.
+     *
+     * @return the number of segments
+     */
+    public int segments() {
+        return this.holes.length;
+    }
+
+    /**
+     * Reports the hole that the given segment is.
+     *
+     * @param segment
+     *            the index of the segment
+     * @return the number of its hole, or -1 if it is a literal
+     */
+    public int hole(int segment) {
+        return this.holes[segment];
+    }
+
+    /**
+     * Returns the first segment that is the given hole.
+     *
+     * @param hole
+     *            the number of the hole
+     * @return the index of the segment, or -1 if the template lacks the hole
+     */
+    public int indexOf(int hole) {
+        int result = 0;
+        while (result < this.holes.length && this.holes[result] != hole) {
+            result++;
+        }
+        return result < this.holes.length ? result : -1;
+    }
+
+    /**
+     * Returns the text of the given literal segment.
+     *
+     * @param segment
+     *            the index of a literal segment
+     * @return its text
+     */
+    public String literal(int segment) {
+        return this.literals[segment];
+    }
+
+    /**
+     * Returns the UTF-8 encoding of the given literal segment. The array is
+     * shared and must not be changed.
+     *
+     * @param segment
+     *            the index of a literal segment
+     * @return its encoding
+     */
+    byte[] encoded(int segment) {
+        return this.encoded[segment];
+    }
+
+}
@@ -0,0 +1,258 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@code PageSink} that hands each page to writer threads through a bounded
+ * queue, so the threads rendering pages go on to the next page while the
+ * last one is still being written. When the queue is full, {@code write}
+ * waits for room: rendering can only get a bounded number of pages ahead of
+ * the disk, so memory stays bounded however slow writing is. Each writer
+ * takes every page waiting in the queue at once, up to a batch, and writes
+ * them one after the other without going back to the queue in between.
+ */
+public final class QueuedPageSink implements PageSink {
+
+    /**
+     * Most pages a writer takes from the queue at once.
+     */
+    private static final int BATCH = 64;
+
+    /**
+     * A page waiting to be written.
+     */
+    private static final class Page {
+
+        /**
+         * The file name of the page.
+         */
+        private final String name;
+
+        /**
+         * The encoded page.
+         */
+        private final byte[] bytes;
+
+        /**
+         * Constructor.
+         *
+         * @param name
+         *            the file name of the page
+         * @param bytes
+         *            the encoded page
+         */
+        private Page(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Put in the queue after the last page; each writer that takes it puts it
+     * back for the next one.
+     */
+    private static final Page END = new Page(null, null);
+
+    /**
+     * Where the pages go.
+     */
+    private final PageSink sink;
+
+    /**
+     * The pages waiting to be written.
+     */
+    private final BlockingQueue<Page> queue;
+
+    /**
+     * The writer threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The number of pages put in the queue and not yet written or dropped;
+     * {@link #flush} waits on it for 0.
+     */
+    private long pending;
+
+    /**
+     * The first failure to write a page.
+     */
+    private final AtomicReference<RuntimeException> failure =
+            new AtomicReference<>();
+
+    /**
+     * Constructor.
+     *
+     * @param sink
+     *            where the pages go
+     * @param capacity
+     *            the most pages waiting to be written at once
+     * @param writers
+     *            the number of pages written at once
+     * @requires capacity > 0 and writers > 0
+     */
+    public QueuedPageSink(PageSink sink, int capacity, int writers) {
+        assert sink != null : "Violation of: sink is not null";
+        assert capacity > 0 : "Violation of: capacity > 0";
+        assert writers > 0 : "Violation of: writers > 0";
+
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.executor = WorkerPools.newCpuExecutor(writers, "glossary-write");
+        for (int i = 0; i < writers; i++) {
+            this.executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Puts a page in the queue, waiting for room if it is full.
+     *
+     * @param page
+     *            the page
+     */
+    private void put(Page page) {
+        boolean interrupted = false;
+        boolean done = false;
+        while (!done) {
+            try {
+                this.queue.put(page);
+                done = true;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the pages of the queue, in batches, until {@code END}. After a
+     * failure the pages are still taken, and dropped, so threads waiting for
+     * room never wait forever.
+     */
+    private void drain() {
+        List<Page> batch = new ArrayList<>(BATCH);
+        boolean end = false;
+        while (!end) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                // the writers are only interrupted if the JVM is stopping
+                Thread.currentThread().interrupt();
+                return;
+            }
+            this.queue.drainTo(batch, BATCH - 1);
+            for (Page page : batch) {
+                if (page == END) {
+                    // nothing is written after END, so there is room for it
+                    this.queue.add(END);
+                    end = true;
+                } else {
+                    if (this.failure.get() == null) {
+                        try {
+                            this.sink.write(page.name, page.bytes, 0,
+                                    page.bytes.length);
+                        } catch (RuntimeException e) {
+                            this.failure.compareAndSet(null, e);
+                        }
+                    }
+                    this.done();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Records that a page taken from the queue was written or dropped.
+     */
+    private synchronized void done() {
+        this.pending--;
+        if (this.pending == 0) {
+            this.notifyAll();
+        }
+    }
+
+    @Override
+    public void write(String name, byte[] bytes, int offset, int length) {
+        assert name != null : "Violation of: name is not null";
+        assert bytes != null : "Violation of: bytes is not null";
+
+        RuntimeException e = this.failure.get();
+        if (e != null) {
+            throw e;
+        }
+        synchronized (this) {
+            this.pending++;
+        }
+        // the caller may reuse its buffer as soon as this returns
+        this.put(new Page(name,
+                Arrays.copyOfRange(bytes, offset, offset + length)));
+    }
+
+    /**
+     * Waits for every page in the queue to be written, then flushes the sink
+     * the pages go to.
+     *
+     * @throws RuntimeException
+     *             the first failure to write a page since the last flush
+     */
+    @Override
+    public void flush() {
+        boolean interrupted = false;
+        synchronized (this) {
+            while (this.pending > 0) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.sink.flush();
+        RuntimeException e = this.failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for every page in the queue to be written, then closes the sink
+     * the pages go to.
+     *
+     * @throws RuntimeException
+     *             the first failure to write a page
+     */
+    @Override
+    public void close() {
+        this.put(END);
+        this.executor.shutdown();
+        boolean interrupted = false;
+        boolean done = false;
+        while (!done) {
+            try {
+                done = this.executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        this.sink.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        RuntimeException e = this.failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,679 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Measures how a full glossary build scales. For each of a series of
+ * increasing sizes it makes up a glossary with {@link GlossaryGenerator},
+ * builds it in a fresh JVM (so one run's heap and JIT state do not leak into
+ * the next, and peak memory is that of the one build), and reports the wall
+ * time of the build, the peak resident set size, the GC pauses and the files
+ * written per second. Between consecutive sizes it works out the exponent
+ * {@code e} of the growth of the wall time ({@code time ~ size^e}) and flags
+ * every step where {@code e} exceeds 1 by more than a tolerance, that is,
+ * where the build got superlinear.
+ * <p>
+ * Usage: {@code java ScaleHarness <folder> <size> [<size>...]}, where the
+ * folder holds the scratch files. By default the sizes are term counts, with
+ * definitions shaped by the {@link GlossaryGenerator} properties;
+ * {@code -Dglossary.scaleAxis=words} makes them average definition lengths
+ * instead, for {@code -Dglossary.terms} terms (10000 by default).
+ * {@code -Dglossary.scaleTolerance} sets the tolerance (0.25 by default),
+ * {@code -Dglossary.scaleJvmArgs} adds options to each build's JVM (such as
+ * {@code -Xmx8g}), and {@code -Dglossary.workers} is passed on to the builds.
+ * Exits with 0 when no step was superlinear, 1 when one was, and 2 when the
+ * arguments cannot be used.
+ */
+public final class ScaleHarness {
+
+    /**
+     * Exit code when every step scaled linearly or better.
+     */
+    public static final int EXIT_OK = 0;
+
+    /**
+     * Exit code when some step was superlinear.
+     */
+    public static final int EXIT_SUPERLINEAR = 1;
+
+    /**
+     * Exit code when the arguments cannot be used.
+     */
+    public static final int EXIT_USAGE = 2;
+
+    /**
+     * Default tolerance on the exponent of a step.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.25;
+
+    /**
+     * Steps whose smaller build took less than this many nanoseconds are too
+     * noisy to judge.
+     */
+    static final long MIN_JUDGED_NANOS = 100_000_000L;
+
+    /**
+     * Option that makes this program build one glossary and report on it,
+     * used in the JVM of each build.
+     */
+    private static final String BUILD = "--build";
+
+    /**
+     * First word of the line a build reports its {@code Run} on.
+     */
+    private static final String RESULT = "RESULT";
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final double MILLIS = 1e6;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double SECONDS = 1e9;
+
+    /**
+     * Kilobytes in a megabyte.
+     */
+    private static final double KB_PER_MB = 1024;
+
+    /**
+     * The separators of every build, as in {@link Glossary#main}.
+     */
+    private static final String SEPARATORS = " \t, ";
+
+    /**
+     * No instances.
+     */
+    private ScaleHarness() {
+    }
+
+    /**
+     * The measurements of one build.
+     */
+    public static final class Run {
+
+        /**
+         * The size of the build along the axis being scaled.
+         */
+        private final long size;
+
+        /**
+         * Number of terms built.
+         */
+        private final long terms;
+
+        /**
+         * Number of files written.
+         */
+        private final long files;
+
+        /**
+         * Wall time of the build, in nanoseconds.
+         */
+        private final long wallNanos;
+
+        /**
+         * Peak resident set size of the JVM, in kilobytes, or -1 if unknown.
+         */
+        private final long peakRssKb;
+
+        /**
+         * Number of GC pauses.
+         */
+        private final long gcPauses;
+
+        /**
+         * Total time of the GC pauses, in nanoseconds.
+         */
+        private final long gcPauseNanos;
+
+        /**
+         * Constructor.
+         *
+         * @param size
+         *            the size along the axis being scaled
+         * @param terms
+         *            number of terms built
+         * @param files
+         *            number of files written
+         * @param wallNanos
+         *            wall time of the build
+         * @param peakRssKb
+         *            peak resident set size in kilobytes, or -1
+         * @param gcPauses
+         *            number of GC pauses
+         * @param gcPauseNanos
+         *            total time of the GC pauses
+         */
+        public Run(long size, long terms, long files, long wallNanos,
+                long peakRssKb, long gcPauses, long gcPauseNanos) {
+            this.size = size;
+            this.terms = terms;
+            this.files = files;
+            this.wallNanos = wallNanos;
+            this.peakRssKb = peakRssKb;
+            this.gcPauses = gcPauses;
+            this.gcPauseNanos = gcPauseNanos;
+        }
+
+        /**
+         * Returns the size along the axis being scaled.
+         *
+         * @return the size
+         */
+        public long size() {
+            return this.size;
+        }
+
+        /**
+         * Returns the number of terms built.
+         *
+         * @return the number of terms
+         */
+        public long terms() {
+            return this.terms;
+        }
+
+        /**
+         * Returns the number of files written.
+         *
+         * @return the number of files
+         */
+        public long files() {
+            return this.files;
+        }
+
+        /**
+         * Returns the wall time of the build.
+         *
+         * @return the wall time in nanoseconds
+         */
+        public long wallNanos() {
+            return this.wallNanos;
+        }
+
+        /**
+         * Returns the peak resident set size of the build's JVM.
+         *
+         * @return the peak in kilobytes, or -1 if unknown
+         */
+        public long peakRssKb() {
+            return this.peakRssKb;
+        }
+
+        /**
+         * Returns the number of GC pauses during the build.
+         *
+         * @return the number of pauses
+         */
+        public long gcPauses() {
+            return this.gcPauses;
+        }
+
+        /**
+         * Returns the total time of the GC pauses during the build.
+         *
+         * @return the pause time in nanoseconds
+         */
+        public long gcPauseNanos() {
+            return this.gcPauseNanos;
+        }
+
+        /**
+         * Returns the number of files written per second of wall time.
+         *
+         * @return files per second
+         */
+        public double filesPerSecond() {
+            return this.files * SECONDS / Math.max(1, this.wallNanos);
+        }
+
+        /**
+         * Returns this run with the given size.
+         *
+         * @param newSize
+         *            the size along the axis being scaled
+         * @return the run
+         */
+        Run withSize(long newSize) {
+            return new Run(newSize, this.terms, this.files, this.wallNanos,
+                    this.peakRssKb, this.gcPauses, this.gcPauseNanos);
+        }
+
+        /**
+         * Returns the line a build reports this run on.
+         *
+         * @return the line
+         */
+        String toLine() {
+            return RESULT + " " + this.size + " " + this.terms + " "
+                    + this.files + " " + this.wallNanos + " " + this.peakRssKb
+                    + " " + this.gcPauses + " " + this.gcPauseNanos;
+        }
+
+        /**
+         * Reads a run from the line a build reported it on.
+         *
+         * @param line
+         *            the line
+         * @return the run, or {@code null} if line is not a report
+         */
+        static Run parse(String line) {
+            String[] f = line.trim().split(" ");
+            Run run = null;
+            final int fields = 8;
+            if (f.length == fields && f[0].equals(RESULT)) {
+                int i = 1;
+                run = new Run(Long.parseLong(f[i++]), Long.parseLong(f[i++]),
+                        Long.parseLong(f[i++]), Long.parseLong(f[i++]),
+                        Long.parseLong(f[i++]), Long.parseLong(f[i++]),
+                        Long.parseLong(f[i]));
+            }
+            return run;
+        }
+
+        @Override
+        public String toString() {
+            String rss = "n/a";
+            if (this.peakRssKb >= 0) {
+                rss = String.format(Locale.ROOT, "%.1f",
+                        this.peakRssKb / KB_PER_MB);
+            }
+            return String.format(Locale.ROOT,
+                    "%10d %10d %10d %10.1f %10.0f %10s %6d %8.1f", this.size,
+                    this.terms, this.files, this.wallNanos / MILLIS,
+                    this.filesPerSecond(), rss, this.gcPauses,
+                    this.gcPauseNanos / MILLIS);
+        }
+    }
+
+    /**
+     * Header of the table of runs, matching {@link Run#toString}.
+     */
+    static final String HEADER = String.format(Locale.ROOT,
+            "%10s %10s %10s %10s %10s %10s %6s %8s", "size", "terms", "files",
+            "wall ms", "files/s", "peak MB", "GCs", "GC ms");
+
+    /**
+     * Reports the peak resident set size of this JVM so far.
+     *
+     * @return the peak in kilobytes, or -1 where the operating system does
+     *         not tell
+     */
+    static long peakRssKb() {
+        long result = -1;
+        Path status = Paths.get("/proc/self/status");
+        if (Files.isReadable(status)) {
+            try (Stream<String> lines = Files.lines(status)) {
+                result = lines.filter(line -> line.startsWith("VmHWM:"))
+                        .map(line -> line.replaceAll("[^0-9]", ""))
+                        .mapToLong(Long::parseLong).findFirst().orElse(-1);
+            } catch (IOException e) {
+                result = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of GC pauses of this JVM so far, and their total
+     * time. Collectors that only count concurrent cycles are left out.
+     *
+     * @return the number of pauses and their time in nanoseconds
+     */
+    private static long[] gcPauses() {
+        long[] result = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            String name = gc.getName();
+            if (!name.contains("Concurrent") && !name.contains("Cycles")
+                    && gc.getCollectionCount() > 0) {
+                result[0] += gc.getCollectionCount();
+                result[1] += gc.getCollectionTime() * (long) MILLIS;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the glossary in the given input file into the given folder, as
+     * {@link Glossary#main} does, and measures the build in this JVM.
+     *
+     * @param input
+     *            the input file
+     * @param folder
+     *            the output folder
+     * @param workers
+     *            the number of term pages generated at once
+     * @return the measurements, with the number of terms as the size
+     * @requires workers > 0
+     * @ensures [folder holds the index and term pages of input]
+     */
+    public static Run measure(Path input, Path folder, int workers) {
+        assert input != null : "Violation of: input is not null";
+        assert folder != null : "Violation of: folder is not null";
+        assert workers > 0 : "Violation of: workers > 0";
+
+        long[] gcBefore = gcPauses();
+        long start = System.nanoTime();
+        BuildStats stats = new BuildStats();
+        try {
+            Files.createDirectories(folder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        SeparatorSet separators = SeparatorSet.of(SEPARATORS);
+        Map<String, String> map = new Map1L<>();
+        Glossary.getTermsAndDefinitions(input, map);
+        Queue<String> terms = new Queue1L<>();
+        Glossary.sortTerms(terms, map, new Glossary.CompareStrings());
+        try (PageSink sink = stats
+                .count(new DirectoryPageSink(folder.toString()))) {
+            Glossary.writeGlossary(terms, map, sink, new GlossaryOptions()
+                    .separators(separators).workers(workers).stats(stats));
+        }
+        long wall = System.nanoTime() - start;
+        long[] gcAfter = gcPauses();
+        return new Run(map.size(), map.size(), stats.filesWritten(), wall,
+                peakRssKb(), gcAfter[0] - gcBefore[0],
+                gcAfter[1] - gcBefore[1]);
+    }
+
+    /**
+     * Builds the glossary in the given input file into the given folder in a
+     * new JVM, running this program with {@code --build}, and returns what
+     * that JVM measured.
+     *
+     * @param input
+     *            the input file
+     * @param folder
+     *            the output folder
+     * @param jvmArgs
+     *            extra options of the new JVM
+     * @param workers
+     *            the number of term pages generated at once
+     * @return the measurements, with the number of terms as the size
+     * @throws IOException
+     *             if the JVM cannot be started or its build fails
+     */
+    static Run measureInNewJvm(Path input, Path folder, List<String> jvmArgs,
+            int workers) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(jvmArgs);
+        command.add("-Dglossary.workers=" + workers);
+        command.add(ScaleHarness.class.getName());
+        command.add(BUILD);
+        command.add(input.toString());
+        command.add(folder.toString());
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        Run run = null;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(
+                process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line = out.readLine();
+            while (line != null) {
+                Run reported = Run.parse(line);
+                if (reported != null) {
+                    run = reported;
+                }
+                line = out.readLine();
+            }
+        }
+        int code;
+        try {
+            code = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+        if (code != 0 || run == null) {
+            throw new IOException("build of " + input + " failed (exit code "
+                    + code + ")");
+        }
+        return run;
+    }
+
+    /**
+     * Works out the exponent {@code e} of the growth of the wall time from
+     * one run to a larger one, where {@code time ~ size^e}.
+     *
+     * @param smaller
+     *            the smaller run
+     * @param larger
+     *            the larger run
+     * @return the exponent
+     * @requires 0 < smaller.size() < larger.size() and both wall times are
+     *           positive
+     */
+    public static double exponent(Run smaller, Run larger) {
+        assert 0 < smaller.size() && smaller.size() < larger.size() : ""
+                + "Violation of: 0 < smaller.size() < larger.size()";
+
+        return Math.log((double) larger.wallNanos() / smaller.wallNanos())
+                / Math.log((double) larger.size() / smaller.size());
+    }
+
+    /**
+     * Finds the superlinear steps of a series of runs: consecutive runs whose
+     * wall time grew with an exponent more than {@code tolerance} above 1.
+     * Steps from a run faster than {@link #MIN_JUDGED_NANOS} are skipped as
+     * too noisy.
+     *
+     * @param runs
+     *            the runs, in increasing order of size
+     * @param tolerance
+     *            how far above 1 an exponent may be
+     * @return a description of each superlinear step
+     * @requires [sizes of runs are positive and increasing] and tolerance >= 0
+     */
+    public static List<String> superlinearSteps(List<Run> runs,
+            double tolerance) {
+        assert runs != null : "Violation of: runs is not null";
+        assert tolerance >= 0 : "Violation of: tolerance >= 0";
+
+        List<String> result = new ArrayList<>();
+        for (int i = 1; i < runs.size(); i++) {
+            Run smaller = runs.get(i - 1);
+            Run larger = runs.get(i);
+            if (smaller.wallNanos() >= MIN_JUDGED_NANOS) {
+                double e = exponent(smaller, larger);
+                if (e > 1 + tolerance) {
+                    result.add(String.format(Locale.ROOT,
+                            "superlinear from %d to %d: time grew as "
+                                    + "size^%.2f",
+                            smaller.size(), larger.size(), e));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes a folder and everything in it.
+     *
+     * @param folder
+     *            the folder
+     */
+    private static void delete(Path folder) {
+        if (Files.exists(folder)) {
+            try (Stream<Path> all = Files.walk(folder)) {
+                for (Path p : (Iterable<Path>) all
+                        .sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Runs the scale test given by the command line arguments, printing a
+     * table of the runs and the superlinear steps to {@code out}.
+     *
+     * @param args
+     *            the scratch folder and the sizes
+     * @param out
+     *            where the report goes
+     * @return {@link #EXIT_OK}, {@link #EXIT_SUPERLINEAR} or
+     *         {@link #EXIT_USAGE}
+     */
+    public static int run(String[] args, SimpleWriter out) {
+        assert args != null : "Violation of: args is not null";
+        assert out != null : "Violation of: out is not null";
+
+        List<Long> sizes = new ArrayList<>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                long size = Long.parseLong(args[i]);
+                if (size <= 0 || (!sizes.isEmpty()
+                        && size <= sizes.get(sizes.size() - 1))) {
+                    throw new NumberFormatException(
+                            "sizes must be positive and increasing");
+                }
+                sizes.add(size);
+            }
+        } catch (NumberFormatException e) {
+            out.println(e.getMessage());
+            sizes.clear();
+        }
+        String axis = System.getProperty("glossary.scaleAxis", "terms");
+        int result;
+        if (sizes.isEmpty()
+                || !(axis.equals("terms") || axis.equals("words"))) {
+            out.println("usage: ScaleHarness <folder> <size> [<size>...] "
+                    + "with -Dglossary.scaleAxis=terms|words");
+            result = EXIT_USAGE;
+        } else {
+            List<String> steps = scale(Paths.get(args[0]), sizes,
+                    axis.equals("words"), out);
+            for (String step : steps) {
+                out.println(step);
+            }
+            if (steps.isEmpty()) {
+                out.println("no superlinear steps");
+            }
+            result = steps.isEmpty() ? EXIT_OK : EXIT_SUPERLINEAR;
+        }
+        return result;
+    }
+
+    /**
+     * Builds a made-up glossary of each of the given sizes in a new JVM,
+     * printing a table of the runs to {@code out}.
+     *
+     * @param scratch
+     *            folder for the scratch files
+     * @param sizes
+     *            the sizes, increasing
+     * @param byWords
+     *            whether the sizes are average definition lengths rather than
+     *            term counts
+     * @param out
+     *            where the table goes
+     * @return a description of each superlinear step
+     */
+    private static List<String> scale(Path scratch, List<Long> sizes,
+            boolean byWords, SimpleWriter out) {
+        int fixedTerms = Math.max(1, Integer.getInteger("glossary.terms",
+                10_000));
+        int fixedWords = Math.max(1,
+                Integer.getInteger("glossary.definitionWords",
+                        GlossaryGenerator.DEFAULT_DEFINITION_WORDS));
+        double tolerance = DEFAULT_TOLERANCE;
+        String t = System.getProperty("glossary.scaleTolerance");
+        if (t != null) {
+            tolerance = Math.max(0, Double.parseDouble(t));
+        }
+        List<String> jvmArgs = new ArrayList<>();
+        String extra = System.getProperty("glossary.scaleJvmArgs", "").trim();
+        if (!extra.isEmpty()) {
+            jvmArgs.addAll(List.of(extra.split("\\s+")));
+        }
+        int workers = Math.max(1, Integer.getInteger("glossary.workers", 1));
+
+        String axis = byWords ? "words" : "terms";
+        out.println("scaling " + axis + ", exponent tolerance " + tolerance);
+        out.println(HEADER);
+        List<Run> runs = new ArrayList<>();
+        for (long size : sizes) {
+            Path folder = scratch.resolve(axis + "-" + size);
+            Run run;
+            try {
+                delete(folder);
+                Files.createDirectories(folder);
+                GlossaryGenerator generator;
+                if (byWords) {
+                    generator = GlossaryGenerator.fromProperties(fixedTerms,
+                            Math.toIntExact(size));
+                } else {
+                    generator = GlossaryGenerator.fromProperties(
+                            Math.toIntExact(size), fixedWords);
+                }
+                Path input = folder.resolve("terms.txt");
+                generator.write(input);
+                run = measureInNewJvm(input, folder.resolve("site"), jvmArgs,
+                        workers).withSize(size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                // the inputs are made up again from the seed when needed
+                delete(folder);
+            }
+            out.println(run.toString());
+            runs.add(run);
+        }
+        return superlinearSteps(runs, tolerance);
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the scratch folder and the sizes, or {@code --build}, an
+     *            input file and an output folder to build one glossary and
+     *            report on it
+     */
+    public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals(BUILD)) {
+            int workers = Math.max(1,
+                    Integer.getInteger("glossary.workers", 1));
+            Run run = measure(Paths.get(args[1]), Paths.get(args[2]),
+                    workers);
+            System.out.println(run.toLine());
+        } else {
+            SimpleWriter out = new SimpleWriter1L();
+            int code = run(args, out);
+            out.close();
+            System.exit(code);
+        }
+    }
+
+}
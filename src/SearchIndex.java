@@ -0,0 +1,453 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A search index for the glossary's pages, collected while the term pages are
+ * generated so that nothing has to parse the HTML afterwards. It holds the
+ * terms sorted so that all the terms with a given prefix are next to each
+ * other, and an inverted index from each word that occurs in a definition to
+ * the terms whose definitions contain it.
+ * <p>
+ * Words are the tokens of a definition that are not separators, in lower
+ * case and without leading or trailing punctuation. Terms may be added by any
+ * number of threads at once. A build does not add them one by one, though:
+ * each worker collects the words of its pages into a {@link Part} of its
+ * own, as {@code TermMatcher.scan} passes over them, and adds the whole part
+ * when it is done, so the definitions are tokenized once and the workers do
+ * not wait on each other per page. {@link #write} stores the index as
+ * {@value #FILE_NAME}, a JSON object
+ * <pre>
+ * {"terms":[...],"words":[...],"postings":[[...],...]}
+ * </pre>
+ * where {@code terms} and {@code words} are sorted, the id of a term is its
+ * position in {@code terms}, and {@code postings[i]} lists the ids of the
+ * terms whose definitions contain {@code words[i]}, in increasing order and
+ * delta-encoded: the first id, then the difference from each id to the next.
+ */
+public final class SearchIndex {
+
+    /**
+     * Name the index is stored under.
+     */
+    public static final String FILE_NAME = "search.json";
+
+    /**
+     * The ids of the terms whose definitions contain one word, in the order
+     * they were added.
+     */
+    private static final class Postings {
+
+        /**
+         * The ids; only the first {@code size} are in use.
+         */
+        private int[] ids = new int[2];
+
+        /**
+         * Number of ids.
+         */
+        private int size;
+
+        /**
+         * Adds an id, unless it is the last one added.
+         *
+         * @param id
+         *            the id, no less than any added before
+         */
+        private void add(int id) {
+            if (this.size == 0 || this.ids[this.size - 1] != id) {
+                if (this.size == this.ids.length) {
+                    this.ids = Arrays.copyOf(this.ids, 2 * this.size);
+                }
+                this.ids[this.size] = id;
+                this.size++;
+            }
+        }
+
+        /**
+         * Adds the given ids, each increased by {@code offset}.
+         *
+         * @param other
+         *            the ids
+         * @param offset
+         *            added to each id
+         */
+        private void addAll(Postings other, int offset) {
+            if (this.size + other.size > this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids,
+                        Math.max(this.size + other.size, 2 * this.size));
+            }
+            for (int i = 0; i < other.size; i++) {
+                this.ids[this.size + i] = other.ids[i] + offset;
+            }
+            this.size += other.size;
+        }
+    }
+
+    /**
+     * The terms and words collected by one worker, to be added to the index
+     * all at once with {@link SearchIndex#addAll}. For each page, the worker
+     * calls {@link #begin} and then passes this to {@code TermMatcher.scan}
+     * as it scans the definition, which reports the words to {@link #word}.
+     * A part is used by one thread at a time.
+     */
+    static final class Part implements TermMatcher.WordHandler {
+
+        /**
+         * The terms, in the order they were begun.
+         */
+        private final List<String> terms = new ArrayList<>();
+
+        /**
+         * For each word, the positions in {@code terms} of the terms whose
+         * definitions contain it.
+         */
+        private final HashMap<String, Postings> words = new HashMap<>();
+
+        /**
+         * The definition of the last term begun.
+         */
+        private CharSequence def;
+
+        /**
+         * Starts collecting the words of the given term's definition.
+         *
+         * @param term
+         *            the term
+         * @param definition
+         *            its definition
+         */
+        void begin(String term, CharSequence definition) {
+            this.terms.add(term);
+            this.def = definition;
+        }
+
+        @Override
+        public void word(int start, int end) {
+            String word = normalize(this.def, start, end);
+            if (word != null) {
+                this.word(word);
+            }
+        }
+
+        /**
+         * Adds a word of the definition of the last term begun, already
+         * normalized, as one kept from an earlier build.
+         *
+         * @param word
+         *            the word, as {@link SearchIndex#normalize} returns it
+         */
+        void word(String word) {
+            this.words.computeIfAbsent(word, w -> new Postings())
+                    .add(this.terms.size() - 1);
+        }
+    }
+
+    /**
+     * The separator characters that split definitions into tokens.
+     */
+    private final SeparatorSet separators;
+
+    /**
+     * The terms added so far, in the order they were added.
+     */
+    private final List<String> terms = new ArrayList<>();
+
+    /**
+     * For each word, the positions in {@code terms} of the terms whose
+     * definitions contain it.
+     */
+    private final HashMap<String, Postings> words = new HashMap<>();
+
+    /**
+     * The terms sorted, or {@code null} if terms were added since they last
+     * were.
+     */
+    private String[] sorted;
+
+    /**
+     * For each position in {@code terms}, the position of the term in
+     * {@code sorted}; {@code null} whenever {@code sorted} is.
+     */
+    private int[] sortedIds;
+
+    /**
+     * Constructor.
+     *
+     * @param separators
+     *            the separator characters that split definitions into tokens
+     */
+    public SearchIndex(SeparatorSet separators) {
+        assert separators != null : "Violation of: separators is not null";
+
+        this.separators = separators;
+    }
+
+    /**
+     * Returns the given word in lower case, without leading or trailing
+     * characters that are neither letters nor digits.
+     *
+     * @param text
+     *            the text holding the word
+     * @param start
+     *            index of the first character of the word
+     * @param end
+     *            index just past the last character of the word
+     * @return the normalized word, or {@code null} if nothing is left of it
+     */
+    static String normalize(CharSequence text, int start, int end) {
+        int from = start;
+        int to = end;
+        while (from < to && !Character.isLetterOrDigit(text.charAt(from))) {
+            from++;
+        }
+        while (to > from && !Character.isLetterOrDigit(text.charAt(to - 1))) {
+            to--;
+        }
+        String result = null;
+        if (from < to) {
+            result = text.subSequence(from, to).toString()
+                    .toLowerCase(Locale.ROOT);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given term, indexing the words of its definition.
+     *
+     * @param term
+     *            the term
+     * @param def
+     *            the definition of the term
+     * @requires [term has not been added before]
+     */
+    public void add(String term, CharSequence def) {
+        assert term != null : "Violation of: term is not null";
+        assert def != null : "Violation of: def is not null";
+
+        // the definition is tokenized before taking the lock
+        Part part = new Part();
+        this.collect(term, def, part);
+        this.addAll(part);
+    }
+
+    /**
+     * Collects the given term, with the words of its definition split at
+     * this index's separators, into the given part, for a worker that has no
+     * {@code TermMatcher.scan} to report them.
+     *
+     * @param term
+     *            the term
+     * @param def
+     *            the definition of the term
+     * @param part
+     *            the terms and words collected by one worker
+     * @updates part
+     */
+    void collect(String term, CharSequence def, Part part) {
+        part.begin(term, def);
+        int position = 0;
+        while (position < def.length()) {
+            int end = Glossary.nextWordOrSeparatorEnd(def, position,
+                    this.separators);
+            if (!this.separators.contains(
+                    Character.codePointAt(def, position))) {
+                part.word(position, end);
+            }
+            position = end;
+        }
+    }
+
+    /**
+     * Adds every term of the given part, with the words of its definition.
+     *
+     * @param part
+     *            the terms and words collected by one worker
+     * @requires [no term of part has been added before]
+     */
+    synchronized void addAll(Part part) {
+        assert part != null : "Violation of: part is not null";
+
+        int offset = this.terms.size();
+        this.terms.addAll(part.terms);
+        for (Map.Entry<String, Postings> e : part.words.entrySet()) {
+            this.words.computeIfAbsent(e.getKey(), w -> new Postings())
+                    .addAll(e.getValue(), offset);
+        }
+        this.sorted = null;
+        this.sortedIds = null;
+    }
+
+    /**
+     * Reports the number of terms added.
+     *
+     * @return the number of terms
+     */
+    public synchronized int termCount() {
+        return this.terms.size();
+    }
+
+    /**
+     * Reports the number of distinct words in the definitions.
+     *
+     * @return the number of words
+     */
+    public synchronized int wordCount() {
+        return this.words.size();
+    }
+
+    /**
+     * Sorts the terms into {@code sorted} and {@code sortedIds}, unless they
+     * already are, so a series of lookups sorts them only once.
+     */
+    private void sortTerms() {
+        if (this.sorted == null) {
+            Integer[] order = new Integer[this.terms.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> this.terms.get(a)
+                    .compareTo(this.terms.get(b)));
+            this.sorted = new String[order.length];
+            this.sortedIds = new int[order.length];
+            for (int k = 0; k < order.length; k++) {
+                this.sorted[k] = this.terms.get(order[k]);
+                this.sortedIds[order[k]] = k;
+            }
+        }
+    }
+
+    /**
+     * Returns the sorted ids of the given postings.
+     *
+     * @param postings
+     *            the postings, by position the terms were added at
+     * @param ids
+     *            the sorted position of each added term
+     * @return the sorted positions of the terms in postings
+     */
+    private static int[] positions(Postings postings, int[] ids) {
+        int[] result = new int[postings.size];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids[postings.ids[i]];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the terms that start with the given prefix, in sorted order.
+     *
+     * @param prefix
+     *            the prefix
+     * @return the terms
+     */
+    public synchronized List<String> withPrefix(String prefix) {
+        assert prefix != null : "Violation of: prefix is not null";
+
+        this.sortTerms();
+        String[] sorted = this.sorted;
+        int i = Arrays.binarySearch(sorted, prefix);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        List<String> result = new ArrayList<>();
+        while (i < sorted.length && sorted[i].startsWith(prefix)) {
+            result.add(sorted[i]);
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the terms whose definitions contain the given word, in sorted
+     * order.
+     *
+     * @param word
+     *            the word, in any case
+     * @return the terms
+     */
+    public synchronized List<String> find(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        List<String> result = new ArrayList<>();
+        String key = normalize(word, 0, word.length());
+        Postings postings = null;
+        if (key != null) {
+            postings = this.words.get(key);
+        }
+        if (postings != null) {
+            this.sortTerms();
+            for (int id : positions(postings, this.sortedIds)) {
+                result.add(this.sorted[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index as JSON, in the format described above.
+     *
+     * @return the JSON
+     */
+    public synchronized String toJson() {
+        this.sortTerms();
+        String[] sorted = this.sorted;
+        int[] ids = this.sortedIds;
+        String[] keys = this.words.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+
+        StringBuilder json = new StringBuilder("{\"terms\":[");
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Json.appendString(sorted[i], json);
+        }
+        json.append("],\"words\":[");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Json.appendString(keys[i], json);
+        }
+        json.append("],\"postings\":[");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('[');
+            int previous = 0;
+            int[] list = positions(this.words.get(keys[i]), ids);
+            for (int k = 0; k < list.length; k++) {
+                if (k > 0) {
+                    json.append(',');
+                }
+                json.append(list[k] - previous);
+                previous = list[k];
+            }
+            json.append(']');
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Stores the index in the given {@code PageSink} as {@value #FILE_NAME}.
+     *
+     * @param sink
+     *            where the index is stored
+     * @ensures [sink holds toJson() under FILE_NAME]
+     */
+    public void write(PageSink sink) {
+        assert sink != null : "Violation of: sink is not null";
+
+        byte[] bytes = this.toJson().getBytes(StandardCharsets.UTF_8);
+        sink.write(FILE_NAME, bytes, 0, bytes.length);
+    }
+
+}
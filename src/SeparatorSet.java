@@ -0,0 +1,230 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+import components.set.Set;
+
+/**
+ * Set of separator characters with O(1) membership tests and no boxing, used
+ * by the tokenizer in the hot loop of page generation. Characters in the Basic
+ * Multilingual Plane are kept in a flat 64K-bit table; supplementary code
+ * points fall back to a {@code BitSet} that is only created when one is added.
+ */
+public final class SeparatorSet {
+
+    /**
+     * Number of code points covered by the flat table (the whole BMP).
+     */
+    private static final int BMP_SIZE = Character.MAX_VALUE + 1;
+
+    /**
+     * Bit {@code c} is set iff BMP character {@code c} is a separator.
+     */
+    private final long[] bmp = new long[BMP_SIZE / Long.SIZE];
+
+    /**
+     * Bit {@code cp - BMP_SIZE} is set iff supplementary code point {@code cp}
+     * is a separator; {@code null} until one is added.
+     */
+    private BitSet supplementary;
+
+    /**
+     * Number of separators in this set.
+     */
+    private int size;
+
+    /**
+     * No-argument constructor, creates an empty set.
+     */
+    public SeparatorSet() {
+        this.supplementary = null;
+        this.size = 0;
+    }
+
+    /**
+     * Returns a new {@code SeparatorSet} holding every code point of the given
+     * {@code CharSequence}.
+     *
+     * @param chars
+     *            the separator characters
+     * @return the new set
+     * @ensures of = entries(chars)
+     */
+    public static SeparatorSet of(CharSequence chars) {
+        assert chars != null : "Violation of: chars is not null";
+
+        SeparatorSet result = new SeparatorSet();
+        result.addAll(chars);
+        return result;
+    }
+
+    /**
+     * Returns a new {@code SeparatorSet} holding the same characters as the
+     * given {@code Set}. This adapts the {@code Set<Character>} overloads of
+     * {@code Glossary} to the primitive tokenizer.
+     *
+     * @param chars
+     *            the separator characters
+     * @return the new set
+     * @ensures from = chars
+     */
+    public static SeparatorSet from(Set<Character> chars) {
+        assert chars != null : "Violation of: chars is not null";
+
+        SeparatorSet result = new SeparatorSet();
+        for (Character c : chars) {
+            result.add(c.charValue());
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given code point to this set, if it is not already there.
+     *
+     * @param codePoint
+     *            the separator to add
+     * @updates this
+     * @requires codePoint is a valid Unicode code point
+     * @ensures this = #this union {codePoint}
+     */
+    public void add(int codePoint) {
+        assert Character.isValidCodePoint(codePoint) : "Violation of: "
+                + "codePoint is a valid Unicode code point";
+
+        if (!this.contains(codePoint)) {
+            if (codePoint < BMP_SIZE) {
+                this.bmp[codePoint >>> 6] |= 1L << codePoint;
+            } else {
+                if (this.supplementary == null) {
+                    this.supplementary = new BitSet();
+                }
+                this.supplementary.set(codePoint - BMP_SIZE);
+            }
+            this.size++;
+        }
+    }
+
+    /**
+     * Adds every code point of the given {@code CharSequence} to this set.
+     *
+     * @param chars
+     *            the separators to add
+     * @updates this
+     * @ensures this = #this union entries(chars)
+     */
+    public void addAll(CharSequence chars) {
+        assert chars != null : "Violation of: chars is not null";
+
+        int i = 0;
+        while (i < chars.length()) {
+            int codePoint = Character.codePointAt(chars, i);
+            this.add(codePoint);
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    /**
+     * Removes every separator from this set.
+     *
+     * @clears this
+     */
+    public void clear() {
+        Arrays.fill(this.bmp, 0L);
+        this.supplementary = null;
+        this.size = 0;
+    }
+
+    /**
+     * Reports whether the given BMP character is in this set.
+     *
+     * @param c
+     *            the character to look for
+     * @return true iff c is in this
+     */
+    public boolean contains(char c) {
+        return (this.bmp[c >>> 6] & (1L << c)) != 0;
+    }
+
+    /**
+     * Reports whether the given code point is in this set.
+     *
+     * @param codePoint
+     *            the code point to look for
+     * @return true iff codePoint is in this
+     */
+    public boolean contains(int codePoint) {
+        boolean result;
+        if (codePoint < 0) {
+            result = false;
+        } else if (codePoint < BMP_SIZE) {
+            result = (this.bmp[codePoint >>> 6] & (1L << codePoint)) != 0;
+        } else {
+            result = this.supplementary != null
+                    && this.supplementary.get(codePoint - BMP_SIZE);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the separators in this set as code points, in increasing order.
+     *
+     * @return the code points of this
+     * @ensures [codePoints holds the entries of this, in increasing order]
+     */
+    public int[] codePoints() {
+        int[] result = new int[this.size];
+        int n = 0;
+        for (int i = 0; i < this.bmp.length; i++) {
+            long word = this.bmp[i];
+            while (word != 0) {
+                result[n] = i * Long.SIZE + Long.numberOfTrailingZeros(word);
+                n++;
+                word &= word - 1;
+            }
+        }
+        if (this.supplementary != null) {
+            int cp = this.supplementary.nextSetBit(0);
+            while (cp >= 0) {
+                result[n] = cp + BMP_SIZE;
+                n++;
+                cp = this.supplementary.nextSetBit(cp + 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of the separators in this set. Two sets
+     * holding the same separators always have the same fingerprint, so it can
+     * be stored to tell whether a later run tokenizes the same way.
+     *
+     * @return the fingerprint of this
+     */
+    public long fingerprint() {
+        final long prime = 0x100000001B3L;
+        long result = 0xCBF29CE484222325L;
+        for (int i = 0; i < this.bmp.length; i++) {
+            if (this.bmp[i] != 0) {
+                result = (result ^ i) * prime;
+                result = (result ^ this.bmp[i]) * prime;
+            }
+        }
+        if (this.supplementary != null) {
+            int cp = this.supplementary.nextSetBit(0);
+            while (cp >= 0) {
+                result = (result ^ (cp + BMP_SIZE)) * prime;
+                cp = this.supplementary.nextSetBit(cp + 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of separators in this set.
+     *
+     * @return |this|
+     */
+    public int size() {
+        return this.size;
+    }
+
+}
@@ -0,0 +1,409 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Terms in sorted order, sorted with an external merge sort so that no more
+ * than a given number of them are ever held in memory at once. The terms are
+ * sorted in runs of that size, each run is spilled to a temporary file, and
+ * the runs are merged (k-way, with a heap, at most {@code FAN_IN} at a time)
+ * into one sorted file, which iterating then reads sequentially. If all the
+ * terms fit in one run nothing is spilled.
+ * <p>
+ * Only the sort itself is bounded: the run buffer grows as terms arrive, up
+ * to {@code runSize} of them, and is dropped before merging. Whatever the
+ * terms come from (a {@code Map} of all the definitions, say) is not, and
+ * neither is anything built from the sorted terms afterwards.
+ * <p>
+ * The result can be iterated any number of times, each time without merging
+ * again; {@link #close} deletes the temporary files.
+ */
+public final class SortedTerms implements Iterable<String>, AutoCloseable {
+
+    /**
+     * Most runs merged at once; with more, runs are first merged into longer
+     * ones, so the number of open files stays bounded.
+     */
+    private static final int FAN_IN = 64;
+
+    /**
+     * Size of the buffer of each run file.
+     */
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * Most terms the run buffer starts with; it doubles from there up to the
+     * run size, so a large run size costs nothing until terms need it.
+     */
+    private static final int INITIAL_RUN = 1 << 10;
+
+    /**
+     * The order of the terms.
+     */
+    private final Comparator<String> order;
+
+    /**
+     * The terms, if they fit in one run; otherwise {@code null}.
+     */
+    private final String[] memory;
+
+    /**
+     * The spilled runs, each sorted.
+     */
+    private final List<Path> runs;
+
+    /**
+     * Number of terms.
+     */
+    private final long size;
+
+    /**
+     * Run readers opened by iterators and not yet closed.
+     */
+    private final List<Closeable> open = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param order
+     *            the order of the terms
+     * @param memory
+     *            the terms, if they fit in one run
+     * @param runs
+     *            the spilled runs
+     * @param size
+     *            number of terms
+     */
+    private SortedTerms(Comparator<String> order, String[] memory,
+            List<Path> runs, long size) {
+        this.order = order;
+        this.memory = memory;
+        this.runs = runs;
+        this.size = size;
+    }
+
+    /**
+     * Sorts the given terms, holding at most {@code runSize} of them in
+     * memory at once and spilling sorted runs to temporary files in the
+     * default temporary folder.
+     *
+     * @param terms
+     *            the terms, in any order
+     * @param order
+     *            the order to sort them in
+     * @param runSize
+     *            most terms sorted in memory at once
+     * @return the sorted terms
+     * @requires runSize > 0
+     */
+    public static SortedTerms sort(Iterable<String> terms,
+            Comparator<String> order, int runSize) {
+        return sort(terms, order, runSize, null);
+    }
+
+    /**
+     * Sorts the given terms, holding at most {@code runSize} of them in
+     * memory at once and spilling sorted runs to temporary files in the given
+     * folder.
+     *
+     * @param terms
+     *            the terms, in any order
+     * @param order
+     *            the order to sort them in
+     * @param runSize
+     *            most terms sorted in memory at once
+     * @param tempDir
+     *            folder for the runs, or {@code null} for the default
+     *            temporary folder
+     * @return the sorted terms
+     * @requires runSize > 0
+     */
+    public static SortedTerms sort(Iterable<String> terms,
+            Comparator<String> order, int runSize, Path tempDir) {
+        assert terms != null : "Violation of: terms is not null";
+        assert order != null : "Violation of: order is not null";
+        assert runSize > 0 : "Violation of: runSize > 0";
+
+        List<Path> runs = new ArrayList<>();
+        String[] run = new String[Math.min(runSize, INITIAL_RUN)];
+        int n = 0;
+        long size = 0;
+        try {
+            for (String term : terms) {
+                if (n == runSize) {
+                    CollationOrder.sort(run, 0, runSize, order);
+                    runs.add(spill(Arrays.asList(run).iterator(), tempDir));
+                    n = 0;
+                } else if (n == run.length) {
+                    run = Arrays.copyOf(run,
+                            (int) Math.min(runSize, 2L * run.length));
+                }
+                run[n] = term;
+                n++;
+                size++;
+            }
+            SortedTerms result;
+            if (runs.isEmpty()) {
+                String[] memory = Arrays.copyOf(run, n);
+                CollationOrder.sort(memory, 0, n, order);
+                result = new SortedTerms(order, memory, runs, size);
+            } else {
+                CollationOrder.sort(run, 0, n, order);
+                runs.add(spill(Arrays.asList(run).subList(0, n).iterator(),
+                        tempDir));
+                run = null; // not needed while merging
+                /*
+                 * merge the runs down to one, FAN_IN at a time, so that each
+                 * iteration afterwards is a plain sequential read
+                 */
+                while (runs.size() > 1) {
+                    List<Path> merged = new ArrayList<>();
+                    for (int i = 0; i < runs.size(); i += FAN_IN) {
+                        List<Path> group = runs.subList(i,
+                                Math.min(i + FAN_IN, runs.size()));
+                        SortedTerms part = new SortedTerms(order, null,
+                                group, 0);
+                        merged.add(spill(part.iterator(), tempDir));
+                        for (Path p : group) {
+                            Files.delete(p);
+                        }
+                    }
+                    runs = merged;
+                }
+                result = new SortedTerms(order, null, runs, size);
+            }
+            return result;
+        } catch (IOException e) {
+            deleteAll(runs);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the given terms to a new temporary file, each as the length of
+     * its UTF-8 encoding followed by the encoding.
+     *
+     * @param terms
+     *            the terms, in order
+     * @param tempDir
+     *            folder for the file, or {@code null} for the default
+     * @return the new file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static Path spill(Iterator<String> terms, Path tempDir)
+            throws IOException {
+        Path file;
+        if (tempDir == null) {
+            file = Files.createTempFile("glossary-run", ".tmp");
+        } else {
+            file = Files.createTempFile(tempDir, "glossary-run", ".tmp");
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file),
+                        BUFFER))) {
+            while (terms.hasNext()) {
+                byte[] bytes = terms.next().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Deletes the given files, ignoring failures.
+     *
+     * @param files
+     *            the files
+     */
+    private static void deleteAll(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // nothing more can be done about a temporary file
+            }
+        }
+    }
+
+    /**
+     * Reports the number of terms.
+     *
+     * @return the number of terms
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Reports the number of runs read when iterating.
+     *
+     * @return 1 if the terms were spilled, or 0 if nothing was spilled
+     */
+    public int runCount() {
+        return this.runs.size();
+    }
+
+    /**
+     * One run being read, with the term it is at.
+     */
+    private static final class RunReader implements Closeable {
+
+        /**
+         * The run.
+         */
+        private final DataInputStream in;
+
+        /**
+         * The current term, or {@code null} once the run is used up.
+         */
+        private String head;
+
+        /**
+         * Opens the given run and reads its first term.
+         *
+         * @param run
+         *            the run
+         * @throws IOException
+         *             if the run cannot be read
+         */
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(run), BUFFER));
+            this.advance();
+        }
+
+        /**
+         * Moves to the next term of the run, closing it when used up.
+         *
+         * @throws IOException
+         *             if the run cannot be read
+         */
+        void advance() throws IOException {
+            int length;
+            try {
+                length = this.in.readInt();
+            } catch (EOFException e) {
+                length = -1;
+            }
+            if (length < 0) {
+                this.head = null;
+                this.in.close();
+            } else {
+                byte[] bytes = new byte[length];
+                this.in.readFully(bytes);
+                this.head = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * Returns an iterator over the terms in sorted order.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<String> iterator() {
+        Iterator<String> result;
+        if (this.memory != null) {
+            result = Arrays.asList(this.memory).iterator();
+        } else {
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(
+                    Math.max(1, this.runs.size()),
+                    (a, b) -> this.order.compare(a.head, b.head));
+            try {
+                for (Path run : this.runs) {
+                    RunReader reader = new RunReader(run);
+                    synchronized (this.open) {
+                        this.open.add(reader);
+                    }
+                    if (reader.head != null) {
+                        heads.add(reader);
+                    }
+                }
+            } catch (IOException e) {
+                this.closeReaders();
+                throw new UncheckedIOException(e);
+            }
+            result = new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return !heads.isEmpty();
+                }
+
+                @Override
+                public String next() {
+                    if (heads.isEmpty()) {
+                        throw new NoSuchElementException();
+                    }
+                    RunReader smallest = heads.poll();
+                    String term = smallest.head;
+                    try {
+                        smallest.advance();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (smallest.head != null) {
+                        heads.add(smallest);
+                    } else {
+                        synchronized (SortedTerms.this.open) {
+                            SortedTerms.this.open.remove(smallest);
+                        }
+                    }
+                    return term;
+                }
+            };
+        }
+        return result;
+    }
+
+    /**
+     * Closes every run reader that iterators left open.
+     */
+    private void closeReaders() {
+        synchronized (this.open) {
+            for (Closeable reader : this.open) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // the run is deleted next anyway
+                }
+            }
+            this.open.clear();
+        }
+    }
+
+    /**
+     * Closes any runs still being read and deletes the temporary files.
+     */
+    @Override
+    public void close() {
+        this.closeReaders();
+        deleteAll(this.runs);
+    }
+
+}
@@ -0,0 +1,271 @@
+import java.util.Arrays;
+
+import components.map.Map;
+
+/**
+ * A read-only set of terms, built once, that answers "is this span of text a
+ * term, and which one" straight from a range of a {@code CharSequence}, with
+ * no substring or other allocation. Each term has an id, its index in the
+ * array it was built from.
+ * <p>
+ * The characters of all the terms are packed end to end into one array, with
+ * an array of offsets marking where each term starts, and the ids are kept in
+ * an open-addressing hash table of {@code int}s. That is three arrays in all,
+ * instead of a {@code String} and a map node per term. It saves heap only
+ * where the dictionary replaces such a map; {@code GlossaryServer} and
+ * {@code IncrementalBuild}, which use it, keep their terms as strings anyway,
+ * and what they gain is lookups from a span with no allocation.
+ * <p>
+ * A dictionary is immutable, so one instance can be shared by threads.
+ */
+public final class TermDictionary {
+
+    /**
+     * Marks an empty slot of the hash table, and a span that is no term.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The characters of all the terms, end to end.
+     */
+    private final char[] chars;
+
+    /**
+     * Where each term starts in {@code chars}; term {@code id} ends where
+     * term {@code id + 1} starts.
+     */
+    private final int[] offsets;
+
+    /**
+     * The hash table: the id of a term, or {@code NONE}, in each slot.
+     */
+    private final int[] slots;
+
+    /**
+     * How far a hash is shifted right to give a slot: 32 less the number of
+     * bits of a slot index.
+     */
+    private final int shift;
+
+    /**
+     * Builds a dictionary of the given terms. The id of each term is its index
+     * in {@code terms}.
+     *
+     * @param terms
+     *            the terms
+     * @requires [terms has no duplicates]
+     */
+    public TermDictionary(String[] terms) {
+        assert terms != null : "Violation of: terms is not null";
+
+        int total = 0;
+        for (String term : terms) {
+            total += term.length();
+        }
+        this.chars = new char[total];
+        this.offsets = new int[terms.length + 1];
+        int at = 0;
+        for (int id = 0; id < terms.length; id++) {
+            this.offsets[id] = at;
+            terms[id].getChars(0, terms[id].length(), this.chars, at);
+            at += terms[id].length();
+        }
+        this.offsets[terms.length] = at;
+
+        // at most half full, so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(1, terms.length)) * 2 * 2;
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, NONE);
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+        int mask = capacity - 1;
+        for (int id = 0; id < terms.length; id++) {
+            int i = hash(terms[id], 0, terms[id].length()) >>> this.shift;
+            while (this.slots[i] != NONE) {
+                i = (i + 1) & mask;
+            }
+            this.slots[i] = id;
+        }
+    }
+
+    /**
+     * Builds a dictionary of all the Keys of the given {@code Map}, with ids
+     * in the order the {@code Map} iterates them.
+     *
+     * @param map
+     *            {@code Map} containing all terms and their definitions as its
+     *            Keys and Values
+     * @return the dictionary
+     * @ensures [the terms of compile are the Keys of map]
+     */
+    public static TermDictionary compile(Map<String, String> map) {
+        assert map != null : "Violation of: map is not null";
+
+        String[] keys = new String[map.size()];
+        int i = 0;
+        for (Map.Pair<String, String> pair : map) {
+            keys[i] = pair.key();
+            i++;
+        }
+        return new TermDictionary(keys);
+    }
+
+    /**
+     * Hashes the characters of {@code text} from {@code start} up to (not
+     * including) {@code end}.
+     *
+     * @param text
+     *            the text
+     * @param start
+     *            index of the first character
+     * @param end
+     *            index just past the last character
+     * @return the hash, to be shifted right to give a slot
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        /*
+         * Fibonacci hashing: bit k of the product depends on bits 0 to k of
+         * h, so it is the high bits that depend on all of h, and those are
+         * the ones a slot is taken from
+         */
+        final int golden = 0x9E3779B9;
+        return h * golden;
+    }
+
+    /**
+     * Reports the number of terms.
+     *
+     * @return the number of terms
+     */
+    public int size() {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * Returns the id of the term spelled by the characters of {@code text}
+     * from {@code start} up to (not including) {@code end}.
+     *
+     * @param text
+     *            the text
+     * @param start
+     *            index of the first character of the span
+     * @param end
+     *            index just past the last character of the span
+     * @return the id of the term, or -1 if the span is not a term
+     * @requires 0 <= start <= end <= |text|
+     */
+    public int id(CharSequence text, int start, int end) {
+        assert text != null : "Violation of: text is not null";
+        assert 0 <= start && start <= end
+                && end <= text.length() : "Violation of: "
+                        + "0 <= start <= end <= |text|";
+
+        int mask = this.slots.length - 1;
+        int i = hash(text, start, end) >>> this.shift;
+        int result = NONE;
+        while (result == NONE && this.slots[i] != NONE) {
+            if (this.spells(this.slots[i], text, start, end)) {
+                result = this.slots[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of the given term.
+     *
+     * @param term
+     *            the term to look for
+     * @return the id of term, or -1 if it is not in the dictionary
+     */
+    public int id(CharSequence term) {
+        assert term != null : "Violation of: term is not null";
+
+        return this.id(term, 0, term.length());
+    }
+
+    /**
+     * Reports whether the given span of text is term {@code id}.
+     *
+     * @param id
+     *            the id of a term
+     * @param text
+     *            the text
+     * @param start
+     *            index of the first character of the span
+     * @param end
+     *            index just past the last character of the span
+     * @return true iff the span spells the term
+     */
+    private boolean spells(int id, CharSequence text, int start, int end) {
+        int from = this.offsets[id];
+        boolean result = this.offsets[id + 1] - from == end - start;
+        int i = start;
+        while (result && i < end) {
+            result = this.chars[from + i - start] == text.charAt(i);
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the length of the term with the given id.
+     *
+     * @param id
+     *            the id of the term
+     * @return its length in {@code char}s
+     * @requires 0 <= id < size()
+     */
+    public int length(int id) {
+        assert 0 <= id && id < this.size() : "Violation of: 0 <= id < size()";
+
+        return this.offsets[id + 1] - this.offsets[id];
+    }
+
+    /**
+     * Appends the term with the given id to the given buffer.
+     *
+     * @param id
+     *            the id of the term
+     * @param out
+     *            the buffer
+     * @updates out
+     * @requires 0 <= id < size()
+     */
+    public void appendTerm(int id, StringBuilder out) {
+        assert 0 <= id && id < this.size() : "Violation of: 0 <= id < size()";
+
+        out.append(this.chars, this.offsets[id], this.length(id));
+    }
+
+    /**
+     * Returns the term with the given id, as a new {@code String}.
+     *
+     * @param id
+     *            the id of the term
+     * @return the term
+     * @requires 0 <= id < size()
+     */
+    public String term(int id) {
+        assert 0 <= id && id < this.size() : "Violation of: 0 <= id < size()";
+
+        return new String(this.chars, this.offsets[id], this.length(id));
+    }
+
+    /**
+     * Reports roughly how many bytes of heap the dictionary's arrays take,
+     * leaving out object headers.
+     *
+     * @return the size of the arrays in bytes
+     */
+    public long footprint() {
+        return (long) this.chars.length * Character.BYTES
+                + (long) this.offsets.length * Integer.BYTES
+                + (long) this.slots.length * Integer.BYTES;
+    }
+
+}
@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+
+import components.map.Map;
+
+/**
+ * Reads a glossary input file of terms and definitions through memory-mapped
+ * windows of the file, decoding UTF-8 straight into a reused character buffer.
+ * Multi-line definitions are joined in reused builders, so reading is linear in
+ * the size of the file and runs at disk speed even for multi-gigabyte files.
+ * <p>
+ * The format is the one {@code Glossary.getTermsAndDefinitions} reads: a term
+ * on one line, its definition on the following lines (joined with single
+ * spaces), and a blank line after each definition. Lines may end in
+ * {@code \n}, {@code \r\n} or {@code \r}, and the last definition does not
+ * need a blank line (or even a line terminator) after it.
+ */
+public final class TermFileParser {
+
+    /**
+     * Size of each memory-mapped window of the file.
+     */
+    private static final int WINDOW = 1 << 26;
+
+    /**
+     * Size of the decoded character buffer.
+     */
+    private static final int CHARS = 1 << 16;
+
+    /**
+     * Where the parser is in the term/definition format.
+     */
+    private enum State {
+        /**
+         * Between definitions, waiting for a term.
+         */
+        TERM,
+        /**
+         * Right after a term, waiting for the first line of its definition.
+         */
+        FIRST_LINE,
+        /**
+         * Inside a definition, until a blank line.
+         */
+        MORE_LINES
+    }
+
+    /**
+     * Where each term and its definition go; the definition is only valid
+     * during the call.
+     */
+    private final BiConsumer<String, CharSequence> target;
+
+    /**
+     * The line being read.
+     */
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * The definition being read.
+     */
+    private final StringBuilder def = new StringBuilder();
+
+    /**
+     * The term whose definition is being read.
+     */
+    private String term;
+
+    /**
+     * Where the parser is in the format.
+     */
+    private State state;
+
+    /**
+     * Whether the last character seen was a {@code \r}, so that a following
+     * {@code \n} belongs to the same line terminator.
+     */
+    private boolean afterCarriageReturn;
+
+    /**
+     * Constructor.
+     *
+     * @param target
+     *            where each term and its definition go
+     */
+    private TermFileParser(BiConsumer<String, CharSequence> target) {
+        this.target = target;
+        this.term = null;
+        this.state = State.TERM;
+        this.afterCarriageReturn = false;
+    }
+
+    /**
+     * Reads the given input file, storing its terms and definitions in the
+     * given {@code Map}, replacing its contents.
+     *
+     * @param file
+     *            the input file
+     * @param map
+     *            the {@code Map} that gets replaced
+     * @replaces map
+     * @ensures [the {@code Map}'s Keys are the terms and its Values are the
+     *          corresponding definitions]
+     */
+    public static void read(Path file, Map<String, String> map) {
+        assert file != null : "Violation of: file is not null";
+        assert map != null : "Violation of: map is not null";
+
+        map.clear();
+        parse(file, (term, def) -> map.add(term, def.toString()));
+    }
+
+    /**
+     * Reads the given input file, appending its terms and definitions to the
+     * given {@code DefinitionArena}, so the definitions go straight from the
+     * file to the arena without becoming {@code String}s.
+     *
+     * @param file
+     *            the input file
+     * @param arena
+     *            the arena the terms and definitions are added to
+     * @updates arena
+     * @requires [no term of file is in arena]
+     * @ensures [arena holds every term of file with its definition]
+     */
+    public static void read(Path file, DefinitionArena arena) {
+        assert file != null : "Violation of: file is not null";
+        assert arena != null : "Violation of: arena is not null";
+
+        parse(file, arena::add);
+    }
+
+    /**
+     * Reads the given input file, passing each term and its definition to the
+     * given target in the order they appear.
+     *
+     * @param file
+     *            the input file
+     * @param target
+     *            where each term and its definition go
+     */
+    private static void parse(Path file,
+            BiConsumer<String, CharSequence> target) {
+        TermFileParser parser = new TermFileParser(target);
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(CHARS);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            boolean last = size == 0;
+            while (!last) {
+                long length = Math.min(WINDOW, size - position);
+                last = position + length == size;
+                MappedByteBuffer bytes = channel
+                        .map(FileChannel.MapMode.READ_ONLY, position, length);
+                CoderResult result = decoder.decode(bytes, chars, last);
+                while (result.isOverflow()) {
+                    parser.consume(chars);
+                    result = decoder.decode(bytes, chars, last);
+                }
+                parser.consume(chars);
+                /*
+                 * a character cut in half by the end of the window is left in
+                 * bytes, so the next window starts with it
+                 */
+                position += bytes.position();
+            }
+            if (size > 0) {
+                decoder.flush(chars);
+                parser.consume(chars);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        parser.finish();
+    }
+
+    /**
+     * Splits the decoded characters into lines, then empties the buffer.
+     *
+     * @param chars
+     *            the decoded characters, in write mode
+     */
+    private void consume(CharBuffer chars) {
+        chars.flip();
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c == '\n') {
+                if (!this.afterCarriageReturn) {
+                    this.endLine();
+                }
+                this.afterCarriageReturn = false;
+            } else if (c == '\r') {
+                this.endLine();
+                this.afterCarriageReturn = true;
+            } else {
+                this.line.append(c);
+                this.afterCarriageReturn = false;
+            }
+        }
+        chars.clear();
+    }
+
+    /**
+     * Handles the line that just ended.
+     */
+    private void endLine() {
+        switch (this.state) {
+            case TERM:
+                if (this.line.length() > 0) {
+                    // the term will only take 1 line
+                    this.term = this.line.toString();
+                    this.state = State.FIRST_LINE;
+                }
+                break;
+            case FIRST_LINE:
+                // the first line is the start of the definition, even if empty
+                this.def.setLength(0);
+                this.def.append(this.line);
+                this.state = State.MORE_LINES;
+                break;
+            default:
+                if (this.line.length() == 0) {
+                    this.target.accept(this.term, this.def);
+                    this.state = State.TERM;
+                } else {
+                    // space is to separate words
+                    this.def.append(' ').append(this.line);
+                }
+                break;
+        }
+        this.line.setLength(0);
+    }
+
+    /**
+     * Handles the end of the file, which also ends the last definition.
+     */
+    private void finish() {
+        if (this.line.length() > 0) {
+            this.endLine();
+        }
+        if (this.state == State.FIRST_LINE) {
+            this.def.setLength(0);
+            this.state = State.MORE_LINES;
+        }
+        if (this.state == State.MORE_LINES) {
+            this.target.accept(this.term, this.def);
+            this.state = State.TERM;
+        }
+    }
+
+}
@@ -0,0 +1,560 @@
+import java.util.Arrays;
+
+import components.map.Map;
+
+/**
+ * Aho-Corasick automaton over all the terms of a glossary, compiled once and
+ * then used to find every term (including multi-word terms such as "regular
+ * expression") in a definition with a single left-to-right scan. The scan
+ * costs time linear in the length of the definition plus the number of term
+ * occurrences found, no matter how many terms were compiled.
+ * <p>
+ * A term only matches on whole tokens: it has to start where a word or
+ * separator string starts and end where one ends, using the same tokenizing
+ * rules as {@code Glossary.nextWordOrSeparatorEnd}. Where matches overlap, the
+ * leftmost one wins, and among those starting at the same place the longest
+ * one wins.
+ * <p>
+ * A compiled matcher is immutable, so one instance can be shared by threads.
+ */
+public final class TermMatcher {
+
+    /**
+     * Receives the matches found by {@link TermMatcher#scan}.
+     */
+    public interface MatchHandler {
+
+        /**
+         * Called once for each match, in increasing order of {@code start}.
+         * Matches never overlap.
+         *
+         * @param start
+         *            index of the first character of the match
+         * @param end
+         *            index just past the last character of the match
+         * @param termId
+         *            id of the matched term
+         */
+        void match(int start, int end, int termId);
+    }
+
+    /**
+     * Receives the words (the tokens that are not separator strings) that
+     * {@link TermMatcher#scan(CharSequence, SeparatorSet, MatchHandler,
+     * WordHandler)} passes over, so a caller that needs them too does not
+     * tokenize the text a second time.
+     */
+    public interface WordHandler {
+
+        /**
+         * Called once for each word, in order, as the scan reaches its end.
+         *
+         * @param start
+         *            index of the first character of the word
+         * @param end
+         *            index just past the last character of the word
+         */
+        void word(int start, int end);
+    }
+
+    /**
+     * Marks a node (or a scan position) that holds no term.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The root of the trie.
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * Marker for empty slots in the transition table.
+     */
+    private static final long EMPTY_KEY = -1L;
+
+    /**
+     * Most nodes a trie may have, so that its transition table, kept at most
+     * half full, still fits in one array.
+     */
+    private static final int MAX_NODES = 1 << 29;
+
+    /**
+     * The terms, indexed by id.
+     */
+    private final String[] terms;
+
+    /**
+     * Number of nodes in the trie.
+     */
+    private final int nodeCount;
+
+    /**
+     * Failure link of each node.
+     */
+    private final int[] fail;
+
+    /**
+     * For each node, the nearest node on its failure chain (excluding itself)
+     * that ends a term, or {@code ROOT} if there is none.
+     */
+    private final int[] output;
+
+    /**
+     * Id of the term ending at each node, or {@code NONE}.
+     */
+    private final int[] termAt;
+
+    /**
+     * Depth (in {@code char}s) of each node.
+     */
+    private final int[] depth;
+
+    /**
+     * Keys of the open-addressing transition table, {@code node << 16 | c}.
+     */
+    private final long[] edgeKeys;
+
+    /**
+     * Target nodes of the transition table.
+     */
+    private final int[] edgeTargets;
+
+    /**
+     * Per-thread scratch space for {@link #scan}.
+     */
+    private final ThreadLocal<int[][]> scratch = ThreadLocal
+            .withInitial(() -> new int[][] { new int[0], new int[0] });
+
+    /**
+     * Compiles a matcher for the given terms. The id of each term is its index
+     * in {@code terms}; empty terms are never matched.
+     *
+     * @param terms
+     *            the terms to look for
+     * @requires [terms has no duplicates]
+     */
+    public TermMatcher(String[] terms) {
+        assert terms != null : "Violation of: terms is not null";
+
+        this.terms = terms.clone();
+        /*
+         * the node arrays and the transition table grow as the trie does, so
+         * they end up sized by its nodes rather than by the characters of the
+         * terms, which share their prefixes
+         */
+        final int initialNodes = 16;
+        int[] parent = new int[initialNodes];
+        char[] label = new char[initialNodes];
+        int[] nodeDepth = new int[initialNodes];
+        int[] nodeTerm = new int[initialNodes];
+        nodeTerm[ROOT] = NONE;
+        long[] keys = new long[2 * initialNodes];
+        int[] targets = new int[keys.length];
+        Arrays.fill(keys, EMPTY_KEY);
+
+        // build the trie
+        int nodes = 1;
+        for (int id = 0; id < this.terms.length; id++) {
+            String term = this.terms[id];
+            if (!term.isEmpty()) {
+                int node = ROOT;
+                for (int i = 0; i < term.length(); i++) {
+                    char c = term.charAt(i);
+                    int child = lookup(keys, targets, node, c);
+                    if (child == NONE) {
+                        if (nodes == MAX_NODES) {
+                            throw new IllegalArgumentException(
+                                    "the terms need more than " + MAX_NODES
+                                            + " trie nodes");
+                        }
+                        if (nodes == parent.length) {
+                            int length = (int) Math.min(2L * nodes,
+                                    MAX_NODES);
+                            parent = Arrays.copyOf(parent, length);
+                            label = Arrays.copyOf(label, length);
+                            nodeDepth = Arrays.copyOf(nodeDepth, length);
+                            nodeTerm = Arrays.copyOf(nodeTerm, length);
+                        }
+                        child = nodes;
+                        nodes++;
+                        parent[child] = node;
+                        label[child] = c;
+                        nodeDepth[child] = nodeDepth[node] + 1;
+                        nodeTerm[child] = NONE;
+                        insert(keys, targets, node, c, child);
+                        // the nodes - 1 edges fill at most half the table
+                        if (2L * (nodes - 1) > keys.length) {
+                            long[] oldKeys = keys;
+                            int[] oldTargets = targets;
+                            keys = new long[2 * oldKeys.length];
+                            targets = new int[keys.length];
+                            rehash(oldKeys, oldTargets, keys, targets);
+                        }
+                    }
+                    node = child;
+                }
+                nodeTerm[node] = id;
+            }
+        }
+
+        /*
+         * failure links, computed in order of depth so that the parent's link
+         * is always known; a counting sort by depth stands in for the usual
+         * breadth-first queue since the trie has no child lists
+         */
+        int maxDepth = 0;
+        for (int node = 0; node < nodes; node++) {
+            maxDepth = Math.max(maxDepth, nodeDepth[node]);
+        }
+        int[] firstAtDepth = new int[maxDepth + 2];
+        for (int node = 0; node < nodes; node++) {
+            firstAtDepth[nodeDepth[node] + 1]++;
+        }
+        for (int d = 1; d < firstAtDepth.length; d++) {
+            firstAtDepth[d] += firstAtDepth[d - 1];
+        }
+        int[] byDepth = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            byDepth[firstAtDepth[nodeDepth[node]]] = node;
+            firstAtDepth[nodeDepth[node]]++;
+        }
+
+        int[] failLink = new int[nodes];
+        int[] outputLink = new int[nodes];
+        for (int k = 1; k < nodes; k++) {
+            int node = byDepth[k];
+            int target = ROOT;
+            if (parent[node] != ROOT) {
+                int state = failLink[parent[node]];
+                target = lookup(keys, targets, state, label[node]);
+                while (target == NONE && state != ROOT) {
+                    state = failLink[state];
+                    target = lookup(keys, targets, state, label[node]);
+                }
+                if (target == NONE) {
+                    target = ROOT;
+                }
+            }
+            failLink[node] = target;
+            if (nodeTerm[target] != NONE) {
+                outputLink[node] = target;
+            } else {
+                outputLink[node] = outputLink[target];
+            }
+        }
+
+        this.nodeCount = nodes;
+        this.fail = failLink;
+        this.output = outputLink;
+        this.termAt = Arrays.copyOf(nodeTerm, nodes);
+        this.depth = Arrays.copyOf(nodeDepth, nodes);
+        this.edgeKeys = keys;
+        this.edgeTargets = targets;
+    }
+
+    /**
+     * Compiles a matcher for all the Keys of the given {@code Map}.
+     *
+     * @param map
+     *            {@code Map} containing all terms and their definitions as its
+     *            Keys and Values
+     * @return the compiled matcher
+     * @ensures [the terms of compile are the Keys of map]
+     */
+    public static TermMatcher compile(Map<String, String> map) {
+        assert map != null : "Violation of: map is not null";
+
+        String[] keys = new String[map.size()];
+        int i = 0;
+        for (Map.Pair<String, String> pair : map) {
+            keys[i] = pair.key();
+            i++;
+        }
+        return new TermMatcher(keys);
+    }
+
+    /**
+     * Returns the slot of the transition table for ({@code node}, {@code c}).
+     *
+     * @param keys
+     *            keys of the transition table
+     * @param node
+     *            the source node
+     * @param c
+     *            the character
+     * @return the slot holding the transition, or the empty slot where it
+     *         would go
+     */
+    private static int slot(long[] keys, int node, char c) {
+        long key = ((long) node << Character.SIZE) | c;
+        int mask = keys.length - 1;
+        // Fibonacci hashing spreads consecutive node numbers over the table
+        final long golden = 0x9E3779B97F4A7C15L;
+        int i = (int) ((key * golden) >>> Integer.SIZE) & mask;
+        while (keys[i] != EMPTY_KEY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the child of {@code node} on character {@code c}.
+     *
+     * @param keys
+     *            keys of the transition table
+     * @param targets
+     *            targets of the transition table
+     * @param node
+     *            the source node
+     * @param c
+     *            the character
+     * @return the child, or {@code NONE} if there is none
+     */
+    private static int lookup(long[] keys, int[] targets, int node, char c) {
+        int i = slot(keys, node, c);
+        int result = NONE;
+        if (keys[i] != EMPTY_KEY) {
+            result = targets[i];
+        }
+        return result;
+    }
+
+    /**
+     * Adds the transition from {@code node} on {@code c} to {@code child}.
+     *
+     * @param keys
+     *            keys of the transition table
+     * @param targets
+     *            targets of the transition table
+     * @param node
+     *            the source node
+     * @param c
+     *            the character
+     * @param child
+     *            the target node
+     */
+    private static void insert(long[] keys, int[] targets, int node, char c,
+            int child) {
+        int i = slot(keys, node, c);
+        keys[i] = ((long) node << Character.SIZE) | c;
+        targets[i] = child;
+    }
+
+    /**
+     * Moves every transition of a table into a larger, new one.
+     *
+     * @param oldKeys
+     *            keys of the old table
+     * @param oldTargets
+     *            targets of the old table
+     * @param keys
+     *            keys of the new table
+     * @param targets
+     *            targets of the new table
+     * @replaces keys, targets
+     */
+    private static void rehash(long[] oldKeys, int[] oldTargets, long[] keys,
+            int[] targets) {
+        Arrays.fill(keys, EMPTY_KEY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY_KEY) {
+                insert(keys, targets, (int) (key >>> Character.SIZE),
+                        (char) key, oldTargets[i]);
+            }
+        }
+    }
+
+    /**
+     * Reports the number of terms this matcher was compiled from.
+     *
+     * @return the number of terms
+     */
+    public int termCount() {
+        return this.terms.length;
+    }
+
+    /**
+     * Returns the term with the given id.
+     *
+     * @param termId
+     *            the id of the term
+     * @return the term
+     * @requires 0 <= termId < termCount()
+     */
+    public String term(int termId) {
+        return this.terms[termId];
+    }
+
+    /**
+     * Reports the number of nodes in the compiled automaton.
+     *
+     * @return the number of nodes
+     */
+    public int nodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Finds the terms in the given text and reports them, leftmost-longest
+     * and non-overlapping, to the given handler.
+     *
+     * @param text
+     *            the text to scan
+     * @param separators
+     *            the separator characters that delimit tokens
+     * @param handler
+     *            receives each match
+     * @return the number of tokens (words and separator strings) in text
+     * @ensures [handler is called once for each leftmost-longest whole-token
+     *          occurrence of a term in text, in order]
+     */
+    public int scan(CharSequence text, SeparatorSet separators,
+            MatchHandler handler) {
+        return this.scan(text, separators, handler, null);
+    }
+
+    /**
+     * Finds the terms in the given text and reports them, leftmost-longest
+     * and non-overlapping, to the given handler, like
+     * {@link #scan(CharSequence, SeparatorSet, MatchHandler)}, also reporting
+     * every word of the text to {@code words}. All the words are reported
+     * before the first match.
+     *
+     * @param text
+     *            the text to scan
+     * @param separators
+     *            the separator characters that delimit tokens
+     * @param handler
+     *            receives each match
+     * @param words
+     *            receives each word; may be {@code null}
+     * @return the number of tokens (words and separator strings) in text
+     * @ensures [handler is called once for each leftmost-longest whole-token
+     *          occurrence of a term in text, in order, and words once for
+     *          each token of text that is not a separator string, in order]
+     */
+    public int scan(CharSequence text, SeparatorSet separators,
+            MatchHandler handler, WordHandler words) {
+        assert text != null : "Violation of: text is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert handler != null : "Violation of: handler is not null";
+
+        int n = text.length();
+        int[][] buffers = this.scratch.get();
+        if (buffers[0].length < n + 1) {
+            buffers[0] = new int[Math.max(n + 1, 2 * buffers[0].length)];
+            buffers[1] = new int[buffers[0].length];
+        }
+        /*
+         * bestEnd[s] is NONE unless a token starts at s; then it is s itself
+         * until a term is found starting there, and afterwards the end of the
+         * longest such term (whose id is in bestTerm[s])
+         */
+        int[] bestEnd = buffers[0];
+        int[] bestTerm = buffers[1];
+        Arrays.fill(bestEnd, 0, n + 1, NONE);
+
+        int state = ROOT;
+        int tokens = 0;
+        int tokenStart = 0;
+        int i = 0;
+        boolean prevIsSeparator = false;
+        int codePoint = 0;
+        boolean isSeparator = false;
+        if (n > 0) {
+            codePoint = Character.codePointAt(text, 0);
+            isSeparator = separators.contains(codePoint);
+        }
+        while (i < n) {
+            if (i == 0 || isSeparator != prevIsSeparator) {
+                bestEnd[i] = i;
+                tokenStart = i;
+            }
+            int next = i + Character.charCount(codePoint);
+            for (int k = i; k < next; k++) {
+                state = this.step(state, text.charAt(k));
+            }
+            prevIsSeparator = isSeparator;
+            i = next;
+            boolean atTokenEnd = true;
+            if (i < n) {
+                codePoint = Character.codePointAt(text, i);
+                isSeparator = separators.contains(codePoint);
+                atTokenEnd = isSeparator != prevIsSeparator;
+            }
+            if (atTokenEnd) {
+                tokens++;
+                this.recordMatches(state, i, bestEnd, bestTerm);
+                if (words != null && !prevIsSeparator) {
+                    words.word(tokenStart, i);
+                }
+            }
+        }
+
+        // report the leftmost-longest matches
+        int position = 0;
+        while (position < n) {
+            int end = bestEnd[position];
+            if (end > position) {
+                handler.match(position, end, bestTerm[position]);
+                position = end;
+            } else {
+                position++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the state reached from {@code state} on character {@code c}.
+     *
+     * @param state
+     *            the current state
+     * @param c
+     *            the next character of the text
+     * @return the next state
+     */
+    private int step(int state, char c) {
+        int current = state;
+        int next = lookup(this.edgeKeys, this.edgeTargets, current, c);
+        while (next == NONE && current != ROOT) {
+            current = this.fail[current];
+            next = lookup(this.edgeKeys, this.edgeTargets, current, c);
+        }
+        if (next == NONE) {
+            next = ROOT;
+        }
+        return next;
+    }
+
+    /**
+     * Records every term ending at {@code end} in {@code state} that starts at
+     * a token boundary, keeping the longest one for each start.
+     *
+     * @param state
+     *            the automaton state after reading text[0, end)
+     * @param end
+     *            the end of the token just read
+     * @param bestEnd
+     *            the best match end for each start, see {@link #scan}
+     * @param bestTerm
+     *            the term of the best match for each start
+     */
+    private void recordMatches(int state, int end, int[] bestEnd,
+            int[] bestTerm) {
+        int node = state;
+        if (this.termAt[node] == NONE) {
+            node = this.output[node];
+        }
+        while (node != ROOT) {
+            int start = end - this.depth[node];
+            if (bestEnd[start] != NONE && bestEnd[start] < end) {
+                bestEnd[start] = end;
+                bestTerm[start] = this.termAt[node];
+            }
+            node = this.output[node];
+        }
+    }
+
+}
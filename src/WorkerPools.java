@@ -0,0 +1,261 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the thread pools used for parallel glossary generation and waits
+ * for the work handed to them. Page generation mostly blocks on file I/O, so
+ * virtual threads are used when the running JDK has them (21 and later);
+ * otherwise ordinary daemon threads are used.
+ * <p>
+ * The build targets Java 17, which has no virtual threads, so
+ * {@code Executors.newVirtualThreadPerTaskExecutor} is looked up by
+ * reflection, once; the same jar then uses virtual threads on 21 and
+ * platform threads on 17.
+ */
+public final class WorkerPools {
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor}, or {@code null} if
+     * the running JDK has no virtual threads.
+     */
+    private static final Method VIRTUAL_EXECUTOR = virtualExecutorFactory();
+
+    /**
+     * An executor that runs each task on a thread of another, letting at
+     * most a given number run at once; the others wait for a permit on their
+     * own threads. Meant for a virtual-thread executor, where waiting threads
+     * cost next to nothing.
+     */
+    private static final class BoundedExecutor
+            extends AbstractExecutorService {
+
+        /**
+         * Where the tasks run.
+         */
+        private final ExecutorService threads;
+
+        /**
+         * One permit per task that may run at once.
+         */
+        private final Semaphore permits;
+
+        /**
+         * Constructor.
+         *
+         * @param threads
+         *            where the tasks run; this takes it over
+         * @param workers
+         *            the most tasks running at once
+         */
+        BoundedExecutor(ExecutorService threads, int workers) {
+            this.threads = threads;
+            this.permits = new Semaphore(workers);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            this.threads.execute(() -> {
+                this.permits.acquireUninterruptibly();
+                try {
+                    task.run();
+                } finally {
+                    this.permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            this.threads.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return this.threads.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.threads.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return this.threads.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+                throws InterruptedException {
+            return this.threads.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private WorkerPools() {
+        // no code needed here
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor}.
+     *
+     * @return the method, or {@code null} if there is none
+     */
+    private static Method virtualExecutorFactory() {
+        Method result;
+        try {
+            result = Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether the running JDK supports virtual threads.
+     *
+     * @return true iff virtual threads are available
+     */
+    public static boolean hasVirtualThreads() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Returns a new executor for I/O-bound work, running at most
+     * {@code workers} tasks at once. With virtual threads every task gets its
+     * own thread, which waits on a {@code Semaphore} of {@code workers}
+     * permits before it runs, so a caller submitting many tasks (such as a
+     * server, one per request) still has only {@code workers} of them working
+     * at a time. Without virtual threads a pool of {@code workers} daemon
+     * threads named after {@code name} is created.
+     *
+     * @param workers
+     *            the number of tasks that will run at once
+     * @param name
+     *            prefix for the names of the threads
+     * @return the new executor
+     * @requires workers > 0
+     */
+    public static ExecutorService newIoExecutor(int workers, String name) {
+        assert workers > 0 : "Violation of: workers > 0";
+
+        ExecutorService result = null;
+        if (VIRTUAL_EXECUTOR != null) {
+            try {
+                result = new BoundedExecutor(
+                        (ExecutorService) VIRTUAL_EXECUTOR.invoke(null),
+                        workers);
+            } catch (ReflectiveOperationException e) {
+                result = null;
+            }
+        }
+        if (result == null) {
+            result = newCpuExecutor(workers, name);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new fixed pool of {@code workers} daemon threads for CPU-bound
+     * work.
+     *
+     * @param workers
+     *            the number of threads
+     * @param name
+     *            prefix for the names of the threads
+     * @return the new executor
+     * @requires workers > 0
+     */
+    public static ExecutorService newCpuExecutor(int workers, String name) {
+        assert workers > 0 : "Violation of: workers > 0";
+
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread t = new Thread(task, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(workers, factory);
+    }
+
+    /**
+     * Runs {@code workers} copies of the given task on the given executor and
+     * waits for all of them. The first failure is rethrown once every copy has
+     * finished.
+     *
+     * @param executor
+     *            the executor to run on
+     * @param workers
+     *            the number of copies to run
+     * @param task
+     *            the task; copies usually share a work counter
+     * @requires workers > 0
+     */
+    public static void runAll(ExecutorService executor, int workers,
+            Callable<Void> task) {
+        assert executor != null : "Violation of: executor is not null";
+        assert workers > 0 : "Violation of: workers > 0";
+
+        List<Future<Void>> futures = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(task));
+        }
+        awaitAll(futures);
+    }
+
+    /**
+     * Waits for all the given futures. The first failure is rethrown once
+     * every future is done: unchecked exceptions and errors as they are,
+     * anything else wrapped in an {@code IllegalStateException}.
+     *
+     * @param futures
+     *            the futures to wait for
+     */
+    public static void awaitAll(List<? extends Future<?>> futures) {
+        assert futures != null : "Violation of: futures is not null";
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            boolean done = false;
+            while (!done) {
+                try {
+                    future.get();
+                    done = true;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    done = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+    }
+
+}
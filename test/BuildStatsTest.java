@@ -0,0 +1,128 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for the BuildStats.java class.
+ */
+public class BuildStatsTest {
+
+    /**
+     * Folder for output, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a small glossary with the given stats into a new folder.
+     *
+     * @param stats
+     *            where the build is counted
+     * @throws IOException
+     *             if the folder cannot be created
+     */
+    private void build(BuildStats stats) throws IOException {
+        Map<String, String> m = new Map1L<>();
+        m.add("letters", "what make up a word");
+        m.add("word", "a string of letters, or characters");
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, m, new Glossary.CompareStrings());
+        String out = this.folder.newFolder().toString();
+        try (PageSink sink = stats.count(new DirectoryPageSink(out))) {
+            Glossary.writeGlossary(q, m, sink, new GlossaryOptions()
+                    .separators(SeparatorSet.of(" \t,")).stats(stats));
+        }
+    }
+
+    // routine test - counters and phases of a small build
+    @Test
+    public void statsTest1() throws IOException {
+        BuildStats stats = new BuildStats();
+        this.build(stats);
+        final int files = 3;
+        // "what", " ", "make", ..., "word" and "a", " ", ..., "characters"
+        final int tokens = 9 + 11;
+        assertEquals(files, stats.filesWritten());
+        assertEquals(tokens, stats.tokensScanned());
+        assertEquals(2, stats.linksEmitted());
+        assertEquals(true, stats.bytesWritten() > 0);
+        assertEquals(true, stats.phaseNanos("pages") > 0);
+        assertEquals(0, stats.phaseNanos("parse"));
+        List<String> slowest = stats.slowestPages();
+        assertEquals(2, slowest.size());
+    }
+
+    // the JSON summary holds every counter, and strings are escaped
+    @Test
+    public void statsTest2() {
+        BuildStats stats = new BuildStats();
+        stats.time("pa\"rse", () -> stats.addTermsParsed(2));
+        String json = stats.toJson();
+        assertEquals(true, json.startsWith("{\"wallMs\":"));
+        assertEquals(true, json.contains(",\"phasesMs\":{\"pa\\\"rse\":"));
+        assertEquals(true, json.endsWith(",\"termsParsed\":2,"
+                + "\"tokensScanned\":0,\"linksEmitted\":0,"
+                + "\"filesWritten\":0,\"bytesWritten\":0,"
+                + "\"slowestPages\":[]}"));
+    }
+
+    // pages and phases show up in a Flight Recorder recording
+    @Test
+    public void statsTest3() throws IOException {
+        Path file = this.folder.newFile("build.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable("glossary.Phase");
+            recording.enable("glossary.Page");
+            recording.start();
+            this.build(new BuildStats());
+            recording.stop();
+            recording.dump(file);
+        }
+        int phases = 0;
+        int pages = 0;
+        for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+            String name = e.getEventType().getName();
+            if (name.equals("glossary.Phase")) {
+                phases++;
+            } else if (name.equals("glossary.Page")) {
+                pages++;
+            }
+        }
+        assertEquals(2, phases);
+        assertEquals(2, pages);
+    }
+
+    // no page event is made unless page events are being recorded
+    @Test
+    public void statsTest4() {
+        assertNull(BuildStats.beginPage("word"));
+        try (Recording recording = new Recording()) {
+            recording.enable("glossary.Page");
+            recording.start();
+            assertNotNull(BuildStats.beginPage("word"));
+            recording.stop();
+        }
+        assertNull(BuildStats.beginPage("word"));
+        BuildStats stats = new BuildStats();
+        stats.endPage("word", System.nanoTime(), null, 3, 1);
+        assertEquals(3, stats.tokensScanned());
+        assertEquals(1, stats.linksEmitted());
+    }
+
+}
@@ -0,0 +1,104 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the CollationOrder.java class.
+ */
+public class CollationOrderTest {
+
+    /**
+     * Folder for the spilled runs, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // routine test - case and accents only break ties
+    @Test
+    public void compareTest() {
+        CollationOrder order = CollationOrder.forLocale(Locale.ENGLISH);
+        String[] terms = { "Zebra", "\u00e9t\u00e9", "apple", "ete", "Apple",
+            "zoo", "Ete" };
+        String[] expected = { "apple", "Apple", "ete", "Ete", "\u00e9t\u00e9",
+            "Zebra", "zoo" };
+        order.sort(terms, 0, terms.length);
+        assertArrayEquals(expected, terms);
+        for (int i = 1; i < expected.length; i++) {
+            assertTrue(order.compare(expected[i - 1], expected[i]) < 0);
+        }
+        assertEquals(0, order.compare("ete", "ete"));
+    }
+
+    // terms the collator cannot tell apart still sort in one order
+    @Test
+    public void tieTest() {
+        CollationOrder order = CollationOrder.forLocale(Locale.ENGLISH);
+        // precomposed and decomposed e with acute accent
+        String composed = "caf\u00e9";
+        String decomposed = "cafe\u0301";
+        String[] terms = { composed, decomposed, "cafe" };
+        order.sort(terms, 0, terms.length);
+        assertArrayEquals(new String[] { "cafe", decomposed, composed },
+                terms);
+        assertTrue(order.compare(decomposed, composed) < 0);
+        assertTrue(order.compare(composed, decomposed) > 0);
+    }
+
+    // sorting by key gives the order of compare, in sortTerms and in the
+    // spilled runs of SortedTerms
+    @Test
+    public void sortTest() {
+        CollationOrder order = CollationOrder.forLocale(Locale.FRENCH);
+        final int n = 2000;
+        GlossaryGenerator generator = new GlossaryGenerator(n);
+        Map<String, String> map = new Map1L<>();
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            // some capitalized, some accented
+            String term = generator.term(i);
+            if (i % 3 == 0) {
+                term = Character.toUpperCase(term.charAt(0))
+                        + term.substring(1);
+            } else if (i % 3 == 1) {
+                term = term.replace('e', '\u00e8');
+            }
+            map.add(term, "definition");
+            terms.add(term);
+        }
+        String[] expected = terms.toArray(new String[0]);
+        Arrays.sort(expected, order);
+
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, map, order);
+        List<String> sorted = new ArrayList<>();
+        for (String term : q) {
+            sorted.add(term);
+        }
+        assertEquals(Arrays.asList(expected), sorted);
+
+        final int runSize = 300;
+        sorted.clear();
+        try (SortedTerms runs = SortedTerms.sort(terms, order, runSize,
+                this.folder.getRoot().toPath())) {
+            for (String term : runs) {
+                sorted.add(term);
+            }
+        }
+        assertEquals(Arrays.asList(expected), sorted);
+    }
+
+}
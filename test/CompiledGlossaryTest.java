@@ -0,0 +1,164 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the CompiledGlossary.java class.
+ */
+public class CompiledGlossaryTest {
+
+    /**
+     * Folder for compiled glossaries, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns a small glossary with a multi-word and a non-ASCII term.
+     *
+     * @return the terms and definitions
+     */
+    private static Map<String, String> glossary() {
+        Map<String, String> m = new Map1L<>();
+        m.add("letters", "what make up a word");
+        m.add("word", "a string of letters, or characters");
+        m.add("regular expression", "a pattern over letters");
+        m.add("caf\u00e9", "where a word is had");
+        return m;
+    }
+
+    /**
+     * Compiles the given glossary, in sorted order, into a new file.
+     *
+     * @param m
+     *            the terms and definitions
+     * @param q
+     *            replaced by the sorted terms
+     * @return the compiled file
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    private Path compile(Map<String, String> m, Queue<String> q)
+            throws IOException {
+        Glossary.sortTerms(q, m, new Glossary.CompareStrings());
+        Path file = this.folder.newFile("glossary.bin").toPath();
+        CompiledGlossary.compile(q, m, SeparatorSet.of(" \t,"), file);
+        return file;
+    }
+
+    // routine test - terms, definitions and lookups come back out
+    @Test
+    public void compileTest1() throws IOException {
+        Map<String, String> m = glossary();
+        Queue<String> q = new Queue1L<>();
+        Path file = this.compile(m, q);
+        assertEquals(true, CompiledGlossary.isCompiled(file));
+        try (CompiledGlossary g = CompiledGlossary.open(file)) {
+            final int size = 4;
+            assertEquals(size, g.size());
+            int id = 0;
+            for (String term : q) {
+                assertEquals(term, g.term(id));
+                assertEquals(m.value(term), g.definition(id));
+                assertEquals(id, g.find(term));
+                id++;
+            }
+            assertEquals(-1, g.find("world"));
+            assertEquals(true, g.separators().contains(','));
+        }
+    }
+
+    // pages rendered from the stored links match freshly linked ones
+    @Test
+    public void compileTest2() throws IOException {
+        Map<String, String> m = glossary();
+        Queue<String> q = new Queue1L<>();
+        Path file = this.compile(m, q);
+        TermMatcher matcher = TermMatcher.compile(m);
+        SeparatorSet separators = SeparatorSet.of(" \t,");
+        StringBuilder required = new StringBuilder();
+        StringBuilder page = new StringBuilder();
+        try (CompiledGlossary g = CompiledGlossary.open(file)) {
+            for (int id = 0; id < g.size(); id++) {
+                Glossary.renderTermPage(g.term(id), m.value(g.term(id)),
+                        matcher, separators, required);
+                g.renderTermPage(id, page);
+                assertEquals(required.toString(), page.toString());
+            }
+        }
+    }
+
+    // the compiled pages follow the options as a build from the text does
+    @Test
+    public void writeGlossaryTest() throws IOException {
+        Map<String, String> m = glossary();
+        Queue<String> q = new Queue1L<>();
+        Path file = this.compile(m, q);
+        Path dir = this.folder.newFolder().toPath();
+        Files.write(dir.resolve(GlossaryTemplates.LINK),
+                "<a class=\"term\" href=\"{{term}}.html\">{{text}}</a>"
+                        .getBytes(StandardCharsets.UTF_8));
+        GlossaryTemplates markup = GlossaryTemplates.load(dir);
+        SeparatorSet separators = SeparatorSet.of(" \t,");
+        java.util.Map<String, byte[]> expected = new HashMap<>();
+        BuildStats built = new BuildStats();
+        Glossary.writeGlossary(q, m, MemoryPageSink.bytes(expected),
+                new GlossaryOptions().separators(separators).templates(markup)
+                        .shardSize(2).stats(built)
+                        .search(new SearchIndex(separators)));
+        final int pages = 3 + 4 + 1;
+        assertEquals(pages, expected.size());
+        final int[] workers = { 1, 3 };
+        try (CompiledGlossary g = CompiledGlossary.open(file)) {
+            for (int w : workers) {
+                java.util.Map<String, byte[]> actual = new HashMap<>();
+                BuildStats stats = new BuildStats();
+                g.writeGlossary(MemoryPageSink.bytes(actual),
+                        new GlossaryOptions().templates(markup).shardSize(2)
+                                .workers(w).stats(stats)
+                                .search(new SearchIndex(separators)));
+                assertEquals(expected.keySet(), actual.keySet());
+                for (java.util.Map.Entry<String, byte[]> e : expected
+                        .entrySet()) {
+                    assertArrayEquals(e.getKey(), e.getValue(),
+                            actual.get(e.getKey()));
+                }
+                assertEquals(built.linksEmitted(), stats.linksEmitted());
+                assertEquals(true, stats.phaseNanos("pages") > 0);
+            }
+            // backlinks are not stored, so they cannot be listed
+            try {
+                g.writeGlossary(MemoryPageSink.bytes(new HashMap<>()),
+                        new GlossaryOptions().backlinks(true));
+                fail("backlinks should be rejected");
+            } catch (IllegalArgumentException e) {
+                assertEquals("a compiled glossary has no backlinks",
+                        e.getMessage());
+            }
+        }
+    }
+
+    // a text input file is not mistaken for a compiled glossary
+    @Test
+    public void isCompiledTest() {
+        assertEquals(false,
+                CompiledGlossary.isCompiled(new java.io.File("terms.txt")
+                        .toPath()));
+    }
+
+}
@@ -0,0 +1,144 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the DefinitionArena.java class.
+ */
+public class DefinitionArenaTest {
+
+    /**
+     * Folder for the arena files, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // routine test - definitions come back as they went in, across segments
+    @Test
+    public void addTest() {
+        Path dir = this.folder.getRoot().toPath();
+        final int segment = 64;
+        final int n = 200;
+        try (DefinitionArena arena = new DefinitionArena(dir, segment)) {
+            for (int i = 0; i < n; i++) {
+                arena.add("t" + i, "caf\u00e9 \u00fcber " + i);
+            }
+            arena.add("empty", "");
+            arena.add("full", "0123456789012345678901234567890123456789"
+                    + "012345678901234567890123");
+            assertEquals(n + 2, arena.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals("caf\u00e9 \u00fcber " + i, arena.value("t" + i));
+                assertEquals(i, arena.id("t" + i));
+            }
+            assertEquals("", arena.value("empty"));
+            assertEquals(segment, arena.value("full").length());
+            assertFalse(arena.hasKey("t" + n));
+            assertEquals(-1, arena.id("missing"));
+            assertEquals("t7", arena.terms()[7]);
+        }
+        // closing deletes the file
+        assertEquals(0, dir.toFile().list().length);
+    }
+
+    // a definition longer than a segment gets a segment of its own
+    @Test
+    public void oversizeTest() {
+        final int segment = 16;
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < segment; i++) {
+            // 1, 2, 3 and 4 bytes in UTF-8
+            big.append("a\u00e9\u20ac\ud83d\ude00");
+        }
+        String huge = big.toString();
+        try (DefinitionArena arena = new DefinitionArena(
+                this.folder.getRoot().toPath(), segment)) {
+            arena.add("small", "0123456789");
+            arena.add("huge", huge);
+            arena.add("after", "fits");
+            arena.add("lone", "x\ud83dy" + huge);
+            assertEquals("0123456789", arena.value("small"));
+            assertEquals(huge, arena.value("huge"));
+            assertEquals("fits", arena.value("after"));
+            // an unpaired surrogate is stored as '?'
+            assertEquals("x?y" + huge, arena.value("lone"));
+            final long hugeBytes = 10L * segment;
+            assertEquals(hugeBytes, DefinitionArena.utf8Length(huge));
+            assertEquals(10 + hugeBytes + 4 + 3 + hugeBytes, arena.bytes());
+        }
+    }
+
+    // reading a file into an arena gives the same terms as into a map
+    @Test
+    public void getTermsAndDefinitionsTest() throws IOException {
+        Path file = this.folder.newFile().toPath();
+        Files.write(file, ("word\na unit of\nlanguage\n\nna\u00efve\r\n"
+                + "innocent\r\n\r\nlast\nno blank line").getBytes(
+                        StandardCharsets.UTF_8));
+        Map<String, String> map = new Map1L<>();
+        Glossary.getTermsAndDefinitions(file, map);
+        try (DefinitionArena arena = new DefinitionArena(
+                this.folder.getRoot().toPath())) {
+            Glossary.getTermsAndDefinitions(file, arena);
+            assertEquals(map.size(), arena.size());
+            for (Map.Pair<String, String> pair : map) {
+                assertEquals(pair.value(), arena.value(pair.key()));
+            }
+            Queue<String> q = new Queue1L<>();
+            Glossary.sortTerms(q, arena, new Glossary.CompareStrings());
+            assertEquals("last", q.front());
+        }
+    }
+
+    // the pages built from an arena are the ones built from a map
+    @Test
+    public void writeGlossaryTest() throws IOException {
+        Path file = this.folder.newFile().toPath();
+        final int n = 400;
+        new GlossaryGenerator(n, 12, 5, 0.2, 9).write(file);
+        Map<String, String> map = new Map1L<>();
+        Glossary.getTermsAndDefinitions(file, map);
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, map, new Glossary.CompareStrings());
+        SeparatorSet separators = SeparatorSet.of(" \t, ");
+        final int[] workers = { 1, 3 };
+        try (DefinitionArena arena = new DefinitionArena(
+                this.folder.getRoot().toPath())) {
+            Glossary.getTermsAndDefinitions(file, arena);
+            for (int w : workers) {
+                for (boolean backlinks : new boolean[] { false, true }) {
+                    java.util.Map<String, String> expected = new HashMap<>();
+                    java.util.Map<String, String> actual = new HashMap<>();
+                    GlossaryOptions options = new GlossaryOptions()
+                            .separators(separators).workers(w)
+                            .backlinks(backlinks);
+                    Glossary.writeGlossary(q, map,
+                            MemoryPageSink.text(expected), options);
+                    Glossary.writeGlossary(q, arena,
+                            MemoryPageSink.text(actual),
+                            options.stats(new BuildStats()));
+                    assertEquals(n + 1, actual.size());
+                    assertEquals(expected, actual);
+                }
+            }
+            // every definition went into the arena
+            assertTrue(arena.bytes() > (long) n * 12);
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Tests for the GlossaryBatch.java class.
+ */
+public class GlossaryBatchTest {
+
+    /**
+     * Folder for inputs, outputs and the manifest, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes the given text to the given file as UTF-8.
+     *
+     * @param file
+     *            the file
+     * @param text
+     *            the text
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // routine test - every glossary in the arguments is built
+    @Test
+    public void runTest1() throws IOException {
+        Path dir = this.folder.getRoot().toPath();
+        final int n = 20;
+        String[] args = new String[2 * n];
+        for (int i = 0; i < n; i++) {
+            Path input = dir.resolve("in" + i + ".txt");
+            write(input, "word" + i + "\na word\n\nletter\nmakes a word" + i
+                    + "\n\n");
+            args[2 * i] = input.toString();
+            args[2 * i + 1] = dir.resolve("out" + i).toString();
+        }
+        List<GlossaryBatch.Status> statuses = GlossaryBatch.run(
+                GlossaryBatch.parseArgs(args), 4,
+                new GlossaryOptions().separators(SeparatorSet.of(" \t,")));
+        assertEquals(n, statuses.size());
+        for (int i = 0; i < n; i++) {
+            assertTrue(statuses.get(i).ok());
+            assertEquals(2, statuses.get(i).terms());
+            Path out = dir.resolve("out" + i);
+            assertTrue(Files.exists(out.resolve("index.html")));
+            assertTrue(Files.exists(out.resolve("word" + i + ".html")));
+        }
+    }
+
+    // a glossary that fails is reported and sets the exit code
+    @Test
+    public void runTest2() throws IOException {
+        Path dir = this.folder.getRoot().toPath();
+        write(dir.resolve("good.txt"), "word\na string of letters\n\n");
+        write(dir.resolve("batch.txt"), "# two glossaries\n"
+                + "good.txt  good\n\nmissing.txt\tbad\n");
+        Path report = dir.resolve("report.txt");
+        SimpleWriter out = new SimpleWriter1L(report.toString());
+        int code = GlossaryBatch.run(new String[] { "--manifest",
+                dir.resolve("batch.txt").toString() }, out);
+        out.close();
+        assertEquals(GlossaryBatch.EXIT_FAILED, code);
+        List<String> lines = Files.readAllLines(report);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("OK"));
+        assertTrue(lines.get(1).startsWith("FAILED"));
+        assertEquals("1 built, 1 failed", lines.get(2));
+        assertTrue(Files.exists(dir.resolve("good").resolve("word.html")));
+    }
+
+    // arguments that are not pairs are a usage error
+    @Test
+    public void runTest3() throws IOException {
+        Path report = this.folder.newFile("report.txt").toPath();
+        SimpleWriter out = new SimpleWriter1L(report.toString());
+        int code = GlossaryBatch.run(new String[] { "only-one" }, out);
+        out.close();
+        assertEquals(GlossaryBatch.EXIT_USAGE, code);
+        assertFalse(Files.readAllLines(report).isEmpty());
+    }
+
+    // the settings main reads apply to every glossary, but for those a
+    // batch cannot honor
+    @Test
+    public void runTest4() throws IOException {
+        Path dir = this.folder.getRoot().toPath();
+        write(dir.resolve("in.txt"), "word\na string of letters\n\n"
+                + "letters\nwhat make up a word\n\n");
+        Path report = dir.resolve("report.txt");
+        String[] args = { dir.resolve("in.txt").toString(),
+                dir.resolve("out").toString() };
+        System.setProperty("glossary.backlinks", "true");
+        System.setProperty("glossary.workers", "3");
+        try {
+            SimpleWriter out = new SimpleWriter1L(report.toString());
+            int code = GlossaryBatch.run(args, out);
+            out.close();
+            assertEquals(GlossaryBatch.EXIT_OK, code);
+            String page = new String(Files.readAllBytes(
+                    dir.resolve("out").resolve("word.html")),
+                    StandardCharsets.UTF_8);
+            assertTrue(page.contains("What links here"));
+            System.setProperty("glossary.search", "true");
+            out = new SimpleWriter1L(report.toString());
+            code = GlossaryBatch.run(args, out);
+            out.close();
+            assertEquals(GlossaryBatch.EXIT_USAGE, code);
+            assertTrue(Files.readAllLines(report).get(0)
+                    .contains("glossary.search"));
+        } finally {
+            System.clearProperty("glossary.backlinks");
+            System.clearProperty("glossary.workers");
+            System.clearProperty("glossary.search");
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Tests for the GlossaryGenerator.java class.
+ */
+public class GlossaryGeneratorTest {
+
+    /**
+     * Folder for the generated files, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes the glossary of the given generator to a file and reads it back
+     * as {@code Glossary} does.
+     *
+     * @param generator
+     *            the generator
+     * @return the terms and definitions read
+     * @throws IOException
+     *             if the file cannot be made
+     */
+    private Map<String, String> readBack(GlossaryGenerator generator)
+            throws IOException {
+        Path file = this.folder.newFile().toPath();
+        generator.write(file);
+        Map<String, String> map = new Map1L<>();
+        Glossary.getTermsAndDefinitions(file, map);
+        return map;
+    }
+
+    // routine test - the same settings always give the same file
+    @Test
+    public void writeTest1() throws IOException {
+        final int n = 500;
+        Path a = this.folder.newFile().toPath();
+        Path b = this.folder.newFile().toPath();
+        new GlossaryGenerator(n).write(a);
+        new GlossaryGenerator(n).write(b);
+        assertArrayEquals(Files.readAllBytes(a), Files.readAllBytes(b));
+        Path c = this.folder.newFile().toPath();
+        new GlossaryGenerator(n, GlossaryGenerator.DEFAULT_DEFINITION_WORDS,
+                GlossaryGenerator.DEFAULT_WORDS_PER_LINE,
+                GlossaryGenerator.DEFAULT_LINK_RATE, 1).write(c);
+        assertFalse(new String(Files.readAllBytes(a))
+                .equals(new String(Files.readAllBytes(c))));
+    }
+
+    // every term is read back, with definitions spread over several lines
+    @Test
+    public void writeTest2() throws IOException {
+        final int n = 2000;
+        final int words = 30;
+        final int perLine = 4;
+        GlossaryGenerator generator = new GlossaryGenerator(n, words,
+                perLine, 0.1, 7);
+        StringWriter text = new StringWriter();
+        generator.write(text);
+        // at least two lines per definition, plus the term and a blank line
+        final int minLines = 4 * n;
+        assertTrue(text.toString().split("\n", -1).length > minLines);
+
+        Map<String, String> map = this.readBack(generator);
+        assertEquals(n, map.size());
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            String def = map.value(generator.term(i));
+            int count = def.split("[ ,]+").length;
+            assertTrue(words / 2 <= count && count <= words / 2 + words);
+            total += count;
+        }
+        // the average length is close to the one asked for
+        assertEquals(words, (double) total / n, 1);
+    }
+
+    // the link rate is the share of the words that are terms
+    @Test
+    public void writeTest3() throws IOException {
+        final int n = 1000;
+        for (double rate : new double[] { 0, 0.2, 1 }) {
+            GlossaryGenerator generator = new GlossaryGenerator(n, 10, 10,
+                    rate, 3);
+            java.util.Set<String> terms = new HashSet<>();
+            for (int i = 0; i < n; i++) {
+                terms.add(generator.term(i));
+            }
+            Map<String, String> map = this.readBack(generator);
+            long words = 0;
+            long links = 0;
+            for (Map.Pair<String, String> pair : map) {
+                for (String word : pair.value().split("[ ,]+")) {
+                    words++;
+                    if (terms.contains(word)) {
+                        links++;
+                    }
+                }
+            }
+            final double slack = 0.02;
+            assertEquals(rate, (double) links / words, slack);
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the GlossaryServer.java class, against a server on localhost.
+ */
+public class GlossaryServerTest {
+
+    /**
+     * The terms, in index order.
+     */
+    private Queue<String> q;
+
+    /**
+     * The terms and definitions.
+     */
+    private Map<String, String> m;
+
+    /**
+     * Folder for templates, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The server under test.
+     */
+    private GlossaryServer server;
+
+    /**
+     * Starts a server for a small glossary on a free port.
+     */
+    @Before
+    public void setUp() {
+        this.m = new Map1L<>();
+        this.m.add("letters", "what make up a word");
+        this.m.add("word", "a string of letters");
+        this.m.add("regular expression", "a pattern over letters");
+        this.q = new Queue1L<>();
+        Glossary.sortTerms(this.q, this.m, new Glossary.CompareStrings());
+        final long cacheBytes = 1 << 20;
+        this.server = new GlossaryServer(this.q, this.m,
+                new GlossaryOptions().separators(SeparatorSet.of(" \t,")),
+                cacheBytes);
+        this.server.start(0, 2);
+    }
+
+    /**
+     * Stops the server.
+     */
+    @After
+    public void tearDown() {
+        this.server.close();
+    }
+
+    /**
+     * Requests the given path from the server.
+     *
+     * @param path
+     *            the path, already URL-encoded
+     * @param status
+     *            receives the HTTP status
+     * @return the body of the response
+     * @throws IOException
+     *             if the request fails
+     */
+    private byte[] get(String path, int[] status) throws IOException {
+        URL url = new URL("http://localhost:" + this.server.port() + path);
+        HttpURLConnection connection = (HttpURLConnection) url
+                .openConnection();
+        status[0] = connection.getResponseCode();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = status[0] < 400 ? connection.getInputStream()
+                : connection.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            int n = in.read(buffer);
+            while (n >= 0) {
+                body.write(buffer, 0, n);
+                n = in.read(buffer);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    // routine test - pages are the ones a full build writes
+    @Test
+    public void serveTest1() throws IOException {
+        StringBuilder required = new StringBuilder();
+        int[] status = new int[1];
+        Glossary.renderIndexPage(this.q, required);
+        assertArrayEquals(
+                required.toString().getBytes(StandardCharsets.UTF_8),
+                this.get("/index.html", status));
+        final int ok = 200;
+        assertEquals(ok, status[0]);
+        Glossary.renderTermPage("regular expression",
+                this.m.value("regular expression"),
+                TermMatcher.compile(this.m), SeparatorSet.of(" \t,"),
+                required);
+        assertArrayEquals(
+                required.toString().getBytes(StandardCharsets.UTF_8),
+                this.get("/regular%20expression.html", status));
+        assertEquals(ok, status[0]);
+    }
+
+    // the second request for a page is answered from the cache
+    @Test
+    public void serveTest2() throws IOException {
+        int[] status = new int[1];
+        byte[] first = this.get("/word.html", status);
+        byte[] second = this.get("/word.html", status);
+        assertArrayEquals(first, second);
+        assertEquals(1, this.server.cache().hits());
+        assertEquals(1, this.server.cache().misses());
+        assertEquals(1, this.server.hitLatency().count());
+        assertEquals(1, this.server.missLatency().count());
+    }
+
+    // unknown pages are not found, and stats are reported
+    @Test
+    public void serveTest3() throws IOException {
+        int[] status = new int[1];
+        this.get("/world.html", status);
+        final int notFound = 404;
+        assertEquals(notFound, status[0]);
+        assertEquals(0, this.server.cache().size());
+        String stats = new String(this.get("/stats", status),
+                StandardCharsets.UTF_8);
+        assertEquals(true, stats.startsWith("terms: 3\n"));
+    }
+
+    // with markup, backlinks, shards and search, every page a full build
+    // writes is served as it was written
+    @Test
+    public void optionsTest() throws IOException {
+        Path dir = this.folder.getRoot().toPath();
+        Files.write(dir.resolve(GlossaryTemplates.BACKLINKS_SECTION),
+                "<p class=\"back\">{{links}}</p>"
+                        .getBytes(StandardCharsets.UTF_8));
+        GlossaryTemplates markup = GlossaryTemplates.load(dir);
+        java.util.Map<String, byte[]> expected = new HashMap<>();
+        Glossary.writeGlossary(this.q, this.m, MemoryPageSink.bytes(expected),
+                new GlossaryOptions().separators(SeparatorSet.of(" \t,"))
+                        .templates(markup).backlinks(true).shardSize(2)
+                        .search(new SearchIndex(SeparatorSet.of(" \t,"))));
+        final int pages = 3 + 1 + 2 + 1;
+        assertEquals(pages, expected.size());
+        try (GlossaryServer other = new GlossaryServer(this.q, this.m,
+                new GlossaryOptions().separators(SeparatorSet.of(" \t,"))
+                        .templates(markup).backlinks(true).shardSize(2)
+                        .search(new SearchIndex(SeparatorSet.of(" \t,"))),
+                1 << 20)) {
+            for (java.util.Map.Entry<String, byte[]> e : expected
+                    .entrySet()) {
+                assertArrayEquals(e.getKey(), e.getValue(),
+                        other.page(e.getKey()));
+            }
+            assertEquals(null, other.page(
+                    GlossaryTemplates.shardName(3) + ".html"));
+            assertEquals(true, new String(other.page("word.html"),
+                    StandardCharsets.UTF_8).contains("<p class=\"back\">"));
+        }
+    }
+
+
+    // a term with the name of a shard is rejected, as in a full build
+    @Test(expected = IllegalArgumentException.class)
+    public void shardNameTest() {
+        this.m.add(GlossaryTemplates.shardName(1), "the first letters");
+        Queue<String> terms = new Queue1L<>();
+        Glossary.sortTerms(terms, this.m, new Glossary.CompareStrings());
+        new GlossaryServer(terms, this.m, new GlossaryOptions().shardSize(2),
+                1 << 20).close();
+    }
+
+}
@@ -1,8 +1,16 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Comparator;
+import java.util.HashMap;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import components.map.Map;
 import components.map.Map1L;
@@ -22,6 +30,12 @@ import components.simplewriter.SimpleWriter1L;
  */
 public class GlossaryTest {
 
+    /**
+     * Folder for input files written by the tests, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     // Tests of generateElements
 
     // routine test - testing only letters
@@ -153,6 +167,70 @@ public class GlossaryTest {
         assertEquals(required, result);
     }
 
+    // Tests of nextWordOrSeparatorEnd
+
+    // routine test, position 0, ends after a word
+    @Test
+    public void wordOrSeparatorEndTest1() {
+        Set<Character> separators = new Set1L<>();
+        separators.add(' ');
+        separators.add('\t');
+        separators.add(',');
+        int end = Glossary.nextWordOrSeparatorEnd("abc de   ,f", 0, separators);
+        final int endRequired = 3;
+        assertEquals(endRequired, end);
+    }
+
+    // separator string running into a word, on a StringBuilder
+    @Test
+    public void wordOrSeparatorEndTest2() {
+        Set<Character> separators = new Set1L<>();
+        separators.add(' ');
+        separators.add('\t');
+        separators.add(',');
+        StringBuilder text = new StringBuilder("abc de \t ,f");
+        final int pos = 6;
+        int end = Glossary.nextWordOrSeparatorEnd(text, pos, separators);
+        final int endRequired = 10;
+        assertEquals(endRequired, end);
+        assertEquals("abc de \t ,f", text.toString());
+    }
+
+    // word that runs to the end of the text
+    @Test
+    public void wordOrSeparatorEndTest3() {
+        Set<Character> separators = new Set1L<>();
+        separators.add(' ');
+        final int pos = 4;
+        int end = Glossary.nextWordOrSeparatorEnd("abc def", pos, separators);
+        final int endRequired = 7;
+        assertEquals(endRequired, end);
+    }
+
+    // a Set and a SeparatorSet split the same text, surrogate pairs included
+    @Test
+    public void wordOrSeparatorEndTest4() {
+        Set<Character> set = new Set1L<>();
+        set.add(' ');
+        set.add('\u00e9');
+        set.add('\ud83d');
+        SeparatorSet separators = SeparatorSet.from(set);
+        // tokens: "a", emoji, "b" / " e-acute " / "c" / lone high surrogate
+        // and " " / emoji (its high surrogate is not a separator on its own)
+        String text = "a\ud83d\ude00b \u00e9 c\ud83d \ud83d\ude00";
+        int end = 0;
+        int tokens = 0;
+        while (end < text.length()) {
+            int next = Glossary.nextWordOrSeparatorEnd(text, end, set);
+            assertEquals(Glossary.nextWordOrSeparatorEnd(text, end,
+                    separators), next);
+            end = next;
+            tokens++;
+        }
+        final int tokensRequired = 5;
+        assertEquals(tokensRequired, tokens);
+    }
+
     // Tests for getTermsAndDefinitions
 
     // routine test - 2 terms and definitions - all definitions 1 line long
@@ -182,6 +260,21 @@ public class GlossaryTest {
         assertEquals(mapRequired, map);
     }
 
+    // the last definition ends the input without a blank line after it
+    @Test
+    public void termsAndDefsTest3() throws IOException {
+        Path file = this.folder.newFile().toPath();
+        Files.write(file, "word\na string\nof characters"
+                .getBytes(StandardCharsets.UTF_8));
+        SimpleReader input = new SimpleReader1L(file.toString());
+        Map<String, String> map = new Map1L<>();
+        Glossary.getTermsAndDefinitions(input, map);
+        input.close();
+        Map<String, String> mapRequired = new Map1L<>();
+        mapRequired.add("word", "a string of characters");
+        assertEquals(mapRequired, map);
+    }
+
     // Tests for sortTerms
 
     // routine test - 2 strings, easy to find order
@@ -230,6 +323,28 @@ public class GlossaryTest {
         assertEquals(mReq, m);
     }
 
+    // external sort, spilling runs of 2 terms, merges into the same order
+    @Test
+    public void sortTermsTest3() {
+        Comparator<String> c = new Glossary.CompareStrings();
+        Map<String, String> m = new Map1L<>();
+        m.add("word", "a string of characters");
+        m.add("number", "a quantity or amount");
+        m.add("letter", "part of a word");
+        m.add("numbers", "more than one number");
+        m.add("Zebra", "an animal");
+        Queue<String> qReq = new Queue1L<>();
+        Glossary.sortTerms(qReq, m, c);
+        Queue<String> q = new Queue1L<>();
+        try (SortedTerms sorted = Glossary.sortTerms(m, c, 2)) {
+            assertEquals(1, sorted.runCount());
+            for (String term : sorted) {
+                q.enqueue(term);
+            }
+        }
+        assertEquals(qReq, q);
+    }
+
     // Tests for printIndexHeaderHTMLTags
 
     // this outputs the same thing regardless of output file
@@ -314,6 +429,143 @@ public class GlossaryTest {
         in.close();
     }
 
+    // Tests for writeIndex
+
+    // routine test - terms that fit on one page give the usual index
+    @Test
+    public void writeIndexTest1() {
+        Queue<String> q = new Queue1L<>();
+        q.enqueue("number");
+        q.enqueue("word");
+        java.util.Map<String, String> pages = new HashMap<>();
+        Glossary.writeIndex(q, MemoryPageSink.flatText(pages), 2);
+        StringBuilder required = new StringBuilder();
+        Glossary.renderIndexPage(q, required);
+        assertEquals(1, pages.size());
+        assertEquals(required.toString().replace(System.lineSeparator(), ""),
+                pages.get("index.html"));
+    }
+
+    // 5 terms in shards of 2 give 3 shards and a table of contents
+    @Test
+    public void writeIndexTest2() {
+        Queue<String> q = new Queue1L<>();
+        String[] terms = { "a", "b", "c", "d", "e" };
+        for (String term : terms) {
+            q.enqueue(term);
+        }
+        java.util.Map<String, String> pages = new HashMap<>();
+        Glossary.writeIndex(q, MemoryPageSink.flatText(pages), 2);
+        final int count = 4;
+        assertEquals(count, pages.size());
+        String header = "<html>  <head>    <title>Glossary</title>  </head>"
+                + "  <body>    <h2>Glossary</h2>    <hr />";
+        String contents = header + "    <h3>Index</h3>    <ul>"
+                + "      <li><a href=\"index-1.html\">a &ndash; b</a></li>"
+                + "      <li><a href=\"index-2.html\">c &ndash; d</a></li>"
+                + "      <li><a href=\"index-3.html\">e &ndash; e</a></li>"
+                + "    </ul>  </body></html>";
+        assertEquals(contents, pages.get("index.html"));
+        String middle = header + "    <h3>Index: c &ndash; d</h3>"
+                + "    <p><a href=\"index-1.html\">Previous</a> | "
+                + "<a href=\"index.html\">Contents</a> | "
+                + "<a href=\"index-3.html\">Next</a></p>    <ul>"
+                + "      <li><a href=\"c.html\">c</a></li>"
+                + "      <li><a href=\"d.html\">d</a></li>"
+                + "    </ul>  </body></html>";
+        assertEquals(middle, pages.get("index-2.html"));
+        assertEquals(true, pages.get("index-3.html")
+                .contains("<a href=\"index.html\">Contents</a></p>"));
+        assertEquals(terms.length, q.length());
+    }
+
+    // a term named like one of the shards is rejected before any page
+    @Test
+    public void writeIndexTest3() {
+        Queue<String> q = new Queue1L<>();
+        String[] terms = { "a", "b", "index-2", "x", "y" };
+        for (String term : terms) {
+            q.enqueue(term);
+        }
+        java.util.Map<String, String> pages = new HashMap<>();
+        try {
+            Glossary.writeIndex(q, MemoryPageSink.flatText(pages), 2);
+            fail("index-2 is the name of a shard");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, pages.size());
+        }
+    }
+
+    // names like a shard that no shard has are ordinary terms
+    @Test
+    public void writeIndexTest4() {
+        Queue<String> q = new Queue1L<>();
+        String[] terms = { "a", "index-0", "index-02", "index-4", "z" };
+        for (String term : terms) {
+            q.enqueue(term);
+        }
+        java.util.Map<String, String> pages = new HashMap<>();
+        Glossary.writeIndex(q, MemoryPageSink.flatText(pages), 2);
+        final int count = 4;
+        assertEquals(count, pages.size());
+        assertEquals(true, pages.get("index-2.html").contains("index-4.html"));
+    }
+
+    // Tests for appendLinkedDefinition
+
+    // routine test - no terms in the definition, buffer already has content
+    @Test
+    public void linkedDefinitionTest1() {
+        Map<String, String> m = new Map1L<>();
+        m.add("word", "a string of characters");
+        Set<Character> separators = new Set1L<>();
+        separators.add(' ');
+        separators.add('\t');
+        separators.add(',');
+        StringBuilder out = new StringBuilder("<blockquote>");
+        Glossary.appendLinkedDefinition("a quantity, or amount",
+                TermMatcher.compile(m), SeparatorSet.from(separators), out);
+        String required = "<blockquote>a quantity, or amount";
+        assertEquals(required, out.toString());
+    }
+
+    // the same term shows up more than once, next to separators
+    @Test
+    public void linkedDefinitionTest2() {
+        Map<String, String> m = new Map1L<>();
+        m.add("word", "a string of characters");
+        m.add("letters", "what make up a word");
+        Set<Character> separators = new Set1L<>();
+        separators.add(' ');
+        separators.add('\t');
+        separators.add(',');
+        StringBuilder out = new StringBuilder();
+        Glossary.appendLinkedDefinition("word,  letters word",
+                TermMatcher.compile(m), SeparatorSet.from(separators), out);
+        String required = "<a href=\"word.html\">word</a>,  "
+                + "<a href=\"letters.html\">letters</a> "
+                + "<a href=\"word.html\">word</a>";
+        assertEquals(required, out.toString());
+    }
+
+    // multi-word term, linked as a whole instead of by its words
+    @Test
+    public void linkedDefinitionTest3() {
+        Map<String, String> m = new Map1L<>();
+        m.add("regular expression", "a pattern that matches text");
+        m.add("pattern", "a model");
+        Set<Character> separators = new Set1L<>();
+        separators.add(' ');
+        separators.add('\t');
+        separators.add(',');
+        StringBuilder out = new StringBuilder();
+        Glossary.appendLinkedDefinition("a pattern, like a regular expression",
+                TermMatcher.compile(m), SeparatorSet.from(separators), out);
+        String required = "a <a href=\"pattern.html\">pattern</a>, like a "
+                + "<a href=\"regular expression.html\">regular expression</a>";
+        assertEquals(required, out.toString());
+    }
+
     // Tests for createTermHTMLPages
 
     // routine tests - no terms in the definition
@@ -432,4 +684,77 @@ public class GlossaryTest {
         inTerm2.close();
     }
 
+    // parallel generation gives the same pages as the sequential one
+    @Test
+    public void createTermPageTest3() {
+        Queue<String> q = new Queue1L<>();
+        Map<String, String> m = new Map1L<>();
+        final int n = 500;
+        for (int i = 0; i < n; i++) {
+            m.add("term" + i, "see term" + (i + 1) % n + ", or term"
+                    + (i * 7) % n + " and a word");
+        }
+        Glossary.sortTerms(q, m, new Glossary.CompareStrings());
+        Queue<String> qReq = new Queue1L<>();
+        for (String term : q) {
+            qReq.enqueue(term);
+        }
+        SeparatorSet separators = SeparatorSet.of(" \t,");
+        java.util.Map<String, String> sequential = new HashMap<>();
+        Glossary.createTermHTMLPages(q, m, MemoryPageSink.text(sequential),
+                new GlossaryOptions().separators(separators).workers(1));
+        java.util.Map<String, String> parallel = new HashMap<>();
+        final int workers = 4;
+        Glossary.createTermHTMLPages(q, m, MemoryPageSink.text(parallel),
+                new GlossaryOptions().separators(separators).workers(workers));
+
+        assertEquals(n, sequential.size());
+        assertEquals(sequential, parallel);
+        assertEquals(true, parallel.get("term3.html")
+                .contains("<a href=\"term4.html\">term4</a>"));
+        assertEquals(qReq, q);
+    }
+
+    // Tests of checkModes
+
+    // settings main cannot combine are rejected rather than ignored
+    @Test
+    public void checkModesTest() {
+        String[][] rejected = { { "glossary.serve", "8080" },
+                { "glossary.incremental", "true" },
+                { "glossary.sortRunSize", "100" },
+                { "glossary.compile", "out.glc" } };
+        for (String[] setting : rejected) {
+            System.setProperty(setting[0], setting[1]);
+            try {
+                Glossary.checkModes(true);
+                fail(setting[0] + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                assertEquals(true, e.getMessage().contains(setting[0]));
+            } finally {
+                System.clearProperty(setting[0]);
+            }
+        }
+        System.setProperty("glossary.offHeap", "true");
+        System.setProperty("glossary.incremental", "true");
+        try {
+            Glossary.checkModes(false);
+            fail("offHeap and incremental should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("glossary.offHeap cannot be combined with"
+                    + " glossary.incremental", e.getMessage());
+        } finally {
+            System.clearProperty("glossary.offHeap");
+        }
+        // incremental on its own, even with a compile, is fine
+        System.setProperty("glossary.compile", "out.glc");
+        try {
+            Glossary.checkModes(false);
+        } finally {
+            System.clearProperty("glossary.compile");
+            System.clearProperty("glossary.incremental");
+        }
+        Glossary.checkModes(true);
+    }
+
 }
@@ -0,0 +1,163 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the GlossaryWatcher.java class.
+ */
+public class GlossaryWatcherTest {
+
+    /**
+     * Folder for the input file and the output folder, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Starts running the given watcher on a new thread, putting the result of
+     * each rebuild in the returned queue.
+     *
+     * @param watcher
+     *            the watcher
+     * @return the queue of results
+     */
+    private static BlockingQueue<IncrementalBuild.Result> watch(
+            GlossaryWatcher watcher) {
+        BlockingQueue<IncrementalBuild.Result> results;
+        results = new LinkedBlockingQueue<>();
+        Thread t = new Thread(() -> watcher.run(new GlossaryWatcher.Listener() {
+            @Override
+            public void rebuilt(IncrementalBuild.Result result, long nanos) {
+                results.add(result);
+            }
+
+            @Override
+            public void failed(RuntimeException e) {
+                throw e;
+            }
+        }));
+        t.setDaemon(true);
+        t.start();
+        return results;
+    }
+
+    /**
+     * Writes the given text to the given file as UTF-8.
+     *
+     * @param file
+     *            the file
+     * @param text
+     *            the text
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // routine test - a changed definition rewrites only its own page
+    @Test
+    public void watchTest1() throws IOException, InterruptedException {
+        Path input = this.folder.newFile("terms.txt").toPath();
+        Path output = this.folder.newFolder("output").toPath();
+        write(input, "word\na string of letters\n\nletters\nwhat make up "
+                + "a word\n\n");
+        final long debounce = 50;
+        try (GlossaryWatcher watcher = new GlossaryWatcher(input,
+                output.toString(), new DirectoryPageSink(output.toString()),
+                new GlossaryOptions().separators(SeparatorSet.of(" \t,")),
+                debounce)) {
+            final int pages = 2;
+            assertEquals(pages, watcher.rebuild().pagesWritten());
+            BlockingQueue<IncrementalBuild.Result> results = watch(watcher);
+            write(input, "word\na string of letters\n\nletters\nwhat makes "
+                    + "up a word\n\n");
+            final long timeout = 10;
+            IncrementalBuild.Result result = results.poll(timeout,
+                    TimeUnit.SECONDS);
+            assertNotNull(result);
+            assertEquals(1, result.pagesWritten());
+            assertEquals(false, result.indexWritten());
+            String page = new String(
+                    Files.readAllBytes(output.resolve("letters.html")),
+                    StandardCharsets.UTF_8);
+            assertEquals(true, page.contains("what makes up a "));
+        }
+    }
+
+    // a burst of saves gives one rebuild, and other files are ignored
+    @Test
+    public void watchTest2() throws IOException, InterruptedException {
+        Path input = this.folder.newFile("terms.txt").toPath();
+        Path output = this.folder.newFolder("output").toPath();
+        write(input, "word\na string\n\n");
+        final long debounce = 300;
+        try (GlossaryWatcher watcher = new GlossaryWatcher(input,
+                output.toString(), new DirectoryPageSink(output.toString()),
+                new GlossaryOptions().separators(SeparatorSet.of(" \t,")),
+                debounce)) {
+            watcher.rebuild();
+            BlockingQueue<IncrementalBuild.Result> results = watch(watcher);
+            write(this.folder.getRoot().toPath().resolve("other.txt"), "x");
+            write(input, "word\na string\n\nletters\n");
+            write(input, "word\na string\n\nletters\nwhat make up a word\n");
+            final long timeout = 10;
+            IncrementalBuild.Result result = results.poll(timeout,
+                    TimeUnit.SECONDS);
+            assertNotNull(result);
+            assertEquals(1, result.pagesWritten());
+            assertEquals(true, result.indexWritten());
+            assertNull(results.poll(2 * debounce, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    // the pages are sorted by the locale of the options, on every rebuild
+    @Test
+    public void localeTest() throws IOException, InterruptedException {
+        Path input = this.folder.newFile("terms.txt").toPath();
+        Path output = this.folder.newFolder("output").toPath();
+        write(input, "Zebra\nan animal\n\nmango\na fruit\n\n");
+        final long debounce = 50;
+        GlossaryOptions options = new GlossaryOptions()
+                .order(CollationOrder.forLocale(Locale.FRENCH));
+        try (GlossaryWatcher watcher = new GlossaryWatcher(input,
+                output.toString(), new DirectoryPageSink(output.toString()),
+                options, debounce)) {
+            watcher.rebuild();
+            BlockingQueue<IncrementalBuild.Result> results = watch(watcher);
+            write(input, "Zebra\nan animal\n\nmango\na fruit\n\n"
+                    + "apple\nanother fruit\n\n");
+            final long timeout = 10;
+            IncrementalBuild.Result result = results.poll(timeout,
+                    TimeUnit.SECONDS);
+            assertNotNull(result);
+            assertEquals(true, result.indexWritten());
+            // case only breaks ties, so "Zebra" comes last
+            String index = new String(
+                    Files.readAllBytes(output.resolve("index.html")),
+                    StandardCharsets.UTF_8);
+            int apple = index.indexOf("apple.html");
+            int mango = index.indexOf("mango.html");
+            int zebra = index.indexOf("Zebra.html");
+            assertEquals(true, 0 <= apple && apple < mango && mango < zebra);
+            String manifest = new String(Files.readAllBytes(
+                    output.resolve(IncrementalBuild.MANIFEST)),
+                    StandardCharsets.UTF_8);
+            assertEquals(true, manifest.contains("O collation fr"));
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests for the GzipPageSink.java class.
+ */
+public class GzipPageSinkTest {
+
+    /**
+     * Decompresses the given gzip data.
+     *
+     * @param gz
+     *            the gzip data
+     * @return the data
+     * @throws IOException
+     *             if gz is not valid gzip data
+     */
+    private static byte[] gunzip(byte[] gz) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(gz))) {
+            byte[] buffer = new byte[1 << 12];
+            int n = in.read(buffer);
+            while (n >= 0) {
+                out.write(buffer, 0, n);
+                n = in.read(buffer);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // routine test - each page is stored as is and as a gzip copy, even when
+    // the caller reuses its buffer
+    @Test
+    public void writeTest1() throws IOException {
+        java.util.Map<String, byte[]> pages = new HashMap<>();
+        final int n = 200;
+        final int workers = 3;
+        byte[] buffer = new byte[1 << 12];
+        try (PageSink sink = new GzipPageSink(MemoryPageSink.bytes(pages),
+                workers)) {
+            for (int i = 0; i < n; i++) {
+                byte[] page = ("<html>page " + i + " " + "x".repeat(i)
+                        + "</html>").getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(page, 0, buffer, 1, page.length);
+                sink.write("p" + i + ".html", buffer, 1, page.length);
+            }
+        }
+        assertEquals(2 * n, pages.size());
+        for (int i = 0; i < n; i++) {
+            byte[] page = pages.get("p" + i + ".html");
+            assertArrayEquals(page, gunzip(pages.get("p" + i + ".html.gz")));
+        }
+    }
+
+    // an empty page compresses too
+    @Test
+    public void writeTest2() throws IOException {
+        java.util.Map<String, byte[]> pages = new HashMap<>();
+        try (PageSink sink = new GzipPageSink(MemoryPageSink.bytes(pages), 1,
+                1)) {
+            sink.write("empty.html", new byte[0], 0, 0);
+        }
+        assertEquals(0, gunzip(pages.get("empty.html.gz")).length);
+    }
+
+    // a copy that cannot be stored fails close
+    @Test
+    public void closeTest() {
+        PageSink broken = new PageSink() {
+            @Override
+            public void write(String name, byte[] bytes, int offset,
+                    int length) {
+                if (name.endsWith(GzipPageSink.SUFFIX)) {
+                    throw new IllegalStateException("disk full");
+                }
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+        PageSink sink = new GzipPageSink(broken, 2);
+        sink.write("a.html", new byte[] { 'a' }, 0, 1);
+        try {
+            sink.close();
+            fail("close should rethrow the failure");
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+    }
+
+    // flush waits for every copy and throws the failures since the last one
+    @Test
+    public void flushTest() {
+        java.util.Map<String, byte[]> pages = new HashMap<>();
+        final int n = 50;
+        try (PageSink sink = new GzipPageSink(MemoryPageSink.bytes(pages),
+                2)) {
+            for (int i = 0; i < n; i++) {
+                sink.write("p" + i + ".html", new byte[] { 'p' }, 0, 1);
+            }
+            sink.flush();
+            assertEquals(2 * n, pages.size());
+        }
+        PageSink broken = new PageSink() {
+            @Override
+            public void write(String name, byte[] bytes, int offset,
+                    int length) {
+                if (name.endsWith(GzipPageSink.SUFFIX)) {
+                    throw new IllegalStateException("disk full");
+                }
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+        PageSink sink = new GzipPageSink(broken, 2);
+        sink.write("a.html", new byte[] { 'a' }, 0, 1);
+        try {
+            sink.flush();
+            fail("flush should rethrow the failure");
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        // a failure is thrown once
+        sink.close();
+    }
+
+}
@@ -0,0 +1,340 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the IncrementalBuild.java class.
+ */
+public class IncrementalBuildTest {
+
+    /**
+     * The default separators used by Glossary.
+     */
+    private static final SeparatorSet SEPARATORS = SeparatorSet.of(" \t,");
+
+    /**
+     * Output folder, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Builds the glossary for the given terms and definitions into the
+     * output folder.
+     *
+     * @param map
+     *            the terms and definitions
+     * @return what the build did
+     */
+    private IncrementalBuild.Result build(Map<String, String> map) {
+        return this.build(map, new GlossaryOptions().separators(SEPARATORS),
+                false);
+    }
+
+    /**
+     * Builds the glossary for the given terms and definitions into the
+     * output folder with the given options, with gzip copies if asked for.
+     *
+     * @param map
+     *            the terms and definitions
+     * @param options
+     *            how the glossary is built
+     * @param gzip
+     *            whether pages get gzip copies
+     * @return what the build did
+     */
+    private IncrementalBuild.Result build(Map<String, String> map,
+            GlossaryOptions options, boolean gzip) {
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, map, options.order());
+        String dir = this.folder.getRoot().getPath();
+        PageSink sink = new DirectoryPageSink(dir);
+        if (gzip) {
+            sink = new GzipPageSink(sink, 2);
+        }
+        try {
+            return IncrementalBuild.build(q, map, dir, sink, options);
+        } finally {
+            sink.close();
+        }
+    }
+
+    /**
+     * Returns the contents of the given page in the output folder.
+     *
+     * @param name
+     *            the file name
+     * @return the contents
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private String page(String name) throws IOException {
+        return new String(Files.readAllBytes(
+                Paths.get(this.folder.getRoot().getPath(), name)),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the pages in the output folder, by name, leaving out the
+     * manifest and gzip copies.
+     *
+     * @return the pages
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    private java.util.Map<String, String> pages() throws IOException {
+        java.util.Map<String, String> result = new HashMap<>();
+        for (File f : this.folder.getRoot().listFiles()) {
+            String name = f.getName();
+            if (!name.equals(IncrementalBuild.MANIFEST)
+                    && !name.endsWith(GzipPageSink.SUFFIX)) {
+                result.put(name, this.page(name));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a small glossary where "letters" links to "word".
+     *
+     * @return the terms and definitions
+     */
+    private static Map<String, String> glossary() {
+        Map<String, String> m = new Map1L<>();
+        m.add("letters", "what make up a word");
+        m.add("word", "a string of characters");
+        m.add("number", "a quantity or amount");
+        return m;
+    }
+
+    // routine test - the first build writes everything, the second nothing
+    @Test
+    public void unchangedTest() {
+        IncrementalBuild.Result first = this.build(glossary());
+        final int pages = 3;
+        assertEquals(pages, first.pagesWritten());
+        assertEquals(true, first.indexWritten());
+        IncrementalBuild.Result second = this.build(glossary());
+        assertEquals(0, second.pagesWritten());
+        assertEquals(0, second.pagesDeleted());
+        assertEquals(false, second.indexWritten());
+    }
+
+    // only the page whose definition changed is written again
+    @Test
+    public void changedDefinitionTest() throws IOException {
+        this.build(glossary());
+        Map<String, String> m = glossary();
+        m.replaceValue("number", "a count of letters");
+        IncrementalBuild.Result result = this.build(m);
+        assertEquals(1, result.pagesWritten());
+        assertEquals(false, result.indexWritten());
+        assertEquals(true, this.page("number.html")
+                .contains("a count of <a href=\"letters.html\">letters</a>"));
+    }
+
+    // a new term is linked from the unchanged page that mentions it
+    @Test
+    public void addedTermTest() throws IOException {
+        this.build(glossary());
+        Map<String, String> m = glossary();
+        m.add("characters", "letters, digits and symbols");
+        IncrementalBuild.Result result = this.build(m);
+        // the new page and the page of "word"
+        final int pages = 2;
+        assertEquals(pages, result.pagesWritten());
+        assertEquals(true, result.indexWritten());
+        assertEquals(true, this.page("word.html").contains(
+                "<a href=\"characters.html\">characters</a>"));
+        assertEquals(true, this.page("index.html").contains("characters"));
+    }
+
+    // a removed term's page is deleted and pages linking to it are rewritten
+    @Test
+    public void removedTermTest() throws IOException {
+        this.build(glossary());
+        Map<String, String> m = glossary();
+        m.remove("word");
+        IncrementalBuild.Result result = this.build(m);
+        assertEquals(1, result.pagesWritten());
+        assertEquals(1, result.pagesDeleted());
+        assertEquals(true, result.indexWritten());
+        assertEquals(false,
+                new File(this.folder.getRoot(), "word.html").exists());
+        assertEquals(true,
+                this.page("letters.html").contains("what make up a word<"));
+    }
+
+    // gzip copies are rewritten and deleted with their pages, and a build
+    // without gzip drops every copy
+    @Test
+    public void gzipTest() throws IOException {
+        GlossaryOptions options = new GlossaryOptions().separators(SEPARATORS);
+        this.build(glossary(), options, true);
+        Map<String, String> m = glossary();
+        m.replaceValue("number", "a count of letters");
+        m.remove("word");
+        IncrementalBuild.Result result = this.build(m, options, true);
+        // the changed page and the page that linked to the removed term
+        final int pages = 2;
+        assertEquals(pages, result.pagesWritten());
+        Path dir = this.folder.getRoot().toPath();
+        for (String name : new String[] { "number.html", "letters.html",
+                "index.html" }) {
+            try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(
+                    dir.resolve(name + GzipPageSink.SUFFIX)))) {
+                assertEquals(this.page(name), new String(in.readAllBytes(),
+                        StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(false,
+                Files.exists(dir.resolve("word.html" + GzipPageSink.SUFFIX)));
+        result = this.build(m, options, false);
+        assertEquals(2, result.pagesWritten());
+        assertEquals(0, this.folder.getRoot()
+                .list((d, name) -> name.endsWith(GzipPageSink.SUFFIX)).length);
+    }
+
+    // markup, backlinks, shards and search come out as in a full build
+    @Test
+    public void optionsTest() throws IOException {
+        Path templates = this.folder.newFolder("templates").toPath();
+        Files.write(templates.resolve(GlossaryTemplates.LINK),
+                "<a class=\"t\" href=\"{{term}}.html\">{{text}}</a>"
+                        .getBytes(StandardCharsets.UTF_8));
+        GlossaryTemplates markup = GlossaryTemplates.load(templates);
+        Files.delete(templates.resolve(GlossaryTemplates.LINK));
+        Files.delete(templates);
+        Map<String, String> m = glossary();
+        this.build(m, new GlossaryOptions().separators(SEPARATORS)
+                .templates(markup).backlinks(true).shardSize(2), false);
+        // a new term linking to "word" changes the backlinks of that page
+        m.add("string", "a word after a word");
+        m.add("amount", "a number");
+        GlossaryOptions options = new GlossaryOptions().separators(SEPARATORS)
+                .templates(markup).backlinks(true).shardSize(1)
+                .search(new SearchIndex(SEPARATORS));
+        IncrementalBuild.Result result = this.build(m, options, false);
+        assertEquals(true, result.indexWritten());
+        assertEquals(true, this.page("word.html").contains("string"));
+        java.util.Map<String, String> expected = new HashMap<>();
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, m, options.order());
+        Glossary.writeGlossary(q, m, MemoryPageSink.text(expected),
+                new GlossaryOptions().separators(SEPARATORS).templates(markup)
+                        .backlinks(true).shardSize(1)
+                        .search(new SearchIndex(SEPARATORS)));
+        assertEquals(expected, this.pages());
+        // with fewer, bigger shards the extra ones go
+        result = this.build(m, options.shardSize(2), false);
+        assertEquals(0, result.pagesWritten());
+        assertEquals(false, new File(this.folder.getRoot(),
+                GlossaryTemplates.shardName(4) + ".html").exists());
+    }
+
+    // a new order of the same terms rewrites the index and no page
+    @Test
+    public void orderTest() throws IOException {
+        Map<String, String> m = glossary();
+        m.add("Zebra", "an animal");
+        GlossaryOptions options = new GlossaryOptions().separators(SEPARATORS);
+        this.build(m, options, false);
+        IncrementalBuild.Result result = this.build(m,
+                options.order(CollationOrder.forLocale(Locale.ENGLISH)),
+                false);
+        assertEquals(0, result.pagesWritten());
+        assertEquals(true, result.indexWritten());
+        String index = this.page("index.html");
+        assertEquals(true,
+                index.indexOf("word.html") < index.indexOf("Zebra.html"));
+        assertEquals(false, this.build(m, options, false).indexWritten());
+    }
+
+    // the search index is put back from recorded words as a full build has it
+    @Test
+    public void searchTest() throws IOException {
+        GlossaryOptions options = new GlossaryOptions().separators(SEPARATORS)
+                .search(new SearchIndex(SEPARATORS));
+        this.build(glossary(), options, false);
+        Map<String, String> m = glossary();
+        m.replaceValue("number", "a count of Letters, or words");
+        m.remove("word");
+        m.add("zero", "no number at all");
+        IncrementalBuild.Result result = this.build(m, options, false);
+        // the changed, linking and new pages only
+        final int pages = 3;
+        assertEquals(pages, result.pagesWritten());
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, m, options.order());
+        java.util.Map<String, String> expected = new HashMap<>();
+        Glossary.writeGlossary(q, m, MemoryPageSink.text(expected),
+                new GlossaryOptions().separators(SEPARATORS)
+                        .search(new SearchIndex(SEPARATORS)));
+        assertEquals(expected.get(SearchIndex.FILE_NAME),
+                this.page(SearchIndex.FILE_NAME));
+        // the options' own index is left empty
+        assertEquals(0, options.search().termCount());
+    }
+
+    // a page the sink failed to store is not recorded in the manifest
+    @Test
+    public void flushTest() throws IOException {
+        GlossaryOptions options = new GlossaryOptions().separators(SEPARATORS);
+        this.build(glossary(), options, false);
+        Path manifest = this.folder.getRoot().toPath()
+                .resolve(IncrementalBuild.MANIFEST);
+        byte[] before = Files.readAllBytes(manifest);
+        Map<String, String> m = glossary();
+        m.replaceValue("number", "a count");
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, m, options.order());
+        String dir = this.folder.getRoot().getPath();
+        PageSink failing = new PageSink() {
+            @Override
+            public void write(String name, byte[] bytes, int offset,
+                    int length) {
+                // the page is lost
+            }
+
+            @Override
+            public void flush() {
+                throw new IllegalStateException("disk full");
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+        try {
+            IncrementalBuild.build(q, m, dir, failing, options);
+            fail("the failure should be thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        assertArrayEquals(before, Files.readAllBytes(manifest));
+        // so the next build writes the page again
+        assertEquals(1, this.build(m, options, false).pagesWritten());
+        assertEquals(true, this.page("number.html").contains("a count"));
+    }
+
+}
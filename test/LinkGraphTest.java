@@ -0,0 +1,113 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the LinkGraph.java class.
+ */
+public class LinkGraphTest {
+
+    /**
+     * Separators used by every test.
+     */
+    private static final SeparatorSet SEPARATORS = SeparatorSet.of(" \t,");
+
+    /**
+     * Returns the forward links of the given term, as
+     * {@code start:end:termId} strings.
+     *
+     * @param graph
+     *            the graph
+     * @param id
+     *            the term whose links are listed
+     * @return the links
+     */
+    private static List<String> links(LinkGraph graph, int id) {
+        List<String> result = new ArrayList<>();
+        graph.links(id, (start, end, termId) -> result
+                .add(start + ":" + end + ":" + termId));
+        return result;
+    }
+
+    // routine test - forward links, and backlinks without repeats or self
+    @Test
+    public void buildTest1() {
+        String[] terms = { "letter", "word", "string" };
+        String[] defs = { "part of a word, or a word", "a string of letter",
+                "a word about a word string" };
+        LinkGraph graph = LinkGraph.build(terms, defs, SEPARATORS, 1);
+        assertEquals(3, graph.size());
+        assertEquals(Arrays.asList("10:14:1", "21:25:1"), links(graph, 0));
+        assertEquals(2, graph.linkCount(1));
+        assertEquals(Arrays.asList("2:8:2", "12:18:0"), links(graph, 1));
+        assertEquals(Arrays.asList("word"), graph.backlinks(0));
+        assertEquals(Arrays.asList("letter", "string"), graph.backlinks(1));
+        assertEquals(Arrays.asList("word"), graph.backlinks(2));
+        assertEquals(2, graph.backlink(1, 1));
+        // "part", " ", "of", " ", "a", " ", "word", ", ", "or", ...
+        final int tokens = 13;
+        assertEquals(tokens, graph.tokens(0));
+    }
+
+    // building on several workers gives the same graph
+    @Test
+    public void buildTest2() {
+        final int n = 5000;
+        String[] terms = new String[n];
+        String[] defs = new String[n];
+        for (int i = 0; i < n; i++) {
+            terms[i] = "t" + i;
+            defs[i] = "see t" + (i * 7 % n) + " and t" + (i * 13 % n);
+        }
+        LinkGraph one = LinkGraph.build(terms, defs, SEPARATORS, 1);
+        final int workers = 4;
+        LinkGraph many = LinkGraph.build(terms, defs, SEPARATORS, workers);
+        for (int i = 0; i < n; i++) {
+            assertEquals(links(one, i), links(many, i));
+            assertEquals(one.backlinks(i), many.backlinks(i));
+            assertEquals(one.tokens(i), many.tokens(i));
+        }
+    }
+
+    // pages list their backlinks, and pages with none are left as they were
+    @Test
+    public void createTermHTMLPagesTest() {
+        Map<String, String> map = new Map1L<>();
+        map.add("letter", "part of a word");
+        map.add("word", "a string of letters");
+        map.add("zebra", "an animal");
+        Queue<String> q = new Queue1L<>();
+        q.enqueue("letter");
+        q.enqueue("word");
+        q.enqueue("zebra");
+        java.util.Map<String, String> plain = new HashMap<>();
+        java.util.Map<String, String> linked = new HashMap<>();
+        Glossary.createTermHTMLPages(q, map, MemoryPageSink.text(plain),
+                new GlossaryOptions().separators(SEPARATORS));
+        Glossary.createTermHTMLPages(q, map, MemoryPageSink.text(linked),
+                new GlossaryOptions().separators(SEPARATORS).workers(2)
+                        .stats(new BuildStats()).backlinks(true));
+        assertEquals(plain.get("letter.html"), linked.get("letter.html"));
+        assertEquals(plain.get("zebra.html"), linked.get("zebra.html"));
+        String word = linked.get("word.html");
+        assertTrue(word.contains("    <p>What links here: "
+                + "<a href=\"letter.html\">letter</a></p>"
+                + System.lineSeparator() + "    <hr />"));
+        assertEquals(Collections.emptyList(), LinkGraph.build(
+                new String[] { "a" }, new String[] { "a" }, SEPARATORS, 2)
+                .backlinks(0));
+    }
+
+}
@@ -0,0 +1,87 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A {@code PageSink} for the tests, which keeps the pages written to it in a
+ * map, by name. Pages may be written from several threads at once.
+ *
+ * @param <V>
+ *            how a page is kept
+ */
+final class MemoryPageSink<V> implements PageSink {
+
+    /**
+     * Where the pages go, by name.
+     */
+    private final java.util.Map<String, V> pages;
+
+    /**
+     * Turns the bytes of a page into what is kept.
+     */
+    private final Function<byte[], V> decode;
+
+    /**
+     * Constructor.
+     *
+     * @param pages
+     *            where the pages go, by name
+     * @param decode
+     *            turns the bytes of a page into what is kept
+     */
+    private MemoryPageSink(java.util.Map<String, V> pages,
+            Function<byte[], V> decode) {
+        this.pages = pages;
+        this.decode = decode;
+    }
+
+    /**
+     * Returns a sink that keeps the bytes of each page as they are.
+     *
+     * @param pages
+     *            where the pages go, by name
+     * @return the sink
+     */
+    static PageSink bytes(java.util.Map<String, byte[]> pages) {
+        return new MemoryPageSink<>(pages, bytes -> bytes);
+    }
+
+    /**
+     * Returns a sink that keeps each page decoded from UTF-8.
+     *
+     * @param pages
+     *            where the pages go, by name
+     * @return the sink
+     */
+    static PageSink text(java.util.Map<String, String> pages) {
+        return new MemoryPageSink<>(pages,
+                bytes -> new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a sink that keeps each page decoded from UTF-8, with the line
+     * separators removed.
+     *
+     * @param pages
+     *            where the pages go, by name
+     * @return the sink
+     */
+    static PageSink flatText(java.util.Map<String, String> pages) {
+        return new MemoryPageSink<>(pages,
+                bytes -> new String(bytes, StandardCharsets.UTF_8)
+                        .replace(System.lineSeparator(), ""));
+    }
+
+    @Override
+    public synchronized void write(String name, byte[] bytes, int offset,
+            int length) {
+        this.pages.put(name, this.decode
+                .apply(Arrays.copyOfRange(bytes, offset, offset + length)));
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+}
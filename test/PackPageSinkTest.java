@@ -0,0 +1,109 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the PackPageSink.java and PackFile.java classes.
+ */
+public class PackPageSinkTest {
+
+    /**
+     * Folder for pack files, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // routine test - pages come back out by name
+    @Test
+    public void packTest1() throws IOException {
+        Path file = this.folder.newFile("glossary.pack").toPath();
+        PackPageSink sink = new PackPageSink(file);
+        byte[] a = "<html>a</html>".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "xx<html>b</html>xx".getBytes(StandardCharsets.UTF_8);
+        sink.write("a.html", a, 0, a.length);
+        final int offset = 2;
+        final int length = 14;
+        sink.write("b c.html", b, offset, length);
+        sink.close();
+        try (PackFile pack = new PackFile(file)) {
+            assertEquals(2, pack.size());
+            assertEquals(true, pack.hasPage("b c.html"));
+            assertEquals(false, pack.hasPage("c.html"));
+            assertEquals("<html>a</html>", new String(pack.page("a.html"),
+                    StandardCharsets.UTF_8));
+            assertEquals("<html>b</html>", new String(pack.page("b c.html"),
+                    StandardCharsets.UTF_8));
+        }
+    }
+
+    // more pages than fit in the write buffer, and an empty pack
+    @Test
+    public void packTest2() throws IOException {
+        Path file = this.folder.newFile("big.pack").toPath();
+        final int pages = 3000;
+        byte[] page = new byte[1000];
+        try (PackPageSink sink = new PackPageSink(file)) {
+            for (int i = 0; i < pages; i++) {
+                page[0] = (byte) i;
+                sink.write(i + ".html", page, 0, page.length);
+            }
+        }
+        try (PackFile pack = new PackFile(file)) {
+            assertEquals(pages, pack.size());
+            final int last = pages - 1;
+            assertEquals((byte) last, pack.page(last + ".html")[0]);
+            assertEquals(page.length, pack.page("7.html").length);
+        }
+        Path empty = this.folder.newFile("empty.pack").toPath();
+        new PackPageSink(empty).close();
+        try (PackFile pack = new PackFile(empty)) {
+            assertEquals(0, pack.size());
+        }
+    }
+
+    // a glossary written into a pack matches the one written into a folder
+    @Test
+    public void writeGlossaryTest() throws IOException {
+        Map<String, String> m = new Map1L<>();
+        m.add("letters", "what make up a word");
+        m.add("word", "a string of characters");
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, m, new Glossary.CompareStrings());
+        SeparatorSet separators = SeparatorSet.of(" \t,");
+        Path dir = this.folder.newFolder("out").toPath();
+        try (PageSink sink = new DirectoryPageSink(dir.toString())) {
+            Glossary.writeGlossary(q, m, sink,
+                    new GlossaryOptions().separators(separators));
+        }
+        Path file = this.folder.newFile("out.pack").toPath();
+        final int workers = 3;
+        try (PageSink sink = new PackPageSink(file)) {
+            Glossary.writeGlossary(q, m, sink, new GlossaryOptions()
+                    .separators(separators).workers(workers));
+        }
+        try (PackFile pack = new PackFile(file)) {
+            final int pages = 3;
+            assertEquals(pages, pack.size());
+            for (String name : new String[] { "index.html", "letters.html",
+                    "word.html" }) {
+                assertEquals(
+                        new String(Files.readAllBytes(dir.resolve(name)),
+                                StandardCharsets.UTF_8),
+                        new String(pack.page(name), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+}
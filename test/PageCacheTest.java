@@ -0,0 +1,77 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests for the PageCache.java and LatencyHistogram.java classes.
+ */
+public class PageCacheTest {
+
+    // routine test - pages come back, and lookups are counted
+    @Test
+    public void cacheTest1() {
+        final long capacity = 1 << 20;
+        PageCache cache = new PageCache(capacity);
+        byte[] page = { 1, 2, 3 };
+        assertNull(cache.get("a.html"));
+        cache.put("a.html", page);
+        assertEquals(page, cache.get("a.html"));
+        assertEquals(1, cache.size());
+        assertEquals(page.length, cache.bytes());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    // the least recently used page is evicted first
+    @Test
+    public void cacheTest2() {
+        // 16 segments of 100 bytes; names with equal hash codes share one
+        final long capacity = 1600;
+        PageCache cache = new PageCache(capacity);
+        final int size = 40;
+        cache.put("AaAa", new byte[size]);
+        cache.put("AaBB", new byte[size]);
+        cache.get("AaAa");
+        cache.put("BBAa", new byte[size]);
+        assertNull(cache.get("AaBB"));
+        assertEquals(size, cache.get("AaAa").length);
+        assertEquals(size, cache.get("BBAa").length);
+        assertEquals(1, cache.evictions());
+        assertEquals(2 * size, cache.bytes());
+    }
+
+    // pages larger than a segment are not cached
+    @Test
+    public void cacheTest3() {
+        final long capacity = 160;
+        PageCache cache = new PageCache(capacity);
+        final int size = 11;
+        cache.put("big.html", new byte[size]);
+        assertEquals(0, cache.size());
+        cache.put("small.html", new byte[size - 1]);
+        assertEquals(1, cache.size());
+    }
+
+    // percentiles are within one bucket of the true values
+    @Test
+    public void histogramTest() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentile(0.99));
+        final int samples = 1000;
+        for (int i = 1; i <= samples; i++) {
+            h.record(i);
+        }
+        assertEquals(samples, h.count());
+        assertEquals(samples, h.max());
+        final long p50 = h.percentile(0.5);
+        final long p99 = h.percentile(0.99);
+        final long low50 = 500;
+        final long high50 = 563;
+        final long low99 = 990;
+        assertEquals(true, p50 >= low50 && p50 <= high50);
+        assertEquals(true, p99 >= low99 && p99 <= samples);
+        assertEquals(samples, h.percentile(1));
+    }
+
+}
@@ -0,0 +1,104 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the PagePipeline.java class.
+ */
+public class PagePipelineTest {
+
+    /**
+     * Folder for the input file, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Separators used by every test.
+     */
+    private static final SeparatorSet SEPARATORS = SeparatorSet.of(" \t, ");
+
+    /**
+     * Returns options with a new search index and the given settings.
+     *
+     * @param shardSize
+     *            most terms on one index page
+     * @param backlinks
+     *            whether pages list their backlinks
+     * @return the options
+     */
+    private static GlossaryOptions options(int shardSize, boolean backlinks) {
+        return new GlossaryOptions().separators(SEPARATORS)
+                .shardSize(shardSize).search(new SearchIndex(SEPARATORS))
+                .backlinks(backlinks);
+    }
+
+    // routine test - the pipeline writes the same site as writeGlossary, from
+    // a map or from an arena, with and without backlinks
+    @Test
+    public void writeGlossaryTest() throws IOException {
+        Path file = this.folder.newFile().toPath();
+        final int n = 700;
+        new GlossaryGenerator(n, 15, 6, 0.1, 5).write(file);
+        Map<String, String> map = new Map1L<>();
+        Glossary.getTermsAndDefinitions(file, map);
+        Queue<String> q = new Queue1L<>();
+        Glossary.sortTerms(q, map, new Glossary.CompareStrings());
+        final int shardSize = 100;
+        try (DefinitionArena arena = new DefinitionArena(
+                this.folder.getRoot().toPath())) {
+            Glossary.getTermsAndDefinitions(file, arena);
+            for (boolean backlinks : new boolean[] { false, true }) {
+                java.util.Map<String, String> expected = new HashMap<>();
+                Glossary.writeGlossary(q, map, MemoryPageSink.text(expected),
+                        options(shardSize, backlinks));
+                java.util.Map<String, String> fromMap = new HashMap<>();
+                PagePipeline.writeGlossary(q, map, MemoryPageSink.text(fromMap),
+                        options(shardSize, backlinks).workers(3).writers(2)
+                                .capacity(8).stats(new BuildStats()));
+                assertEquals(expected, fromMap);
+                java.util.Map<String, String> fromArena = new HashMap<>();
+                PagePipeline.writeGlossary(q, arena,
+                        MemoryPageSink.text(fromArena),
+                        options(shardSize, backlinks).workers(2).capacity(1));
+                assertEquals(expected, fromArena);
+            }
+        }
+    }
+
+    // a failing stage stops the pipeline instead of leaving it stuck
+    @Test
+    public void failureTest() {
+        Map<String, String> map = new Map1L<>();
+        Queue<String> q = new Queue1L<>();
+        final int n = 1000;
+        for (int i = 0; i < n; i++) {
+            map.add("t" + (n + i), "see t" + (n + (i + 1) % n));
+            q.enqueue("t" + (n + i));
+        }
+        // the reader fails on a term that is not in the map
+        q.enqueue("missing");
+        try {
+            PagePipeline.writeGlossary(q, map,
+                    MemoryPageSink.text(new HashMap<>()),
+                    new GlossaryOptions().separators(SEPARATORS).workers(2)
+                            .capacity(2));
+            fail("the failure should be thrown");
+        } catch (AssertionError | RuntimeException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Tests for the PageTemplate.java, PageBuffer.java and GlossaryTemplates.java
+ * classes.
+ */
+public class PageTemplateTest {
+
+    /**
+     * Folder for template files, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // routine test - literals and holes alternate, holes may repeat
+    @Test
+    public void compileTest1() {
+        PageTemplate t = PageTemplate.compile("<a>{{x}}</a>{{y}}{{x}}", "x",
+                "y");
+        assertEquals(5, t.segments());
+        assertEquals("<a>", t.literal(0));
+        assertEquals(0, t.hole(1));
+        assertEquals("</a>", t.literal(2));
+        assertEquals(1, t.hole(3));
+        assertEquals(0, t.hole(4));
+        assertEquals(-1, t.hole(0));
+        assertEquals(3, t.indexOf(1));
+    }
+
+    // a hole that is not declared is rejected
+    @Test(expected = IllegalArgumentException.class)
+    public void compileTest2() {
+        PageTemplate.compile("<p>{{nope}}</p>", "term");
+    }
+
+    // a hole that is never closed is rejected
+    @Test(expected = IllegalArgumentException.class)
+    public void compileTest3() {
+        PageTemplate.compile("<p>{{term</p>", "term");
+    }
+
+    // PageBuffer encodes exactly as String.getBytes, lone surrogates included
+    @Test
+    public void pageBufferTest() {
+        String text = "a\u00e9\u20ac\ud83d\ude00|\ud83d|\ude00z";
+        PageBuffer buffer = new PageBuffer();
+        buffer.append("x");
+        buffer.clear();
+        buffer.append(text);
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8),
+                Arrays.copyOf(buffer.array(), buffer.length()));
+    }
+
+    // the default term page is the same as bytes and as characters
+    @Test
+    public void defaultsTest() {
+        Map<String, String> map = new Map1L<>();
+        map.add("word", "a word with a number");
+        map.add("number", "a caf\u00e9 count");
+        SeparatorSet separators = SeparatorSet.of(" \t,");
+        TermMatcher matcher = TermMatcher.compile(map);
+        String def = map.value("word");
+        StringBuilder chars = new StringBuilder();
+        Glossary.renderTermPage("word", def, matcher, separators, chars);
+        PageBuffer bytes = new PageBuffer();
+        GlossaryTemplates.defaults().renderTermPage("word", def,
+                handler -> matcher.scan(def, separators, handler), bytes,
+                termId -> {
+                });
+        assertEquals(chars.toString(), bytes.toString());
+    }
+
+    // a template file in the folder replaces its default; the rest stay
+    @Test
+    public void loadTest() throws Exception {
+        Path dir = this.folder.getRoot().toPath();
+        Files.write(dir.resolve(GlossaryTemplates.LINK),
+                "<a class=\"t\" href=\"{{term}}.html\">{{ text }}</a>"
+                        .getBytes(StandardCharsets.UTF_8));
+        GlossaryTemplates templates = GlossaryTemplates.load(dir);
+        Map<String, String> map = new Map1L<>();
+        map.add("word", "one number");
+        map.add("number", "a count");
+        SeparatorSet separators = SeparatorSet.of(" \t,");
+        TermMatcher matcher = TermMatcher.compile(map);
+        String def = map.value("word");
+        PageBuffer custom = new PageBuffer();
+        templates.renderTermPage("word", def,
+                handler -> matcher.scan(def, separators, handler), custom,
+                termId -> {
+                });
+        StringBuilder standard = new StringBuilder();
+        Glossary.renderTermPage("word", def, matcher, separators, standard);
+        // only the link in the definition changes, not the one to the index
+        assertEquals(standard.toString().replace("<a href=\"number",
+                "<a class=\"t\" href=\"number"), custom.toString());
+    }
+
+
+    // the navigation, shard heading and contents ranges come from templates
+    @Test
+    public void loadIndexTest() throws Exception {
+        Path dir = this.folder.getRoot().toPath();
+        Files.write(dir.resolve(GlossaryTemplates.INDEX_NAV),
+                "<nav>{{previous}}[{{contents}}]{{next}}</nav>"
+                        .getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve(GlossaryTemplates.INDEX_PREVIOUS),
+                "&lt;{{term}} ".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve(GlossaryTemplates.INDEX_NEXT),
+                " {{term}}&gt;".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve(GlossaryTemplates.INDEX_HEADING),
+                " ({{first}}..{{last}})".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve(GlossaryTemplates.INDEX_RANGE),
+                "{{last}}/{{first}}".getBytes(StandardCharsets.UTF_8));
+        GlossaryTemplates templates = GlossaryTemplates.load(dir);
+        StringBuilder shard = new StringBuilder();
+        templates.renderIndexShard(Arrays.asList("bat", "cat"), 2, true,
+                new PageTemplate.CharOutput(shard));
+        String page = shard.toString();
+        assertTrue(page.contains("<h3>Index (bat..cat)</h3>"));
+        assertTrue(page.contains("<nav>&lt;"
+                + GlossaryTemplates.shardName(1) + " [index] "
+                + GlossaryTemplates.shardName(3) + "&gt;</nav>"));
+        StringBuilder contents = new StringBuilder();
+        templates.renderIndexContents(Arrays.asList("ant"),
+                Arrays.asList("bee"), new PageTemplate.CharOutput(contents));
+        assertTrue(contents.toString().contains(">bee/ant</a>"));
+        assertFalse(contents.toString().contains("<nav>"));
+    }
+
+}
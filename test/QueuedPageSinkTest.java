@@ -0,0 +1,138 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for the QueuedPageSink.java class.
+ */
+public class QueuedPageSinkTest {
+
+    // routine test - every page is written once closed, even when the caller
+    // reuses its buffer
+    @Test
+    public void writeTest() {
+        java.util.Map<String, byte[]> pages = new HashMap<>();
+        final int n = 500;
+        final int capacity = 4;
+        final int writers = 3;
+        byte[] buffer = new byte[1 << 10];
+        try (PageSink sink = new QueuedPageSink(MemoryPageSink.bytes(pages),
+                capacity, writers)) {
+            for (int i = 0; i < n; i++) {
+                byte[] page = ("page " + i).getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(page, 0, buffer, 2, page.length);
+                sink.write("p" + i + ".html", buffer, 2, page.length);
+            }
+        }
+        assertEquals(n, pages.size());
+        for (int i = 0; i < n; i++) {
+            assertArrayEquals(("page " + i).getBytes(StandardCharsets.UTF_8),
+                    pages.get("p" + i + ".html"));
+        }
+    }
+
+    // a slow disk holds the caller back once the queue is full
+    @Test
+    public void backpressureTest() throws InterruptedException {
+        CountDownLatch open = new CountDownLatch(1);
+        AtomicInteger stored = new AtomicInteger();
+        PageSink slow = new PageSink() {
+            @Override
+            public void write(String name, byte[] bytes, int offset,
+                    int length) {
+                try {
+                    open.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                stored.incrementAndGet();
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+        final int capacity = 2;
+        final int n = 50;
+        AtomicInteger handed = new AtomicInteger();
+        QueuedPageSink sink = new QueuedPageSink(slow, capacity, 1);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < n; i++) {
+                sink.write("p" + i, new byte[] { 1 }, 0, 1);
+                handed.incrementAndGet();
+            }
+        });
+        producer.start();
+        final long wait = 200;
+        Thread.sleep(wait);
+        // the queue, plus the batch the writer is stuck on
+        assertTrue(handed.get() <= 2 * capacity);
+        assertTrue(producer.isAlive());
+        open.countDown();
+        producer.join();
+        sink.close();
+        assertEquals(n, stored.get());
+    }
+
+    // a page that cannot be stored fails later writes and close
+    @Test
+    public void closeTest() throws InterruptedException {
+        PageSink broken = new PageSink() {
+            @Override
+            public void write(String name, byte[] bytes, int offset,
+                    int length) {
+                throw new IllegalStateException("disk full");
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+        PageSink sink = new QueuedPageSink(broken, 1, 2);
+        final int n = 100;
+        try {
+            for (int i = 0; i < n; i++) {
+                sink.write("a.html", new byte[] { 'a' }, 0, 1);
+                final long pause = 1;
+                Thread.sleep(pause);
+            }
+            fail("write should rethrow the failure");
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        try {
+            sink.close();
+            fail("close should rethrow the failure");
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+    }
+
+    // flush returns once every page written before it is stored
+    @Test
+    public void flushTest() {
+        java.util.Map<String, byte[]> pages = new HashMap<>();
+        final int n = 200;
+        try (PageSink sink = new QueuedPageSink(MemoryPageSink.bytes(pages),
+                4, 3)) {
+            for (int i = 0; i < n; i++) {
+                sink.write("p" + i + ".html", new byte[] { 'p' }, 0, 1);
+            }
+            sink.flush();
+            assertEquals(n, pages.size());
+            sink.write("last.html", new byte[] { 'l' }, 0, 1);
+        }
+        assertEquals(n + 1, pages.size());
+    }
+
+}
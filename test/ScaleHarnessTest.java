@@ -0,0 +1,81 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the ScaleHarness.java class.
+ */
+public class ScaleHarnessTest {
+
+    /**
+     * Folder for the generated glossaries, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns a run of the given size and wall time.
+     *
+     * @param size
+     *            the size
+     * @param millis
+     *            the wall time in milliseconds
+     * @return the run
+     */
+    private static ScaleHarness.Run run(long size, long millis) {
+        final long nanos = 1_000_000;
+        return new ScaleHarness.Run(size, size, size + 1, millis * nanos, -1,
+                0, 0);
+    }
+
+    // routine test - only the steps that grew faster than linear are flagged
+    @Test
+    public void superlinearStepsTest1() {
+        List<ScaleHarness.Run> runs = Arrays.asList(run(1000, 200),
+                run(10_000, 1500), run(100_000, 40_000),
+                run(1_000_000, 400_000));
+        assertEquals(0.875, ScaleHarness.exponent(runs.get(0), runs.get(1)),
+                0.01);
+        List<String> steps = ScaleHarness.superlinearSteps(runs,
+                ScaleHarness.DEFAULT_TOLERANCE);
+        assertEquals(1, steps.size());
+        assertTrue(steps.get(0).startsWith("superlinear from 10000 to 100000"));
+        // a looser tolerance lets that step through
+        assertEquals(0, ScaleHarness.superlinearSteps(runs, 0.5).size());
+    }
+
+    // builds too fast to time reliably are not judged
+    @Test
+    public void superlinearStepsTest2() {
+        List<ScaleHarness.Run> runs = Arrays.asList(run(10, 1),
+                run(100, 90));
+        assertEquals(0, ScaleHarness.superlinearSteps(runs, 0).size());
+        ScaleHarness.Run parsed = ScaleHarness.Run
+                .parse(runs.get(1).toLine());
+        assertEquals(runs.get(1).toLine(), parsed.toLine());
+        assertEquals(null, ScaleHarness.Run.parse("Enter input file name: "));
+    }
+
+    // a measured build writes every page and counts them
+    @Test
+    public void measureTest() throws Exception {
+        final int n = 300;
+        Path input = this.folder.newFile().toPath();
+        new GlossaryGenerator(n).write(input);
+        Path site = this.folder.getRoot().toPath().resolve("site");
+        ScaleHarness.Run run = ScaleHarness.measure(input, site, 2);
+        assertEquals(n, run.terms());
+        assertEquals(n + 1, run.files());
+        assertTrue(Files.exists(site.resolve("index.html")));
+        assertTrue(run.wallNanos() > 0 && run.filesPerSecond() > 0);
+    }
+
+}
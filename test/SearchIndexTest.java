@@ -0,0 +1,137 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Tests for the SearchIndex.java class.
+ */
+public class SearchIndexTest {
+
+    // routine test - words are found case-insensitively, without punctuation
+    @Test
+    public void findTest() {
+        SearchIndex index = new SearchIndex(SeparatorSet.of(" \t,"));
+        index.add("word", "A string of Letters.");
+        index.add("letter", "what makes up a word");
+        index.add("letters", "more than one letter");
+        assertEquals(3, index.termCount());
+        assertEquals(Arrays.asList("letter", "word"), index.find("a"));
+        assertEquals(Arrays.asList("word"), index.find("LETTERS"));
+        assertEquals(Collections.emptyList(), index.find("nothing"));
+        assertEquals(Arrays.asList("letter", "letters"),
+                index.withPrefix("let"));
+    }
+
+    // lookups see terms added after an earlier lookup
+    @Test
+    public void addAfterFindTest() {
+        SearchIndex index = new SearchIndex(SeparatorSet.of(" "));
+        index.add("b", "word word, WORD");
+        assertEquals(Arrays.asList("b"), index.find("word"));
+        assertEquals(Arrays.asList("b"), index.withPrefix(""));
+        index.add("a", "(word)");
+        assertEquals(Arrays.asList("a", "b"), index.find("word"));
+        assertEquals(Arrays.asList("a", "b"), index.withPrefix(""));
+        // a word repeated in one definition is listed once
+        assertEquals("{\"terms\":[\"a\",\"b\"],\"words\":[\"word\"],"
+                + "\"postings\":[[0,1]]}", index.toJson());
+    }
+
+    // the JSON has sorted terms and words and delta-encoded postings
+    @Test
+    public void toJsonTest() {
+        SearchIndex index = new SearchIndex(SeparatorSet.of(" "));
+        index.add("c", "x y");
+        index.add("a", "y \"q\"");
+        index.add("b", "y");
+        assertEquals("{\"terms\":[\"a\",\"b\",\"c\"],"
+                + "\"words\":[\"q\",\"x\",\"y\"],"
+                + "\"postings\":[[0],[2],[0,1,1]]}", index.toJson());
+    }
+
+    // the index is written with the pages, on any number of workers
+    @Test
+    public void writeGlossaryTest() {
+        Map<String, String> map = new Map1L<>();
+        Queue<String> q = new Queue1L<>();
+        final int n = 50;
+        for (int i = 0; i < n; i++) {
+            map.add("t" + i, "shared word" + i);
+            q.enqueue("t" + i);
+        }
+        SeparatorSet separators = SeparatorSet.of(" \t,");
+        java.util.Map<String, String> pages = new HashMap<>();
+        SearchIndex sequential = new SearchIndex(separators);
+        Glossary.writeGlossary(q, map, MemoryPageSink.text(pages),
+                new GlossaryOptions().separators(separators)
+                        .search(sequential));
+        String json = pages.get(SearchIndex.FILE_NAME);
+        assertEquals(sequential.toJson(), json);
+        assertEquals(n, sequential.find("shared").size());
+
+        final int workers = 4;
+        SearchIndex parallel = new SearchIndex(separators);
+        Glossary.writeGlossary(q, map, MemoryPageSink.text(pages),
+                new GlossaryOptions().separators(separators).workers(workers)
+                        .stats(new BuildStats()).search(parallel));
+        assertEquals(json, pages.get(SearchIndex.FILE_NAME));
+        assertTrue(pages.containsKey("t0.html"));
+    }
+
+    // words collected while the links are found match those of add
+    @Test
+    public void backlinksTest() {
+        Map<String, String> map = new Map1L<>();
+        Queue<String> q = new Queue1L<>();
+        final int n = 3000;
+        SeparatorSet separators = SeparatorSet.of(" ,");
+        SearchIndex expected = new SearchIndex(separators);
+        for (int i = 0; i < n; i++) {
+            String def = "see t" + (i * 7 % n) + ", Word" + (i % 13)
+                    + " word" + (i % 13) + " ,";
+            map.add("t" + i, def);
+            q.enqueue("t" + i);
+            expected.add("t" + i, def);
+        }
+        final int workers = 3;
+        for (boolean pipeline : new boolean[] { false, true }) {
+            SearchIndex actual = new SearchIndex(separators);
+            Glossary.writeGlossary(q, map,
+                    MemoryPageSink.text(new HashMap<>()),
+                    new GlossaryOptions().separators(separators)
+                            .workers(workers).backlinks(true)
+                            .pipeline(pipeline).search(actual));
+            assertEquals(expected.toJson(), actual.toJson());
+        }
+    }
+
+
+    // a search index made from the properties follows the separators set
+    // afterwards, and one set by the caller is kept
+    @Test
+    public void fromPropertiesTest() {
+        System.setProperty("glossary.search", "true");
+        try {
+            GlossaryOptions options = GlossaryOptions.fromProperties()
+                    .separators(SeparatorSet.of(" -"));
+            options.search().add("t", "well-known");
+            assertEquals(Arrays.asList("t"), options.search().find("known"));
+            SearchIndex mine = new SearchIndex(SeparatorSet.of(" "));
+            options.search(mine).separators(SeparatorSet.of(" ,"));
+            assertTrue(options.search() == mine);
+        } finally {
+            System.clearProperty("glossary.search");
+        }
+    }
+
+}
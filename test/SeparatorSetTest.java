@@ -0,0 +1,89 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Tests for the SeparatorSet.java class.
+ */
+public class SeparatorSetTest {
+
+    // routine test - the default separators, duplicates counted once
+    @Test
+    public void ofTest1() {
+        SeparatorSet s = SeparatorSet.of(" \t, ");
+        final int sizeRequired = 3;
+        assertEquals(sizeRequired, s.size());
+        assertEquals(true, s.contains(' '));
+        assertEquals(true, s.contains('\t'));
+        assertEquals(true, s.contains(','));
+        assertEquals(false, s.contains('a'));
+    }
+
+    // characters at both ends of the BMP and a supplementary code point
+    @Test
+    public void ofTest2() {
+        final int emoji = 0x1F600;
+        String str = "\u0000" + Character.MAX_VALUE
+                + new String(Character.toChars(emoji));
+        SeparatorSet s = SeparatorSet.of(str);
+        final int sizeRequired = 3;
+        assertEquals(sizeRequired, s.size());
+        assertEquals(true, s.contains('\u0000'));
+        assertEquals(true, s.contains(Character.MAX_VALUE));
+        assertEquals(true, s.contains(emoji));
+        assertEquals(false, s.contains(emoji + 1));
+        assertEquals(false, s.contains((char) (Character.MAX_VALUE - 1)));
+    }
+
+    // adapting a Set<Character> keeps the same characters
+    @Test
+    public void fromTest() {
+        Set<Character> chars = new Set1L<>();
+        chars.add(' ');
+        chars.add(';');
+        SeparatorSet s = SeparatorSet.from(chars);
+        final int sizeRequired = 2;
+        assertEquals(sizeRequired, s.size());
+        assertEquals(true, s.contains(' '));
+        assertEquals(true, s.contains(';'));
+        assertEquals(false, s.contains(','));
+    }
+
+    // clear empties the set
+    @Test
+    public void clearTest() {
+        SeparatorSet s = SeparatorSet.of("ab");
+        s.clear();
+        assertEquals(0, s.size());
+        assertEquals(false, s.contains('a'));
+    }
+
+    // tokenizing with a supplementary separator keeps surrogate pairs whole
+    @Test
+    public void tokenizerTest() {
+        final int emoji = 0x1F600;
+        String sep = new String(Character.toChars(emoji));
+        SeparatorSet s = SeparatorSet.of(sep);
+        String text = "ab" + sep + sep + "c";
+        final int firstEnd = 2;
+        final int secondEnd = 6;
+        assertEquals(firstEnd, Glossary.nextWordOrSeparatorEnd(text, 0, s));
+        assertEquals(secondEnd,
+                Glossary.nextWordOrSeparatorEnd(text, firstEnd, s));
+    }
+
+    // code points come out in increasing order
+    @Test
+    public void codePointsTest() {
+        final int emoji = 0x1F600;
+        SeparatorSet s = SeparatorSet.of(", \t" + new String(
+                Character.toChars(emoji)));
+        final int[] required = { '\t', ' ', ',', emoji };
+        assertArrayEquals(required, s.codePoints());
+    }
+
+}
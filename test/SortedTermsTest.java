@@ -0,0 +1,123 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the SortedTerms.java class.
+ */
+public class SortedTermsTest {
+
+    /**
+     * Folder for the spilled runs, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns the given number of distinct terms in a shuffled order.
+     *
+     * @param n
+     *            the number of terms
+     * @return the terms
+     */
+    private static List<String> shuffled(int n) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            result.add("term" + Integer.toString(i, Character.MAX_RADIX));
+        }
+        final long seed = 42;
+        Collections.shuffle(result, new Random(seed));
+        return result;
+    }
+
+    /**
+     * Copies the terms of the given {@code Iterable} into a list.
+     *
+     * @param terms
+     *            the terms
+     * @return the list
+     */
+    private static List<String> list(Iterable<String> terms) {
+        List<String> result = new ArrayList<>();
+        for (String term : terms) {
+            result.add(term);
+        }
+        return result;
+    }
+
+    // routine test - terms that fit in one run are not spilled
+    @Test
+    public void sortTest1() {
+        Comparator<String> c = new Glossary.CompareStrings();
+        List<String> terms = Arrays.asList("word", "letter", "caf\u00e9");
+        try (SortedTerms sorted = SortedTerms.sort(terms, c, terms.size(),
+                this.folder.getRoot().toPath())) {
+            assertEquals(0, sorted.runCount());
+            assertEquals(terms.size(), sorted.size());
+            assertEquals(Arrays.asList("caf\u00e9", "letter", "word"),
+                    list(sorted));
+        }
+        assertEquals(0, this.folder.getRoot().list().length);
+    }
+
+    // spilled runs merge once into the right order, read more than once
+    @Test
+    public void sortTest2() {
+        Comparator<String> c = new Glossary.CompareStrings();
+        final int n = 1000;
+        final int runSize = 64;
+        List<String> terms = shuffled(n);
+        Path dir = this.folder.getRoot().toPath();
+        try (SortedTerms sorted = SortedTerms.sort(terms, c, runSize, dir)) {
+            assertEquals(1, sorted.runCount());
+            assertEquals(1, this.folder.getRoot().list().length);
+            List<String> expected = new ArrayList<>(terms);
+            Collections.sort(expected, c);
+            assertEquals(expected, list(sorted));
+            assertEquals(expected, list(sorted));
+        }
+        assertEquals(0, this.folder.getRoot().list().length);
+    }
+
+    // more runs than are merged at once get merged in passes
+    @Test
+    public void sortTest3() {
+        Comparator<String> c = new Glossary.CompareStrings();
+        final int n = 500;
+        List<String> terms = shuffled(n);
+        Path dir = this.folder.getRoot().toPath();
+        try (SortedTerms sorted = SortedTerms.sort(terms, c, 2, dir)) {
+            assertEquals(1, sorted.runCount());
+            List<String> expected = new ArrayList<>(terms);
+            Collections.sort(expected, c);
+            assertEquals(expected, list(sorted));
+        }
+        assertEquals(0, this.folder.getRoot().list().length);
+    }
+
+    // a huge run size with few terms neither spills nor fills a huge buffer
+    @Test
+    public void sortTest4() {
+        Comparator<String> c = new Glossary.CompareStrings();
+        final int n = 3000;
+        List<String> terms = shuffled(n);
+        try (SortedTerms sorted = SortedTerms.sort(terms, c,
+                Integer.MAX_VALUE, this.folder.getRoot().toPath())) {
+            assertEquals(0, sorted.runCount());
+            List<String> expected = new ArrayList<>(terms);
+            Collections.sort(expected, c);
+            assertEquals(expected, list(sorted));
+        }
+    }
+
+}
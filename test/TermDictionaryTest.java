@@ -0,0 +1,78 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Tests for the TermDictionary.java class.
+ */
+public class TermDictionaryTest {
+
+    // routine test - spans inside a longer text are found by id
+    @Test
+    public void idTest1() {
+        TermDictionary d = new TermDictionary(
+                new String[] { "word", "number", "regular expression" });
+        String text = "a number, a regular expression and a word";
+        assertEquals(3, d.size());
+        assertEquals(1, d.id(text, 2, 8));
+        assertEquals(2, d.id(text, 12, 30));
+        assertEquals(0, d.id(text, text.length() - 4, text.length()));
+        assertEquals(-1, d.id(text, 2, 7));
+        assertEquals(-1, d.id(text, 0, 0));
+    }
+
+    // terms whose String hashes are equal are still told apart
+    @Test
+    public void idTest2() {
+        TermDictionary d = new TermDictionary(
+                new String[] { "AaAa", "AaBB", "BBAa", "BBBB", "" });
+        assertEquals(0, d.id("AaAa"));
+        assertEquals(1, d.id(new StringBuilder("AaBB")));
+        assertEquals(2, d.id("BBAa"));
+        assertEquals(3, d.id("xBBBBx", 1, 5));
+        assertEquals(4, d.id(""));
+        assertEquals(-1, d.id("AaA"));
+        assertEquals("BBAa", d.term(2));
+        assertEquals(4, d.length(3));
+        StringBuilder out = new StringBuilder("<");
+        d.appendTerm(1, out);
+        assertEquals("<AaBB", out.toString());
+    }
+
+    // an empty dictionary, the smallest table, finds nothing
+    @Test
+    public void idTest3() {
+        TermDictionary d = new TermDictionary(new String[0]);
+        assertEquals(0, d.size());
+        assertEquals(-1, d.id(""));
+        assertEquals(-1, d.id("word"));
+        assertEquals(4 * Integer.BYTES + Integer.BYTES, d.footprint());
+    }
+
+    // every Key of a Map is in its dictionary, and nothing else is
+    @Test
+    public void compileTest() {
+        Map<String, String> map = new Map1L<>();
+        final int n = 1000;
+        for (int i = 0; i < n; i++) {
+            map.add("term" + i, "definition " + i);
+        }
+        TermDictionary d = TermDictionary.compile(map);
+        assertEquals(n, d.size());
+        for (int i = 0; i < n; i++) {
+            int id = d.id("term" + i);
+            assertTrue(id >= 0);
+            assertEquals("term" + i, d.term(id));
+        }
+        assertEquals(-1, d.id("term" + n));
+        // the characters, one offset and at most 4 slots per term
+        final int perTerm = 4 * Integer.BYTES + Integer.BYTES;
+        assertTrue(d.footprint() <= 2L * 7 * n + (long) perTerm * n
+                + Integer.BYTES);
+    }
+
+}
@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Tests for the TermFileParser.java class.
+ */
+public class TermFileParserTest {
+
+    /**
+     * Folder for input files, fresh for each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes the given text to a new input file.
+     *
+     * @param text
+     *            the contents of the file
+     * @return the path of the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private Path input(String text) throws IOException {
+        Path file = this.folder.newFile().toPath();
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    // routine test - same file and result as termsAndDefsTest1
+    @Test
+    public void readTest1() {
+        Map<String, String> map = new Map1L<>();
+        TermFileParser.read(Paths.get("testInput1.txt"), map);
+        Map<String, String> mapRequired = new Map1L<>();
+        mapRequired.add("word", "a string of characters");
+        mapRequired.add("world", "a region or group of countries");
+        assertEquals(mapRequired, map);
+    }
+
+    // definition over 3 lines - same file and result as termsAndDefsTest2
+    @Test
+    public void readTest2() {
+        Map<String, String> map = new Map1L<>();
+        TermFileParser.read(Paths.get("testInput2.txt"), map);
+        Map<String, String> mapRequired = new Map1L<>();
+        String def = "a single distinct meaningful element of speech or "
+                + "writing, used with others (or sometimes alone) to form a "
+                + "sentence and typically shown with a space on either side "
+                + "when written or printed.";
+        mapRequired.add("word", def);
+        assertEquals(mapRequired, map);
+    }
+
+    // no blank line (or line terminator) after the last definition
+    @Test
+    public void readTest3() throws IOException {
+        Map<String, String> map = new Map1L<>();
+        map.add("old", "replaced");
+        TermFileParser.read(this.input("word\na string\nof characters"), map);
+        Map<String, String> mapRequired = new Map1L<>();
+        mapRequired.add("word", "a string of characters");
+        assertEquals(mapRequired, map);
+    }
+
+    // Windows line endings, extra blank lines and non-ASCII text
+    @Test
+    public void readTest4() throws IOException {
+        Map<String, String> map = new Map1L<>();
+        TermFileParser.read(this.input(
+                "\r\n\r\ncaf\u00e9\r\na small\r\nrestaurant\r\n\r\n\r\n"
+                        + "na\u00efve\r\nlacking experience\r\n\r\n"),
+                map);
+        Map<String, String> mapRequired = new Map1L<>();
+        mapRequired.add("caf\u00e9", "a small restaurant");
+        mapRequired.add("na\u00efve", "lacking experience");
+        assertEquals(mapRequired, map);
+    }
+
+    // empty file
+    @Test
+    public void readTest5() throws IOException {
+        Map<String, String> map = new Map1L<>();
+        TermFileParser.read(this.input(""), map);
+        assertEquals(0, map.size());
+    }
+
+}
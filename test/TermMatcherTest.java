@@ -0,0 +1,154 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for the TermMatcher.java class.
+ */
+public class TermMatcherTest {
+
+    /**
+     * The default separators used by Glossary.
+     */
+    private static final SeparatorSet SEPARATORS = SeparatorSet.of(" \t,");
+
+    /**
+     * Scans {@code text} and lists the matches as "start-end:term;".
+     *
+     * @param matcher
+     *            the matcher
+     * @param text
+     *            the text to scan
+     * @return the list of matches
+     */
+    private static String matches(TermMatcher matcher, String text) {
+        StringBuilder result = new StringBuilder();
+        matcher.scan(text, SEPARATORS, (start, end, termId) -> {
+            result.append(start).append('-').append(end).append(':');
+            result.append(matcher.term(termId)).append(';');
+        });
+        return result.toString();
+    }
+
+    // routine test - single word terms, only whole words match
+    @Test
+    public void scanTest1() {
+        TermMatcher m = new TermMatcher(new String[] { "word", "or" });
+        assertEquals("0-4:word;11-13:or;",
+                matches(m, "word words or, sword"));
+    }
+
+    // multi-word term, longest match wins over the shorter one inside it
+    @Test
+    public void scanTest2() {
+        TermMatcher m = new TermMatcher(
+                new String[] { "regular", "regular expression", "expression" });
+        assertEquals("6-24:regular expression;26-33:regular;",
+                matches(m, "a fat regular expression, regular expressions"));
+    }
+
+    // overlapping terms, the leftmost one wins
+    @Test
+    public void scanTest3() {
+        TermMatcher m = new TermMatcher(new String[] { "a b", "b c" });
+        assertEquals("0-3:a b;", matches(m, "a b c"));
+        assertEquals("2-5:b c;", matches(m, "x b c"));
+    }
+
+    // a term that is a suffix of another is still found on its own
+    @Test
+    public void scanTest4() {
+        TermMatcher m = new TermMatcher(
+                new String[] { "big data set", "data set", "set" });
+        assertEquals("0-3:set;4-12:data set;13-25:big data set;",
+                matches(m, "set data set big data set"));
+    }
+
+    // empty text, empty terms and no terms at all
+    @Test
+    public void scanTest5() {
+        TermMatcher m = new TermMatcher(new String[] { "", "word" });
+        assertEquals("", matches(m, ""));
+        assertEquals("", matches(new TermMatcher(new String[0]), "a word"));
+        assertEquals(2, m.termCount());
+    }
+
+    // every whole word found by the matcher is exactly one of the terms
+    @Test
+    public void scanTest6() {
+        final int termCount = 200;
+        String[] terms = new String[termCount];
+        for (int i = 0; i < termCount; i++) {
+            terms[i] = "t" + Integer.toString(i * i, Character.MAX_RADIX);
+        }
+        TermMatcher m = new TermMatcher(terms);
+        StringBuilder text = new StringBuilder();
+        StringBuilder required = new StringBuilder();
+        final int words = 1000;
+        final int step = 7;
+        for (int i = 0; i < words; i++) {
+            String word = "t" + Integer.toString(i * step, Character.MAX_RADIX);
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            int start = text.length();
+            text.append(word);
+            for (String term : terms) {
+                if (term.equals(word)) {
+                    required.append(start).append('-').append(text.length());
+                    required.append(':').append(word).append(';');
+                }
+            }
+        }
+        assertEquals(required.toString(), matches(m, text.toString()));
+    }
+
+    // the words passed over are the tokenizer's words, surrogates included
+    @Test
+    public void scanWordsTest() {
+        TermMatcher m = new TermMatcher(new String[] { "b c" });
+        String text = ",a b c,\ud83d\ude00x,, d ";
+        StringBuilder words = new StringBuilder();
+        final int tokens = m.scan(text, SEPARATORS, (start, end, id) -> {
+            words.append('[').append(m.term(id)).append(']');
+        }, (start, end) -> words.append(text, start, end).append('|'));
+        StringBuilder required = new StringBuilder();
+        int position = 0;
+        int count = 0;
+        while (position < text.length()) {
+            int end = Glossary.nextWordOrSeparatorEnd(text, position,
+                    SEPARATORS);
+            if (!SEPARATORS.contains(text.charAt(position))) {
+                required.append(text, position, end).append('|');
+            }
+            position = end;
+            count++;
+        }
+        // every word comes before the matches
+        assertEquals(required + "[b c]", words.toString());
+        assertEquals(count, tokens);
+    }
+
+    // the trie shares prefixes and keeps matching as its table grows
+    @Test
+    public void growTest() {
+        final int termCount = 5000;
+        String[] terms = new String[termCount];
+        java.util.Set<String> prefixes = new java.util.HashSet<>();
+        for (int i = 0; i < termCount; i++) {
+            terms[i] = "term" + i;
+            for (int k = 1; k <= terms[i].length(); k++) {
+                prefixes.add(terms[i].substring(0, k));
+            }
+        }
+        TermMatcher m = new TermMatcher(terms);
+        // the root and one node per distinct prefix
+        assertEquals(1 + prefixes.size(), m.nodeCount());
+        for (int i = 0; i < termCount; i += 7) {
+            String text = "a term" + i + ", term" + termCount;
+            int end = "a term".length() + Integer.toString(i).length();
+            assertEquals("2-" + end + ":term" + i + ";", matches(m, text));
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for the WorkerPools.java class.
+ */
+public class WorkerPoolsTest {
+
+    // an I/O executor given many tasks runs no more than workers at once
+    @Test
+    public void ioExecutorTest() {
+        final int workers = 3;
+        final int tasks = 60;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger most = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = WorkerPools.newIoExecutor(workers,
+                "test-io");
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                futures.add(executor.submit(() -> {
+                    most.accumulateAndGet(running.incrementAndGet(),
+                            Math::max);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.incrementAndGet();
+                }));
+            }
+            WorkerPools.awaitAll(futures);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(tasks, done.get());
+        assertTrue(most.get() <= workers);
+    }
+
+    // every copy finishes before the first failure is rethrown
+    @Test
+    public void runAllTest() {
+        final int workers = 4;
+        AtomicInteger copies = new AtomicInteger();
+        ExecutorService executor = WorkerPools.newCpuExecutor(workers,
+                "test-cpu");
+        try {
+            WorkerPools.runAll(executor, workers, () -> {
+                if (copies.incrementAndGet() == 1) {
+                    throw new IllegalArgumentException("first");
+                }
+                return null;
+            });
+            fail("the failure should be rethrown");
+        } catch (IllegalArgumentException e) {
+            assertEquals("first", e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(workers, copies.get());
+    }
+
+}